@@ -7,6 +7,7 @@
 package me.philcali.device.pool;
 
 import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.content.ContentTransferAgent;
 import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.exceptions.ContentTransferException;
@@ -18,6 +19,8 @@ import me.philcali.device.pool.model.CopyInput;
 import me.philcali.device.pool.model.Host;
 import org.immutables.value.Value;
 
+import java.util.List;
+
 
 /**
  * The {@link BaseDevice} implements the {@link Device} abstraction by forwarding commands to the
@@ -50,6 +53,27 @@ abstract class BaseDeviceModel implements Device {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public CommandOutput executeStreaming(final CommandInput input, final OutputSink sink)
+            throws DeviceInteractionException {
+        try {
+            return connection().executeStreaming(input, sink);
+        } catch (ConnectionException exception) {
+            throw new DeviceInteractionException(exception);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<CommandOutput> executeBatch(final List<CommandInput> inputs) throws DeviceInteractionException {
+        try {
+            return connection().executeBatch(inputs);
+        } catch (ConnectionException exception) {
+            throw new DeviceInteractionException(exception);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void copyTo(final CopyInput input) throws DeviceInteractionException {
@@ -18,13 +18,21 @@ import me.philcali.device.pool.model.APIShadowModel;
 import me.philcali.device.pool.model.Host;
 import me.philcali.device.pool.model.ProvisionInput;
 import me.philcali.device.pool.model.ProvisionOutput;
+import me.philcali.device.pool.model.Reservation;
 import me.philcali.device.pool.model.Status;
 import me.philcali.device.pool.provision.ProvisionService;
 import me.philcali.device.pool.reservation.ReservationService;
 import org.immutables.value.Value;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The {@link me.philcali.device.pool.BaseDevicePool} implements the {@link me.philcali.device.pool.DevicePool} breaking down the control plane
@@ -42,6 +50,13 @@ import java.util.stream.Collectors;
 @APIShadowModel
 @Value.Immutable
 public abstract class BaseDevicePool implements DevicePool {
+    private static final ExecutorService OBTAIN_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("Device-Obtain");
+        return thread;
+    });
+
     abstract ProvisionService provisionService();
 
     abstract ReservationService reservationService();
@@ -50,6 +65,36 @@ public abstract class BaseDevicePool implements DevicePool {
 
     abstract ContentTransferAgentFactory transfers();
 
+    /**
+     * The maximum amount of {@link me.philcali.device.pool.Device}s being obtained at once.
+     *
+     * @return the parallelism of the obtain pipeline
+     */
+    @Value.Default
+    int obtainParallelism() {
+        return 16;
+    }
+
+    /**
+     * The {@link java.util.concurrent.ExecutorService} that exchanges, connects and creates transfer
+     * agents for {@link me.philcali.device.pool.Device}s in the obtain pipeline. Pools share a single daemon
+     * executor by default, so closing a pool leaves no idle threads behind. A provided executor is owned by the
+     * caller, and is not shut down when the pool is closed.
+     *
+     * @return the {@link java.util.concurrent.ExecutorService} of the obtain pipeline
+     */
+    @Value.Default
+    ExecutorService obtainExecutor() {
+        return OBTAIN_EXECUTOR;
+    }
+
+    @Value.Check
+    void validate() {
+        if (obtainParallelism() < 1) {
+            throw new IllegalArgumentException("obtainParallelism must be at least 1");
+        }
+    }
+
     public static class Builder extends ImmutableBaseDevicePool.Builder {
         public final <T extends ProvisionService & ReservationService> Builder provisionAndReservationService(
                 T service) {
@@ -83,23 +128,21 @@ public abstract class BaseDevicePool implements DevicePool {
         return provisionService().describe(provisionOutput);
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public List<Device> obtain(ProvisionOutput output) throws ProvisioningException {
+    private Device obtainDevice(String provisionId, Reservation reservation) {
         try {
-            return output.reservations().stream()
-                    .filter(reservation -> reservation.status().equals(Status.SUCCEEDED))
-                    .map(reservation -> {
-                        final Host host = reservationService().exchange(reservation);
-                        final Connection connection = connections().connect(host);
-                        final ContentTransferAgent agent = transfers().connect(output.id(), connection, host);
-                        return BaseDevice.builder()
-                                .connection(connection)
-                                .contentTransfer(agent)
-                                .host(host)
-                                .build();
-                    })
-                    .collect(Collectors.toList());
+            final Host host = reservationService().exchange(reservation);
+            final Connection connection = connections().connect(host);
+            try {
+                final ContentTransferAgent agent = transfers().connect(provisionId, connection, host);
+                return BaseDevice.builder()
+                        .connection(connection)
+                        .contentTransfer(agent)
+                        .host(host)
+                        .build();
+            } catch (RuntimeException e) {
+                SafeClosable.safelyClose(connection);
+                throw e;
+            }
         } catch (ReservationException
                 | ConnectionException
                 | ContentTransferException e) {
@@ -107,6 +150,69 @@ public abstract class BaseDevicePool implements DevicePool {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Each {@link me.philcali.device.pool.model.Reservation} is exchanged, connected and given a
+     * {@link me.philcali.device.pool.content.ContentTransferAgent} independently on the
+     * <code>obtainExecutor</code>, with at most <code>obtainParallelism</code> in flight. If any
+     * {@link me.philcali.device.pool.Device} fails to be obtained, every {@link me.philcali.device.pool.Device}
+     * that was obtained is closed before the failure is thrown.
+     */
+    @Override
+    public List<Device> obtain(ProvisionOutput output) throws ProvisioningException {
+        final Semaphore permits = new Semaphore(obtainParallelism());
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<CompletableFuture<Device>> futures = new ArrayList<>();
+        RuntimeException failure = null;
+        try {
+            for (Reservation reservation : output.reservations()) {
+                if (!reservation.status().equals(Status.SUCCEEDED)) {
+                    continue;
+                }
+                permits.acquire();
+                if (failed.get()) {
+                    permits.release();
+                    break;
+                }
+                final CompletableFuture<Device> future = CompletableFuture.supplyAsync(
+                        () -> obtainDevice(output.id(), reservation), obtainExecutor());
+                future.whenComplete((device, error) -> {
+                    if (error != null) {
+                        failed.set(true);
+                    }
+                    permits.release();
+                });
+                futures.add(future);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new ProvisioningException("Interrupted while obtaining devices for " + output.id());
+        } catch (RejectedExecutionException e) {
+            failure = new ProvisioningException(e);
+        }
+        final List<Device> devices = new ArrayList<>(futures.size());
+        for (CompletableFuture<Device> future : futures) {
+            try {
+                devices.add(future.join());
+            } catch (CompletionException e) {
+                final RuntimeException cause = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new ProvisioningException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            SafeClosable.safelyClose(devices.toArray(new AutoCloseable[0]));
+            throw failure;
+        }
+        return devices;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void close() {
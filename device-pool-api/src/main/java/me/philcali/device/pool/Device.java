@@ -6,11 +6,16 @@
 
 package me.philcali.device.pool;
 
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.exceptions.DeviceInteractionException;
 import me.philcali.device.pool.model.CommandInput;
 import me.philcali.device.pool.model.CommandOutput;
 import me.philcali.device.pool.model.CopyInput;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The client side abstraction for interacting with a {@link me.philcali.device.pool.Device} of any kind. The
  * {@link me.philcali.device.pool.Device} interface represent the data plane interface for interacting
@@ -36,6 +41,50 @@ public interface Device extends AutoCloseable {
      */
     CommandOutput execute(CommandInput input) throws DeviceInteractionException;
 
+    /**
+     * Sends an arbitrary command to be executed on the {@link me.philcali.device.pool.Device}, streaming stdout and
+     * stderr to an {@link me.philcali.device.pool.connection.OutputSink} as the command runs. This is the preferred
+     * way to run commands producing large amounts of output.
+     *
+     * @param input The arbitrary command in the form of a {@link me.philcali.device.pool.model.CommandInput}
+     * @param sink The {@link me.philcali.device.pool.connection.OutputSink} receiving stdout and stderr
+     * @return The result of the command in the form of a {@link me.philcali.device.pool.model.CommandOutput}, without stdout or stderr
+     * @throws me.philcali.device.pool.exceptions.DeviceInteractionException Failure to interact with the {@link me.philcali.device.pool.Device}
+     */
+    default CommandOutput executeStreaming(CommandInput input, OutputSink sink) throws DeviceInteractionException {
+        final CommandOutput output = execute(input);
+        try {
+            sink.write(output);
+        } catch (IOException e) {
+            throw new DeviceInteractionException(e);
+        }
+        return CommandOutput.builder()
+                .exitCode(output.exitCode())
+                .originalInput(output.originalInput())
+                .build();
+    }
+
+    /**
+     * Sends a batch of commands to be executed on the {@link me.philcali.device.pool.Device} in order, stopping
+     * after the first command exiting with a non-zero code. Where the connection allows, the whole batch runs in
+     * a single round trip, which is far cheaper than a round trip per command on high latency data planes.
+     *
+     * @param inputs The commands in the form of {@link me.philcali.device.pool.model.CommandInput}s
+     * @return The {@link me.philcali.device.pool.model.CommandOutput} of every command that ran, the last one being the failure if any command failed
+     * @throws me.philcali.device.pool.exceptions.DeviceInteractionException Failure to interact with the {@link me.philcali.device.pool.Device}
+     */
+    default List<CommandOutput> executeBatch(List<CommandInput> inputs) throws DeviceInteractionException {
+        final List<CommandOutput> outputs = new ArrayList<>(inputs.size());
+        for (CommandInput input : inputs) {
+            final CommandOutput output = execute(input);
+            outputs.add(output);
+            if (output.exitCode() != 0) {
+                break;
+            }
+        }
+        return outputs;
+    }
+
     /**
      * Attempts to send a file from this local machine to this {@link me.philcali.device.pool.Device}.
      *
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool;
+
+import me.philcali.device.pool.content.ContentTransferAgent;
+import me.philcali.device.pool.content.StagingContentTransferAgent;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.exceptions.DeviceInteractionException;
+import me.philcali.device.pool.model.ApiModel;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.DeviceResult;
+import me.philcali.device.pool.model.ExecutionSummary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.immutables.value.Value;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The {@link me.philcali.device.pool.DeviceGroup} runs the same {@link me.philcali.device.pool.model.CommandInput}
+ * across a collection of {@link me.philcali.device.pool.Device}s, with at most {@link #concurrency()} devices
+ * executing at any given time. Each {@link me.philcali.device.pool.model.DeviceResult} is handed to a consumer as
+ * soon as its device completes, and the resulting {@link me.philcali.device.pool.model.ExecutionSummary} aggregates
+ * exit codes, durations and failures. The group only relies on {@link me.philcali.device.pool.Device#execute},
+ * so it works with any {@link me.philcali.device.pool.connection.Connection} implementation.
+ * <br>
+ * <pre>
+ *     try (DeviceGroup group = DeviceGroup.builder().devices(devices).concurrency(16).build()) {
+ *         ExecutionSummary summary = group.execute(input, result -&gt; System.out.println(result.deviceId()));
+ *     }
+ * </pre>
+ * When {@link #failFast()} is set, no further devices are started after the first failure. Commands already
+ * in flight are allowed to complete, and the devices that never ran are reported as skipped.
+ * <br>
+ * The group can also broadcast a file with {@link #copyTo(CopyInput)}. When the devices transfer content through a
+ * {@link me.philcali.device.pool.content.StagingContentTransferAgent}, the content is uploaded once and every
+ * device copies it from the staged location, rather than each device uploading its own copy.
+ */
+@ApiModel
+@Value.Immutable
+abstract class DeviceGroupModel implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(DeviceGroup.class);
+
+    abstract List<Device> devices();
+
+    /**
+     * The maximum number of {@link me.philcali.device.pool.Device}s executing a command at once.
+     *
+     * @return the concurrency bound, defaults to 8
+     */
+    @Value.Default
+    int concurrency() {
+        return 8;
+    }
+
+    /**
+     * Stop starting new {@link me.philcali.device.pool.Device}s once any device fails or exits non-zero.
+     *
+     * @return true to fail fast, defaults to false
+     */
+    @Value.Default
+    boolean failFast() {
+        return false;
+    }
+
+    /**
+     * The {@link java.util.concurrent.ExecutorService} running the devices of the group. A supplied executor
+     * belongs to the caller and is left running on {@link #close()}, otherwise the group creates its own.
+     *
+     * @return the caller supplied {@link java.util.concurrent.ExecutorService}, if any
+     */
+    @Nullable
+    abstract ExecutorService executorService();
+
+    @Value.Lazy
+    ExecutorService ownedExecutorService() {
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("Device-Group");
+            return thread;
+        });
+    }
+
+    private ExecutorService executor() {
+        return Optional.ofNullable(executorService()).orElseGet(this::ownedExecutorService);
+    }
+
+    @Value.Check
+    void validate() {
+        if (concurrency() < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+    }
+
+    private final class FanOut implements Runnable {
+        private final CompletableFuture<ExecutionSummary> future = new CompletableFuture<>();
+        private final Queue<DeviceResult> results = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private final AtomicInteger lanes;
+        private final Function<Device, CommandOutput> action;
+        private final Consumer<DeviceResult> consumer;
+        private final long started = System.nanoTime();
+
+        FanOut(Function<Device, CommandOutput> action, Consumer<DeviceResult> consumer) {
+            this.action = action;
+            this.consumer = consumer;
+            this.lanes = new AtomicInteger(Math.min(concurrency(), devices().size()));
+        }
+
+        CompletableFuture<ExecutionSummary> start() {
+            final int total = lanes.get();
+            if (total == 0) {
+                complete();
+            }
+            for (int lane = 0; lane < total; lane++) {
+                try {
+                    executor().execute(this);
+                } catch (RejectedExecutionException e) {
+                    future.completeExceptionally(new DeviceInteractionException(e));
+                    break;
+                }
+            }
+            return future;
+        }
+
+        private boolean halted() {
+            return future.isDone() || (failFast() && failed.get());
+        }
+
+        private DeviceResult executeOn(Device device) {
+            final DeviceResult.Builder builder = DeviceResult.builder().deviceId(device.id());
+            final long start = System.nanoTime();
+            try {
+                builder.output(action.apply(device));
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed to execute on device {}", device.id(), e);
+                builder.error(e);
+            }
+            return builder.duration(Duration.ofNanos(System.nanoTime() - start)).build();
+        }
+
+        private void publish(DeviceResult result) {
+            // Results are serialized, so the consumer never needs to be thread safe
+            synchronized (this) {
+                try {
+                    consumer.accept(result);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Result consumer failed on device {}", result.deviceId(), e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                int index;
+                while (!halted() && (index = next.getAndIncrement()) < devices().size()) {
+                    final DeviceResult result = executeOn(devices().get(index));
+                    results.add(result);
+                    if (!result.succeeded()) {
+                        failed.set(true);
+                    }
+                    publish(result);
+                }
+            } finally {
+                if (lanes.decrementAndGet() == 0) {
+                    complete();
+                }
+            }
+        }
+
+        private void complete() {
+            final int dispatched = Math.min(next.get(), devices().size());
+            future.complete(ExecutionSummary.builder()
+                    .results(results)
+                    .skipped(devices().subList(dispatched, devices().size()).stream()
+                            .map(Device::id)
+                            .collect(Collectors.toList()))
+                    .duration(Duration.ofNanos(System.nanoTime() - started))
+                    .build());
+        }
+    }
+
+    /**
+     * Runs the command on every {@link me.philcali.device.pool.Device} in the group, never blocking the caller.
+     * Cancelling the future stops any further devices from being started.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} to run on every device
+     * @param consumer receives each {@link me.philcali.device.pool.model.DeviceResult} as its device completes
+     * @return a {@link java.util.concurrent.CompletableFuture} of the {@link me.philcali.device.pool.model.ExecutionSummary}
+     */
+    public CompletableFuture<ExecutionSummary> executeAsync(CommandInput input, Consumer<DeviceResult> consumer) {
+        return new FanOut(device -> device.execute(input), consumer).start();
+    }
+
+    /**
+     * Runs the command on every {@link me.philcali.device.pool.Device} in the group, never blocking the caller.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} to run on every device
+     * @return a {@link java.util.concurrent.CompletableFuture} of the {@link me.philcali.device.pool.model.ExecutionSummary}
+     */
+    public CompletableFuture<ExecutionSummary> executeAsync(CommandInput input) {
+        return executeAsync(input, result -> { });
+    }
+
+    /**
+     * Runs the command on every {@link me.philcali.device.pool.Device} in the group, blocking until all
+     * devices complete.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} to run on every device
+     * @param consumer receives each {@link me.philcali.device.pool.model.DeviceResult} as its device completes
+     * @return the {@link me.philcali.device.pool.model.ExecutionSummary} of the execution
+     * @throws me.philcali.device.pool.exceptions.DeviceInteractionException if the execution could not be scheduled
+     */
+    public ExecutionSummary execute(CommandInput input, Consumer<DeviceResult> consumer)
+            throws DeviceInteractionException {
+        return join(executeAsync(input, consumer));
+    }
+
+    private static ExecutionSummary join(CompletableFuture<ExecutionSummary> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DeviceInteractionException) {
+                throw (DeviceInteractionException) e.getCause();
+            }
+            throw new DeviceInteractionException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs the command on every {@link me.philcali.device.pool.Device} in the group, blocking until all
+     * devices complete.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} to run on every device
+     * @return the {@link me.philcali.device.pool.model.ExecutionSummary} of the execution
+     * @throws me.philcali.device.pool.exceptions.DeviceInteractionException if the execution could not be scheduled
+     */
+    public ExecutionSummary execute(CommandInput input) throws DeviceInteractionException {
+        return execute(input, result -> { });
+    }
+
+    private static Optional<StagingContentTransferAgent> stagingAgent(Device device) {
+        if (device instanceof BaseDevice) {
+            final ContentTransferAgent agent = ((BaseDevice) device).contentTransfer();
+            if (agent instanceof StagingContentTransferAgent) {
+                return Optional.of((StagingContentTransferAgent) agent);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private CompletableFuture<ExecutionSummary> broadcast(
+            StagingContentTransferAgent stager,
+            CopyInput input,
+            Consumer<DeviceResult> consumer) {
+        final CopyInput staged = stager.stage(input);
+        LOGGER.debug("Staged {} as {} for {} devices", input.source(), staged.source(), devices().size());
+        return new FanOut(device -> {
+            final Optional<StagingContentTransferAgent> agent = stagingAgent(device)
+                    .filter(candidate -> candidate.stagingLocation().equals(stager.stagingLocation()));
+            try {
+                if (agent.isPresent()) {
+                    agent.get().deliver(staged);
+                } else {
+                    device.copyTo(input);
+                }
+            } catch (ContentTransferException e) {
+                throw new DeviceInteractionException(e);
+            }
+            return null;
+        }, consumer).start();
+    }
+
+    /**
+     * Copies the content to every {@link me.philcali.device.pool.Device} in the group, never blocking the caller.
+     * Devices whose {@link me.philcali.device.pool.content.StagingContentTransferAgent} shares the staging location
+     * of the first staging device copy from a single staged upload, and every other device falls back to
+     * {@link me.philcali.device.pool.Device#copyTo}.
+     * The {@link me.philcali.device.pool.model.DeviceResult}s of a copy have no output.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to copy to every device
+     * @param consumer receives each {@link me.philcali.device.pool.model.DeviceResult} as its device completes
+     * @return a {@link java.util.concurrent.CompletableFuture} of the {@link me.philcali.device.pool.model.ExecutionSummary}
+     */
+    public CompletableFuture<ExecutionSummary> copyToAsync(CopyInput input, Consumer<DeviceResult> consumer) {
+        final Optional<StagingContentTransferAgent> stager = devices().stream()
+                .map(DeviceGroupModel::stagingAgent)
+                .flatMap(Optional::stream)
+                .findFirst();
+        if (stager.isEmpty()) {
+            return new FanOut(device -> {
+                device.copyTo(input);
+                return null;
+            }, consumer).start();
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> broadcast(stager.get(), input, consumer), executor())
+                    .thenCompose(Function.identity());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new DeviceInteractionException(e));
+        }
+    }
+
+    /**
+     * Copies the content to every {@link me.philcali.device.pool.Device} in the group, never blocking the caller.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to copy to every device
+     * @return a {@link java.util.concurrent.CompletableFuture} of the {@link me.philcali.device.pool.model.ExecutionSummary}
+     */
+    public CompletableFuture<ExecutionSummary> copyToAsync(CopyInput input) {
+        return copyToAsync(input, result -> { });
+    }
+
+    /**
+     * Copies the content to every {@link me.philcali.device.pool.Device} in the group, blocking until all
+     * devices complete.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to copy to every device
+     * @param consumer receives each {@link me.philcali.device.pool.model.DeviceResult} as its device completes
+     * @return the {@link me.philcali.device.pool.model.ExecutionSummary} of the copy
+     * @throws me.philcali.device.pool.exceptions.DeviceInteractionException if the content could not be staged
+     */
+    public ExecutionSummary copyTo(CopyInput input, Consumer<DeviceResult> consumer)
+            throws DeviceInteractionException {
+        return join(copyToAsync(input, consumer));
+    }
+
+    /**
+     * Copies the content to every {@link me.philcali.device.pool.Device} in the group, blocking until all
+     * devices complete.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to copy to every device
+     * @return the {@link me.philcali.device.pool.model.ExecutionSummary} of the copy
+     * @throws me.philcali.device.pool.exceptions.DeviceInteractionException if the content could not be staged
+     */
+    public ExecutionSummary copyTo(CopyInput input) throws DeviceInteractionException {
+        return copyTo(input, result -> { });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the executor created by the group is shut down, as a supplied one may be shared beyond the group.
+     */
+    @Override
+    public void close() {
+        if (executorService() == null) {
+            ownedExecutorService().shutdown();
+        }
+    }
+}
@@ -17,23 +17,31 @@ import me.philcali.device.pool.exceptions.ProvisioningException;
 import me.philcali.device.pool.local.LocalDevicePool;
 import me.philcali.device.pool.model.ProvisionInput;
 import me.philcali.device.pool.model.ProvisionOutput;
+import me.philcali.device.pool.model.Reservation;
+import me.philcali.device.pool.model.Status;
 import me.philcali.device.pool.provision.ProvisionService;
+import me.philcali.device.pool.provision.ProvisionWatcher;
 import me.philcali.device.pool.reservation.ReservationService;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * The client side abstraction for creating programmatic {@link me.philcali.device.pool.Device}s to interact with.
@@ -78,7 +86,7 @@ public interface DevicePool extends AutoCloseable {
     static DevicePool create(DevicePoolConfig config) {
         try {
             if (config.poolClassName().equals(LocalDevicePool.class.getName())) {
-                return LocalDevicePool.create();
+                return LocalDevicePool.create(config);
             } else if (config.poolClassName().equals(BaseDevicePool.class.getName())) {
                 BaseDevicePool.Builder builder = BaseDevicePool.builder();
                 Map<String, Consumer> functions = new LinkedHashMap<>() {{
@@ -112,6 +120,10 @@ public interface DevicePool extends AutoCloseable {
                     }
                     entry.getValue().accept(component);
                 }
+                config.namespace("obtain")
+                        .flatMap(entry -> entry.get("parallelism"))
+                        .map(Integer::parseInt)
+                        .ifPresent(builder::obtainParallelism);
                 return builder.build();
             }
             throw new ProvisioningException("Could not create a default " + DevicePool.class.getSimpleName());
@@ -167,13 +179,15 @@ public interface DevicePool extends AutoCloseable {
 
     /**
      * Convenience method for wrapping client side provision workflow in an async future.
-     * The future will loop forever, but can be bounded by client control. Note:
+     * The provision is polled by the shared {@link me.philcali.device.pool.provision.ProvisionWatcher},
+     * and can be bounded by client control. Cancelling the future stops the polling. Note:
      * <br>
      * <pre>
      * var future = devicePool.provisionAsync(ProvisionInput.create());
      * try {
      *     var devices = future.get(5. TimeUnit.MINUTES);
      * } catch (TimeoutException | ExecutionException e) {
+     *     future.cancel(true);
      *     e.printStackTrace();
      * }
      * </pre>
@@ -182,16 +196,124 @@ public interface DevicePool extends AutoCloseable {
      * @return a {@link java.util.concurrent.CompletableFuture} of {@link me.philcali.device.pool.Device}s
      */
     default CompletableFuture<List<Device>> provisionAsync(ProvisionInput input) {
-        return CompletableFuture.supplyAsync(() -> {
-            ProvisionOutput output = provision(input);
-            do {
-                output = describe(output);
-            } while (!output.status().isTerminal());
+        return provisionAsync(input, ProvisionWatcher.shared());
+    }
+
+    /**
+     * Wraps the client side provision workflow in an async future, polled by the supplied
+     * {@link me.philcali.device.pool.provision.ProvisionWatcher}.
+     *
+     * @param input the {@link me.philcali.device.pool.model.ProvisionInput} request
+     * @param watcher the {@link me.philcali.device.pool.provision.ProvisionWatcher} polling the provision
+     * @return a {@link java.util.concurrent.CompletableFuture} of {@link me.philcali.device.pool.Device}s
+     */
+    default CompletableFuture<List<Device>> provisionAsync(ProvisionInput input, ProvisionWatcher watcher) {
+        final CompletableFuture<ProvisionOutput> watched = watcher.watch(() -> provision(input), this::describe);
+        final CompletableFuture<List<Device>> devices = watched.thenApplyAsync(output -> {
             if (output.succeeded()) {
                 return obtain(output);
             }
             throw new ProvisioningException("Provision " + output.id() + " failed");
         });
+        devices.whenComplete((result, error) -> {
+            if (devices.isCancelled()) {
+                watched.cancel(true);
+            }
+        });
+        return devices;
+    }
+
+    /**
+     * Streams {@link me.philcali.device.pool.Device}s to a consumer as soon as their individual
+     * {@link me.philcali.device.pool.model.Reservation} succeeds, rather than waiting for the entire
+     * provision to terminate. Long running suites can start work on the first
+     * {@link me.philcali.device.pool.Device}s while the remaining ones are still being acquired. Note:
+     * <br>
+     * <pre>
+     * var future = devicePool.provisionStream(ProvisionInput.builder().amount(50).build(), device -&gt; {
+     *     executor.submit(() -&gt; runSuite(device));
+     * });
+     * var devices = future.get(30, TimeUnit.MINUTES);
+     * </pre>
+     * The consumer is invoked sequentially, and off the polling thread. If the provision fails, the
+     * future fails, but any {@link me.philcali.device.pool.Device} already handed to the consumer is
+     * owned by the caller.
+     *
+     * @param input the {@link me.philcali.device.pool.model.ProvisionInput} request
+     * @param consumer receives each {@link me.philcali.device.pool.Device} as it is obtained
+     * @return a {@link java.util.concurrent.CompletableFuture} of every streamed {@link me.philcali.device.pool.Device}
+     */
+    default CompletableFuture<List<Device>> provisionStream(ProvisionInput input, Consumer<Device> consumer) {
+        return provisionStream(input, consumer, ProvisionWatcher.shared());
+    }
+
+    /**
+     * Streams {@link me.philcali.device.pool.Device}s to a consumer as their reservations succeed, polled
+     * by the supplied {@link me.philcali.device.pool.provision.ProvisionWatcher}.
+     *
+     * @param input the {@link me.philcali.device.pool.model.ProvisionInput} request
+     * @param consumer receives each {@link me.philcali.device.pool.Device} as it is obtained
+     * @param watcher the {@link me.philcali.device.pool.provision.ProvisionWatcher} polling the provision
+     * @return a {@link java.util.concurrent.CompletableFuture} of every streamed {@link me.philcali.device.pool.Device}
+     */
+    default CompletableFuture<List<Device>> provisionStream(
+            ProvisionInput input,
+            Consumer<Device> consumer,
+            ProvisionWatcher watcher) {
+        final CompletableFuture<List<Device>> result = new CompletableFuture<>();
+        final Set<String> obtained = new HashSet<>();
+        final AtomicReference<CompletableFuture<List<Device>>> streamed =
+                new AtomicReference<>(CompletableFuture.completedFuture(new ArrayList<>()));
+        final CompletableFuture<ProvisionOutput> watched = watcher.watch(() -> provision(input), this::describe,
+                output -> {
+                    final List<Reservation> ready = output.reservations().stream()
+                            .filter(reservation -> reservation.status() == Status.SUCCEEDED)
+                            .filter(reservation -> obtained.add(reservation.deviceId()))
+                            .collect(Collectors.toList());
+                    if (ready.isEmpty()) {
+                        return;
+                    }
+                    final ProvisionOutput batch = ProvisionOutput.builder()
+                            .from(output)
+                            .reservations(ready)
+                            .build();
+                    streamed.updateAndGet(previous -> previous.thenApplyAsync(devices -> {
+                        for (Device device : obtain(batch)) {
+                            devices.add(device);
+                            consumer.accept(device);
+                        }
+                        return devices;
+                    })).whenComplete((devices, error) -> {
+                        if (error != null) {
+                            result.completeExceptionally(error instanceof CompletionException
+                                    ? error.getCause()
+                                    : error);
+                        }
+                    });
+                });
+        watched.whenComplete((output, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            streamed.get().whenComplete((devices, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure instanceof CompletionException
+                            ? failure.getCause()
+                            : failure);
+                } else if (!output.succeeded()) {
+                    result.completeExceptionally(new ProvisioningException("Provision " + output.id() + " failed"));
+                } else {
+                    result.complete(Collections.unmodifiableList(devices));
+                }
+            });
+        });
+        result.whenComplete((devices, error) -> {
+            if (error != null) {
+                watched.cancel(true);
+            }
+        });
+        return result;
     }
 
     /**
@@ -211,9 +333,11 @@ public interface DevicePool extends AutoCloseable {
      * @throws me.philcali.device.pool.exceptions.ProvisioningException Failure to provision devices in the time allotted among other reasons
      */
     default List<Device> provisionSync(ProvisionInput input, long amount, TimeUnit unit) throws ProvisioningException {
+        final CompletableFuture<List<Device>> future = provisionAsync(input);
         try {
-            return provisionAsync(input).get(amount, unit);
+            return future.get(amount, unit);
         } catch (TimeoutException | InterruptedException e) {
+            future.cancel(true);
             throw new ProvisioningException("Provision " + input.id() + " never terminated in time");
         } catch (ExecutionException e) {
             throw new ProvisioningException(e.getCause());
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.connection;
+
+import me.philcali.device.pool.content.TarArchive;
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Runs a batch of {@link me.philcali.device.pool.model.CommandInput}s as a single POSIX shell script, so that
+ * {@link me.philcali.device.pool.connection.Connection}s interpreting commands through a remote shell can run the
+ * whole batch in one round trip. Each command runs in its own subshell with its stdout and stderr captured, and
+ * the script prints a frame per command: a header line holding the exit code and the byte length of each stream,
+ * followed by the streams themselves. Frames are demultiplexed back into a
+ * {@link me.philcali.device.pool.model.CommandOutput} per command. The script stops after the first command
+ * exiting with a non-zero code.
+ */
+public final class BatchScript {
+    private static final String MARKER_PREFIX = "device-pool-batch-";
+
+    private final List<CommandInput> inputs;
+    private final String marker;
+
+    private BatchScript(List<CommandInput> inputs, String marker) {
+        this.inputs = Collections.unmodifiableList(new ArrayList<>(inputs));
+        this.marker = marker;
+    }
+
+    /**
+     * Creates a script for a batch of commands.
+     *
+     * @param inputs the {@link me.philcali.device.pool.model.CommandInput}s to run, in order
+     * @return the {@link me.philcali.device.pool.connection.BatchScript} running every command
+     * @throws IllegalArgumentException if the batch cannot run as a single script
+     */
+    public static BatchScript of(List<CommandInput> inputs) {
+        if (!supports(inputs)) {
+            throw new IllegalArgumentException("Commands with stdin input cannot run as a batch script");
+        }
+        return new BatchScript(inputs, MARKER_PREFIX + UUID.randomUUID());
+    }
+
+    /**
+     * Whether a batch of commands can run as a single script, which requires that no command reads stdin input.
+     *
+     * @param inputs the {@link me.philcali.device.pool.model.CommandInput}s to run
+     * @return true if the batch can run as a single script
+     */
+    public static boolean supports(List<CommandInput> inputs) {
+        return !inputs.isEmpty() && inputs.stream().allMatch(input -> Objects.isNull(input.input()));
+    }
+
+    private static String command(CommandInput input) {
+        final StringBuilder command = new StringBuilder(input.line());
+        Optional.ofNullable(input.args()).ifPresent(args -> command.append(" ").append(String.join(" ", args)));
+        return command.toString();
+    }
+
+    /**
+     * The lines of the script, for data planes taking a script as a list of lines.
+     *
+     * @return the lines of the script
+     */
+    public List<String> lines() {
+        final List<String> lines = new ArrayList<>();
+        lines.add("d=$(mktemp -d) || exit 1");
+        lines.add("trap 'rm -rf \"$d\"' EXIT");
+        for (int index = 0; index < inputs.size(); index++) {
+            // Commands sit on their own lines, so a trailing comment never swallows the closing parenthesis
+            lines.add("(");
+            lines.addAll(Arrays.asList(command(inputs.get(index)).split("\n")));
+            lines.add(") >\"$d/o\" 2>\"$d/e\" </dev/null; c=$?");
+            lines.add("printf '%s %d %d %d %d\\n' " + marker + " " + index
+                    + " \"$c\" \"$(($(wc -c <\"$d/o\")))\" \"$(($(wc -c <\"$d/e\")))\"");
+            lines.add("cat \"$d/o\" \"$d/e\"");
+            lines.add("[ \"$c\" -eq 0 ] || exit 0");
+        }
+        return lines;
+    }
+
+    /**
+     * The whole script.
+     *
+     * @return the script running every command
+     */
+    public String script() {
+        return String.join("\n", lines());
+    }
+
+    /**
+     * The time allowed for the batch, being the sum of the timeouts of every command.
+     *
+     * @return the timeout of the batch
+     */
+    public Duration timeout() {
+        return inputs.stream().map(CommandInput::timeout).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    /**
+     * The script as a single command, for data planes running a command line through a remote shell.
+     *
+     * @return the {@link me.philcali.device.pool.model.CommandInput} running the script
+     */
+    public CommandInput toInput() {
+        return CommandInput.builder()
+                .line("sh")
+                .addArgs("-c", TarArchive.quote(script()))
+                .timeout(timeout())
+                .build();
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target, int from) {
+        for (int index = Math.max(0, from); index <= bytes.length - target.length; index++) {
+            int matched = 0;
+            while (matched < target.length && bytes[index + matched] == target[matched]) {
+                matched++;
+            }
+            if (matched == target.length) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] slice(byte[] bytes, long from, long length) {
+        return Arrays.copyOfRange(bytes, (int) from, (int) (from + length));
+    }
+
+    /**
+     * Demultiplexes the output of the script into the output of each command that ran. Output a shell prints
+     * before the script runs, like a login banner, is skipped. Fewer frames than commands are only valid when the
+     * last command failed, as the script stops there; otherwise the output was truncated and the remaining commands
+     * cannot be accounted for. A frame declaring more output than is present was truncated the same way.
+     *
+     * @param combined the {@link me.philcali.device.pool.model.CommandOutput} of the script
+     * @return a {@link me.philcali.device.pool.model.CommandOutput} for every command that ran, in order
+     * @throws ConnectionException if the script failed before running any command, or its output was truncated
+     */
+    public List<CommandOutput> parse(CommandOutput combined) throws ConnectionException {
+        final byte[] stdout = Objects.isNull(combined.stdout()) ? new byte[0] : combined.stdout();
+        final byte[] header = (marker + " ").getBytes(StandardCharsets.UTF_8);
+        final List<CommandOutput> outputs = new ArrayList<>();
+        int position = indexOf(stdout, header, 0);
+        while (position >= 0 && outputs.size() < inputs.size()) {
+            final int end = indexOf(stdout, new byte[] {'\n'}, position);
+            if (end == -1) {
+                break;
+            }
+            final String[] fields = new String(stdout, position, end - position, StandardCharsets.UTF_8).split(" ");
+            final int index = Integer.parseInt(fields[1]);
+            final long outLength = Long.parseLong(fields[3]);
+            final long errLength = Long.parseLong(fields[4]);
+            final long next = end + 1 + outLength + errLength;
+            if (next > stdout.length) {
+                throw new ConnectionException(combined.exitCode(), "Batch script output is truncated in command "
+                        + (index + 1) + " of " + inputs.size(), combined.originalInput());
+            }
+            outputs.add(CommandOutput.builder()
+                    .originalInput(inputs.get(index))
+                    .exitCode(Integer.parseInt(fields[2]))
+                    .stdout(slice(stdout, end + 1, outLength))
+                    .stderr(slice(stdout, end + 1 + outLength, errLength))
+                    .build());
+            position = next < stdout.length ? indexOf(stdout, header, (int) next) : -1;
+        }
+        if (outputs.isEmpty()) {
+            throw new ConnectionException(combined.exitCode(), "Batch script failed to run: "
+                    + new String(Optional.ofNullable(combined.stderr()).orElse(new byte[0]), StandardCharsets.UTF_8),
+                    combined.originalInput());
+        }
+        if (outputs.size() < inputs.size() && outputs.get(outputs.size() - 1).exitCode() == 0) {
+            throw new ConnectionException(combined.exitCode(), "Batch script output is truncated after "
+                    + outputs.size() + " of " + inputs.size() + " commands", combined.originalInput());
+        }
+        return outputs;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.connection;
+
+import me.philcali.device.pool.model.CommandOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link me.philcali.device.pool.connection.OutputSink} that collects streamed output in memory, which is how
+ * streaming {@link me.philcali.device.pool.connection.Connection}s implement the buffered
+ * {@link me.philcali.device.pool.connection.Connection#execute}. A stream that never received a chunk is left
+ * absent on the resulting {@link me.philcali.device.pool.model.CommandOutput}.
+ */
+public final class BufferedOutputSink implements OutputSink {
+    private ByteArrayOutputStream stdout;
+    private ByteArrayOutputStream stderr;
+
+    private static ByteArrayOutputStream append(ByteArrayOutputStream buffer, ByteBuffer chunk) {
+        final ByteArrayOutputStream output = buffer == null ? new ByteArrayOutputStream() : buffer;
+        if (chunk.hasArray()) {
+            output.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            chunk.position(chunk.limit());
+        } else {
+            final byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            output.write(bytes, 0, bytes.length);
+        }
+        return output;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void stdout(ByteBuffer chunk) {
+        stdout = append(stdout, chunk);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void stderr(ByteBuffer chunk) {
+        stderr = append(stderr, chunk);
+    }
+
+    /**
+     * Combines the collected output with the result of a streamed execution.
+     *
+     * @param result the {@link me.philcali.device.pool.model.CommandOutput} returned from a streamed execution
+     * @return a {@link me.philcali.device.pool.model.CommandOutput} including the collected stdout and stderr
+     */
+    public synchronized CommandOutput toOutput(CommandOutput result) {
+        final CommandOutput.Builder builder = CommandOutput.builder().from(result);
+        if (stdout != null) {
+            builder.stdout(stdout.toByteArray());
+        }
+        if (stderr != null) {
+            builder.stderr(stderr.toByteArray());
+        }
+        return builder.build();
+    }
+}
@@ -10,6 +10,11 @@ import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.model.CommandInput;
 import me.philcali.device.pool.model.CommandOutput;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A connection is the smallest injection point for {@link me.philcali.device.pool.Device}::execute.
  * A {@link me.philcali.device.pool.connection.Connection} is created from a {@link me.philcali.device.pool.connection.ConnectionFactory}. This component facilities
@@ -29,6 +34,68 @@ public interface Connection extends AutoCloseable {
      */
     CommandOutput execute(CommandInput input) throws ConnectionException;
 
+    /**
+     * Any arbitrary execution through a {@link me.philcali.device.pool.Device} connection, without blocking the
+     * caller on the round trip. Connections that cannot execute asynchronously run the command on the calling
+     * thread and return a completed future.
+     *
+     * @param input The command input in the form of a {@link me.philcali.device.pool.model.CommandInput}
+     * @return A {@link java.util.concurrent.CompletableFuture} of the {@link me.philcali.device.pool.model.CommandOutput},
+     *         completed exceptionally with a {@link me.philcali.device.pool.exceptions.ConnectionException} on failure
+     */
+    default CompletableFuture<CommandOutput> executeAsync(CommandInput input) {
+        try {
+            return CompletableFuture.completedFuture(execute(input));
+        } catch (ConnectionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Any arbitrary execution through a {@link me.philcali.device.pool.Device} connection, handing stdout and
+     * stderr to an {@link me.philcali.device.pool.connection.OutputSink} while the command runs rather than
+     * buffering them. Connections that cannot stream hand over the complete output once the command finishes.
+     *
+     * @param input The command input in the form of a {@link me.philcali.device.pool.model.CommandInput}
+     * @param sink The {@link me.philcali.device.pool.connection.OutputSink} receiving stdout and stderr
+     * @return The command output in the form of a {@link me.philcali.device.pool.model.CommandOutput}, without stdout or stderr
+     * @throws me.philcali.device.pool.exceptions.ConnectionException Failure to interact with this {@link me.philcali.device.pool.connection.Connection}
+     */
+    default CommandOutput executeStreaming(CommandInput input, OutputSink sink) throws ConnectionException {
+        final CommandOutput output = execute(input);
+        try {
+            sink.write(output);
+        } catch (IOException e) {
+            throw new ConnectionException(e);
+        }
+        return CommandOutput.builder()
+                .exitCode(output.exitCode())
+                .originalInput(output.originalInput())
+                .build();
+    }
+
+    /**
+     * Executes a batch of commands in order, stopping after the first command exiting with a non-zero code.
+     * Connections running commands through a remote shell override this to run the whole batch in a single round
+     * trip, typically as a {@link me.philcali.device.pool.connection.BatchScript}. Others run each command in turn.
+     *
+     * @param inputs The commands in the form of {@link me.philcali.device.pool.model.CommandInput}s
+     * @return The {@link me.philcali.device.pool.model.CommandOutput} of every command that ran, the last one being
+     *         the failure if any command failed
+     * @throws me.philcali.device.pool.exceptions.ConnectionException Failure to interact with this {@link me.philcali.device.pool.connection.Connection}
+     */
+    default List<CommandOutput> executeBatch(List<CommandInput> inputs) throws ConnectionException {
+        final List<CommandOutput> outputs = new ArrayList<>(inputs.size());
+        for (CommandInput input : inputs) {
+            final CommandOutput output = execute(input);
+            outputs.add(output);
+            if (output.exitCode() != 0) {
+                break;
+            }
+        }
+        return outputs;
+    }
+
     /** {@inheritDoc} */
     @Override
     default void close() throws Exception {
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Drains the output streams of a running command into an {@link me.philcali.device.pool.connection.OutputSink},
+ * for {@link me.philcali.device.pool.connection.Connection}s reading output from blocking
+ * {@link java.io.InputStream}s. Each chunk is handed over before the next one is read, so a slow consumer applies
+ * backpressure to the stream.
+ */
+public final class OutputPipe {
+    private static final int BUFFER = 8192;
+
+    private OutputPipe() {
+    }
+
+    /**
+     * Receives a chunk read from a stream, like {@link me.philcali.device.pool.connection.OutputSink#stdout}.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        /**
+         * Receives the next chunk of the stream.
+         *
+         * @param chunk the bytes read, only valid until this method returns
+         * @throws java.io.IOException failure to consume the chunk, which stops draining the stream
+         */
+        void accept(ByteBuffer chunk) throws IOException;
+    }
+
+    /**
+     * Reads a stream to the end, handing every chunk to the consumer, and closes the stream.
+     *
+     * @param stream the {@link java.io.InputStream} to drain
+     * @param consumer the {@link me.philcali.device.pool.connection.OutputPipe.ChunkConsumer} receiving chunks
+     * @param executor the {@link java.util.concurrent.Executor} blocking on the stream
+     * @return a future completing when the stream ends, or failing with an {@link java.io.UncheckedIOException}
+     */
+    public static CompletableFuture<Void> drain(InputStream stream, ChunkConsumer consumer, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            final byte[] buffer = new byte[BUFFER];
+            try (InputStream input = stream) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    if (read > 0) {
+                        consumer.accept(ByteBuffer.wrap(buffer, 0, read));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+}
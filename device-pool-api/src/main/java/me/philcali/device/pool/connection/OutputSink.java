@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.connection;
+
+import me.philcali.device.pool.model.CommandOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Receives the output of a command while it is running, as produced by
+ * {@link me.philcali.device.pool.connection.Connection#executeStreaming}. Output is handed over in bounded chunks,
+ * and the next chunk of a stream is not read from the underlying transport until the sink returns, so a slow sink
+ * applies backpressure to the command rather than growing a buffer. Chunks are only valid for the duration of the
+ * call. Standard output and standard error may be delivered from different threads.
+ */
+public interface OutputSink {
+    /**
+     * Receives the next chunk of standard output.
+     *
+     * @param chunk the bytes read, only valid until this method returns
+     * @throws java.io.IOException failure to consume the chunk, which aborts the command
+     */
+    void stdout(ByteBuffer chunk) throws IOException;
+
+    /**
+     * Receives the next chunk of standard error.
+     *
+     * @param chunk the bytes read, only valid until this method returns
+     * @throws java.io.IOException failure to consume the chunk, which aborts the command
+     */
+    void stderr(ByteBuffer chunk) throws IOException;
+
+    /**
+     * Hands the buffered output of a completed {@link me.philcali.device.pool.model.CommandOutput} to this sink,
+     * used by {@link me.philcali.device.pool.connection.Connection}s that cannot stream.
+     *
+     * @param output the buffered {@link me.philcali.device.pool.model.CommandOutput}
+     * @throws java.io.IOException failure to consume the output
+     */
+    default void write(CommandOutput output) throws IOException {
+        if (Objects.nonNull(output.stdout())) {
+            stdout(ByteBuffer.wrap(output.stdout()));
+        }
+        if (Objects.nonNull(output.stderr())) {
+            stderr(ByteBuffer.wrap(output.stderr()));
+        }
+    }
+
+    /**
+     * An {@link me.philcali.device.pool.connection.OutputSink} that writes each stream to an
+     * {@link java.io.OutputStream}, such as a file or the console.
+     *
+     * @param stdout the {@link java.io.OutputStream} receiving standard output
+     * @param stderr the {@link java.io.OutputStream} receiving standard error
+     * @return an {@link me.philcali.device.pool.connection.OutputSink} writing to the streams
+     */
+    static OutputSink of(OutputStream stdout, OutputStream stderr) {
+        return new OutputSink() {
+            @Override
+            public void stdout(ByteBuffer chunk) throws IOException {
+                transferTo(chunk, stdout);
+            }
+
+            @Override
+            public void stderr(ByteBuffer chunk) throws IOException {
+                transferTo(chunk, stderr);
+            }
+        };
+    }
+
+    /**
+     * An {@link me.philcali.device.pool.connection.OutputSink} that drops all output, for when only the exit code
+     * is of interest.
+     *
+     * @return an {@link me.philcali.device.pool.connection.OutputSink} ignoring all output
+     */
+    static OutputSink discarding() {
+        return new OutputSink() {
+            @Override
+            public void stdout(ByteBuffer chunk) {
+                // no-op
+            }
+
+            @Override
+            public void stderr(ByteBuffer chunk) {
+                // no-op
+            }
+        };
+    }
+
+    private static void transferTo(ByteBuffer chunk, OutputStream stream) throws IOException {
+        if (chunk.hasArray()) {
+            stream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            chunk.position(chunk.limit());
+        } else {
+            final byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            stream.write(bytes);
+        }
+        stream.flush();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Computes the SHA-256 of local files, remembering each digest by path, modification time and size. Files that
+ * have not changed since they were last hashed are never read again, so checking an unchanged tree only costs
+ * a stat per file. The cache holds at most {@link #maxEntries()} files, evicting the least recently used.
+ */
+public final class ContentDigests {
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final int maxEntries;
+    private final Map<Path, Digest> entries;
+
+    private static final class Digest {
+        private final long modified;
+        private final long size;
+        private final String digest;
+
+        Digest(long modified, long size, String digest) {
+            this.modified = modified;
+            this.size = size;
+            this.digest = digest;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return modified == attributes.lastModifiedTime().toMillis() && size == attributes.size();
+        }
+    }
+
+    private ContentDigests(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Digest> eldest) {
+                return size() > ContentDigests.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Creates a {@link me.philcali.device.pool.content.ContentDigests} holding up to a number of files.
+     *
+     * @param maxEntries the maximum amount of files remembered
+     * @return a new {@link me.philcali.device.pool.content.ContentDigests}
+     */
+    public static ContentDigests create(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        return new ContentDigests(maxEntries);
+    }
+
+    /**
+     * Creates a {@link me.philcali.device.pool.content.ContentDigests} with the default size.
+     *
+     * @return a new {@link me.philcali.device.pool.content.ContentDigests}
+     */
+    public static ContentDigests create() {
+        return create(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * The maximum amount of files remembered.
+     *
+     * @return the maximum amount of cached digests
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * The SHA-256 of a local file, read from the cache if the file is unchanged.
+     *
+     * @param file the local file to hash
+     * @return the lower case hex encoded SHA-256
+     * @throws IOException if the file cannot be read
+     */
+    public String sha256(Path file) throws IOException {
+        final Path key = file.toAbsolutePath().normalize();
+        final BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        synchronized (entries) {
+            final Digest entry = entries.get(key);
+            if (Objects.nonNull(entry) && entry.matches(attributes)) {
+                return entry.digest;
+            }
+        }
+        final String digest = digest(key);
+        // A file changing while it is hashed is not remembered, as the digest may match neither version
+        final BasicFileAttributes after = Files.readAttributes(key, BasicFileAttributes.class);
+        final Digest entry = new Digest(attributes.lastModifiedTime().toMillis(), attributes.size(), digest);
+        if (entry.matches(after)) {
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * The SHA-256 of a local file, always reading the whole file.
+     *
+     * @param file the local file to hash
+     * @return the lower case hex encoded SHA-256
+     * @throws IOException if the file cannot be read
+     */
+    public static String digest(Path file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
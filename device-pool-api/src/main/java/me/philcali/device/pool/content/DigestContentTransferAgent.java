@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.content;
+
+import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.CopyOption;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A {@link me.philcali.device.pool.content.ContentTransferAgent} that only sends files missing or different on the
+ * device. The digests of every target path are read with a single <code>sha256sum</code> on the device, compared
+ * to the cached local digests, and only the changed files are handed to the wrapped agent. Devices that cannot
+ * report digests are sent everything, exactly as the wrapped agent would.
+ */
+class DigestContentTransferAgent implements ContentTransferAgent {
+    private static final Logger LOGGER = LogManager.getLogger(DigestContentTransferAgent.class);
+    private static final Pattern DIGEST_LINE = Pattern.compile("^([0-9a-f]{64}) [ *](.*)$");
+    private static final int MAX_SCRIPT = 64 * 1024;
+    private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+    private final ContentTransferAgent agent;
+    private final Connection connection;
+    private final ContentDigests digests;
+
+    DigestContentTransferAgent(ContentTransferAgent agent, Connection connection, ContentDigests digests) {
+        this.agent = agent;
+        this.connection = connection;
+        this.digests = digests;
+    }
+
+    /**
+     * A {@link me.philcali.device.pool.content.DigestContentTransferAgent} that keeps the staging abilities of the
+     * wrapped agent, so broadcasts through it still upload once.
+     */
+    static final class Staging extends DigestContentTransferAgent implements StagingContentTransferAgent {
+        private final StagingContentTransferAgent staging;
+
+        Staging(StagingContentTransferAgent agent, Connection connection, ContentDigests digests) {
+            super(agent, connection, digests);
+            this.staging = agent;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CopyInput stage(CopyInput input) throws ContentTransferException {
+            return staging.stage(input);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String stagingLocation() {
+            return staging.stagingLocation();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void deliver(CopyInput staged) throws ContentTransferException {
+            staging.deliver(staged);
+        }
+    }
+
+    /**
+     * Wraps a {@link me.philcali.device.pool.content.ContentTransferAgent}, preserving its staging abilities.
+     *
+     * @param agent the agent sending the changed files
+     * @param connection the {@link me.philcali.device.pool.connection.Connection} to read digests on the device
+     * @param digests the cache of local digests
+     * @return the wrapped agent
+     */
+    static ContentTransferAgent wrap(ContentTransferAgent agent, Connection connection, ContentDigests digests) {
+        if (agent instanceof StagingContentTransferAgent) {
+            return new Staging((StagingContentTransferAgent) agent, connection, digests);
+        }
+        return new DigestContentTransferAgent(agent, connection, digests);
+    }
+
+    private static CommandInput shell(String script) {
+        return CommandInput.builder()
+                .line("sh")
+                .addArgs("-c", TarArchive.quote(script))
+                .timeout(TIMEOUT)
+                .build();
+    }
+
+    // Resolves the target on the device like a copy does: an existing directory receives the source by name
+    private static String resolve(String destination, String name) {
+        return "t=" + TarArchive.quote(destination) + "; "
+                + "[ -d \"$t\" ] && t=\"${t%/}/\"" + TarArchive.quote(name) + "; "
+                + "printf '%s\\n' \"$t\"; ";
+    }
+
+    private static List<String> batches(String prefix, List<String> paths, String suffix) {
+        final List<String> scripts = new ArrayList<>();
+        StringBuilder script = new StringBuilder(prefix);
+        int count = 0;
+        for (String path : paths) {
+            final String word = " " + TarArchive.quote(path);
+            if (count > 0 && script.length() + word.length() + suffix.length() > MAX_SCRIPT) {
+                scripts.add(script.append(suffix).toString());
+                script = new StringBuilder(prefix);
+                count = 0;
+            }
+            script.append(word);
+            count++;
+        }
+        if (count > 0) {
+            scripts.add(script.append(suffix).toString());
+        }
+        return scripts;
+    }
+
+    /**
+     * Reads the digests of paths on the device. The first line of each output is the resolved target, and the
+     * remaining lines are <code>sha256sum</code> output for the paths that exist.
+     */
+    private String remoteDigests(List<String> scripts, Map<String, String> remote) {
+        String target = null;
+        for (String script : scripts) {
+            final String[] lines = connection.execute(shell(script)).toUTF8String().split("\n");
+            target = lines[0];
+            for (int index = 1; index < lines.length; index++) {
+                // Names with a backslash or newline are escaped by sha256sum, and are simply sent again
+                final Matcher matcher = DIGEST_LINE.matcher(lines[index]);
+                if (matcher.matches()) {
+                    remote.put(matcher.group(2), matcher.group(1));
+                }
+            }
+        }
+        return target;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only regular files are compared, so a file or a tree whose files all match on the device is skipped
+     * entirely. A tree with some changed files sends only those files, together as a single partial tree.
+     */
+    @Override
+    public void send(CopyInput input) throws ContentTransferException {
+        final Path source = Paths.get(input.source());
+        final boolean tree = input.options().contains(CopyOption.RECURSIVE) && Files.isDirectory(source);
+        if (!tree && !Files.isRegularFile(source)) {
+            agent.send(input);
+            return;
+        }
+        final String name = source.getFileName().toString();
+        final Map<String, Path> files = new TreeMap<>();
+        final Map<String, String> remote = new HashMap<>();
+        final List<String> changed = new ArrayList<>();
+        String target;
+        try {
+            if (tree) {
+                try (Stream<Path> walk = Files.walk(source)) {
+                    walk.filter(Files::isRegularFile).forEach(file -> files.put(
+                            source.relativize(file).toString().replace(source.getFileSystem().getSeparator(), "/"),
+                            file));
+                }
+            }
+            try {
+                final String resolved = resolve(input.destination(), name);
+                target = remoteDigests(tree
+                        ? batches(resolved + "cd \"$t\" 2>/dev/null || exit 0; sha256sum --",
+                            new ArrayList<>(files.keySet()), " 2>/dev/null; exit 0")
+                        : List.of(resolved + "sha256sum -- \"$t\" 2>/dev/null; exit 0"),
+                        remote);
+            } catch (ConnectionException e) {
+                LOGGER.debug("Could not read digests on the device, sending {}", source, e);
+                target = null;
+            }
+            if (!tree && target != null) {
+                files.put(target, source);
+            }
+            if (target == null || target.isEmpty() || files.isEmpty()) {
+                agent.send(input);
+                return;
+            }
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                if (!digests.sha256(file.getValue()).equals(remote.get(file.getKey()))) {
+                    changed.add(file.getKey());
+                }
+            }
+        } catch (IOException e) {
+            throw new ContentTransferException(e);
+        }
+        LOGGER.debug("{} of {} files from {} differ on the device", changed.size(), files.size(), source);
+        if (changed.isEmpty()) {
+            LOGGER.info("Skipping copy of {} to {}, content is already present", source, target);
+        } else if (changed.size() == files.size()) {
+            agent.send(input);
+        } else {
+            try {
+                sendChanged(input, source, files, changed);
+            } catch (IOException e) {
+                throw new ContentTransferException(e);
+            }
+        }
+    }
+
+    /**
+     * Sends the changed files of a tree as one copy of a partial tree, laid out under the name of the source in a
+     * local staging directory, so the wrapped agent still archives them together with the options of the copy.
+     * The destination resolves to the same target as the original copy, which receives the partial tree in place.
+     */
+    private void sendChanged(CopyInput input, Path source, Map<String, Path> files, List<String> changed)
+            throws IOException {
+        final Path staging = Files.createTempDirectory("device-pool-changed-");
+        try {
+            final Path partial = staging.resolve(source.getFileName().toString());
+            for (String path : changed) {
+                final Path copy = partial.resolve(path);
+                Files.createDirectories(copy.getParent());
+                Files.copy(files.get(path), copy, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            agent.send(CopyInput.builder()
+                    .from(input)
+                    .source(partial.toString())
+                    .build());
+        } finally {
+            try (Stream<Path> walk = Files.walk(staging)) {
+                walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void receive(CopyInput input) throws ContentTransferException {
+        agent.receive(input);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws Exception {
+        agent.close();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.content;
+
+import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.ApiModel;
+import me.philcali.device.pool.model.Host;
+import org.immutables.value.Value;
+
+/**
+ * A {@link me.philcali.device.pool.content.ContentTransferAgentFactory} decorator that skips sending content
+ * already present on a {@link me.philcali.device.pool.Device}. Any factory can be wrapped, and every agent it
+ * creates compares SHA-256 digests through the {@link me.philcali.device.pool.connection.Connection} of the device
+ * before sending. The local digests are shared by all agents of the factory.
+ * <br>
+ * <pre>
+ *     BaseDevicePool.builder()
+ *         .connections(factory)
+ *         .transfers(DigestContentTransferAgentFactory.of(factory))
+ * </pre>
+ */
+@ApiModel
+@Value.Immutable
+abstract class DigestContentTransferAgentFactoryModel implements ContentTransferAgentFactory {
+    abstract ContentTransferAgentFactory factory();
+
+    /**
+     * The cache of local digests, shared by every agent of this factory.
+     *
+     * @return the {@link me.philcali.device.pool.content.ContentDigests} of local files
+     */
+    @Value.Default
+    ContentDigests digests() {
+        return ContentDigests.create();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ContentTransferAgent connect(String provisionId, Connection connection, Host host)
+            throws ContentTransferException {
+        return DigestContentTransferAgent.wrap(factory().connect(provisionId, connection, host), connection, digests());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws Exception {
+        factory().close();
+    }
+}
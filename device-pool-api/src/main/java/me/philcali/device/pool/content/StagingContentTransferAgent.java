@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.content;
+
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.CopyInput;
+
+/**
+ * A {@link me.philcali.device.pool.content.ContentTransferAgent} that can split a send into an upload to shared
+ * storage and a delivery from that storage onto the device. Broadcasting the same content to many devices then
+ * costs a single upload, as every device delivers from the one staged copy.
+ */
+public interface StagingContentTransferAgent extends ContentTransferAgent {
+
+    /**
+     * Uploads the source of the {@link me.philcali.device.pool.model.CopyInput} to shared storage. Staging the
+     * same content twice is expected to reuse the first upload.
+     *
+     * @param input the transfer request with a local source
+     * @return the transfer request with its source replaced by the staged location
+     * @throws me.philcali.device.pool.exceptions.ContentTransferException Failure to upload the content
+     */
+    CopyInput stage(CopyInput input) throws ContentTransferException;
+
+    /**
+     * Identifies the shared storage that content is staged to. Agents reporting equal locations can deliver
+     * each other's staged content, regardless of their implementation.
+     *
+     * @return a comparable key of the staging location, ie: a bucket and key prefix
+     */
+    String stagingLocation();
+
+    /**
+     * Copies content previously returned by {@link #stage(CopyInput)} onto the device of this agent.
+     *
+     * @param staged the transfer request returned by {@link #stage(CopyInput)}
+     * @throws me.philcali.device.pool.exceptions.ContentTransferException Failure to copy the content
+     */
+    void deliver(CopyInput staged) throws ContentTransferException;
+}
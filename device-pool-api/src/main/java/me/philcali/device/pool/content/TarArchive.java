@@ -0,0 +1,462 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.content;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A minimal streaming tar codec, used by {@link me.philcali.device.pool.content.ContentTransferAgent}s to move
+ * a whole directory tree as a single archive instead of one transfer per file. Archives are written in the POSIX
+ * ustar format, with pax headers for long names and large files, which any <code>tar</code> on a device can
+ * extract. Reading accepts ustar, pax and GNU archives of regular files and directories; links and special
+ * files are skipped.
+ * <br>
+ * Entries are always relative to the archived directory, so an archive is extracted directly into its target.
+ */
+public final class TarArchive {
+    private static final int BLOCK = 512;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final int MAX_NAME = 100;
+    private static final int MAX_PREFIX = 155;
+
+    private TarArchive() {
+    }
+
+    /**
+     * Quotes a value for a POSIX shell.
+     *
+     * @param value the raw value
+     * @return the value as a single quoted shell word
+     */
+    public static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * A shell script that extracts an archive on a device, following the same destination rules as a recursive
+     * copy: a destination that is an existing directory receives the tree by name, otherwise the destination
+     * becomes the tree.
+     *
+     * @param archive the archive path on the device, or <code>-</code> for stdin
+     * @param destination the destination on the device
+     * @param name the name of the archived directory
+     * @param compressed whether the archive is gzipped
+     * @return the extraction script
+     */
+    public static String extractScript(String archive, String destination, String name, boolean compressed) {
+        return "t=" + quote(destination) + "; "
+                + "[ -d \"$t\" ] && t=\"${t%/}/\"" + quote(name) + "; "
+                + "mkdir -p \"$t\" && tar -x" + (compressed ? "z" : "") + "f " + quote(archive) + " -C \"$t\"";
+    }
+
+    /**
+     * A shell script that archives a directory on a device.
+     *
+     * @param source the directory on the device
+     * @param archive the archive path on the device, or <code>-</code> for stdout
+     * @param compressed whether to gzip the archive
+     * @return the archival script
+     */
+    public static String createScript(String source, String archive, boolean compressed) {
+        return "tar -c" + (compressed ? "z" : "") + "f " + quote(archive) + " -C " + quote(source) + " .";
+    }
+
+    /**
+     * The local directory a received tree is extracted into, following the same rules as
+     * {@link #extractScript(String, String, String, boolean)}.
+     *
+     * @param source the source directory on the device
+     * @param destination the local destination
+     * @return the local directory to extract into
+     */
+    public static Path target(String source, Path destination) {
+        if (Files.isDirectory(destination)) {
+            final String[] parts = source.replaceAll("/+$", "").split("/");
+            return destination.resolve(parts[parts.length - 1]);
+        }
+        return destination;
+    }
+
+    /**
+     * Writes a directory tree as a tar archive. The output stream is finished but left open.
+     *
+     * @param source the directory to archive
+     * @param output the stream receiving the archive
+     * @throws IOException if the tree cannot be read or the archive cannot be written
+     */
+    public static void write(Path source, OutputStream output) throws IOException {
+        final List<Path> paths;
+        try (Stream<Path> walk = Files.walk(source)) {
+            paths = walk.filter(path -> !path.equals(source)).sorted().collect(Collectors.toList());
+        }
+        final byte[] buffer = new byte[64 * 1024];
+        for (Path path : paths) {
+            final String name = source.relativize(path).toString()
+                    .replace(path.getFileSystem().getSeparator(), "/");
+            final long modified = Files.getLastModifiedTime(path).toMillis() / 1000;
+            if (Files.isDirectory(path)) {
+                writeHeader(output, name + "/", mode(path, 0755), 0, modified, '5');
+            } else if (Files.isRegularFile(path)) {
+                final long size = Files.size(path);
+                writeHeader(output, name, mode(path, 0644), size, modified, '0');
+                long written = 0;
+                try (InputStream input = Files.newInputStream(path)) {
+                    int read;
+                    while (written < size && (read = input.read(buffer, 0, (int) Math.min(buffer.length, size - written))) != -1) {
+                        output.write(buffer, 0, read);
+                        written += read;
+                    }
+                }
+                if (written != size) {
+                    throw new IOException("File " + path + " changed size while being archived");
+                }
+                pad(output, size);
+            }
+        }
+        output.write(new byte[BLOCK * 2]);
+        output.flush();
+    }
+
+    /**
+     * Extracts a tar archive into a directory, creating it if needed. Entries that would land outside of the
+     * directory are rejected.
+     *
+     * @param input the stream containing the archive
+     * @param destination the directory to extract into
+     * @throws IOException if the archive is malformed or cannot be written
+     */
+    public static void extract(InputStream input, Path destination) throws IOException {
+        final Path root = destination.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        final byte[] header = new byte[BLOCK];
+        final byte[] buffer = new byte[64 * 1024];
+        final Map<Path, Integer> directories = new LinkedHashMap<>();
+        String longName = null;
+        Long longSize = null;
+        while (readFully(input, header)) {
+            if (isZero(header)) {
+                break;
+            }
+            verifyChecksum(header);
+            final char type = (char) header[156];
+            long size = longSize != null && type != 'x' && type != 'L' ? longSize : number(header, 124, 12);
+            if (type == 'x' || type == 'L') {
+                final byte[] data = readData(input, size);
+                if (type == 'L') {
+                    longName = cString(data, 0, data.length);
+                } else {
+                    final String[] attributes = pax(data);
+                    longName = attributes[0] != null ? attributes[0] : longName;
+                    longSize = attributes[1] != null ? Long.valueOf(attributes[1]) : longSize;
+                }
+                continue;
+            }
+            String name = longName;
+            if (name == null) {
+                name = cString(header, 0, MAX_NAME);
+                final String prefix = isUstar(header) ? cString(header, 345, MAX_PREFIX) : "";
+                if (!prefix.isEmpty()) {
+                    name = prefix + "/" + name;
+                }
+            }
+            longName = null;
+            longSize = null;
+            final Path target = root.resolve(name).normalize();
+            if (!target.startsWith(root)) {
+                throw new IOException("Archive entry " + name + " is outside of " + root);
+            }
+            final int mode = (int) number(header, 100, 8);
+            if (type == '5') {
+                Files.createDirectories(target);
+                directories.put(target, mode);
+            } else if (type == '0' || type == '\0' || type == '7') {
+                Files.createDirectories(target.getParent());
+                final Path partial = target.resolveSibling(target.getFileName() + ".part");
+                try (OutputStream output = Files.newOutputStream(partial)) {
+                    long remaining = size;
+                    while (remaining > 0) {
+                        final int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read == -1) {
+                            throw new EOFException("Archive ended inside of " + name);
+                        }
+                        output.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+                skip(input, padding(size));
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+                Files.setLastModifiedTime(target, FileTime.fromMillis(number(header, 136, 12) * 1000));
+                permissions(target, mode);
+            } else {
+                skip(input, size + padding(size));
+            }
+        }
+        // Directories may not be writable with their final permissions
+        for (Map.Entry<Path, Integer> directory : directories.entrySet()) {
+            permissions(directory.getKey(), directory.getValue());
+        }
+    }
+
+    private static void writeHeader(OutputStream output, String name, int mode, long size, long modified, char type)
+            throws IOException {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        String shortName = name;
+        String prefix = "";
+        if (nameBytes.length > MAX_NAME) {
+            final int split = splitName(name);
+            if (split > 0) {
+                prefix = name.substring(0, split);
+                shortName = name.substring(split + 1);
+            }
+        }
+        final boolean longName = shortName.getBytes(StandardCharsets.UTF_8).length > MAX_NAME;
+        final boolean largeSize = size > MAX_OCTAL_SIZE;
+        if (longName || largeSize) {
+            final StringBuilder records = new StringBuilder();
+            if (longName) {
+                records.append(paxRecord("path", name));
+                shortName = name.substring(Math.max(0, name.length() - MAX_NAME / 2));
+                prefix = "";
+            }
+            if (largeSize) {
+                records.append(paxRecord("size", Long.toString(size)));
+            }
+            final byte[] data = records.toString().getBytes(StandardCharsets.UTF_8);
+            output.write(header("PaxHeader", 0644, data.length, modified, 'x', ""));
+            output.write(data);
+            pad(output, data.length);
+        }
+        output.write(header(shortName, mode, largeSize ? 0 : size, modified, type, prefix));
+    }
+
+    private static int splitName(String name) {
+        for (int index = name.indexOf('/'); index != -1; index = name.indexOf('/', index + 1)) {
+            if (name.substring(0, index).getBytes(StandardCharsets.UTF_8).length > MAX_PREFIX) {
+                return -1;
+            }
+            if (name.substring(index + 1).getBytes(StandardCharsets.UTF_8).length <= MAX_NAME) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static String paxRecord(String key, String value) {
+        final String record = " " + key + "=" + value + "\n";
+        final int length = record.getBytes(StandardCharsets.UTF_8).length;
+        int total = length + Integer.toString(length).length();
+        if (Integer.toString(total).length() != Integer.toString(length).length()) {
+            total++;
+        }
+        return total + record;
+    }
+
+    private static byte[] header(String name, int mode, long size, long modified, char type, String prefix) {
+        final byte[] header = new byte[BLOCK];
+        put(header, 0, MAX_NAME, name.getBytes(StandardCharsets.UTF_8));
+        octal(header, 100, 8, mode);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, modified);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = (byte) type;
+        put(header, 257, 6, "ustar\0".getBytes(StandardCharsets.US_ASCII));
+        put(header, 263, 2, "00".getBytes(StandardCharsets.US_ASCII));
+        put(header, 345, MAX_PREFIX, prefix.getBytes(StandardCharsets.UTF_8));
+        final String checksum = String.format("%06o", checksum(header));
+        put(header, 148, 6, checksum.getBytes(StandardCharsets.US_ASCII));
+        header[154] = 0;
+        return header;
+    }
+
+    private static void put(byte[] header, int offset, int length, byte[] value) {
+        System.arraycopy(value, 0, header, offset, Math.min(length, value.length));
+    }
+
+    private static void octal(byte[] header, int offset, int length, long value) {
+        final String digits = String.format("%0" + (length - 1) + "o", value);
+        put(header, offset, length - 1, digits.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static long checksum(byte[] header) {
+        long sum = 0;
+        for (int index = 0; index < BLOCK; index++) {
+            sum += index >= 148 && index < 156 ? ' ' : header[index] & 0xFF;
+        }
+        return sum;
+    }
+
+    private static void verifyChecksum(byte[] header) throws IOException {
+        if (number(header, 148, 8) != checksum(header)) {
+            throw new IOException("Archive header checksum mismatch");
+        }
+    }
+
+    private static long number(byte[] header, int offset, int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7F;
+            for (int index = offset + 1; index < offset + length; index++) {
+                value = (value << 8) | (header[index] & 0xFF);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int index = offset; index < offset + length; index++) {
+            final byte digit = header[index];
+            if (digit >= '0' && digit <= '7') {
+                value = (value << 3) + (digit - '0');
+            } else if (digit == 0 || (digit == ' ' && value > 0)) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    private static String cString(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) {
+            end++;
+        }
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isUstar(byte[] header) {
+        return cString(header, 257, 6).startsWith("ustar");
+    }
+
+    private static boolean isZero(byte[] header) {
+        for (byte value : header) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] pax(byte[] data) {
+        final String[] attributes = new String[2];
+        int offset = 0;
+        while (offset < data.length) {
+            int space = offset;
+            while (space < data.length && data[space] != ' ') {
+                space++;
+            }
+            if (space == data.length) {
+                break;
+            }
+            final int length = Integer.parseInt(new String(data, offset, space - offset, StandardCharsets.US_ASCII));
+            final String record = new String(data, space + 1, length - (space - offset) - 2, StandardCharsets.UTF_8);
+            final int equals = record.indexOf('=');
+            if (record.startsWith("path=")) {
+                attributes[0] = record.substring(equals + 1);
+            } else if (record.startsWith("size=")) {
+                attributes[1] = record.substring(equals + 1);
+            }
+            offset += length;
+        }
+        return attributes;
+    }
+
+    private static int padding(long size) {
+        return (int) ((BLOCK - size % BLOCK) % BLOCK);
+    }
+
+    private static void pad(OutputStream output, long size) throws IOException {
+        output.write(new byte[padding(size)]);
+    }
+
+    private static boolean readFully(InputStream input, byte[] block) throws IOException {
+        int offset = 0;
+        while (offset < block.length) {
+            final int read = input.read(block, offset, block.length - offset);
+            if (read == -1) {
+                if (offset == 0) {
+                    return false;
+                }
+                throw new EOFException("Archive ended inside of a header");
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    private static byte[] readData(InputStream input, long size) throws IOException {
+        final byte[] data = new byte[(int) size];
+        if (size > 0 && !readFully(input, data)) {
+            throw new EOFException("Archive ended inside of an extended header");
+        }
+        skip(input, padding(size));
+        return data;
+    }
+
+    private static void skip(InputStream input, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() == -1) {
+                    throw new EOFException("Archive ended inside of an entry");
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+
+    /**
+     * The numeric mode of a set of permissions, as used by tar headers and <code>chmod</code>.
+     *
+     * @param permissions the {@link java.nio.file.attribute.PosixFilePermission}s of a file
+     * @return the mode holding the permission bits
+     */
+    public static int mode(Set<PosixFilePermission> permissions) {
+        int mode = 0;
+        for (PosixFilePermission permission : permissions) {
+            mode |= 1 << (8 - permission.ordinal());
+        }
+        return mode;
+    }
+
+    private static int mode(Path path, int fallback) throws IOException {
+        if (!path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return fallback;
+        }
+        return mode(Files.getPosixFilePermissions(path));
+    }
+
+    private static void permissions(Path path, int mode) throws IOException {
+        if (!path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (PosixFilePermission permission : PosixFilePermission.values()) {
+            if ((mode & (1 << (8 - permission.ordinal()))) != 0) {
+                permissions.add(permission);
+            }
+        }
+        Files.setPosixFilePermissions(path, permissions);
+    }
+}
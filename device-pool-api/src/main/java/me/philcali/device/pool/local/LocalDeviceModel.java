@@ -7,6 +7,8 @@
 package me.philcali.device.pool.local;
 
 import me.philcali.device.pool.Device;
+import me.philcali.device.pool.connection.OutputPipe;
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.exceptions.DeviceInteractionException;
 import me.philcali.device.pool.model.ApiModel;
 import me.philcali.device.pool.model.CommandInput;
@@ -17,9 +19,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.immutables.value.Value;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -27,7 +29,13 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 /**
  * The {@link me.philcali.device.pool.Device} that wraps the {@link Process} and {@link java.nio.file.Files} to facilitate integration
@@ -37,7 +45,13 @@ import java.util.concurrent.TimeUnit;
 @Value.Immutable
 abstract class LocalDeviceModel implements Device, FileMixin {
     private static final Logger LOGGER = LogManager.getLogger(LocalDevice.class);
-    private static final int BUFFER = 8192;
+    static final long DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+    private static final ExecutorService PIPES = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("Local-Device-Pipe");
+        return thread;
+    });
 
     /**
      * <p>baseDirectory.</p>
@@ -50,6 +64,17 @@ abstract class LocalDeviceModel implements Device, FileMixin {
     @Override
     public abstract String id();
 
+    /**
+     * The amount of bytes of a single output stream held on the heap by
+     * {@link me.philcali.device.pool.Device#execute}, before the stream is spilled to a temp file.
+     *
+     * @return the spill threshold in bytes, defaults to 1 MiB
+     */
+    @Value.Default
+    public long spillThreshold() {
+        return DEFAULT_SPILL_THRESHOLD;
+    }
+
     private void copy(Path source, Path destination, Set<CopyOption> options) throws IOException {
         if (options.contains(CopyOption.RECURSIVE)) {
             Files.walk(source).map(source::relativize).filter(file -> !file.toString().isEmpty()).forEach(file -> {
@@ -65,49 +90,84 @@ abstract class LocalDeviceModel implements Device, FileMixin {
         }
     }
 
-    private byte[] pumpReadStream(InputStream stream) throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        byte[] buffer = new byte[BUFFER];
-        int read = stream.read(buffer);
-        while (read > 0) {
-            output.write(buffer, 0, read);
-            read = stream.read(buffer);
-        }
-        if (output.size() == 0) {
-            return null;
+    /** {@inheritDoc} */
+    @Override
+    public CommandOutput execute(CommandInput input) throws DeviceInteractionException {
+        try (SpillingOutputSink sink = new SpillingOutputSink(spillThreshold())) {
+            return sink.toOutput(executeStreaming(input, sink));
         }
-        return output.toByteArray();
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * Both pipes are drained, and any input is fed, asynchronously as the process runs, so the process is only
+     * ever held up by a slow {@link me.philcali.device.pool.connection.OutputSink}, and a sink failure terminates
+     * the process.
+     */
     @Override
-    public CommandOutput execute(CommandInput input) throws DeviceInteractionException {
+    public CommandOutput executeStreaming(CommandInput input, OutputSink sink) throws DeviceInteractionException {
         ProcessBuilder builder = new ProcessBuilder().directory(baseDirectory().toFile());
         List<String> commands = builder.command();
         commands.add(input.line());
         Optional.ofNullable(input.args()).ifPresent(commands::addAll);
+        final long deadline = System.nanoTime() + input.timeout().toNanos();
+        Process process = null;
         try {
-            Process process = builder.start();
+            process = builder.start();
+            final Process running = process;
+            final CompletableFuture<Void> pipes = CompletableFuture.allOf(
+                    OutputPipe.drain(process.getInputStream(), sink::stdout, PIPES)
+                            .whenComplete(terminateOnError(running)),
+                    OutputPipe.drain(process.getErrorStream(), sink::stderr, PIPES)
+                            .whenComplete(terminateOnError(running)));
             if (Objects.nonNull(input.input())) {
-                process.getOutputStream().write(input.input());
-                process.getOutputStream().flush();
-                process.getOutputStream().close();
+                feed(process, input.input());
             }
-            if (!process.waitFor(input.timeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            if (!process.waitFor(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
                 throw new DeviceInteractionException("Command failed to complete in time on " + id());
             }
+            pipes.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
             return CommandOutput.builder()
                     .exitCode(process.exitValue())
                     .originalInput(input)
-                    .stdout(pumpReadStream(process.getInputStream()))
-                    .stderr(pumpReadStream(process.getErrorStream()))
                     .build();
+        } catch (TimeoutException e) {
+            throw new DeviceInteractionException("Command output failed to complete in time on " + id());
+        } catch (ExecutionException e) {
+            LOGGER.error("Failed to stream command {} on {}", input, id());
+            throw new DeviceInteractionException(e.getCause() instanceof UncheckedIOException
+                    ? e.getCause().getCause()
+                    : e.getCause());
         } catch (InterruptedException | IOException e) {
             LOGGER.error("Failed to execute command {} on {}", input, id());
             throw new DeviceInteractionException(e);
+        } finally {
+            if (Objects.nonNull(process) && process.isAlive()) {
+                process.destroyForcibly();
+            }
         }
     }
 
+    private void feed(Process process, byte[] input) {
+        CompletableFuture.runAsync(() -> {
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write(input);
+            } catch (IOException e) {
+                // The process is free to exit without consuming all of its input
+                LOGGER.debug("Stopped writing input to command on {}", id(), e);
+            }
+        }, PIPES);
+    }
+
+    private static BiConsumer<Void, Throwable> terminateOnError(Process process) {
+        return (result, error) -> {
+            if (Objects.nonNull(error)) {
+                process.destroyForcibly();
+            }
+        };
+    }
+
     /** {@inheritDoc} */
     @Override
     public void copyTo(CopyInput input) throws DeviceInteractionException {
@@ -8,6 +8,7 @@ package me.philcali.device.pool.local;
 
 import me.philcali.device.pool.Device;
 import me.philcali.device.pool.DevicePool;
+import me.philcali.device.pool.configuration.DevicePoolConfig;
 import me.philcali.device.pool.exceptions.ProvisioningException;
 import me.philcali.device.pool.model.ApiModel;
 import me.philcali.device.pool.model.ProvisionInput;
@@ -55,6 +56,17 @@ abstract class LocalDevicePoolModel implements DevicePool, FileMixin {
         }
     }
 
+    /**
+     * The amount of bytes of a single output stream that each {@link me.philcali.device.pool.local.LocalDevice}
+     * holds on the heap before spilling it to a temp file.
+     *
+     * @return the spill threshold in bytes, defaults to 1 MiB
+     */
+    @Value.Default
+    public long spillThreshold() {
+        return LocalDeviceModel.DEFAULT_SPILL_THRESHOLD;
+    }
+
     /**
      * <p>create.</p>
      *
@@ -64,6 +76,22 @@ abstract class LocalDevicePoolModel implements DevicePool, FileMixin {
         return LocalDevicePool.builder().build();
     }
 
+    /**
+     * Creates a {@link me.philcali.device.pool.local.LocalDevicePool} using the optional
+     * <code>device.pool.local.spillThreshold</code> property.
+     *
+     * @param config the {@link me.philcali.device.pool.configuration.DevicePoolConfig} of the pool
+     * @return a {@link me.philcali.device.pool.local.LocalDevicePool} object
+     */
+    public static LocalDevicePool create(DevicePoolConfig config) {
+        final LocalDevicePool.Builder builder = LocalDevicePool.builder();
+        config.namespace("local")
+                .flatMap(entry -> entry.get("spillThreshold"))
+                .map(Long::parseLong)
+                .ifPresent(builder::spillThreshold);
+        return builder.build();
+    }
+
     /** {@inheritDoc} */
     @Override
     public ProvisionOutput provision(ProvisionInput input) throws ProvisioningException {
@@ -99,7 +127,11 @@ abstract class LocalDevicePoolModel implements DevicePool, FileMixin {
             } catch (IOException e) {
                 throw new ProvisioningException(e);
             }
-            devices.add(LocalDevice.of(hostDirectory, reservation.deviceId()));
+            devices.add(LocalDevice.builder()
+                    .baseDirectory(hostDirectory)
+                    .id(reservation.deviceId())
+                    .spillThreshold(spillThreshold())
+                    .build());
         }
         return Collections.unmodifiableList(devices);
     }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.local;
+
+import me.philcali.device.pool.connection.OutputSink;
+import me.philcali.device.pool.exceptions.DeviceInteractionException;
+import me.philcali.device.pool.model.CommandOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Collects the output of a {@link me.philcali.device.pool.local.LocalDevice} command on the heap until a stream
+ * exceeds the spill threshold, after which the stream is written to a temp file. The spilled stream is memory
+ * mapped and copied once into an exactly sized array when the output is built, instead of repeatedly growing
+ * and copying a heap buffer while the command runs.
+ */
+final class SpillingOutputSink implements OutputSink, AutoCloseable {
+    // Largest array the JVM will reliably allocate
+    private static final long MAX_OUTPUT = Integer.MAX_VALUE - 8;
+    private final long threshold;
+    private final Spill stdout = new Spill("stdout");
+    private final Spill stderr = new Spill("stderr");
+
+    private final class Spill {
+        private final String name;
+        private ByteArrayOutputStream memory;
+        private Path path;
+        private FileChannel channel;
+        private long size;
+
+        Spill(String name) {
+            this.name = name;
+        }
+
+        synchronized void append(ByteBuffer chunk) throws IOException {
+            if (Objects.isNull(memory)) {
+                memory = new ByteArrayOutputStream();
+            }
+            final int length = chunk.remaining();
+            if (size + length > MAX_OUTPUT) {
+                throw new IOException(name + " exceeded " + MAX_OUTPUT + " bytes, use executeStreaming instead");
+            }
+            if (Objects.isNull(channel) && size + length > threshold) {
+                path = Files.createTempFile("local-device-" + name + "-", ".out");
+                channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.READ);
+                channel.write(ByteBuffer.wrap(memory.toByteArray()));
+                memory = new ByteArrayOutputStream(0);
+            }
+            if (Objects.nonNull(channel)) {
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            } else {
+                memory.write(chunk.array(), chunk.arrayOffset() + chunk.position(), length);
+                chunk.position(chunk.limit());
+            }
+            size += length;
+        }
+
+        synchronized byte[] toByteArray() throws IOException {
+            if (Objects.isNull(memory)) {
+                return null;
+            }
+            if (Objects.isNull(channel)) {
+                return memory.toByteArray();
+            }
+            final byte[] bytes = new byte[(int) size];
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.get(bytes);
+            return bytes;
+        }
+
+        synchronized void close() throws IOException {
+            if (Objects.nonNull(channel)) {
+                channel.close();
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    SpillingOutputSink(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void stdout(ByteBuffer chunk) throws IOException {
+        stdout.append(chunk);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void stderr(ByteBuffer chunk) throws IOException {
+        stderr.append(chunk);
+    }
+
+    /**
+     * Combines the collected output with the result of a streamed execution.
+     *
+     * @param result the {@link me.philcali.device.pool.model.CommandOutput} returned from a streamed execution
+     * @return a {@link me.philcali.device.pool.model.CommandOutput} including the collected stdout and stderr
+     */
+    CommandOutput toOutput(CommandOutput result) {
+        try {
+            return CommandOutput.builder()
+                    .from(result)
+                    .stdout(stdout.toByteArray())
+                    .stderr(stderr.toByteArray())
+                    .build();
+        } catch (IOException e) {
+            throw new DeviceInteractionException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        try {
+            try {
+                stdout.close();
+            } finally {
+                stderr.close();
+            }
+        } catch (IOException e) {
+            throw new DeviceInteractionException(e);
+        }
+    }
+}
@@ -13,5 +13,20 @@ package me.philcali.device.pool.model;
  * @version $Id: $Id
  */
 public enum CopyOption {
-    RECURSIVE
+    RECURSIVE,
+    /**
+     * Only send the blocks of each file that differ from the file already at the destination, when copying to
+     * a {@link me.philcali.device.pool.Device}. Agents that do not support delta transfers copy in full.
+     */
+    DELTA,
+    /**
+     * Move a recursive copy of a directory as a single tar archive, extracted in one pass on the receiving side,
+     * instead of one transfer per file. Agents that do not support archives copy file by file.
+     */
+    ARCHIVE,
+    /**
+     * Gzip the archive of an {@link #ARCHIVE} copy, which requires <code>gzip</code> on the
+     * {@link me.philcali.device.pool.Device}.
+     */
+    COMPRESS
 }
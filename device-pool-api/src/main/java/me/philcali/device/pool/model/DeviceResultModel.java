@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.model;
+
+import org.immutables.value.Value;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The outcome of a single {@link me.philcali.device.pool.Device} in a fan out execution, being either the
+ * {@link me.philcali.device.pool.model.CommandOutput} of the command or the exception thrown while interacting
+ * with the {@link me.philcali.device.pool.Device}.
+ */
+@ApiModel
+@Value.Immutable
+interface DeviceResultModel {
+    /**
+     * The identifier of the {@link me.philcali.device.pool.Device} that ran the command.
+     *
+     * @return the device identifier
+     */
+    String deviceId();
+
+    /**
+     * The {@link me.philcali.device.pool.model.CommandOutput} of the command, if the device could be reached.
+     * Copies to a device have no output.
+     *
+     * @return the {@link me.philcali.device.pool.model.CommandOutput} or null on error or for copies
+     */
+    @Nullable
+    CommandOutput output();
+
+    /**
+     * The failure to interact with the {@link me.philcali.device.pool.Device}, if any.
+     *
+     * @return the thrown exception or null if the command ran
+     */
+    @Nullable
+    Exception error();
+
+    /**
+     * The wall clock time it took for the command to run on the {@link me.philcali.device.pool.Device}.
+     *
+     * @return the {@link java.time.Duration} of the execution
+     */
+    Duration duration();
+
+    /**
+     * Convenience method to determine if the command ran and exited cleanly.
+     *
+     * @return true if there is no error, and any output has a zero exit code
+     */
+    default boolean succeeded() {
+        return Objects.isNull(error()) && (Objects.isNull(output()) || output().exitCode() == 0);
+    }
+}
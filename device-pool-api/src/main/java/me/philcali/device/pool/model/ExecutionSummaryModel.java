@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.model;
+
+import org.immutables.value.Value;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * The aggregate of a fan out execution across a {@link me.philcali.device.pool.DeviceGroup}. Results are
+ * kept in the order that the devices completed.
+ */
+@ApiModel
+@Value.Immutable
+interface ExecutionSummaryModel {
+    /**
+     * Every {@link me.philcali.device.pool.model.DeviceResult}, in completion order.
+     *
+     * @return the list of completed {@link me.philcali.device.pool.model.DeviceResult}s
+     */
+    List<DeviceResult> results();
+
+    /**
+     * The identifiers of {@link me.philcali.device.pool.Device}s that never ran the command, because the
+     * execution failed fast or was cancelled.
+     *
+     * @return the list of skipped device identifiers
+     */
+    List<String> skipped();
+
+    /**
+     * The wall clock time of the entire execution.
+     *
+     * @return the {@link java.time.Duration} of the fan out
+     */
+    Duration duration();
+
+    /**
+     * Convenience method to determine if every {@link me.philcali.device.pool.Device} ran the command cleanly.
+     *
+     * @return true if nothing was skipped and every result succeeded
+     */
+    default boolean succeeded() {
+        return skipped().isEmpty() && results().stream().allMatch(DeviceResult::succeeded);
+    }
+
+    /**
+     * The {@link me.philcali.device.pool.model.DeviceResult}s that errored or exited with a non-zero code.
+     *
+     * @return the list of failed {@link me.philcali.device.pool.model.DeviceResult}s
+     */
+    default List<DeviceResult> failures() {
+        return results().stream()
+                .filter(result -> !result.succeeded())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The exit code of every {@link me.philcali.device.pool.Device} that could be reached, keyed on device id.
+     *
+     * @return a {@link java.util.Map} of device identifier to exit code
+     */
+    default Map<String, Integer> exitCodes() {
+        final Map<String, Integer> exitCodes = new LinkedHashMap<>();
+        results().stream()
+                .filter(result -> Objects.nonNull(result.output()))
+                .forEach(result -> exitCodes.put(result.deviceId(), result.output().exitCode()));
+        return exitCodes;
+    }
+}
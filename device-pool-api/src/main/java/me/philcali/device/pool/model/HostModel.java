@@ -9,6 +9,7 @@ package me.philcali.device.pool.model;
 import org.immutables.value.Value;
 
 import javax.annotation.Nullable;
+import java.util.Map;
 
 /**
  * The data path details {@link me.philcali.device.pool.Device} reachable information. The
@@ -62,4 +63,12 @@ interface HostModel {
      * @return A {@link java.lang.String} representation of a {@link me.philcali.device.pool.Device} identifier
      */
     String deviceId();
+
+    /**
+     * Arbitrary labels describing this {@link me.philcali.device.pool.model.Host}, ie: a GPU model or a lab
+     * rack, that a {@link me.philcali.device.pool.model.ProvisionInput} can require.
+     *
+     * @return A {@link java.util.Map} of attribute names to values
+     */
+    Map<String, String> attributes();
 }
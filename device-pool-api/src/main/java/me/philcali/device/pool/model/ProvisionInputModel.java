@@ -8,6 +8,9 @@ package me.philcali.device.pool.model;
 
 import org.immutables.value.Value;
 
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 @ApiModel
@@ -41,4 +44,35 @@ abstract class ProvisionInputModel {
     int amount() {
         return 1;
     }
+
+    /**
+     * The {@link me.philcali.device.pool.model.PlatformOS} every provisioned {@link me.philcali.device.pool.model.Host}
+     * must match. When absent, any platform is acceptable.
+     *
+     * @return the required {@link me.philcali.device.pool.model.PlatformOS} or null
+     */
+    @Nullable
+    abstract PlatformOS platform();
+
+    /**
+     * Attributes every provisioned {@link me.philcali.device.pool.model.Host} must carry, with equal values.
+     *
+     * @return a {@link java.util.Map} of required attribute names to values
+     */
+    abstract Map<String, String> attributes();
+
+    /**
+     * Tests if a {@link me.philcali.device.pool.model.Host} satisfies the platform and attribute constraints
+     * of this {@link me.philcali.device.pool.model.ProvisionInput}.
+     *
+     * @param host a candidate {@link me.philcali.device.pool.model.Host}
+     * @return true if the {@link me.philcali.device.pool.model.Host} can be provisioned for this input
+     */
+    public boolean accepts(Host host) {
+        if (Objects.nonNull(platform()) && !platform().equals(host.platform())) {
+            return false;
+        }
+        return attributes().entrySet().stream()
+                .allMatch(entry -> entry.getValue().equals(host.attributes().get(entry.getKey())));
+    }
 }
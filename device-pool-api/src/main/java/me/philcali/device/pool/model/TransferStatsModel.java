@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.model;
+
+import org.immutables.value.Value;
+
+import java.time.Duration;
+
+/**
+ * Throughput of a single content transfer, as reported by a
+ * {@link me.philcali.device.pool.content.ContentTransferAgent} that tracks it. A transfer covers every file
+ * copied for one {@link me.philcali.device.pool.model.CopyInput}.
+ */
+@ApiModel
+@Value.Immutable
+interface TransferStatsModel {
+    /**
+     * The {@link me.philcali.device.pool.model.CopyInput} that was transferred.
+     *
+     * @return the {@link me.philcali.device.pool.model.CopyInput} of the transfer
+     */
+    CopyInput input();
+
+    /**
+     * The amount of files copied.
+     *
+     * @return the file count of the transfer
+     */
+    int files();
+
+    /**
+     * The amount of bytes actually moved over the wire.
+     *
+     * @return the transferred bytes
+     */
+    long bytes();
+
+    /**
+     * The amount of bytes that did not need to be moved, ie: the portion of a resumed file that was already
+     * present at the destination.
+     *
+     * @return the skipped bytes
+     */
+    @Value.Default
+    default long skippedBytes() {
+        return 0;
+    }
+
+    /**
+     * The wall clock time of the transfer.
+     *
+     * @return the {@link java.time.Duration} of the transfer
+     */
+    Duration duration();
+
+    /**
+     * Convenience method for the effective throughput of the transfer.
+     *
+     * @return the transferred bytes per second
+     */
+    default double bytesPerSecond() {
+        final long nanos = duration().toNanos();
+        return nanos == 0 ? 0 : bytes() * 1_000_000_000.0 / nanos;
+    }
+}
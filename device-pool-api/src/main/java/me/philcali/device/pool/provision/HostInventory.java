@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.provision;
+
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+/**
+ * An indexed inventory of {@link me.philcali.device.pool.model.Host}s, keyed on deviceId. Availability is tracked
+ * per {@link me.philcali.device.pool.model.PlatformOS}, by a concurrent membership set backed by a lock-free free
+ * list, so lookups, releases, membership checks and polling an available {@link me.philcali.device.pool.model.Host}
+ * of a given platform are all constant time. Free list entries for hosts that were removed, or already handed out,
+ * are discarded lazily on poll.
+ */
+final class HostInventory {
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final Map<PlatformOS, PlatformPool> pools = new ConcurrentHashMap<>();
+
+    private static final class PlatformPool {
+        final Set<String> available = ConcurrentHashMap.newKeySet();
+        final Queue<Host> freeList = new ConcurrentLinkedQueue<>();
+    }
+
+    private PlatformPool pool(PlatformOS platform) {
+        return pools.computeIfAbsent(platform, p -> new PlatformPool());
+    }
+
+    /**
+     * Indexes a {@link me.philcali.device.pool.model.Host} and makes it available, if not already indexed.
+     *
+     * @param host the {@link me.philcali.device.pool.model.Host} to add
+     * @return true if the {@link me.philcali.device.pool.model.Host} was added
+     */
+    boolean add(Host host) {
+        if (Objects.isNull(hosts.putIfAbsent(host.deviceId(), host))) {
+            return makeAvailable(host);
+        }
+        return false;
+    }
+
+    /**
+     * Removes a {@link me.philcali.device.pool.model.Host} from the index, available or not.
+     *
+     * @param host the {@link me.philcali.device.pool.model.Host} to remove
+     * @return true if the {@link me.philcali.device.pool.model.Host} was indexed
+     */
+    boolean remove(Host host) {
+        final Host removed = hosts.remove(host.deviceId());
+        if (Objects.isNull(removed)) {
+            return false;
+        }
+        pool(removed.platform()).available.remove(removed.deviceId());
+        return true;
+    }
+
+    Optional<Host> find(String deviceId) {
+        return Optional.ofNullable(hosts.get(deviceId));
+    }
+
+    /**
+     * Returns an indexed {@link me.philcali.device.pool.model.Host} to the available pool.
+     *
+     * @param deviceId the deviceId of the {@link me.philcali.device.pool.model.Host}
+     * @return true if the {@link me.philcali.device.pool.model.Host} is indexed and was not already available
+     */
+    boolean release(String deviceId) {
+        return find(deviceId).map(this::makeAvailable).orElse(false);
+    }
+
+    boolean isAvailable(String deviceId) {
+        return find(deviceId).map(host -> pool(host.platform()).available.contains(deviceId)).orElse(false);
+    }
+
+    /**
+     * Takes any available {@link me.philcali.device.pool.model.Host}, never blocking.
+     *
+     * @return an available {@link me.philcali.device.pool.model.Host} or null if none are available
+     */
+    Host poll() {
+        return poll(null, host -> true);
+    }
+
+    /**
+     * Takes an available {@link me.philcali.device.pool.model.Host} of a platform that satisfies a filter,
+     * never blocking. Platform matching is an index lookup; the filter is only applied to hosts of that platform.
+     *
+     * @param platform the required {@link me.philcali.device.pool.model.PlatformOS} or null for any platform
+     * @param filter additional constraints on the {@link me.philcali.device.pool.model.Host}
+     * @return an available {@link me.philcali.device.pool.model.Host} or null if none are available
+     */
+    Host poll(@Nullable PlatformOS platform, Predicate<Host> filter) {
+        if (Objects.nonNull(platform)) {
+            final PlatformPool pool = pools.get(platform);
+            return Objects.isNull(pool) ? null : pollPool(pool, filter);
+        }
+        for (PlatformPool pool : pools.values()) {
+            final Host host = pollPool(pool, filter);
+            if (Objects.nonNull(host)) {
+                return host;
+            }
+        }
+        return null;
+    }
+
+    private Host pollPool(PlatformPool pool, Predicate<Host> filter) {
+        final List<Host> skipped = new ArrayList<>();
+        try {
+            int candidates = pool.available.size();
+            Host host;
+            while (candidates > 0 && Objects.nonNull(host = pool.freeList.poll())) {
+                if (!pool.available.remove(host.deviceId())) {
+                    continue;
+                }
+                final Host current = hosts.get(host.deviceId());
+                if (Objects.isNull(current)) {
+                    continue;
+                }
+                candidates--;
+                if (filter.test(current)) {
+                    return current;
+                }
+                skipped.add(current);
+            }
+            return null;
+        } finally {
+            skipped.forEach(this::makeAvailable);
+        }
+    }
+
+    int size() {
+        return hosts.size();
+    }
+
+    /**
+     * Counts the indexed {@link me.philcali.device.pool.model.Host}s satisfying a filter, available or not. This
+     * visits every indexed host, so it is meant for infrequent checks rather than allocation.
+     *
+     * @param filter the constraints on the {@link me.philcali.device.pool.model.Host}
+     * @return the amount of indexed hosts satisfying the filter
+     */
+    long count(Predicate<Host> filter) {
+        return hosts.values().stream().filter(filter).count();
+    }
+
+    int availableSize() {
+        return pools.values().stream().mapToInt(pool -> pool.available.size()).sum();
+    }
+
+    int availableSize(@Nullable PlatformOS platform) {
+        if (Objects.isNull(platform)) {
+            return availableSize();
+        }
+        return Optional.ofNullable(pools.get(platform)).map(pool -> pool.available.size()).orElse(0);
+    }
+
+    private boolean makeAvailable(Host host) {
+        final PlatformPool pool = pool(host.platform());
+        if (pool.available.add(host.deviceId())) {
+            pool.freeList.offer(host);
+            return true;
+        }
+        return false;
+    }
+}
@@ -24,19 +24,30 @@ import org.apache.logging.log4j.Logger;
 import org.immutables.value.Value;
 
 import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This concrete {@link me.philcali.device.pool.provision.ProvisionService} facilities in-memory provisioning, thus called the
@@ -44,17 +55,31 @@ import java.util.concurrent.locks.ReentrantLock;
  * distributed systems unless decorated with the implementation of a {@link me.philcali.device.pool.provision.LockingProvisionService}.
  * The provision method is asynchronous, meaning it will never return a complete {@link me.philcali.device.pool.model.ProvisionOutput}
  * for the initial request. The describe method can be called repeatedly.
+ * <br>
+ * Provisions are striped by id across a number of workers. Each worker serves its pending provisions
+ * round-robin, handing out a provision's remaining hosts all at once, while a single provision at a time may
+ * accumulate a partial allocation. A large request therefore makes progress without starving the smaller
+ * requests queued behind it. Only provisions that the indexed hosts could satisfy accumulate, so a request for a
+ * missing platform never holds up the rest. Workers never block on hosts; they park until a host is released, added, or a
+ * new provision arrives.
+ * <br>
+ * Available hosts are indexed per {@link me.philcali.device.pool.model.PlatformOS}, so a
+ * {@link me.philcali.device.pool.model.ProvisionInput} constrained to a platform is matched without filtering the
+ * whole inventory. Attribute constraints are checked against the hosts of the requested platform.
  */
 @APIShadowModel
 @Value.Immutable
 public abstract class LocalProvisionService implements ProvisionService, ReservationService {
     private static final Logger LOGGER = LogManager.getLogger(LocalProvisionService.class);
-    private final Map<String, CachedEntry<ProvisionOutput>> reservations = new ConcurrentHashMap<>();
-    private final BlockingQueue<LocalProvisionEntry> activeProvisions = new LinkedBlockingQueue<>();
-    private final BlockingQueue<Host> availableHosts = new LinkedBlockingQueue<>();
-    private final LocalProvisionRunnable currentRunnable = new LocalProvisionRunnable();
+    private final Map<String, CachedEntry> reservations = new ConcurrentHashMap<>();
+    private static final int LOCK_STRIPES = 32;
+    private final HostInventory inventory = new HostInventory();
+    private final List<LocalProvisionWorker> workers = new ArrayList<>();
     private final LocalProvisionReaper reapRunnable = new LocalProvisionReaper();
-    private final Lock lock = new ReentrantLock();
+    private final AtomicReference<LocalProvisionEntry> partialOwner = new AtomicReference<>();
+    private final Lock[] stripes = IntStream.range(0, LOCK_STRIPES)
+            .mapToObj(index -> new ReentrantLock())
+            .toArray(Lock[]::new);
 
     @Nullable
     abstract Set<Host> hosts();
@@ -72,9 +97,19 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
         return TimeUnit.HOURS.toMillis(1);
     }
 
+    /**
+     * The number of workers scheduling provisions. Each worker occupies a thread of the executorService.
+     *
+     * @return the amount of provision workers
+     */
+    @Value.Default
+    int workers() {
+        return 2;
+    }
+
     @Value.Default
     ExecutorService executorService() {
-        int threads = 1;
+        int threads = workers();
         if (expireProvisions()) {
             threads += 1;
         }
@@ -104,6 +139,7 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
             return config.namespace("provision.local").flatMap(entry -> {
                 entry.get("timeout").map(Long::parseLong).ifPresent(this::provisionTimeout);
                 entry.get("expires").map(Boolean::parseBoolean).ifPresent(this::expireProvisions);
+                entry.get("workers").map(Integer::parseInt).ifPresent(this::workers);
                 return Optional.ofNullable(entry.properties().get("hosts")).map(hosts -> {
                     hosts.properties().keySet().forEach(hostId -> {
                         DevicePoolConfig.DevicePoolConfigEntry hostEntry = hosts.properties().get(hostId);
@@ -118,6 +154,13 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
                                         .map(PlatformOS::fromString)
                                         .orElseThrow(() -> new ProvisioningException("Host entry "
                                                 + hostId + " does not have a platform")))
+                                .attributes(Optional.ofNullable(hostEntry.properties().get("attributes"))
+                                        .map(attributes -> attributes.properties().values().stream()
+                                                .filter(attribute -> attribute.value().isPresent())
+                                                .collect(Collectors.toMap(
+                                                        DevicePoolConfig.DevicePoolConfigEntry::key,
+                                                        attribute -> attribute.value().get())))
+                                        .orElseGet(Collections::emptyMap))
                                 .build());
                     });
                     return build();
@@ -131,6 +174,9 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
         if (hosts() == null && hostProvider() == null) {
             throw new IllegalStateException("set of hosts or hostProvider is required");
         }
+        if (workers() < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        }
         if (hosts() != null && hosts().isEmpty()) {
             throw new IllegalArgumentException("hosts must contain at least one entry");
         }
@@ -148,20 +194,21 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
         }
 
         // Initialize the available hosts from the set of hosts
-        hostProvider().hosts().forEach(availableHosts::offer);
+        hostProvider().hosts().forEach(inventory::add);
         hostProvider().addListener((change, host) -> {
-            lock.lock();
-            if (change == HostProvider.HostChange.Remove && availableHosts.contains(host)) {
-                availableHosts.remove(host);
+            if (change == HostProvider.HostChange.Remove && inventory.remove(host)) {
                 LOGGER.info("Removed {} from available hosts", host.deviceId());
-            } else if (change == HostProvider.HostChange.Add && !availableHosts.contains(host)) {
-                availableHosts.offer(host);
+            } else if (change == HostProvider.HostChange.Add && inventory.add(host)) {
                 LOGGER.info("Added {} to available hosts", host.deviceId());
+                signalWorkers();
             }
-            lock.unlock();
         });
-        // Start the background queue drain, to supply provisions
-        executorService().execute(currentRunnable);
+        // Start the background workers, to supply provisions
+        for (int worker = 0; worker < workers(); worker++) {
+            final LocalProvisionWorker provisionWorker = new LocalProvisionWorker();
+            workers.add(provisionWorker);
+            executorService().execute(provisionWorker);
+        }
         // Start provision expiry
         if (expireProvisions()) {
             executorService().execute(reapRunnable);
@@ -169,36 +216,143 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
         return this;
     }
 
-    private static class CachedEntry<T> {
-        T value;
-        long expiresIn;
+    /**
+     * Mutable accumulator of an in-progress provision. Mutations happen under the provision's stripe lock,
+     * and the immutable {@link ProvisionOutput} is only built when described after a change, so assigning
+     * hosts to a large provision never copies its reservations per host.
+     */
+    private static class CachedEntry {
+        final String id;
+        final List<Reservation> reservations = new ArrayList<>();
+        Status status = Status.REQUESTED;
+        volatile long expiresIn;
+        private volatile ProvisionOutput snapshot;
 
-        CachedEntry(T value, long expiresIn) {
-            this.value = value;
+        CachedEntry(String id, long expiresIn) {
+            this.id = id;
             this.expiresIn = expiresIn;
         }
+
+        void status(Status status) {
+            this.status = status;
+            snapshot = null;
+        }
+
+        void addReservation(Reservation reservation) {
+            reservations.add(reservation);
+            snapshot = null;
+        }
+
+        ProvisionOutput snapshot() {
+            ProvisionOutput current = snapshot;
+            if (Objects.isNull(current)) {
+                current = ProvisionOutput.builder()
+                        .id(id)
+                        .status(status)
+                        .reservations(reservations)
+                        .build();
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private ProvisionOutput snapshot(CachedEntry cache) {
+        final ProvisionOutput current = cache.snapshot;
+        if (Objects.nonNull(current)) {
+            return current;
+        }
+        final Lock stripe = stripe(cache.id);
+        stripe.lock();
+        try {
+            return cache.snapshot();
+        } finally {
+            stripe.unlock();
+        }
     }
 
-    private static class LocalProvisionEntry {
+    private class LocalProvisionEntry {
         ProvisionInput input;
-        ProvisionOutput output;
+        int allocated;
 
-        LocalProvisionEntry(ProvisionInput input, ProvisionOutput output) {
+        LocalProvisionEntry(ProvisionInput input) {
             this.input = input;
-            this.output = output;
+        }
+
+        Host poll() {
+            return inventory.poll(input.platform(), input::accepts);
+        }
+    }
+
+    private static final class ProvisionExpiry implements Delayed {
+        final String provisionId;
+        final long expiresIn;
+
+        ProvisionExpiry(String provisionId, long expiresIn) {
+            this.provisionId = provisionId;
+            this.expiresIn = expiresIn;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresIn - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof ProvisionExpiry) {
+                return Long.compare(expiresIn, ((ProvisionExpiry) other).expiresIn);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
         }
     }
 
+    /**
+     * Expires provisions as their deadlines come due. Extending a provision only moves its deadline forward,
+     * so the stale {@link ProvisionExpiry} is rescheduled when it surfaces rather than searched for. Work is
+     * proportional to the number of deadlines that come due, never the number of provisions.
+     */
     private class LocalProvisionReaper implements Runnable {
+        private final ProvisionExpiry shutdown = new ProvisionExpiry(null, 0);
+        private final DelayQueue<ProvisionExpiry> expiries = new DelayQueue<>();
         volatile boolean running = true;
 
+        void schedule(String provisionId, long expiresIn) {
+            expiries.offer(new ProvisionExpiry(provisionId, expiresIn));
+        }
+
+        void stop() {
+            running = false;
+            expiries.offer(shutdown);
+        }
+
+        private int expire(ProvisionExpiry expiry) {
+            final Lock stripe = stripe(expiry.provisionId);
+            stripe.lock();
+            try {
+                final CachedEntry cache = reservations.get(expiry.provisionId);
+                if (Objects.isNull(cache)) {
+                    return 0;
+                }
+                if (cache.expiresIn > System.currentTimeMillis()) {
+                    schedule(expiry.provisionId, cache.expiresIn);
+                    return 0;
+                }
+                return release(ProvisionOutput.of(cache.id));
+            } finally {
+                stripe.unlock();
+            }
+        }
+
         @Override
         public void run() {
             while (running) {
                 try {
-                    int amount = LocalProvisionService.this.releaseAvailable(System.currentTimeMillis());
-                    LOGGER.debug("Reaped {} devices", amount);
-                    TimeUnit.SECONDS.sleep(1);
+                    final ProvisionExpiry expiry = expiries.take();
+                    if (expiry != shutdown) {
+                        int amount = expire(expiry);
+                        LOGGER.debug("Reaped {} devices from {}", amount, expiry.provisionId);
+                    }
                 } catch (InterruptedException e) {
                     LOGGER.info("Reaper is shutting down.");
                     running = false;
@@ -207,49 +361,185 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
         }
     }
 
-    private class LocalProvisionRunnable implements Runnable {
+    private Lock stripe(String provisionId) {
+        return stripes[Math.floorMod(provisionId.hashCode(), stripes.length)];
+    }
+
+    private LocalProvisionWorker worker(String provisionId) {
+        return workers.get(Math.floorMod(provisionId.hashCode(), workers.size()));
+    }
+
+    private void signalWorkers() {
+        workers.forEach(LocalProvisionWorker::signal);
+    }
+
+    private class LocalProvisionWorker implements Runnable {
+        private final LocalProvisionEntry wakeUp = new LocalProvisionEntry(null);
+        private final BlockingQueue<LocalProvisionEntry> inbox = new LinkedBlockingQueue<>();
+        private final Deque<LocalProvisionEntry> pending = new ArrayDeque<>();
+        private final AtomicBoolean signalled = new AtomicBoolean();
         volatile boolean running = true;
 
+        void submit(LocalProvisionEntry entry) {
+            inbox.offer(entry);
+        }
+
+        void signal() {
+            if (signalled.compareAndSet(false, true)) {
+                inbox.offer(wakeUp);
+            }
+        }
+
+        private void admit(LocalProvisionEntry entry) {
+            if (entry == wakeUp) {
+                return;
+            }
+            final Lock stripe = stripe(entry.input.id());
+            final CachedEntry existing;
+            stripe.lock();
+            try {
+                existing = reservations.get(entry.input.id());
+                if (Objects.nonNull(existing)) {
+                    existing.status(entry.input.amount() > 0 ? Status.PROVISIONING : Status.SUCCEEDED);
+                }
+            } finally {
+                stripe.unlock();
+            }
+            if (Objects.isNull(existing)) {
+                LOGGER.info("Provision {} is no longer active", entry.input.id());
+            } else if (entry.input.amount() > 0) {
+                pending.addLast(entry);
+            }
+        }
+
+        private boolean assign(LocalProvisionEntry entry, Host host) {
+            // Adding a host to a provision is atomic, complete with checks of existence
+            final Lock stripe = stripe(entry.input.id());
+            stripe.lock();
+            try {
+                // Provision was swept or released before host was obtained
+                final CachedEntry cache = reservations.get(entry.input.id());
+                if (Objects.isNull(cache)) {
+                    LOGGER.warn("Host {} was applied to provision that no longer exists {}",
+                            host.deviceId(),
+                            entry.input.id());
+                    return false;
+                }
+                entry.allocated++;
+                cache.addReservation(Reservation.of(host.deviceId(), Status.SUCCEEDED));
+                cache.status(entry.allocated == entry.input.amount() ? Status.SUCCEEDED : Status.PROVISIONING);
+                return true;
+            } finally {
+                stripe.unlock();
+            }
+        }
+
+        private boolean accumulate(LocalProvisionEntry entry) {
+            Host host;
+            while (entry.allocated < entry.input.amount() && Objects.nonNull(host = entry.poll())) {
+                if (!assign(entry, host)) {
+                    offerHost(host);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean allocateAll(LocalProvisionEntry entry) {
+            final int needed = entry.input.amount() - entry.allocated;
+            if (inventory.availableSize(entry.input.platform()) < needed) {
+                return true;
+            }
+            final List<Host> hosts = new ArrayList<>(needed);
+            Host host;
+            while (hosts.size() < needed && Objects.nonNull(host = entry.poll())) {
+                hosts.add(host);
+            }
+            if (hosts.size() < needed) {
+                hosts.forEach(polled -> inventory.release(polled.deviceId()));
+                return true;
+            }
+            for (int index = 0; index < hosts.size(); index++) {
+                if (!assign(entry, hosts.get(index))) {
+                    hosts.subList(index, hosts.size()).forEach(this::offerHost);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void offerHost(Host host) {
+            inventory.release(host.deviceId());
+            signalWorkers();
+        }
+
+        private void releaseOwnership(LocalProvisionEntry entry) {
+            // Wake other workers, which may have provisions waiting to accumulate
+            if (partialOwner.compareAndSet(entry, null)) {
+                signalWorkers();
+            }
+        }
+
+        private boolean canAccumulate(LocalProvisionEntry entry) {
+            // A provision that no amount of releases could satisfy must not hold up the ones that can
+            return Objects.isNull(partialOwner.get()) && inventory.count(entry.input::accepts) >= entry.input.amount();
+        }
+
+        private boolean allocate() {
+            boolean progress = true;
+            while (progress && !pending.isEmpty()) {
+                progress = false;
+                LocalProvisionEntry owned = null;
+                for (int index = pending.size(); index > 0; index--) {
+                    final LocalProvisionEntry entry = pending.pollFirst();
+                    if (!reservations.containsKey(entry.input.id())) {
+                        releaseOwnership(entry);
+                        continue;
+                    }
+                    if (partialOwner.get() == entry) {
+                        owned = entry;
+                        continue;
+                    }
+                    final int allocated = entry.allocated;
+                    final boolean active = allocateAll(entry);
+                    progress |= entry.allocated != allocated;
+                    if (!active || entry.allocated == entry.input.amount()) {
+                        continue;
+                    }
+                    if (Objects.isNull(owned) && canAccumulate(entry) && partialOwner.compareAndSet(null, entry)) {
+                        owned = entry;
+                    } else {
+                        // Rotate waiting provisions to the back, to be fair to the rest
+                        pending.addLast(entry);
+                    }
+                }
+                // The partial owner accumulates whatever is left after whole allocations
+                if (Objects.nonNull(owned)) {
+                    final int allocated = owned.allocated;
+                    final boolean active = accumulate(owned);
+                    progress |= owned.allocated != allocated;
+                    if (active && owned.allocated < owned.input.amount()) {
+                        pending.addLast(owned);
+                    } else {
+                        releaseOwnership(owned);
+                    }
+                }
+            }
+            return pending.isEmpty();
+        }
+
         @Override
         public void run() {
             try {
                 while (running) {
-                    final LocalProvisionEntry entry = activeProvisions.take();
-                    final CachedEntry<ProvisionOutput> existing = reservations.computeIfPresent(entry.input.id(),
-                            (id, cache) -> new CachedEntry<>(ProvisionOutput.builder()
-                                    .from(cache.value)
-                                    .status(Status.PROVISIONING)
-                                    .build(), cache.expiresIn));
-                    if (Objects.isNull(existing)) {
-                        LOGGER.info("Provision {} is no longer active", entry.input.id());
-                        continue;
+                    admit(inbox.take());
+                    LocalProvisionEntry next;
+                    while ((next = inbox.poll()) != null) {
+                        admit(next);
                     }
-                    for (int i = 1; i <= entry.input.amount(); i++) {
-                        if (availableHosts.isEmpty()) {
-                            hostProvider().requestGrowth();
-                        }
-                        final Host host = availableHosts.take();
-                        // Adding a host to a provision is atomic, complete with checks of existence
-                        lock.lock();
-                        try {
-                            // Provision was swept or released before host was obtained, recycle host and break
-                            if (!reservations.containsKey(entry.input.id())) {
-                                LOGGER.warn("Host {} was applied to provision that no longer exists {}",
-                                        host.deviceId(),
-                                        entry.input.id());
-                                availableHosts.offer(host);
-                                break;
-                            }
-                            final Status status = i == entry.input.amount() ? Status.SUCCEEDED : Status.PROVISIONING;
-                            reservations.computeIfPresent(entry.input.id(), (id, cache) -> new CachedEntry<>(
-                                    ProvisionOutput.builder()
-                                            .from(cache.value)
-                                            .status(status)
-                                            .addReservations(Reservation.of(host.deviceId(), Status.SUCCEEDED))
-                                            .build(), cache.expiresIn));
-                        } finally {
-                            lock.unlock();
-                        }
+                    signalled.set(false);
+                    if (!allocate()) {
+                        hostProvider().requestGrowth();
                     }
                 }
             } catch (InterruptedException ie) {
@@ -262,43 +552,43 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
     /** {@inheritDoc} */
     @Override
     public ProvisionOutput provision(ProvisionInput input) throws ProvisioningException {
-        final CachedEntry<ProvisionOutput> handle = reservations.computeIfAbsent(input.id(), id -> new CachedEntry<>(
-                ProvisionOutput.builder()
-                    .id(id)
-                    .status(Status.REQUESTED)
-                    .build(), System.currentTimeMillis() + provisionTimeout()));
-        if (!activeProvisions.offer(new LocalProvisionEntry(input, handle.value))) {
-            throw new ProvisioningException("Could not create a provision with id: " + input.id());
-        }
-        return handle.value;
+        final AtomicBoolean created = new AtomicBoolean();
+        final CachedEntry handle = reservations.computeIfAbsent(input.id(), id -> {
+            created.set(true);
+            return new CachedEntry(id, System.currentTimeMillis() + provisionTimeout());
+        });
+        if (created.get()) {
+            if (expireProvisions()) {
+                reapRunnable.schedule(input.id(), handle.expiresIn);
+            }
+            worker(input.id()).submit(new LocalProvisionEntry(input));
+        }
+        return snapshot(handle);
     }
 
     /** {@inheritDoc} */
     @Override
     public ProvisionOutput describe(ProvisionOutput output) throws ProvisioningException {
-        CachedEntry<ProvisionOutput> handle = reservations.get(output.id());
+        CachedEntry handle = reservations.get(output.id());
         if (Objects.isNull(handle)) {
             throw new ProvisioningException("Could not find a provision with id: " + output.id());
         }
-        return handle.value;
+        return snapshot(handle);
     }
 
     /** {@inheritDoc} */
     @Override
     public Host exchange(Reservation reservation) throws ReservationException {
-        return hostProvider().hosts().stream()
-                .filter(h -> h.deviceId().equals(reservation.deviceId()))
-                .findFirst()
+        return inventory.find(reservation.deviceId())
                 .orElseThrow(() -> new ReservationException("Could not a host with id: " + reservation.deviceId()));
     }
 
     private boolean releaseHost(String deviceId) {
-        return hostProvider().hosts().stream()
-                .filter(host -> host.deviceId().equals(deviceId))
-                .filter(host -> !availableHosts.contains(host))
-                .reduce(false,
-                        (left, right) -> availableHosts.offer(right) || left,
-                        (left, right) -> left || right);
+        final boolean released = inventory.release(deviceId);
+        if (released) {
+            signalWorkers();
+        }
+        return released;
     }
 
     /**
@@ -319,9 +609,16 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
      */
     public int release(ProvisionOutput output) {
         AtomicInteger released = new AtomicInteger();
-        CachedEntry<ProvisionOutput> handle = reservations.remove(output.id());
+        final CachedEntry handle;
+        final Lock stripe = stripe(output.id());
+        stripe.lock();
+        try {
+            handle = reservations.remove(output.id());
+        } finally {
+            stripe.unlock();
+        }
         if (Objects.nonNull(handle)) {
-            handle.value.reservations().stream()
+            handle.reservations.stream()
                     .map(Reservation::deviceId)
                     .filter(this::releaseHost)
                     .forEach(hostId -> {
@@ -340,18 +637,13 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
      * @return a int
      */
     protected int releaseAvailable(long when) {
-        lock.lock();
-        try {
-            int released = 0;
-            for (CachedEntry<ProvisionOutput> cachedEntry : reservations.values()) {
-                if (cachedEntry.expiresIn < when) {
-                    released += release(cachedEntry.value);
-                }
+        int released = 0;
+        for (CachedEntry cachedEntry : reservations.values()) {
+            if (cachedEntry.expiresIn < when) {
+                released += release(ProvisionOutput.of(cachedEntry.id));
             }
-            return released;
-        } finally {
-            lock.unlock();
         }
+        return released;
     }
 
     /**
@@ -360,18 +652,25 @@ public abstract class LocalProvisionService implements ProvisionService, Reserva
      * @param output a {@link me.philcali.device.pool.model.ProvisionOutput} object
      */
     public void extend(ProvisionOutput output) {
-        lock.lock();
-        reservations.computeIfPresent(output.id(), (id, cache) -> {
-            cache.expiresIn += provisionTimeout();
-            return cache;
-        });
-        lock.unlock();
+        final Lock stripe = stripe(output.id());
+        stripe.lock();
+        try {
+            reservations.computeIfPresent(output.id(), (id, cache) -> {
+                cache.expiresIn += provisionTimeout();
+                return cache;
+            });
+        } finally {
+            stripe.unlock();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public void close() throws Exception {
-        currentRunnable.running = false;
-        reapRunnable.running = false;
+        workers.forEach(worker -> {
+            worker.running = false;
+            worker.signal();
+        });
+        reapRunnable.stop();
     }
 }
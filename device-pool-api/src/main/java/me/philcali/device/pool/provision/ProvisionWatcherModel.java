@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.provision;
+
+import me.philcali.device.pool.exceptions.ProvisioningException;
+import me.philcali.device.pool.model.ApiModel;
+import me.philcali.device.pool.model.ProvisionOutput;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.immutables.value.Value;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * The {@link me.philcali.device.pool.provision.ProvisionWatcher} multiplexes any number of outstanding
+ * provision requests onto a single {@link java.util.concurrent.ScheduledExecutorService}, which only times the
+ * next attempt of each provision. The provision and describe calls themselves, which may be remote, run on a
+ * separate worker {@link java.util.concurrent.ExecutorService}, so a slow describe never delays the schedule of
+ * other provisions. Each watched provision is described on its own schedule, backing off exponentially (with jitter) while the provision
+ * makes no progress and snapping back to the initial delay whenever the described
+ * {@link me.philcali.device.pool.model.ProvisionOutput} changes. The resulting
+ * {@link java.util.concurrent.CompletableFuture} completes on a terminal status, and cancelling the
+ * future removes the provision from the watcher.
+ * <br>
+ * <pre>
+ *     ProvisionWatcher watcher = ProvisionWatcher.shared();
+ *     CompletableFuture&lt;ProvisionOutput&gt; future = watcher.watch(output, provisionService::describe);
+ * </pre>
+ */
+@ApiModel
+@Value.Immutable
+abstract class ProvisionWatcherModel implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(ProvisionWatcher.class);
+
+    private static final class SharedHolder {
+        private static final ProvisionWatcher INSTANCE = ProvisionWatcher.builder().build();
+    }
+
+    /**
+     * The process wide {@link me.philcali.device.pool.provision.ProvisionWatcher}, used by default
+     * for every {@link me.philcali.device.pool.DevicePool} provision workflow.
+     *
+     * @return the shared {@link me.philcali.device.pool.provision.ProvisionWatcher} instance
+     */
+    public static ProvisionWatcher shared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * <p>create.</p>
+     *
+     * @return a {@link me.philcali.device.pool.provision.ProvisionWatcher} object
+     */
+    public static ProvisionWatcher create() {
+        return ProvisionWatcher.builder().build();
+    }
+
+    /**
+     * The delay, in milliseconds, used after a provision is first watched or makes progress.
+     *
+     * @return the initial delay in milliseconds
+     */
+    @Value.Default
+    long initialDelay() {
+        return 100;
+    }
+
+    /**
+     * The upper bound, in milliseconds, of the delay between describing a single provision.
+     *
+     * @return the maximum delay in milliseconds
+     */
+    @Value.Default
+    long maxDelay() {
+        return TimeUnit.SECONDS.toMillis(5);
+    }
+
+    /**
+     * The factor applied to the delay each time a describe results in no progress.
+     *
+     * @return the backoff multiplier
+     */
+    @Value.Default
+    double multiplier() {
+        return 2.0;
+    }
+
+    /**
+     * The fraction of each delay that is randomized, to keep provisions from polling in lock step.
+     *
+     * @return the jitter fraction between 0 and 1
+     */
+    @Value.Default
+    double jitter() {
+        return 0.2;
+    }
+
+    @Value.Default
+    ScheduledExecutorService executorService() {
+        return Executors.newScheduledThreadPool(2, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("Provision-Watcher");
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the provision and describe calls of every watch, which may block on a control plane.
+     *
+     * @return the {@link java.util.concurrent.ExecutorService} describing provisions
+     */
+    @Value.Default
+    ExecutorService workerExecutorService() {
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("Provision-Watcher-Worker");
+            return thread;
+        });
+    }
+
+    /**
+     * The watches in flight, which are state of this watcher rather than part of its value.
+     *
+     * @return the set of outstanding watches
+     */
+    @Value.Lazy
+    Set<Watch> watches() {
+        return ConcurrentHashMap.newKeySet();
+    }
+
+    @Value.Check
+    void validate() {
+        if (initialDelay() <= 0 || maxDelay() < initialDelay()) {
+            throw new IllegalArgumentException("initialDelay must be positive and no greater than maxDelay");
+        }
+        if (multiplier() < 1.0) {
+            throw new IllegalArgumentException("multiplier must be at least 1.0");
+        }
+        if (jitter() < 0.0 || jitter() > 1.0) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+    }
+
+    final class Watch implements Runnable {
+        private final CompletableFuture<ProvisionOutput> future = new CompletableFuture<>();
+        private final Supplier<ProvisionOutput> initial;
+        private final UnaryOperator<ProvisionOutput> describe;
+        private final Consumer<ProvisionOutput> progress;
+        private volatile ScheduledFuture<?> scheduled;
+        private ProvisionOutput last;
+        private long delay = initialDelay();
+
+        Watch(
+                Supplier<ProvisionOutput> initial,
+                UnaryOperator<ProvisionOutput> describe,
+                Consumer<ProvisionOutput> progress) {
+            this.initial = initial;
+            this.describe = describe;
+            this.progress = progress;
+        }
+
+        void schedule(long millis) {
+            try {
+                scheduled = executorService().schedule(this::dispatch, millis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(new ProvisioningException(e));
+            }
+        }
+
+        void dispatch() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                workerExecutorService().execute(this);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(new ProvisioningException(e));
+            }
+        }
+
+        void cancel() {
+            final ScheduledFuture<?> current = scheduled;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+
+        private long nextDelay(ProvisionOutput previous, ProvisionOutput next) {
+            if (next.equals(previous)) {
+                delay = Math.min(maxDelay(), (long) (delay * multiplier()));
+            } else {
+                delay = initialDelay();
+            }
+            final double spread = delay * jitter();
+            return delay - (long) (spread * ThreadLocalRandom.current().nextDouble());
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                if (last == null) {
+                    last = initial.get();
+                }
+                final ProvisionOutput next = describe.apply(last);
+                progress.accept(next);
+                if (next.status().isTerminal()) {
+                    future.complete(next);
+                    return;
+                }
+                final long wait = nextDelay(last, next);
+                last = next;
+                LOGGER.debug("Provision {} is {}, describing again in {}ms", next.id(), next.status(), wait);
+                schedule(wait);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Watches a provision that has already been created. The first describe happens immediately.
+     *
+     * @param output the {@link me.philcali.device.pool.model.ProvisionOutput} handle of a created provision
+     * @param describe the describe function of a {@link me.philcali.device.pool.provision.ProvisionService} or
+     *                 {@link me.philcali.device.pool.DevicePool}
+     * @return a {@link java.util.concurrent.CompletableFuture} of the terminal {@link me.philcali.device.pool.model.ProvisionOutput}
+     */
+    public CompletableFuture<ProvisionOutput> watch(ProvisionOutput output, UnaryOperator<ProvisionOutput> describe) {
+        return watch(() -> output, describe);
+    }
+
+    /**
+     * Creates and watches a provision. The supplier runs on the watcher, followed by an immediate describe,
+     * so the caller never blocks on control plane calls.
+     *
+     * @param initial supplier of the initial {@link me.philcali.device.pool.model.ProvisionOutput}, ie: the provision call
+     * @param describe the describe function of a {@link me.philcali.device.pool.provision.ProvisionService} or
+     *                 {@link me.philcali.device.pool.DevicePool}
+     * @return a {@link java.util.concurrent.CompletableFuture} of the terminal {@link me.philcali.device.pool.model.ProvisionOutput}
+     */
+    public CompletableFuture<ProvisionOutput> watch(
+            Supplier<ProvisionOutput> initial,
+            UnaryOperator<ProvisionOutput> describe) {
+        return watch(initial, describe, output -> { });
+    }
+
+    /**
+     * Creates and watches a provision, handing every described {@link me.philcali.device.pool.model.ProvisionOutput},
+     * including the terminal one, to a progress callback before the future completes. The callback runs on the
+     * watcher and should not block.
+     *
+     * @param initial supplier of the initial {@link me.philcali.device.pool.model.ProvisionOutput}, ie: the provision call
+     * @param describe the describe function of a {@link me.philcali.device.pool.provision.ProvisionService} or
+     *                 {@link me.philcali.device.pool.DevicePool}
+     * @param progress callback receiving each described {@link me.philcali.device.pool.model.ProvisionOutput}
+     * @return a {@link java.util.concurrent.CompletableFuture} of the terminal {@link me.philcali.device.pool.model.ProvisionOutput}
+     */
+    public CompletableFuture<ProvisionOutput> watch(
+            Supplier<ProvisionOutput> initial,
+            UnaryOperator<ProvisionOutput> describe,
+            Consumer<ProvisionOutput> progress) {
+        final Watch watch = new Watch(initial, describe, progress);
+        watches().add(watch);
+        watch.future.whenComplete((output, error) -> {
+            watches().remove(watch);
+            watch.cancel();
+        });
+        watch.dispatch();
+        return watch.future;
+    }
+
+    /**
+     * The number of provisions currently being watched.
+     *
+     * @return the amount of outstanding watches
+     */
+    public int activeWatches() {
+        return watches().size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        watches().forEach(watch -> watch.future.cancel(true));
+        executorService().shutdown();
+        workerExecutorService().shutdown();
+    }
+}
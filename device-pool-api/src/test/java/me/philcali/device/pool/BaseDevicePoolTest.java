@@ -10,6 +10,7 @@ import me.philcali.device.pool.connection.Connection;
 import me.philcali.device.pool.connection.ConnectionFactory;
 import me.philcali.device.pool.content.ContentTransferAgent;
 import me.philcali.device.pool.content.ContentTransferAgentFactory;
+import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.exceptions.ProvisioningException;
 import me.philcali.device.pool.model.Host;
 import me.philcali.device.pool.model.PlatformOS;
@@ -26,8 +27,11 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
@@ -35,6 +39,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith({MockitoExtension.class})
 class BaseDevicePoolTest {
@@ -170,6 +175,71 @@ class BaseDevicePoolTest {
         assertThrows(ProvisioningException.class, () -> pool.provisionSync(input, 10, TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    void GIVEN_pool_is_created_WHEN_obtain_partially_fails_THEN_obtained_devices_are_closed() throws Exception {
+        Host firstHost = Host.builder()
+                .deviceId("device-1")
+                .hostName("10.0.0.1")
+                .platform(PlatformOS.of("Linux", "aarch64"))
+                .build();
+        Host secondHost = Host.builder()
+                .from(firstHost)
+                .deviceId("device-2")
+                .hostName("10.0.0.2")
+                .build();
+        ProvisionOutput output = ProvisionOutput.builder()
+                .id("abc-efg")
+                .addReservations(Reservation.of(firstHost.deviceId(), Status.SUCCEEDED))
+                .addReservations(Reservation.of(secondHost.deviceId(), Status.SUCCEEDED))
+                .addReservations(Reservation.of("device-3", Status.FAILED))
+                .build();
+
+        Connection connection = mock(Connection.class);
+        ContentTransferAgent transfer = mock(ContentTransferAgent.class);
+        when(reservationService.exchange(eq(Reservation.of(firstHost.deviceId(), Status.SUCCEEDED))))
+                .thenReturn(firstHost);
+        when(reservationService.exchange(eq(Reservation.of(secondHost.deviceId(), Status.SUCCEEDED))))
+                .thenReturn(secondHost);
+        when(connections.connect(eq(firstHost))).thenReturn(connection);
+        when(connections.connect(eq(secondHost))).thenThrow(new ConnectionException("Connection refused"));
+        when(transfers.connect(eq(output.id()), eq(connection), eq(firstHost))).thenReturn(transfer);
+
+        assertThrows(ProvisioningException.class, () -> pool.obtain(output));
+
+        verify(connection).close();
+        verify(transfer).close();
+    }
+
+    @Test
+    void GIVEN_pool_is_created_WHEN_obtain_is_called_THEN_devices_are_obtained_concurrently() throws Exception {
+        CountDownLatch connecting = new CountDownLatch(3);
+        doReturn(mock(ContentTransferAgent.class)).when(transfers)
+                .connect(eq("abc-efg"), any(Connection.class), any(Host.class));
+        ProvisionOutput.Builder builder = ProvisionOutput.builder().id("abc-efg");
+        for (int index = 0; index < 3; index++) {
+            String deviceId = "device-" + index;
+            Host host = Host.builder()
+                    .deviceId(deviceId)
+                    .hostName("10.0.0." + index)
+                    .platform(PlatformOS.of("Linux", "aarch64"))
+                    .build();
+            builder.addReservations(Reservation.of(deviceId, Status.SUCCEEDED));
+            when(reservationService.exchange(eq(Reservation.of(deviceId, Status.SUCCEEDED)))).thenReturn(host);
+            when(connections.connect(eq(host))).thenAnswer(invocation -> {
+                // Every connection must be in flight at the same time to get passed the latch
+                connecting.countDown();
+                assertTrue(connecting.await(5, TimeUnit.SECONDS));
+                return mock(Connection.class);
+            });
+        }
+
+        List<Device> devices = pool.obtain(builder.build());
+
+        assertEquals(3, devices.size());
+        assertEquals("device-0", devices.get(0).id());
+        assertEquals("device-2", devices.get(2).id());
+    }
+
     @Test
     void GIVEN_pool_is_created_WHEN_pool_closes_THEN_all_closeables_are_called() throws Exception {
         pool.close();
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool;
+
+import me.philcali.device.pool.content.StagingContentTransferAgent;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.exceptions.DeviceInteractionException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.DeviceResult;
+import me.philcali.device.pool.model.ExecutionSummary;
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceGroupTest {
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private final class TestDevice implements Device {
+        private final String id;
+        private final int exitCode;
+
+        TestDevice(String id, int exitCode) {
+            this.id = id;
+            this.exitCode = exitCode;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public CommandOutput execute(CommandInput input) throws DeviceInteractionException {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(20);
+                if (exitCode < 0) {
+                    throw new DeviceInteractionException("Could not reach " + id);
+                }
+                return CommandOutput.builder()
+                        .originalInput(input)
+                        .exitCode(exitCode)
+                        .stdout(id.getBytes())
+                        .build();
+            } catch (InterruptedException e) {
+                throw new DeviceInteractionException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void copyTo(CopyInput input) throws DeviceInteractionException {
+        }
+
+        @Override
+        public void copyFrom(CopyInput input) throws DeviceInteractionException {
+        }
+    }
+
+    private static final class TestStagingAgent implements StagingContentTransferAgent {
+        private final String location;
+        private final AtomicInteger staged;
+        private final List<CopyInput> delivered;
+        private final List<CopyInput> sent;
+
+        TestStagingAgent(String location, AtomicInteger staged, List<CopyInput> delivered, List<CopyInput> sent) {
+            this.location = location;
+            this.staged = staged;
+            this.delivered = delivered;
+            this.sent = sent;
+        }
+
+        @Override
+        public String stagingLocation() {
+            return location;
+        }
+
+        @Override
+        public CopyInput stage(CopyInput input) throws ContentTransferException {
+            staged.incrementAndGet();
+            return CopyInput.builder().from(input).source("staged://" + input.source()).build();
+        }
+
+        @Override
+        public void deliver(CopyInput staged) throws ContentTransferException {
+            delivered.add(staged);
+        }
+
+        @Override
+        public void send(CopyInput input) throws ContentTransferException {
+            sent.add(input);
+        }
+
+        @Override
+        public void receive(CopyInput input) throws ContentTransferException {
+        }
+    }
+
+    private static Device stagingDevice(String deviceId, StagingContentTransferAgent agent) {
+        return BaseDevice.builder()
+                .host(Host.builder()
+                        .deviceId(deviceId)
+                        .platform(PlatformOS.of("Linux", "aarch64"))
+                        .hostName("host-" + deviceId)
+                        .build())
+                .connection(input -> {
+                    throw new AssertionError("Copies should not execute commands");
+                })
+                .contentTransfer(agent)
+                .build();
+    }
+
+    private List<Device> devices(int... exitCodes) {
+        return IntStream.range(0, exitCodes.length)
+                .mapToObj(index -> new TestDevice("device-" + index, exitCodes[index]))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void GIVEN_device_group_WHEN_executing_THEN_results_stream_with_bounded_concurrency() {
+        final List<DeviceResult> streamed = Collections.synchronizedList(new ArrayList<>());
+        try (DeviceGroup group = DeviceGroup.builder()
+                .devices(devices(0, 0, 0, 0, 0, 0))
+                .concurrency(2)
+                .build()) {
+            ExecutionSummary summary = group.execute(CommandInput.of("echo"), streamed::add);
+
+            assertTrue(summary.succeeded());
+            assertEquals(6, streamed.size());
+            assertEquals(summary.results(), streamed);
+            assertTrue(summary.skipped().isEmpty());
+            assertTrue(summary.failures().isEmpty());
+            assertTrue(maxRunning.get() <= 2, "at most 2 devices ran at once, but saw " + maxRunning.get());
+            Map<String, Integer> exitCodes = summary.exitCodes();
+            assertEquals(6, exitCodes.size());
+            assertTrue(exitCodes.values().stream().allMatch(code -> code == 0));
+            summary.results().forEach(result -> assertTrue(result.duration().toMillis() >= 20));
+        }
+    }
+
+    @Test
+    void GIVEN_device_group_WHEN_devices_fail_THEN_failures_are_summarized() {
+        try (DeviceGroup group = DeviceGroup.builder()
+                .devices(devices(0, 2, -1, 0))
+                .build()) {
+            ExecutionSummary summary = group.execute(CommandInput.of("echo"));
+
+            assertFalse(summary.succeeded());
+            assertEquals(4, summary.results().size());
+            assertEquals(Arrays.asList("device-1", "device-2"), summary.failures().stream()
+                    .map(DeviceResult::deviceId)
+                    .sorted()
+                    .collect(Collectors.toList()));
+            assertEquals(Integer.valueOf(2), summary.exitCodes().get("device-1"));
+            assertFalse(summary.exitCodes().containsKey("device-2"));
+            DeviceResult unreachable = summary.failures().stream()
+                    .filter(result -> result.deviceId().equals("device-2"))
+                    .findFirst()
+                    .orElseThrow(AssertionError::new);
+            assertNotNull(unreachable.error());
+        }
+    }
+
+    @Test
+    void GIVEN_device_group_fails_fast_WHEN_device_fails_THEN_remaining_devices_are_skipped() {
+        try (DeviceGroup group = DeviceGroup.builder()
+                .devices(devices(0, 1, 0, 0))
+                .concurrency(1)
+                .failFast(true)
+                .build()) {
+            ExecutionSummary summary = group.execute(CommandInput.of("echo"));
+
+            assertFalse(summary.succeeded());
+            assertEquals(2, summary.results().size());
+            assertEquals(Arrays.asList("device-2", "device-3"), summary.skipped());
+        }
+    }
+
+    @Test
+    void GIVEN_staging_agents_WHEN_copying_THEN_content_is_staged_once_and_delivered_to_every_device() {
+        final AtomicInteger staged = new AtomicInteger();
+        final List<CopyInput> delivered = Collections.synchronizedList(new ArrayList<>());
+        final List<CopyInput> sent = Collections.synchronizedList(new ArrayList<>());
+        final List<Device> devices = new ArrayList<>();
+        IntStream.range(0, 4).forEach(index -> devices.add(stagingDevice("staged-" + index,
+                new TestStagingAgent("staging://shared", staged, delivered, sent))));
+        devices.add(new TestDevice("fallback", 0));
+        try (DeviceGroup group = DeviceGroup.builder().devices(devices).concurrency(2).build()) {
+            ExecutionSummary summary = group.copyTo(CopyInput.builder()
+                    .source("image.bin")
+                    .destination("/opt/image.bin")
+                    .build());
+
+            assertTrue(summary.succeeded());
+            assertEquals(5, summary.results().size());
+            assertEquals(1, staged.get());
+            assertEquals(4, delivered.size());
+            delivered.forEach(input -> assertEquals("staged://image.bin", input.source()));
+            assertTrue(sent.isEmpty());
+        }
+    }
+
+    @Test
+    void GIVEN_staging_agents_with_other_locations_WHEN_copying_THEN_other_devices_copy_on_their_own() {
+        final AtomicInteger staged = new AtomicInteger();
+        final List<CopyInput> delivered = Collections.synchronizedList(new ArrayList<>());
+        final List<CopyInput> sent = Collections.synchronizedList(new ArrayList<>());
+        final List<Device> devices = Arrays.asList(
+                stagingDevice("staged-0", new TestStagingAgent("staging://shared", staged, delivered, sent)),
+                stagingDevice("staged-1", new TestStagingAgent("staging://shared", staged, delivered, sent)),
+                stagingDevice("other-0", new TestStagingAgent("staging://other", staged, delivered, sent)));
+        try (DeviceGroup group = DeviceGroup.builder().devices(devices).concurrency(2).build()) {
+            ExecutionSummary summary = group.copyTo(CopyInput.builder()
+                    .source("image.bin")
+                    .destination("/opt/image.bin")
+                    .build());
+
+            assertTrue(summary.succeeded());
+            assertEquals(1, staged.get());
+            assertEquals(2, delivered.size());
+            assertEquals(1, sent.size());
+            assertEquals("image.bin", sent.get(0).source());
+        }
+    }
+
+    @Test
+    void GIVEN_device_group_is_empty_WHEN_executing_THEN_summary_is_empty() {
+        try (DeviceGroup group = DeviceGroup.builder().build()) {
+            ExecutionSummary summary = group.execute(CommandInput.of("echo"));
+
+            assertTrue(summary.succeeded());
+            assertTrue(summary.results().isEmpty());
+        }
+    }
+
+    @Test
+    void GIVEN_supplied_executor_WHEN_group_is_closed_THEN_executor_keeps_running() {
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            try (DeviceGroup group = DeviceGroup.builder()
+                    .devices(devices(0, 0))
+                    .executorService(executorService)
+                    .build()) {
+                assertTrue(group.execute(CommandInput.of("echo")).succeeded());
+            }
+            assertFalse(executorService.isShutdown());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void GIVEN_default_executor_WHEN_group_is_closed_THEN_executor_is_shut_down() {
+        final DeviceGroup group = DeviceGroup.builder().devices(devices(0)).build();
+        assertTrue(group.execute(CommandInput.of("echo")).succeeded());
+        group.close();
+        assertTrue(group.ownedExecutorService().isShutdown());
+    }
+}
@@ -48,6 +48,7 @@ class DevicePoolTest {
         assertEquals(NoopReservationService.class, baseDevicePool.reservationService().getClass());
         assertEquals(NoopConnectionFactory.class, baseDevicePool.connections().getClass());
         assertEquals(NoopTransferFactory.class, baseDevicePool.transfers().getClass());
+        assertEquals(4, baseDevicePool.obtainParallelism());
     }
 
     @Test
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.connection;
+
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchScriptTest {
+    private final List<CommandInput> executed = new ArrayList<>();
+
+    // Runs commands through a local shell, the same way a remote shell interprets them
+    private final Connection connection = input -> {
+        executed.add(input);
+        try {
+            final String args = Optional.ofNullable(input.args()).map(a -> String.join(" ", a)).orElse("");
+            final Process process = new ProcessBuilder("sh", "-c", input.line() + " " + args).start();
+            final byte[] stdout = process.getInputStream().readAllBytes();
+            final byte[] stderr = process.getErrorStream().readAllBytes();
+            return CommandOutput.builder()
+                    .originalInput(input)
+                    .exitCode(process.waitFor())
+                    .stdout(stdout)
+                    .stderr(stderr)
+                    .build();
+        } catch (IOException | InterruptedException e) {
+            throw new ConnectionException(e);
+        }
+    };
+
+    private static String utf8(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void GIVEN_batch_WHEN_script_runs_THEN_outputs_are_demultiplexed() {
+        final List<CommandInput> inputs = Arrays.asList(
+                CommandInput.of("echo one"),
+                CommandInput.builder().line("printf").addArgs("'no newline'").build(),
+                CommandInput.of("echo err >&2; echo out # trailing comment"),
+                CommandInput.of("cd /; pwd"));
+        final BatchScript script = BatchScript.of(inputs);
+
+        final List<CommandOutput> outputs = script.parse(connection.execute(script.toInput()));
+        assertEquals(4, outputs.size());
+        assertEquals("one\n", utf8(outputs.get(0).stdout()));
+        assertEquals("no newline", utf8(outputs.get(1).stdout()));
+        assertEquals("out\n", utf8(outputs.get(2).stdout()));
+        assertEquals("err\n", utf8(outputs.get(2).stderr()));
+        assertEquals("/\n", outputs.get(3).toUTF8String());
+        for (int index = 0; index < inputs.size(); index++) {
+            assertEquals(inputs.get(index), outputs.get(index).originalInput());
+            assertEquals(0, outputs.get(index).exitCode());
+        }
+        assertEquals(Duration.ofSeconds(120), script.timeout());
+    }
+
+    @Test
+    void GIVEN_failing_command_WHEN_script_runs_THEN_batch_stops() {
+        final BatchScript script = BatchScript.of(Arrays.asList(
+                CommandInput.of("true"),
+                CommandInput.of("echo failing >&2; exit 3"),
+                CommandInput.of("echo never")));
+
+        final List<CommandOutput> outputs = script.parse(connection.execute(script.toInput()));
+        assertEquals(2, outputs.size());
+        assertEquals(3, outputs.get(1).exitCode());
+        assertEquals("failing\n", utf8(outputs.get(1).stderr()));
+    }
+
+    @Test
+    void GIVEN_banner_before_script_WHEN_parsing_THEN_banner_is_skipped() {
+        final BatchScript script = BatchScript.of(Arrays.asList(CommandInput.of("echo one")));
+        final CommandOutput output = connection.execute(script.toInput());
+        final byte[] banner = "Welcome!\n".getBytes(StandardCharsets.UTF_8);
+        final byte[] stdout = new byte[banner.length + output.stdout().length];
+        System.arraycopy(banner, 0, stdout, 0, banner.length);
+        System.arraycopy(output.stdout(), 0, stdout, banner.length, output.stdout().length);
+
+        final List<CommandOutput> outputs = script.parse(CommandOutput.builder().from(output).stdout(stdout).build());
+        assertEquals("one\n", utf8(outputs.get(0).stdout()));
+    }
+
+    @Test
+    void GIVEN_truncated_output_WHEN_parsing_THEN_connection_exception_is_thrown() {
+        final BatchScript script = BatchScript.of(Arrays.asList(
+                CommandInput.of("echo one"),
+                CommandInput.of("echo two")));
+        final CommandOutput output = connection.execute(script.toInput());
+        final String stdout = utf8(output.stdout());
+        final byte[] truncated = stdout.substring(0, stdout.indexOf("one\n") + 4).getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(ConnectionException.class, () -> script.parse(CommandOutput.builder()
+                .from(output)
+                .stdout(truncated)
+                .build()));
+    }
+
+    @Test
+    void GIVEN_truncated_last_frame_WHEN_parsing_THEN_connection_exception_is_thrown() {
+        final BatchScript script = BatchScript.of(Arrays.asList(
+                CommandInput.of("echo one"),
+                CommandInput.of("echo failing; exit 1")));
+        final CommandOutput output = connection.execute(script.toInput());
+        final byte[] truncated = Arrays.copyOf(output.stdout(), output.stdout().length - 4);
+
+        assertThrows(ConnectionException.class, () -> script.parse(CommandOutput.builder()
+                .from(output)
+                .stdout(truncated)
+                .build()));
+    }
+
+    @Test
+    void GIVEN_script_failing_to_run_WHEN_parsing_THEN_connection_exception_is_thrown() {
+        final BatchScript script = BatchScript.of(Arrays.asList(CommandInput.of("echo one")));
+        assertThrows(ConnectionException.class, () -> script.parse(CommandOutput.builder()
+                .exitCode(127)
+                .stdout(new byte[0])
+                .stderr("sh: not found".getBytes(StandardCharsets.UTF_8))
+                .build()));
+    }
+
+    @Test
+    void GIVEN_connection_WHEN_executing_batch_THEN_commands_run_in_turn_until_failure() {
+        final List<CommandOutput> outputs = connection.executeBatch(Arrays.asList(
+                CommandInput.of("echo one"),
+                CommandInput.of("false"),
+                CommandInput.of("echo never")));
+        assertEquals(2, executed.size());
+        assertEquals(2, outputs.size());
+        assertEquals(1, outputs.get(1).exitCode());
+    }
+
+    @Test
+    void GIVEN_command_with_stdin_WHEN_checking_support_THEN_batch_is_not_supported() {
+        assertFalse(BatchScript.supports(Arrays.asList(CommandInput.builder()
+                .line("cat")
+                .input("Hello".getBytes(StandardCharsets.UTF_8))
+                .build())));
+        assertFalse(BatchScript.supports(new ArrayList<>()));
+    }
+}
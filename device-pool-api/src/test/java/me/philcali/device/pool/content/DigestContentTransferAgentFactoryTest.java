@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.content;
+
+import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.CopyOption;
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DigestContentTransferAgentFactoryTest {
+    private Path tempDir;
+    private Path remote;
+    private final List<CopyInput> sent = Collections.synchronizedList(new ArrayList<>());
+    private ContentTransferAgent agent;
+
+    // Runs commands through a local shell, the same way a remote shell interprets them
+    private final Connection connection = input -> {
+        try {
+            final Process process = new ProcessBuilder("sh", "-c", input.line() + " " + String.join(" ", input.args()))
+                    .start();
+            final byte[] stdout = process.getInputStream().readAllBytes();
+            return CommandOutput.builder()
+                    .originalInput(input)
+                    .exitCode(process.waitFor())
+                    .stdout(stdout)
+                    .build();
+        } catch (IOException | InterruptedException e) {
+            throw new ConnectionException(e);
+        }
+    };
+
+    // Copies locally, following the same destination rules as the remote agents
+    private final ContentTransferAgent copying = new ContentTransferAgent() {
+        @Override
+        public void send(CopyInput input) throws ContentTransferException {
+            sent.add(input);
+            final Path source = Paths.get(input.source());
+            final Path destination = Paths.get(input.destination());
+            final Path target = Files.isDirectory(destination)
+                    ? destination.resolve(source.getFileName().toString())
+                    : destination;
+            try (Stream<Path> walk = Files.walk(source)) {
+                for (Path file : walk.collect(Collectors.toList())) {
+                    final Path copy = target.resolve(source.relativize(file).toString());
+                    if (Files.isDirectory(file)) {
+                        Files.createDirectories(copy);
+                    } else {
+                        Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            } catch (IOException e) {
+                throw new ContentTransferException(e);
+            }
+        }
+
+        @Override
+        public void receive(CopyInput input) throws ContentTransferException {
+        }
+    };
+
+    private final ContentTransferAgentFactory factory = new ContentTransferAgentFactory() {
+        @Override
+        public ContentTransferAgent connect(String provisionId, Connection connection, Host host) {
+            return copying;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final Host host = Host.builder()
+            .deviceId("device-id")
+            .hostName("localhost")
+            .platform(PlatformOS.of("Linux", "aarch64"))
+            .build();
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory("test-digest-");
+        remote = Files.createDirectories(tempDir.resolve("remote"));
+        agent = DigestContentTransferAgentFactory.of(factory).connect("provision-id", connection, host);
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    private Path write(Path file, String content) {
+        try {
+            Files.createDirectories(file.getParent());
+            return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void GIVEN_tree_on_device_WHEN_sending_THEN_only_changed_files_are_sent() throws IOException {
+        final Path source = tempDir.resolve("app");
+        write(source.resolve("a.txt"), "a");
+        write(source.resolve("lib").resolve("b.txt"), "b");
+        write(source.resolve("it's.txt"), "quoted");
+        final CopyInput input = CopyInput.builder()
+                .source(source.toString())
+                .destination(remote.toString())
+                .addOptions(CopyOption.RECURSIVE)
+                .build();
+
+        agent.send(input);
+        assertEquals(Collections.singletonList(input), sent);
+        assertEquals("b", Files.readString(remote.resolve("app").resolve("lib").resolve("b.txt")));
+
+        sent.clear();
+        agent.send(input);
+        assertTrue(sent.isEmpty(), "unchanged tree was sent again: " + sent);
+
+        write(source.resolve("lib").resolve("b.txt"), "changed");
+        write(source.resolve("new").resolve("c.txt"), "c");
+        sent.clear();
+        agent.send(input);
+        assertEquals(1, sent.size());
+        assertEquals(input.options(), sent.get(0).options());
+        assertEquals(input.destination(), sent.get(0).destination());
+        assertFalse(Files.exists(Paths.get(sent.get(0).source())));
+        assertEquals("changed", Files.readString(remote.resolve("app").resolve("lib").resolve("b.txt")));
+        assertEquals("c", Files.readString(remote.resolve("app").resolve("new").resolve("c.txt")));
+        assertEquals("a", Files.readString(remote.resolve("app").resolve("a.txt")));
+    }
+
+    @Test
+    void GIVEN_file_on_device_WHEN_sending_THEN_file_is_sent_only_if_different() {
+        final Path source = write(tempDir.resolve("image.bin"), "image");
+        final CopyInput input = CopyInput.builder()
+                .source(source.toString())
+                .destination(remote.toString())
+                .build();
+
+        agent.send(input);
+        agent.send(input);
+        assertEquals(1, sent.size());
+
+        write(remote.resolve("image.bin"), "corrupted");
+        agent.send(input);
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    void GIVEN_device_without_digests_WHEN_sending_THEN_wrapped_agent_sends() {
+        final Path source = write(tempDir.resolve("image.bin"), "image");
+        final ContentTransferAgent unreachable = DigestContentTransferAgentFactory.of(factory)
+                .connect("provision-id", input -> {
+                    throw new ConnectionException("sha256sum: not found");
+                }, host);
+
+        unreachable.send(CopyInput.builder()
+                .source(source.toString())
+                .destination(remote.toString())
+                .build());
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void GIVEN_content_digests_WHEN_file_changes_THEN_digest_is_recomputed() throws IOException {
+        final ContentDigests digests = ContentDigests.create(1);
+        final Path file = write(tempDir.resolve("file.txt"), "Hello World!");
+        final String digest = digests.sha256(file);
+        assertEquals("7f83b1657ff1fc53b92dc18148a1d65dfc2d4b1fa3d677284addd200126d9069", digest);
+        assertEquals(digest, digests.sha256(file));
+
+        write(file, "Goodbye World!");
+        assertNotEquals(digest, digests.sha256(file));
+        assertEquals(ContentDigests.digest(file), digests.sha256(file));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.content;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TarArchiveTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tempDir = Files.createTempDirectory("test-tar-");
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    @Test
+    void GIVEN_directory_tree_WHEN_archived_and_extracted_THEN_tree_is_identical() throws IOException {
+        final Path source = Files.createDirectories(tempDir.resolve("source").resolve("a").resolve("b")).getParent().getParent();
+        final byte[] binary = new byte[70000];
+        Arrays.fill(binary, (byte) 7);
+        Files.write(source.resolve("a").resolve("hello.txt"), "Hello World".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve("a").resolve("b").resolve("binary"), binary);
+        final char[] longName = new char[180];
+        Arrays.fill(longName, 'x');
+        Files.write(source.resolve(new String(longName)), "long".getBytes(StandardCharsets.UTF_8));
+
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        TarArchive.write(source, archive);
+        assertEquals(0, archive.size() % 512);
+
+        final Path target = tempDir.resolve("target");
+        TarArchive.extract(new ByteArrayInputStream(archive.toByteArray()), target);
+        assertEquals("Hello World", Files.readString(target.resolve("a").resolve("hello.txt")));
+        assertArrayEquals(binary, Files.readAllBytes(target.resolve("a").resolve("b").resolve("binary")));
+        assertEquals("long", Files.readString(target.resolve(new String(longName))));
+        assertFalse(Files.exists(target.resolve("a").resolve("hello.txt.part")));
+    }
+
+    @Test
+    void GIVEN_entry_outside_of_destination_WHEN_extracted_THEN_archive_is_rejected() throws IOException {
+        final Path source = Files.createDirectories(tempDir.resolve("source"));
+        Files.write(source.resolve("evil"), "evil".getBytes(StandardCharsets.UTF_8));
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        TarArchive.write(source, archive);
+        final byte[] bytes = archive.toByteArray();
+        // Rename the entry to ../evil, keeping the header checksum valid
+        final byte[] name = "../evil".getBytes(StandardCharsets.US_ASCII);
+        long checksum = Long.parseLong(new String(bytes, 148, 6, StandardCharsets.US_ASCII), 8);
+        for (int index = 0; index < name.length; index++) {
+            checksum += name[index] - bytes[index];
+            bytes[index] = name[index];
+        }
+        System.arraycopy(String.format("%06o", checksum).getBytes(StandardCharsets.US_ASCII), 0, bytes, 148, 6);
+
+        final Path target = tempDir.resolve("target");
+        assertThrows(IOException.class, () -> TarArchive.extract(new ByteArrayInputStream(bytes), target));
+        assertFalse(Files.exists(tempDir.resolve("evil")));
+    }
+
+    @Test
+    void GIVEN_existing_directory_WHEN_resolving_target_THEN_tree_is_received_by_name() {
+        assertEquals(tempDir.resolve("logs"), TarArchive.target("/var/logs/", tempDir));
+        assertEquals(tempDir.resolve("missing"), TarArchive.target("/var/logs", tempDir.resolve("missing")));
+        assertTrue(TarArchive.extractScript("-", "/opt/app", "it's", true).contains("'it'\\''s'"));
+    }
+
+    @Test
+    void GIVEN_permissions_WHEN_converting_to_mode_THEN_mode_has_permission_bits() {
+        assertEquals(0755, TarArchive.mode(PosixFilePermissions.fromString("rwxr-xr-x")));
+        assertEquals(0640, TarArchive.mode(PosixFilePermissions.fromString("rw-r-----")));
+    }
+}
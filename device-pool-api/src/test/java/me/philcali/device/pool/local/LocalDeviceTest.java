@@ -7,6 +7,7 @@
 package me.philcali.device.pool.local;
 
 import me.philcali.device.pool.Device;
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.exceptions.DeviceInteractionException;
 import me.philcali.device.pool.model.CommandInput;
 import me.philcali.device.pool.model.CommandOutput;
@@ -16,16 +17,24 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LocalDeviceTest implements FileMixin {
 
@@ -75,6 +84,61 @@ class LocalDeviceTest implements FileMixin {
                 .build()));
     }
 
+    @Test
+    void GIVEN_local_device_is_created_WHEN_execute_streaming_is_invoked_THEN_output_is_streamed() {
+        AtomicLong stdout = new AtomicLong();
+        AtomicInteger largestChunk = new AtomicInteger();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        CommandOutput output = device.executeStreaming(CommandInput.builder()
+                .line("sh")
+                .addArgs("-c", "head -c 1048576 /dev/zero; echo failed >&2")
+                .build(), new OutputSink() {
+            @Override
+            public void stdout(ByteBuffer chunk) {
+                largestChunk.accumulateAndGet(chunk.remaining(), Math::max);
+                stdout.addAndGet(chunk.remaining());
+            }
+
+            @Override
+            public void stderr(ByteBuffer chunk) {
+                stderr.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            }
+        });
+        assertEquals(0, output.exitCode());
+        assertNull(output.stdout());
+        assertEquals(1048576, stdout.get());
+        assertTrue(largestChunk.get() <= 8192);
+        assertEquals("failed\n", stderr.toString(StandardCharsets.UTF_8));
+
+        CommandOutput large = device.execute(CommandInput.builder()
+                .line("head")
+                .addArgs("-c", "262144", "/dev/zero")
+                .timeout(Duration.ofSeconds(5))
+                .build());
+        assertEquals(262144, large.stdout().length);
+    }
+
+    @Test
+    void GIVEN_local_device_spills_WHEN_execute_is_invoked_THEN_large_output_is_returned() throws IOException {
+        Path spillDir = Files.createTempDirectory("host-2-");
+        try (Device spilling = LocalDevice.builder()
+                .baseDirectory(spillDir)
+                .id("host-2")
+                .spillThreshold(4096)
+                .build()) {
+            byte[] input = new byte[1024 * 1024];
+            Arrays.fill(input, (byte) 'a');
+            CommandOutput output = spilling.execute(CommandInput.builder()
+                    .line("cat")
+                    .input(input)
+                    .timeout(Duration.ofSeconds(10))
+                    .build());
+            assertEquals(0, output.exitCode());
+            assertArrayEquals(input, output.stdout());
+            assertNull(output.stderr());
+        }
+    }
+
     @Test
     void GIVEN_local_device_is_created_WHEN_copy_to_is_invoked_THEN_files_are_copied() throws IOException {
         Path sub = testDir.resolve("sub");
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.provision;
+
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HostInventoryTest {
+    private HostInventory inventory;
+
+    private Host host(int index) {
+        return Host.builder()
+                .hostName("host-" + index)
+                .deviceId("instance-" + index)
+                .platform(PlatformOS.of("Linux", "armv8"))
+                .build();
+    }
+
+    @BeforeEach
+    void setUp() {
+        inventory = new HostInventory();
+        for (int index = 0; index < 3; index++) {
+            assertTrue(inventory.add(host(index)));
+        }
+    }
+
+    @Test
+    void GIVEN_inventory_WHEN_hosts_are_polled_THEN_each_host_is_handed_out_once() {
+        assertFalse(inventory.add(host(0)));
+        Set<Host> polled = new HashSet<>();
+        Host host;
+        while ((host = inventory.poll()) != null) {
+            assertTrue(polled.add(host));
+        }
+        assertEquals(3, polled.size());
+        assertEquals(0, inventory.availableSize());
+        assertEquals(Optional.of(host(1)), inventory.find("instance-1"));
+
+        assertTrue(inventory.release("instance-1"));
+        assertFalse(inventory.release("instance-1"));
+        assertFalse(inventory.release("instance-99"));
+        assertTrue(inventory.isAvailable("instance-1"));
+        assertEquals(host(1), inventory.poll());
+        assertNull(inventory.poll());
+    }
+
+    @Test
+    void GIVEN_inventory_WHEN_hosts_are_removed_THEN_stale_entries_are_skipped() {
+        assertTrue(inventory.remove(host(0)));
+        assertFalse(inventory.remove(host(0)));
+        assertFalse(inventory.release("instance-0"));
+        assertEquals(Optional.empty(), inventory.find("instance-0"));
+        assertEquals(2, inventory.size());
+
+        // Re-adding leaves a stale free list entry behind, which must not double hand out
+        assertTrue(inventory.add(host(0)));
+        Set<Host> polled = new HashSet<>();
+        Host host;
+        while ((host = inventory.poll()) != null) {
+            assertTrue(polled.add(host));
+        }
+        assertEquals(3, polled.size());
+    }
+
+    @Test
+    void GIVEN_inventory_WHEN_polling_by_platform_THEN_only_matching_hosts_are_returned() {
+        inventory.add(Host.builder()
+                .hostName("windows")
+                .deviceId("windows-0")
+                .platform(PlatformOS.of("windows", "x86_64"))
+                .putAttributes("gpu", "nvidia")
+                .build());
+
+        assertNull(inventory.poll(PlatformOS.of("Linux", "armv6"), host -> true));
+        assertNull(inventory.poll(PlatformOS.of("windows", "x86_64"), host -> host.attributes().isEmpty()));
+        assertEquals(1, inventory.availableSize(PlatformOS.of("windows", "x86_64")));
+        assertEquals(4, inventory.availableSize(null));
+
+        Host windows = inventory.poll(PlatformOS.of("windows", "x86_64"), host -> host.attributes().containsKey("gpu"));
+        assertEquals("windows-0", windows.deviceId());
+        assertFalse(inventory.isAvailable("windows-0"));
+        assertEquals(3, inventory.availableSize(PlatformOS.of("Linux", "armv8")));
+    }
+}
@@ -20,6 +20,7 @@ import me.philcali.device.pool.model.Host;
 import me.philcali.device.pool.model.PlatformOS;
 import me.philcali.device.pool.model.ProvisionInput;
 import me.philcali.device.pool.model.ProvisionOutput;
+import me.philcali.device.pool.model.Status;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -31,6 +32,8 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +41,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -204,6 +208,197 @@ class LocalProvisionServiceTest {
         service.close();
     }
 
+    @Test
+    void GIVEN_local_service_is_created_WHEN_streaming_THEN_devices_arrive_before_provision_completes() throws Exception {
+        doReturn(connection).when(connections).connect(any(Host.class));
+        doReturn(agent).when(transfers).connect(anyString(), eq(connection), any(Host.class));
+
+        List<Device> devices = devicePool.provisionSync(ProvisionInput.builder()
+                .id("first-test")
+                .amount(18)
+                .build(), 10, TimeUnit.SECONDS);
+        assertEquals(18, devices.size());
+
+        List<Device> streamed = new CopyOnWriteArrayList<>();
+        CompletableFuture<List<Device>> future = devicePool.provisionStream(ProvisionInput.builder()
+                .id("stream-test")
+                .amount(3)
+                .build(), streamed::add);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (streamed.size() < 2 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(2, streamed.size());
+        assertFalse(future.isDone());
+
+        service.release(devices.get(0));
+        List<Device> completed = future.get(5, TimeUnit.SECONDS);
+        assertEquals(3, completed.size());
+        assertEquals(streamed, completed);
+        assertTrue(completed.stream().anyMatch(device -> device.id().equals(devices.get(0).id())));
+
+        service.close();
+    }
+
+    @Test
+    void GIVEN_local_service_is_created_WHEN_large_provision_is_waiting_THEN_small_provision_is_not_blocked() throws Exception {
+        doReturn(connection).when(connections).connect(any(Host.class));
+        doReturn(agent).when(transfers).connect(anyString(), eq(connection), any(Host.class));
+        service = LocalProvisionService.builder()
+                .addAllHosts(seededHosts)
+                .workers(1)
+                .provisionTimeout(TimeUnit.SECONDS.toMillis(5))
+                .build();
+        devicePool = BaseDevicePool.builder()
+                .connections(connections)
+                .transfers(transfers)
+                .provisionAndReservationService(service)
+                .build();
+
+        List<Device> devices = devicePool.provisionSync(ProvisionInput.builder()
+                .id("first-test")
+                .amount(19)
+                .build(), 10, TimeUnit.SECONDS);
+        ProvisionOutput large = service.provision(ProvisionInput.builder()
+                .id("large-test")
+                .amount(5)
+                .build());
+        ProvisionOutput small = service.provision(ProvisionInput.builder()
+                .id("small-test")
+                .amount(1)
+                .build());
+
+        devices.stream().limit(2).forEach(service::release);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!(service.describe(small).succeeded() && service.describe(large).reservations().size() == 2)
+                && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertTrue(service.describe(small).succeeded());
+        assertEquals(Status.PROVISIONING, service.describe(large).status());
+        assertEquals(2, service.describe(large).reservations().size());
+
+        assertThrows(IllegalArgumentException.class, () -> LocalProvisionService.builder()
+                .addAllHosts(seededHosts)
+                .workers(0)
+                .build());
+        service.close();
+    }
+
+    @Test
+    void GIVEN_unsatisfiable_provision_is_waiting_WHEN_large_provision_is_waiting_THEN_large_provision_accumulates() throws Exception {
+        service = LocalProvisionService.builder()
+                .addAllHosts(seededHosts)
+                .workers(1)
+                .provisionTimeout(TimeUnit.SECONDS.toMillis(5))
+                .build();
+
+        ProvisionOutput missing = service.provision(ProvisionInput.builder()
+                .id("missing-test")
+                .platform(PlatformOS.of("Linux", "armv6"))
+                .build());
+        ProvisionOutput first = service.provision(ProvisionInput.builder()
+                .id("first-test")
+                .amount(17)
+                .build());
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!service.describe(first).succeeded() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        // Only three hosts remain, so the large provision has to accumulate them
+        ProvisionOutput large = service.provision(ProvisionInput.builder()
+                .id("large-test")
+                .amount(5)
+                .build());
+
+        deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (service.describe(large).reservations().size() < 3 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(3, service.describe(large).reservations().size());
+        assertEquals(Status.PROVISIONING, service.describe(missing).status());
+        service.close();
+    }
+
+    @Test
+    void GIVEN_local_service_is_created_WHEN_provisions_expire_THEN_extended_provisions_are_rescheduled() throws Exception {
+        service = LocalProvisionService.builder()
+                .addAllHosts(seededHosts)
+                .provisionTimeout(300)
+                .build();
+        ProvisionOutput expiring = service.provision(ProvisionInput.builder()
+                .id("expiring-test")
+                .amount(2)
+                .build());
+        ProvisionOutput extended = service.provision(ProvisionInput.builder()
+                .id("extended-test")
+                .amount(2)
+                .build());
+        service.extend(extended);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                service.describe(expiring);
+                TimeUnit.MILLISECONDS.sleep(20);
+            } catch (ProvisioningException e) {
+                break;
+            }
+        }
+        assertThrows(ProvisioningException.class, () -> service.describe(expiring));
+        assertEquals(2, service.describe(extended).reservations().size());
+
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertThrows(ProvisioningException.class, () -> service.describe(extended));
+        service.close();
+    }
+
+    @Test
+    void GIVEN_local_service_has_mixed_platforms_WHEN_provisioning_with_constraints_THEN_matching_hosts_are_reserved() throws Exception {
+        Set<Host> mixedHosts = new HashSet<>(seededHosts);
+        IntStream.range(0, 4).forEach(index -> mixedHosts.add(Host.builder()
+                .hostName("windows-" + index)
+                .deviceId("windows-" + index)
+                .platform(PlatformOS.of("windows", "x86_64"))
+                .putAttributes("gpu", index % 2 == 0 ? "nvidia" : "none")
+                .build()));
+        service = LocalProvisionService.builder()
+                .addAllHosts(mixedHosts)
+                .provisionTimeout(TimeUnit.SECONDS.toMillis(5))
+                .build();
+
+        ProvisionOutput windows = service.provision(ProvisionInput.builder()
+                .id("windows-test")
+                .amount(1)
+                .platform(PlatformOS.of("windows", "x86_64"))
+                .putAttributes("gpu", "nvidia")
+                .build());
+        ProvisionOutput linux = service.provision(ProvisionInput.builder()
+                .id("linux-test")
+                .amount(20)
+                .platform(PlatformOS.of("Linux", "armv8"))
+                .build());
+        ProvisionOutput missing = service.provision(ProvisionInput.builder()
+                .id("missing-test")
+                .platform(PlatformOS.of("Linux", "armv6"))
+                .build());
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!(service.describe(windows).succeeded() && service.describe(linux).succeeded())
+                && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        Host windowsHost = service.exchange(service.describe(windows).reservations().get(0));
+        assertEquals(PlatformOS.of("windows", "x86_64"), windowsHost.platform());
+        assertEquals("nvidia", windowsHost.attributes().get("gpu"));
+        assertTrue(service.describe(linux).reservations().stream()
+                .map(service::exchange)
+                .allMatch(host -> host.platform().equals(PlatformOS.of("Linux", "armv8"))));
+        assertEquals(Status.PROVISIONING, service.describe(missing).status());
+        service.close();
+    }
+
     @Test
     void GIVEN_local_service_created_WHEN_extraneous_paths_are_exercised_THEN_coverage_is_increased() throws Exception {
         service.close();
@@ -243,6 +438,7 @@ class LocalProvisionServiceTest {
                         .deviceId("host2")
                         .hostName("192.168.1.202")
                         .platform(PlatformOS.of("windows", "armv8"))
+                        .putAttributes("rack", "b2")
                         .build()
         );
 
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.provision;
+
+import me.philcali.device.pool.exceptions.ProvisioningException;
+import me.philcali.device.pool.model.ProvisionOutput;
+import me.philcali.device.pool.model.Reservation;
+import me.philcali.device.pool.model.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProvisionWatcherTest {
+    private ProvisionWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        watcher = ProvisionWatcher.builder()
+                .initialDelay(5)
+                .maxDelay(20)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.close();
+    }
+
+    private ProvisionOutput output(Status status) {
+        return ProvisionOutput.builder()
+                .id("abc-efg")
+                .addReservations(Reservation.of("device-1", status))
+                .build();
+    }
+
+    @Test
+    void GIVEN_watcher_WHEN_provision_terminates_THEN_future_completes() throws Exception {
+        AtomicInteger describes = new AtomicInteger();
+        CompletableFuture<ProvisionOutput> future = watcher.watch(output(Status.PROVISIONING), output -> {
+            if (describes.incrementAndGet() < 5) {
+                return output;
+            }
+            return output(Status.SUCCEEDED);
+        });
+
+        assertEquals(output(Status.SUCCEEDED), future.get(5, TimeUnit.SECONDS));
+        assertEquals(5, describes.get());
+        assertEquals(0, watcher.activeWatches());
+    }
+
+    @Test
+    void GIVEN_watcher_WHEN_supplier_is_used_THEN_provision_happens_on_watcher() throws Exception {
+        CompletableFuture<ProvisionOutput> future = watcher.watch(
+                () -> output(Status.REQUESTED),
+                output -> output(Status.FAILED));
+
+        assertEquals(Status.FAILED, future.get(5, TimeUnit.SECONDS).status());
+    }
+
+    @Test
+    void GIVEN_watcher_WHEN_progress_is_watched_THEN_every_describe_is_observed() throws Exception {
+        List<Status> observed = new CopyOnWriteArrayList<>();
+        AtomicInteger describes = new AtomicInteger();
+        CompletableFuture<ProvisionOutput> future = watcher.watch(
+                () -> output(Status.REQUESTED),
+                output -> describes.incrementAndGet() < 3 ? output(Status.PROVISIONING) : output(Status.SUCCEEDED),
+                output -> observed.add(output.status()));
+
+        assertEquals(Status.SUCCEEDED, future.get(5, TimeUnit.SECONDS).status());
+        assertEquals(Arrays.asList(Status.PROVISIONING, Status.PROVISIONING, Status.SUCCEEDED), observed);
+    }
+
+    @Test
+    void GIVEN_watcher_WHEN_describe_is_slow_THEN_other_watches_are_not_delayed() throws Exception {
+        CountDownLatch released = new CountDownLatch(1);
+        CompletableFuture<ProvisionOutput> slow = watcher.watch(output(Status.PROVISIONING), output -> {
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return output(Status.SUCCEEDED);
+        });
+        List<CompletableFuture<ProvisionOutput>> fast = new ArrayList<>();
+        for (int watch = 0; watch < 4; watch++) {
+            AtomicInteger describes = new AtomicInteger();
+            fast.add(watcher.watch(output(Status.PROVISIONING),
+                    output -> describes.incrementAndGet() < 3 ? output : output(Status.SUCCEEDED)));
+        }
+
+        for (CompletableFuture<ProvisionOutput> future : fast) {
+            assertEquals(Status.SUCCEEDED, future.get(1, TimeUnit.SECONDS).status());
+        }
+        assertFalse(slow.isDone());
+        released.countDown();
+        assertEquals(Status.SUCCEEDED, slow.get(5, TimeUnit.SECONDS).status());
+    }
+
+    @Test
+    void GIVEN_watcher_WHEN_describe_fails_THEN_future_fails() {
+        CompletableFuture<ProvisionOutput> future = watcher.watch(output(Status.PROVISIONING), output -> {
+            throw new ProvisioningException("Could not find a provision with id: " + output.id());
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertEquals(ProvisioningException.class, e.getCause().getClass());
+    }
+
+    @Test
+    void GIVEN_watcher_WHEN_future_is_cancelled_THEN_describing_stops() throws Exception {
+        AtomicInteger describes = new AtomicInteger();
+        CompletableFuture<ProvisionOutput> future = watcher.watch(output(Status.PROVISIONING), output -> {
+            describes.incrementAndGet();
+            return output;
+        });
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertTrue(future.cancel(true));
+        assertEquals(0, watcher.activeWatches());
+
+        int stopped = describes.get();
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertTrue(describes.get() <= stopped + 1);
+    }
+
+    @Test
+    void GIVEN_watcher_WHEN_closed_THEN_outstanding_watches_are_cancelled() {
+        CompletableFuture<ProvisionOutput> future = watcher.watch(output(Status.PROVISIONING), output -> output);
+        watcher.close();
+
+        assertTrue(future.isCancelled());
+        assertThrows(ProvisioningException.class, () -> {
+            try {
+                watcher.watch(output(Status.PROVISIONING), output -> output).get(1, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    @Test
+    void GIVEN_no_watcher_WHEN_built_with_bad_values_THEN_exception_is_thrown() {
+        assertThrows(IllegalArgumentException.class, () -> ProvisionWatcher.builder().initialDelay(0).build());
+        assertThrows(IllegalArgumentException.class, () -> ProvisionWatcher.builder().multiplier(0.5).build());
+        assertThrows(IllegalArgumentException.class, () -> ProvisionWatcher.builder().jitter(2).build());
+        assertEquals(ProvisionWatcher.shared(), ProvisionWatcher.shared());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.benchmarks;
+
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+import me.philcali.device.pool.model.ProvisionInput;
+import me.philcali.device.pool.model.ProvisionOutput;
+import me.philcali.device.pool.model.Reservation;
+import me.philcali.device.pool.model.Status;
+import me.philcali.device.pool.provision.LocalProvisionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the host bookkeeping of the {@link LocalProvisionService} with a large lab: exchanging a
+ * {@link Reservation} for its {@link Host}, and releasing a provision back into the available pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HostInventoryBenchmark {
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private final AtomicLong provisionIds = new AtomicLong();
+    private LocalProvisionService service;
+    private Reservation[] reservations;
+
+    @Param({"10000"})
+    int hosts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final LocalProvisionService.Builder builder = LocalProvisionService.builder()
+                .expireProvisions(false);
+        IntStream.range(0, hosts).forEach(index -> builder.addHosts(Host.builder()
+                .hostName("host-" + index)
+                .deviceId("instance-" + index)
+                .platform(PlatformOS.of("Linux", "armv8"))
+                .build()));
+        service = builder.build();
+        reservations = IntStream.range(0, hosts)
+                .mapToObj(index -> Reservation.of("instance-" + index, Status.SUCCEEDED))
+                .toArray(Reservation[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.close();
+    }
+
+    @Benchmark
+    public Host exchange() {
+        return service.exchange(reservations[ThreadLocalRandom.current().nextInt(reservations.length)]);
+    }
+
+    @Benchmark
+    public int provisionAndRelease() {
+        final ProvisionOutput output = service.provision(ProvisionInput.builder()
+                .id("provision-" + provisionIds.incrementAndGet())
+                .amount(1)
+                .build());
+        ProvisionOutput current = service.describe(output);
+        while (!current.succeeded()) {
+            LockSupport.parkNanos(POLL_NANOS);
+            current = service.describe(output);
+        }
+        return service.release(current);
+    }
+}
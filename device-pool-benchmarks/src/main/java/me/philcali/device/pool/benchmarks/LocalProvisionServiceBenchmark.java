@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.benchmarks;
+
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+import me.philcali.device.pool.model.ProvisionInput;
+import me.philcali.device.pool.model.ProvisionOutput;
+import me.philcali.device.pool.provision.LocalProvisionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Measures provisions per second through the {@link LocalProvisionService} while many callers contend
+ * for a small set of hosts. Each operation provisions, waits for the provision to succeed, and releases it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class LocalProvisionServiceBenchmark {
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final AtomicLong provisionIds = new AtomicLong();
+    private LocalProvisionService service;
+
+    @Param({"1", "4"})
+    int workers;
+
+    @Param({"1", "8"})
+    int amount;
+
+    @Param({"64"})
+    int hosts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final LocalProvisionService.Builder builder = LocalProvisionService.builder()
+                .workers(workers)
+                .expireProvisions(false);
+        IntStream.range(0, hosts).forEach(index -> builder.addHosts(Host.builder()
+                .hostName("host-" + index)
+                .deviceId("instance-" + index)
+                .platform(PlatformOS.of("Linux", "armv8"))
+                .build()));
+        service = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.close();
+    }
+
+    @Benchmark
+    public ProvisionOutput provisionAndRelease() {
+        final ProvisionOutput output = service.provision(ProvisionInput.builder()
+                .id("provision-" + provisionIds.incrementAndGet())
+                .amount(amount)
+                .build());
+        ProvisionOutput current = service.describe(output);
+        while (!current.succeeded()) {
+            LockSupport.parkNanos(POLL_NANOS);
+            current = service.describe(output);
+        }
+        service.release(current);
+        return current;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.benchmarks;
+
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+import me.philcali.device.pool.model.ProvisionInput;
+import me.philcali.device.pool.model.ProvisionOutput;
+import me.philcali.device.pool.provision.LocalProvisionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the time and allocation of filling a single large provision in the {@link LocalProvisionService}.
+ * The interesting number is <code>gc.alloc.rate.norm</code>, so run it with the GC profiler:
+ * <br>
+ * <pre>
+ * java -cp benchmarks.jar me.philcali.device.pool.benchmarks.ProvisionAccumulationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProvisionAccumulationBenchmark {
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final AtomicLong provisionIds = new AtomicLong();
+    private LocalProvisionService service;
+
+    @Param({"100", "500"})
+    int amount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final LocalProvisionService.Builder builder = LocalProvisionService.builder()
+                .expireProvisions(false);
+        IntStream.range(0, amount).forEach(index -> builder.addHosts(Host.builder()
+                .hostName("host-" + index)
+                .deviceId("instance-" + index)
+                .platform(PlatformOS.of("Linux", "armv8"))
+                .build()));
+        service = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.close();
+    }
+
+    @Benchmark
+    public ProvisionOutput fillProvision() {
+        final ProvisionOutput output = service.provision(ProvisionInput.builder()
+                .id("provision-" + provisionIds.incrementAndGet())
+                .amount(amount)
+                .build());
+        ProvisionOutput current = service.describe(output);
+        while (!current.succeeded()) {
+            LockSupport.parkNanos(POLL_NANOS);
+            current = service.describe(output);
+        }
+        service.release(current);
+        return current;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProvisionAccumulationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -8,15 +8,16 @@ package me.philcali.device.pool.cli;
 
 import me.philcali.device.pool.BaseDevicePool;
 import me.philcali.device.pool.Device;
+import me.philcali.device.pool.DeviceGroup;
 import me.philcali.device.pool.DevicePool;
 import me.philcali.device.pool.client.DeviceLabProvisionService;
 import me.philcali.device.pool.connection.ConnectionFactory;
 import me.philcali.device.pool.content.ContentTransferAgentFactory;
 import me.philcali.device.pool.exceptions.ProvisioningException;
 import me.philcali.device.pool.model.CommandInput;
-import me.philcali.device.pool.model.CommandOutput;
 import me.philcali.device.pool.model.CopyInput;
 import me.philcali.device.pool.model.CopyOption;
+import me.philcali.device.pool.model.ExecutionSummary;
 import me.philcali.device.pool.model.PlatformOS;
 import me.philcali.device.pool.model.ProvisionInput;
 import me.philcali.device.pool.s3.ContentTransferAgentFactoryS3;
@@ -29,8 +30,10 @@ import me.philcali.device.pool.ssm.ConnectionFactorySSM;
 import org.apache.sshd.client.SshClient;
 import picocli.CommandLine;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -185,6 +188,10 @@ public class Devices {
     }
 
     protected void provisionOnFrom(DevicePool pool, DeviceLabService service, Consumer<Device> thunk) {
+        provisionAllFrom(pool, service, devices -> devices.forEach(thunk));
+    }
+
+    protected void provisionAllFrom(DevicePool pool, DeviceLabService service, Consumer<List<Device>> thunk) {
         ProvisionInput.Builder inputBuilder = ProvisionInput.builder().amount(amount);
         String selectedPool = configuredPoolId();
         if (allDevices) {
@@ -201,9 +208,12 @@ public class Devices {
             } while (results.isTruncated());
             inputBuilder.amount(total);
         }
-        pool.provisionSync(inputBuilder.build(), provisionTimeout, TimeUnit.SECONDS).forEach(thunk.andThen(device -> {
-            cli.executeAndPrint(service.releaseDeviceLock(selectedPool, device.id()));
-        }));
+        List<Device> devices = pool.provisionSync(inputBuilder.build(), provisionTimeout, TimeUnit.SECONDS);
+        try {
+            thunk.accept(devices);
+        } finally {
+            devices.forEach(device -> cli.executeAndPrint(service.releaseDeviceLock(selectedPool, device.id())));
+        }
     }
 
     @CommandLine.Command(
@@ -214,21 +224,50 @@ public class Devices {
     )
     public void execute(
             @CommandLine.Option(names = "--timeout", defaultValue = "30") long timeout,
+            @CommandLine.Option(
+                    names = "--concurrency",
+                    description = "maximum number of devices executing at once",
+                    defaultValue = "8"
+            ) int concurrency,
+            @CommandLine.Option(
+                    names = "--fail-fast",
+                    description = "stop executing on new devices after the first failure"
+            ) boolean failFast,
             @CommandLine.Parameters(paramLabel = "ARG") String[] args
     ) {
         Objects.requireNonNull(args, "<ARGS> are required");
         final DeviceLabService service = cli.createService();
         DevicePool pool = createPool(service);
-        provisionOnFrom(pool, service, device -> {
-            System.out.println("Executing on device: " + device.id());
-            CommandOutput output = device.execute(CommandInput.builder()
-                    .timeout(Duration.ofSeconds(timeout))
-                    .line(args[0])
-                    .args(Arrays.stream(args)
-                            .skip(1)
-                            .collect(Collectors.toList()))
-                    .build());
-            System.out.println(output.toUTF8String());
+        CommandInput input = CommandInput.builder()
+                .timeout(Duration.ofSeconds(timeout))
+                .line(args[0])
+                .args(Arrays.stream(args)
+                        .skip(1)
+                        .collect(Collectors.toList()))
+                .build();
+        provisionAllFrom(pool, service, devices -> {
+            try (DeviceGroup group = DeviceGroup.builder()
+                    .devices(devices)
+                    .concurrency(concurrency)
+                    .failFast(failFast)
+                    .build()) {
+                ExecutionSummary summary = group.execute(input, result -> {
+                    System.out.println("Executed on device: " + result.deviceId()
+                            + " in " + result.duration().toMillis() + "ms");
+                    Optional.ofNullable(result.output()).ifPresentOrElse(output -> {
+                        byte[] bytes = output.exitCode() == 0 ? output.stdout() : output.stderr();
+                        Optional.ofNullable(bytes)
+                                .map(content -> new String(content, StandardCharsets.UTF_8))
+                                .ifPresent(System.out::println);
+                        if (output.exitCode() != 0) {
+                            System.out.println("Exited with code " + output.exitCode());
+                        }
+                    }, () -> System.out.println("Failed: " + result.error()));
+                });
+                System.out.println("Completed on " + summary.results().size() + " devices in "
+                        + summary.duration().toMillis() + "ms: " + summary.failures().size() + " failed, "
+                        + summary.skipped().size() + " skipped");
+            }
         });
     }
 
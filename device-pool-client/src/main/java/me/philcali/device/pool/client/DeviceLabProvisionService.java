@@ -36,6 +36,7 @@ import retrofit2.Call;
 import retrofit2.Response;
 
 import java.io.IOException;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -170,9 +171,19 @@ public abstract class DeviceLabProvisionService implements ProvisionService, Res
     /** {@inheritDoc} */
     @Override
     public ProvisionOutput provision(ProvisionInput input) throws ProvisioningException {
+        if (Objects.nonNull(input.platform()) && !input.platform().equals(platform())) {
+            throw new ProvisioningException("Pool " + poolId() + " provides " + platform()
+                    + " devices, but " + input.platform() + " was requested");
+        }
+        // Device lab devices carry no attributes yet, so no reservation could be held to them
+        if (!input.attributes().isEmpty()) {
+            throw new ProvisioningException("Pool " + poolId() + " does not support attribute constraints: "
+                    + input.attributes());
+        }
         Call<ProvisionObject> response = deviceLabService().createProvision(poolId(), CreateProvisionObject.builder()
                 .amount(input.amount())
                 .id(input.id())
+                .platform(Optional.ofNullable(input.platform()).map(PlatformOS::toString).orElse(null))
                 .build());
         ProvisionObject provisionObject = safelyCall(response, ProvisioningException::new, false);
         if (provisionObject.status().equals(Status.REQUESTED)) {
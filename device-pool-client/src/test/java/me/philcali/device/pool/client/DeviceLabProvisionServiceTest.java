@@ -60,6 +60,47 @@ class DeviceLabProvisionServiceTest {
                 .build();
     }
 
+    @Test
+    void GIVEN_device_lab_is_created_WHEN_lab_provisions_with_constraints_THEN_constraints_are_propagated() throws Exception {
+        CreateProvisionObject create = CreateProvisionObject.builder()
+                .id("provision-456")
+                .amount(2)
+                .platform("linux:armv7")
+                .build();
+        Call<ProvisionObject> createCall = mock(Call.class);
+        when(underlyingService.createProvision(eq("TestPool"), eq(create))).thenReturn(createCall);
+        doReturn(new Request.Builder()
+                .url("http://example.com/pools/TestPool/provisions")
+                .build()).when(createCall).request();
+
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        when(createCall.execute()).thenReturn(Response.success(ProvisionObject.builder()
+                .id("provision-456")
+                .status(Status.REQUESTED)
+                .platform("linux:armv7")
+                .createdAt(now)
+                .updatedAt(now)
+                .build()));
+
+        ProvisionOutput provisionOutput = service.provision(ProvisionInput.builder()
+                .id("provision-456")
+                .amount(2)
+                .platform(PlatformOS.of("linux", "armv7"))
+                .build());
+        assertEquals(ProvisionOutput.builder()
+                .id("provision-456")
+                .status(Status.REQUESTED)
+                .build(), provisionOutput);
+
+        assertThrows(ProvisioningException.class, () -> service.provision(ProvisionInput.builder()
+                .platform(PlatformOS.of("windows", "x86_64"))
+                .build()));
+        assertThrows(ProvisioningException.class, () -> service.provision(ProvisionInput.builder()
+                .platform(PlatformOS.of("linux", "armv7"))
+                .putAttributes("rack", "b2")
+                .build()));
+    }
+
     @Test
     void GIVEN_device_lab_is_created_WHEN_lab_provisions_THEN_methods_are_called() throws Exception {
         CreateProvisionObject create = CreateProvisionObject.builder()
@@ -22,7 +22,6 @@ import software.amazon.awssdk.crt.mqtt.QualityOfService;
 import software.amazon.awssdk.iot.AwsIotMqttConnectionBuilder;
 
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @APIShadowModel
@@ -31,6 +30,7 @@ public abstract class ConnectionFactoryIoT implements ConnectionFactory {
     private static final Logger LOGGER = LogManager.getLogger(ConnectionFactoryIoT.class);
     static final String TOPIC_PATTERN = "command/%s/execute";
     static final String RESULT = "/result";
+    static final String RESULT_TOPIC = String.format(TOPIC_PATTERN, "+") + RESULT;
 
     abstract MqttClientConnection connection();
 
@@ -78,29 +78,38 @@ public abstract class ConnectionFactoryIoT implements ConnectionFactory {
         return new Builder();
     }
 
+    /**
+     * The {@link me.philcali.device.pool.iot.ResultRouterIoT} shared by every connection of this factory, receiving
+     * the results of all devices through a single wildcard subscription.
+     *
+     * @return the router of command results
+     */
+    @Value.Lazy
+    ResultRouterIoT results() {
+        return new ResultRouterIoT(mapper(), RESULT_TOPIC);
+    }
+
     @Override
     public Connection connect(Host host) throws ConnectionException {
-        final String topic = String.format(TOPIC_PATTERN, host.deviceId());
         try {
-            ConnectionIoT newConnection = ConnectionIoT.builder()
-                    .connection(connection())
-                    .qualityOfService(qualityOfService())
-                    .topic(topic)
-                    .mapper(mapper())
-                    .build();
-            CompletableFuture<Integer> subscribe = connection().subscribe(topic + RESULT,
-                    qualityOfService(), newConnection);
-            int result = subscribe.get();
-            LOGGER.debug("Successfully subscribed to {}: {}", topic, result);
-            return newConnection;
+            int result = results().subscribe(connection(), qualityOfService()).get();
+            LOGGER.debug("Subscribed to {}: {}", RESULT_TOPIC, result);
         } catch (ExecutionException | InterruptedException ee) {
-            LOGGER.error("Failed to subscribe to {}", topic, ee);
+            LOGGER.error("Failed to subscribe to {}", RESULT_TOPIC, ee);
             throw new ConnectionException(ee);
         }
+        return ConnectionIoT.builder()
+                .connection(connection())
+                .qualityOfService(qualityOfService())
+                .topic(String.format(TOPIC_PATTERN, host.deviceId()))
+                .mapper(mapper())
+                .results(results())
+                .build();
     }
 
     @Override
     public void close() throws Exception {
+        results().unsubscribe(connection());
         connection().disconnect().get();
         connection().close();
     }
@@ -10,7 +10,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.philcali.device.pool.connection.BatchScript;
+import me.philcali.device.pool.connection.BufferedOutputSink;
 import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.model.ApiModel;
 import me.philcali.device.pool.model.CommandInput;
@@ -23,12 +26,20 @@ import software.amazon.awssdk.crt.mqtt.MqttMessage;
 import software.amazon.awssdk.crt.mqtt.QualityOfService;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
@@ -37,6 +48,7 @@ import java.util.function.Consumer;
 @Value.Immutable
 abstract class ConnectionIoTModel implements Connection, Consumer<MqttMessage> {
     private static final Logger LOGGER = LogManager.getLogger(ConnectionIoT.class);
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = timeouts();
     static final String FIELD_ID = "id";
     static final String FIELD_LINE = "line";
     static final String FIELD_ARGS = "args";
@@ -45,7 +57,8 @@ abstract class ConnectionIoTModel implements Connection, Consumer<MqttMessage> {
     static final String FIELD_TIMEOUT = "timeout";
     static final String FIELD_STDOUT = "stdout";
     static final String FIELD_STDERR = "stderr";
-    private final Map<String, CompletableFuture<JsonNode>> executions = new ConcurrentHashMap<>();
+    static final String FIELD_STREAM = "stream";
+    private final Map<String, CompletableFuture<CommandOutput>> pending = new ConcurrentHashMap<>();
 
     abstract MqttClientConnection connection();
 
@@ -55,36 +68,183 @@ abstract class ConnectionIoTModel implements Connection, Consumer<MqttMessage> {
 
     abstract ObjectMapper mapper();
 
-    @Override
-    public CommandOutput execute(CommandInput input) throws ConnectionException {
-        UUID commandId = UUID.randomUUID();
+    /**
+     * The {@link me.philcali.device.pool.iot.ResultRouterIoT} handing result messages to executions of this
+     * connection. Connections created by a {@link me.philcali.device.pool.iot.ConnectionFactoryIoT} share the
+     * router behind its wildcard subscription.
+     *
+     * @return the router of command results
+     */
+    @Value.Default
+    ResultRouterIoT results() {
+        return new ResultRouterIoT(mapper(), topic() + ConnectionFactoryIoT.RESULT);
+    }
+
+    /**
+     * The amount of result messages buffered for a single streaming execution. A device that publishes output
+     * faster than the {@link me.philcali.device.pool.connection.OutputSink} consumes it fails the execution,
+     * since MQTT offers no way to slow down the publisher.
+     *
+     * @return the maximum amount of pending result messages per execution
+     */
+    @Value.Default
+    int maxPendingMessages() {
+        return 64;
+    }
+
+    private static ScheduledThreadPoolExecutor timeouts() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("IoT-Command-Timeout");
+            return thread;
+        });
+        // Cancelled timeouts leave the queue at once, rather than holding on to their result until due
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private final class Execution {
+        private final BlockingQueue<JsonNode> messages = new LinkedBlockingQueue<>(maxPendingMessages());
+        private volatile boolean overrun;
+
+        void offer(JsonNode message) {
+            if (!messages.offer(message)) {
+                overrun = true;
+            }
+        }
+    }
+
+    private CompletableFuture<Integer> publish(String commandId, CommandInput input) throws IOException {
         ObjectNode node = mapper().createObjectNode();
-        node.put(FIELD_ID, commandId.toString());
+        node.put(FIELD_ID, commandId);
         node.put(FIELD_LINE, input.line());
+        node.put(FIELD_STREAM, true);
         Optional.ofNullable(input.args()).ifPresent(args -> {
             final ArrayNode array = node.putArray(FIELD_ARGS);
             args.forEach(array::add);
         });
         Optional.ofNullable(input.input()).ifPresent(bytes -> node.put(FIELD_INPUT, bytes));
+        byte[] payload = mapper().writeValueAsBytes(node);
+        return connection().publish(new MqttMessage(topic(), payload, qualityOfService()));
+    }
+
+    @Override
+    public CommandOutput execute(CommandInput input) throws ConnectionException {
+        final CompletableFuture<CommandOutput> future = executeAsync(input);
         try {
-            byte[] payload = mapper().writeValueAsBytes(node);
-            CompletableFuture<Integer> pr = connection().publish(new MqttMessage(topic(), payload, qualityOfService()));
-            pr.get(input.timeout().toSeconds(), TimeUnit.SECONDS);
-            // TODO: Need a better way to do this than to block the thread... will have to wait for v2
-            final CompletableFuture<JsonNode> result = new CompletableFuture<>();
-            executions.putIfAbsent(commandId.toString(), result);
-            JsonNode response = result.get(input.timeout().toSeconds(), TimeUnit.SECONDS);
-            final CommandOutput.Builder builder = CommandOutput.builder()
-                    .exitCode(response.get(FIELD_EXIT_CODE).asInt())
-                    .originalInput(input);
-            if (response.has(FIELD_STDOUT)) {
-                builder.stdout(response.get(FIELD_STDOUT).binaryValue());
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted waiting on command for " + topic());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ConnectionException) {
+                throw (ConnectionException) e.getCause();
+            }
+            throw new ConnectionException(e.getCause());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The command is registered and published without blocking, and the returned future completes on the MQTT
+     * callback thread once the message containing the <code>exitCode</code> arrives. Chunks published before it
+     * are buffered into the {@link me.philcali.device.pool.model.CommandOutput}. The future fails once the
+     * timeout of the command elapses, or when this connection is closed.
+     */
+    @Override
+    public CompletableFuture<CommandOutput> executeAsync(CommandInput input) {
+        final String commandId = UUID.randomUUID().toString();
+        final BufferedOutputSink sink = new BufferedOutputSink();
+        final CompletableFuture<CommandOutput> result = new CompletableFuture<>();
+        // Register before publishing, so a fast reply is never dropped
+        results().register(commandId, response -> {
+            try {
+                if (response.has(FIELD_STDOUT)) {
+                    sink.stdout(ByteBuffer.wrap(response.get(FIELD_STDOUT).binaryValue()));
+                }
+                if (response.has(FIELD_STDERR)) {
+                    sink.stderr(ByteBuffer.wrap(response.get(FIELD_STDERR).binaryValue()));
+                }
+                if (response.has(FIELD_EXIT_CODE)) {
+                    result.complete(sink.toOutput(CommandOutput.builder()
+                            .exitCode(response.get(FIELD_EXIT_CODE).asInt())
+                            .originalInput(input)
+                            .build()));
+                }
+            } catch (IOException e) {
+                result.completeExceptionally(new ConnectionException(e));
             }
-            if (response.has(FIELD_STDERR)) {
-                builder.stderr(response.get(FIELD_STDERR).binaryValue());
+        });
+        pending.put(commandId, result);
+        LOGGER.debug("Publishing command {} to {}", commandId, topic());
+        final ScheduledFuture<?> timeout = TIMEOUTS.schedule(
+                () -> result.completeExceptionally(new ConnectionException("Command timed out")),
+                input.timeout().toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((output, error) -> {
+            timeout.cancel(false);
+            results().remove(commandId);
+            pending.remove(commandId);
+        });
+        try {
+            publish(commandId, input).whenComplete((packetId, error) -> {
+                if (Objects.nonNull(error)) {
+                    result.completeExceptionally(new ConnectionException(
+                            error instanceof CompletionException ? error.getCause() : error));
+                }
+            });
+        } catch (IOException e) {
+            result.completeExceptionally(new ConnectionException(e));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The request asks the device to stream, in which case the device publishes any number of result messages
+     * containing <code>stdout</code> or <code>stderr</code> chunks, followed by a message containing the
+     * <code>exitCode</code>. Devices that do not stream publish a single message with all of the fields. Chunks are
+     * handed to the {@link me.philcali.device.pool.connection.OutputSink} on the calling thread, in the order they
+     * arrive.
+     */
+    @Override
+    public CommandOutput executeStreaming(CommandInput input, OutputSink sink) throws ConnectionException {
+        final String commandId = UUID.randomUUID().toString();
+        final long deadline = System.nanoTime() + input.timeout().toNanos();
+        // Register before publishing, so a fast reply is never dropped
+        final Execution execution = new Execution();
+        results().register(commandId, execution::offer);
+        try {
+            publish(commandId, input).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            while (true) {
+                final JsonNode response = execution.messages.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (response == null) {
+                    throw new ConnectionException("Command timed out");
+                }
+                if (execution.overrun) {
+                    throw new ConnectionException("Command output overran "
+                            + maxPendingMessages() + " pending messages");
+                }
+                if (response.has(FIELD_STDOUT)) {
+                    sink.stdout(ByteBuffer.wrap(response.get(FIELD_STDOUT).binaryValue()));
+                }
+                if (response.has(FIELD_STDERR)) {
+                    sink.stderr(ByteBuffer.wrap(response.get(FIELD_STDERR).binaryValue()));
+                }
+                if (response.has(FIELD_EXIT_CODE)) {
+                    return CommandOutput.builder()
+                            .exitCode(response.get(FIELD_EXIT_CODE).asInt())
+                            .originalInput(input)
+                            .build();
+                }
             }
-            return builder.build();
-        } catch (InterruptedException | TimeoutException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted waiting on command for " + topic());
+        } catch (TimeoutException e) {
             throw new ConnectionException("Command timed out");
         } catch (IOException e) {
             throw new ConnectionException(e);
@@ -92,30 +252,37 @@ abstract class ConnectionIoTModel implements Connection, Consumer<MqttMessage> {
             throw new ConnectionException(e.getCause());
         } finally {
             // Pop any extraneous executions
-            executions.remove(commandId.toString());
+            results().remove(commandId);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The batch is published as a single request running a {@link me.philcali.device.pool.connection.BatchScript},
+     * and the output of each command is demultiplexed from the framed output of the script.
+     */
     @Override
-    public void accept(MqttMessage mqttMessage) {
-        try {
-            JsonNode node = mapper().readTree(mqttMessage.getPayload());
-            final String requestId = node.get(FIELD_ID).asText();
-            final CompletableFuture<JsonNode> responsePresent = executions.remove(requestId);
-            if (responsePresent != null) {
-                responsePresent.complete(node);
-            }
-            LOGGER.info("Command result received {}", requestId);
-        } catch (IOException e) {
-            LOGGER.error("Failed to parse return", e);
+    public List<CommandOutput> executeBatch(List<CommandInput> inputs) throws ConnectionException {
+        if (!BatchScript.supports(inputs)) {
+            return Connection.super.executeBatch(inputs);
         }
+        final BatchScript script = BatchScript.of(inputs);
+        return script.parse(execute(script.toInput()));
+    }
+
+    @Override
+    public void accept(MqttMessage mqttMessage) {
+        results().accept(mqttMessage);
     }
 
+    /**
+     * Fails the executions of this connection that are still waiting on a result. The subscription belongs to the
+     * {@link me.philcali.device.pool.iot.ConnectionFactoryIoT}, and outlives any single connection.
+     */
     @Override
-    public void close() throws Exception {
-        CompletableFuture.allOf(
-                connection().unsubscribe(topic()),
-                connection().unsubscribe(topic() + ConnectionFactoryIoT.RESULT)
-        ).get();
+    public void close() {
+        pending.values().forEach(result -> result.completeExceptionally(
+                new ConnectionException("Connection to " + topic() + " was closed")));
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.iot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.crt.mqtt.MqttClientConnection;
+import software.amazon.awssdk.crt.mqtt.MqttMessage;
+import software.amazon.awssdk.crt.mqtt.QualityOfService;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Demultiplexes command results arriving on a single subscription to their pending executions, keyed by command
+ * id. Every {@link me.philcali.device.pool.iot.ConnectionIoT} created by a factory shares one router, so a single
+ * wildcard subscription serves any amount of devices. Messages are handed over on the MQTT callback thread, so
+ * receivers must not block.
+ */
+final class ResultRouterIoT implements Consumer<MqttMessage> {
+    private static final Logger LOGGER = LogManager.getLogger(ResultRouterIoT.class);
+    private final Map<String, Consumer<JsonNode>> executions = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper;
+    private final String topic;
+    private CompletableFuture<Integer> subscription;
+
+    ResultRouterIoT(ObjectMapper mapper, String topic) {
+        this.mapper = mapper;
+        this.topic = topic;
+    }
+
+    /**
+     * Subscribes the router to its result topic, once. A failed subscription is retried on the next call.
+     *
+     * @param connection the {@link software.amazon.awssdk.crt.mqtt.MqttClientConnection} receiving results
+     * @param qualityOfService the {@link software.amazon.awssdk.crt.mqtt.QualityOfService} of the subscription
+     * @return the pending or completed subscription
+     */
+    synchronized CompletableFuture<Integer> subscribe(
+            MqttClientConnection connection,
+            QualityOfService qualityOfService) {
+        if (Objects.isNull(subscription) || subscription.isCompletedExceptionally()) {
+            subscription = connection.subscribe(topic, qualityOfService, this);
+        }
+        return subscription;
+    }
+
+    /**
+     * Removes the subscription of the router, if it ever succeeded.
+     *
+     * @param connection the {@link software.amazon.awssdk.crt.mqtt.MqttClientConnection} receiving results
+     * @throws ExecutionException if the unsubscribe fails
+     * @throws InterruptedException if interrupted while unsubscribing
+     */
+    synchronized void unsubscribe(MqttClientConnection connection) throws ExecutionException, InterruptedException {
+        if (Objects.nonNull(subscription) && !subscription.isCompletedExceptionally()) {
+            connection.unsubscribe(topic).get();
+        }
+        subscription = null;
+    }
+
+    /**
+     * Registers the receiver of result messages for a command. Registration must happen before the command is
+     * published, so a fast reply is never dropped.
+     *
+     * @param commandId the id of the published command
+     * @param receiver receives every result message of the command
+     */
+    void register(String commandId, Consumer<JsonNode> receiver) {
+        executions.put(commandId, receiver);
+    }
+
+    void remove(String commandId) {
+        executions.remove(commandId);
+    }
+
+    int pending() {
+        return executions.size();
+    }
+
+    @Override
+    public void accept(MqttMessage mqttMessage) {
+        try {
+            final JsonNode node = mapper.readTree(mqttMessage.getPayload());
+            final String requestId = node.path(ConnectionIoTModel.FIELD_ID).asText();
+            final Consumer<JsonNode> receiver = executions.get(requestId);
+            if (Objects.nonNull(receiver)) {
+                receiver.accept(node);
+            }
+            LOGGER.debug("Command result received {} on {}", requestId, mqttMessage.getTopic());
+        } catch (IOException e) {
+            LOGGER.error("Failed to parse return", e);
+        }
+    }
+}
@@ -6,9 +6,14 @@
 
 package me.philcali.device.pool.iot;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import me.philcali.device.pool.configuration.DevicePoolConfig;
 import me.philcali.device.pool.configuration.DevicePoolConfigProperties;
+import me.philcali.device.pool.connection.Connection;
 import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
 import me.philcali.device.pool.model.Host;
 import me.philcali.device.pool.model.PlatformOS;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,21 +22,29 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.crt.mqtt.MqttClientConnection;
+import software.amazon.awssdk.crt.mqtt.MqttMessage;
 import software.amazon.awssdk.crt.mqtt.QualityOfService;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith({MockitoExtension.class})
 class ConnectionFactoryIoTModelTest {
@@ -40,6 +53,14 @@ class ConnectionFactoryIoTModelTest {
 
     ConnectionFactoryIoT factory;
 
+    private static Host host(String deviceId) {
+        return Host.builder()
+                .hostName(deviceId + ".example.com")
+                .deviceId(deviceId)
+                .platform(PlatformOS.of("Linux", "armv6"))
+                .build();
+    }
+
     @BeforeEach
     void setUp() {
         factory = ConnectionFactoryIoT.builder()
@@ -57,7 +78,7 @@ class ConnectionFactoryIoTModelTest {
         final CompletableFuture<Integer> subscribe = new CompletableFuture<>();
         subscribe.complete(0);
         doReturn(subscribe).when(connection).subscribe(
-                eq("command/example/execute/result"),
+                eq("command/+/execute/result"),
                 eq(QualityOfService.AT_LEAST_ONCE),
                 any(Consumer.class));
         factory.connect(host);
@@ -73,13 +94,72 @@ class ConnectionFactoryIoTModelTest {
                 .build();
         CompletableFuture<Integer> subscribe = mock(CompletableFuture.class);
         doReturn(subscribe).when(connection).subscribe(
-                eq("command/example/execute/result"),
+                eq("command/+/execute/result"),
                 eq(QualityOfService.AT_LEAST_ONCE),
                 any(Consumer.class));
         doThrow(ExecutionException.class).when(subscribe).get();
         assertThrows(ConnectionException.class, () -> factory.connect(host));
     }
 
+    @Test
+    void GIVEN_factory_is_created_WHEN_connect_to_hosts_THEN_single_subscription_routes_results() throws Exception {
+        final AtomicReference<Consumer<MqttMessage>> results = new AtomicReference<>();
+        final CompletableFuture<Integer> subscribe = new CompletableFuture<>();
+        subscribe.complete(0);
+        doAnswer(answer -> {
+            results.set(answer.getArgument(2));
+            return subscribe;
+        }).when(connection).subscribe(
+                eq("command/+/execute/result"),
+                eq(QualityOfService.AT_LEAST_ONCE),
+                any(Consumer.class));
+        factory.connect(host("first"));
+        final Connection second = factory.connect(host("second"));
+        verify(connection, times(1)).subscribe(
+                eq("command/+/execute/result"),
+                eq(QualityOfService.AT_LEAST_ONCE),
+                any(Consumer.class));
+
+        final ObjectMapper mapper = new ObjectMapper();
+        when(connection.publish(any(MqttMessage.class))).then(answer -> {
+            MqttMessage message = answer.getArgument(0);
+            assertEquals("command/second/execute", message.getTopic());
+            ObjectNode node = mapper.createObjectNode();
+            node.put("id", mapper.readTree(message.getPayload()).get("id").asText());
+            node.put("exitCode", 0);
+            node.put("stdout", "Hello".getBytes(StandardCharsets.UTF_8));
+            // The reply arrives on the wildcard subscription before publishing completes
+            results.get().accept(new MqttMessage("command/second/execute/result",
+                    mapper.writeValueAsBytes(node), QualityOfService.AT_LEAST_ONCE));
+            CompletableFuture<Integer> published = new CompletableFuture<>();
+            published.complete(1);
+            return published;
+        });
+        final CommandOutput output = second.executeAsync(CommandInput.of("echo Hello")).get(10, TimeUnit.SECONDS);
+        assertEquals("Hello", output.toUTF8String());
+        assertEquals(0, factory.results().pending());
+    }
+
+    @Test
+    void GIVEN_factory_has_subscribed_WHEN_closing_THEN_subscription_is_removed() throws Exception {
+        final CompletableFuture<Integer> subscribe = new CompletableFuture<>();
+        subscribe.complete(0);
+        doReturn(subscribe).when(connection).subscribe(
+                eq("command/+/execute/result"),
+                eq(QualityOfService.AT_LEAST_ONCE),
+                any(Consumer.class));
+        factory.connect(host("example"));
+        final CompletableFuture<Integer> unsubscribe = new CompletableFuture<>();
+        unsubscribe.complete(0);
+        doReturn(unsubscribe).when(connection).unsubscribe(eq("command/+/execute/result"));
+        final CompletableFuture<Void> disconnect = new CompletableFuture<>();
+        disconnect.complete(null);
+        doReturn(disconnect).when(connection).disconnect();
+        factory.close();
+        verify(connection).unsubscribe(eq("command/+/execute/result"));
+        verify(connection).close();
+    }
+
     @Test
     void GIVEN_factory_is_created_WHEN_closing_THEN_closing_connection_is_invoked() throws Exception {
         final CompletableFuture<Void> disconnect = new CompletableFuture<>();
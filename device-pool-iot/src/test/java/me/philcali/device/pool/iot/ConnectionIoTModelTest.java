@@ -11,6 +11,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.model.CommandInput;
 import me.philcali.device.pool.model.CommandOutput;
@@ -23,6 +24,7 @@ import software.amazon.awssdk.crt.mqtt.MqttClientConnection;
 import software.amazon.awssdk.crt.mqtt.MqttMessage;
 import software.amazon.awssdk.crt.mqtt.QualityOfService;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Objects;
@@ -33,11 +35,10 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 
 @ExtendWith({MockitoExtension.class})
@@ -110,6 +111,41 @@ class ConnectionIoTModelTest {
         assertEquals(expectedOutput, output.get(10, TimeUnit.SECONDS));
     }
 
+    @Test
+    void GIVEN_connection_is_created_WHEN_execute_streaming_THEN_chunks_are_handed_to_sink() {
+        CommandInput input = CommandInput.builder()
+                .line("cat")
+                .addArgs("large.log")
+                .build();
+        when(mqttClientConnection.publish(any(MqttMessage.class))).then(answer -> {
+            MqttMessage message = answer.getArgument(0);
+            JsonNode node = mapper.readTree(message.getPayload());
+            assertTrue(node.get("stream").asBoolean(), "Payload does not request streaming: " + node);
+            // Replies arriving before publish completes are not lost
+            for (String chunk : new String[] { "Hello ", "World" }) {
+                ObjectNode chunkNode = mapper.createObjectNode();
+                chunkNode.put("id", node.get("id").asText());
+                chunkNode.put("stdout", chunk.getBytes(StandardCharsets.UTF_8));
+                connection.accept(new MqttMessage("command/deviceId/execute/result",
+                        mapper.writeValueAsBytes(chunkNode), QualityOfService.AT_LEAST_ONCE));
+            }
+            ObjectNode exitNode = mapper.createObjectNode();
+            exitNode.put("id", node.get("id").asText());
+            exitNode.put("exitCode", 0);
+            connection.accept(new MqttMessage("command/deviceId/execute/result",
+                    mapper.writeValueAsBytes(exitNode), QualityOfService.AT_LEAST_ONCE));
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            result.complete(0);
+            return result;
+        });
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        CommandOutput output = connection.executeStreaming(input, OutputSink.of(stdout, stderr));
+        assertEquals(CommandOutput.builder().exitCode(0).originalInput(input).build(), output);
+        assertEquals("Hello World", stdout.toString(StandardCharsets.UTF_8));
+        assertEquals(0, stderr.size());
+    }
+
     @Test
     void GIVEN_connection_is_created_WHEN_result_never_returns_THEN_command_times_out() {
         CommandInput input = CommandInput.builder()
@@ -131,6 +167,23 @@ class ConnectionIoTModelTest {
         assertThrows(ConnectionException.class, () -> connection.execute(input));
     }
 
+    @Test
+    void GIVEN_connection_is_created_WHEN_streaming_is_interrupted_THEN_interrupt_is_preserved() {
+        CommandInput input = CommandInput.of("echo Hello");
+        CompletableFuture<Integer> published = new CompletableFuture<>();
+        published.complete(0);
+        when(mqttClientConnection.publish(any(MqttMessage.class))).thenReturn(published);
+        Thread.currentThread().interrupt();
+        try {
+            ConnectionException e = assertThrows(ConnectionException.class,
+                    () -> connection.executeStreaming(input, OutputSink.discarding()));
+            assertTrue(e.getMessage().startsWith("Interrupted"), e.getMessage());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
     @Test
     void GIVEN_connection_is_created_WHEN_result_is_garbage_THEN_exception_is_thrown() {
         CommandInput input = CommandInput.builder()
@@ -160,13 +213,55 @@ class ConnectionIoTModelTest {
     }
 
     @Test
-    void GIVEN_connection_is_created_WHEN_close_THEN_services_are_closed() throws Exception {
-        CompletableFuture<Integer> unsubFirst = new CompletableFuture<>();
-        CompletableFuture<Integer> unsubSecond = new CompletableFuture<>();
-        unsubFirst.complete(0);
-        unsubSecond.complete(0);
-        doReturn(unsubFirst).when(mqttClientConnection).unsubscribe(eq("command/deviceId/execute"));
-        doReturn(unsubSecond).when(mqttClientConnection).unsubscribe(eq("command/deviceId/execute/result"));
+    void GIVEN_connection_is_created_WHEN_execute_async_THEN_caller_is_not_blocked() throws Exception {
+        CommandInput input = CommandInput.of("echo Hello");
+        AtomicReference<String> commandId = new AtomicReference<>();
+        CompletableFuture<Integer> published = new CompletableFuture<>();
+        when(mqttClientConnection.publish(any(MqttMessage.class))).then(answer -> {
+            MqttMessage message = answer.getArgument(0);
+            commandId.set(mapper.readTree(message.getPayload()).get("id").asText());
+            return published;
+        });
+        CompletableFuture<CommandOutput> output = connection.executeAsync(input);
+        assertFalse(output.isDone());
+        ObjectNode chunkNode = mapper.createObjectNode();
+        chunkNode.put("id", commandId.get());
+        chunkNode.put("stdout", "Hello\n".getBytes(StandardCharsets.UTF_8));
+        connection.accept(new MqttMessage("command/deviceId/execute/result",
+                mapper.writeValueAsBytes(chunkNode), QualityOfService.AT_LEAST_ONCE));
+        ObjectNode exitNode = mapper.createObjectNode();
+        exitNode.put("id", commandId.get());
+        exitNode.put("exitCode", 0);
+        connection.accept(new MqttMessage("command/deviceId/execute/result",
+                mapper.writeValueAsBytes(exitNode), QualityOfService.AT_LEAST_ONCE));
+        published.complete(1);
+        assertEquals("Hello\n", output.get(10, TimeUnit.SECONDS).toUTF8String());
+        assertEquals(0, connection.results().pending());
+    }
+
+    @Test
+    void GIVEN_connection_is_created_WHEN_execute_async_times_out_THEN_future_fails() {
+        CommandInput input = CommandInput.builder()
+                .line("sleep")
+                .addArgs("60")
+                .timeout(Duration.ofMillis(100))
+                .build();
+        CompletableFuture<Integer> published = new CompletableFuture<>();
+        published.complete(1);
+        when(mqttClientConnection.publish(any(MqttMessage.class))).thenReturn(published);
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> connection.executeAsync(input).get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof ConnectionException);
+        assertEquals(0, connection.results().pending());
+    }
+
+    @Test
+    void GIVEN_pending_execution_WHEN_close_THEN_execution_fails() {
+        when(mqttClientConnection.publish(any(MqttMessage.class))).thenReturn(new CompletableFuture<>());
+        CompletableFuture<CommandOutput> output = connection.executeAsync(CommandInput.of("echo Hello"));
         connection.close();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> output.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof ConnectionException);
+        assertEquals(0, connection.results().pending());
     }
 }
@@ -6,6 +6,7 @@
 
 package me.philcali.device.pool.s3;
 
+import me.philcali.device.pool.content.TarArchive;
 import me.philcali.device.pool.model.CommandInput;
 import me.philcali.device.pool.model.CopyInput;
 
@@ -23,4 +24,48 @@ public interface AgentCommand {
      * @return a {@link me.philcali.device.pool.model.CommandInput} object
      */
     CommandInput copy(CopyInput input);
+
+    /**
+     * Extracts a tar archive on the device into a destination, then removes the archive. A destination that is
+     * an existing directory receives the tree by name, otherwise the destination becomes the tree.
+     *
+     * @param archive the path of the archive on the device
+     * @param destination the destination on the device
+     * @param name the name of the archived directory
+     * @param compressed whether the archive is gzipped
+     * @return a {@link me.philcali.device.pool.model.CommandInput} object
+     */
+    default CommandInput extract(String archive, String destination, String name, boolean compressed) {
+        return shell(TarArchive.extractScript(archive, destination, name, compressed)
+                + "; s=$?; rm -f " + TarArchive.quote(archive) + "; exit $s");
+    }
+
+    /**
+     * Archives a directory on the device as a tar.
+     *
+     * @param source the directory on the device
+     * @param archive the path of the archive to create on the device
+     * @param compressed whether to gzip the archive
+     * @return a {@link me.philcali.device.pool.model.CommandInput} object
+     */
+    default CommandInput archive(String source, String archive, boolean compressed) {
+        return shell(TarArchive.createScript(source, archive, compressed));
+    }
+
+    /**
+     * Removes a file on the device.
+     *
+     * @param path the path of the file on the device
+     * @return a {@link me.philcali.device.pool.model.CommandInput} object
+     */
+    default CommandInput remove(String path) {
+        return shell("rm -f " + TarArchive.quote(path));
+    }
+
+    private static CommandInput shell(String script) {
+        return CommandInput.builder()
+                .line("sh")
+                .addArgs("-c", TarArchive.quote(script))
+                .build();
+    }
 }
@@ -37,6 +37,42 @@ public abstract class ContentTransferAgentFactoryS3 implements ContentTransferAg
         return AWSCLIAgentCommand.create();
     }
 
+    /**
+     * The size of the parts of multipart uploads and ranged downloads, at least the 5 MiB minimum part size of S3.
+     *
+     * @return the part size in bytes
+     */
+    @Value.Default
+    public int partSize() {
+        return ContentTransferAgentS3Model.DEFAULT_PART_SIZE;
+    }
+
+    /**
+     * The amount of parts, across all files of a transfer, that move at once.
+     *
+     * @return the concurrency of a transfer
+     */
+    @Value.Default
+    public int concurrency() {
+        return ContentTransferAgentS3Model.DEFAULT_CONCURRENCY;
+    }
+
+    @Value.Check
+    void validate() {
+        MultipartTransfer.validate(partSize(), concurrency());
+    }
+
+    /**
+     * The key prefix of content staged for broadcasts, shared by every agent of this factory. Content staged by
+     * one device is then found and delivered by every other device of the bucket, regardless of its provision.
+     *
+     * @return the key prefix of staged content
+     */
+    @Value.Default
+    public String contentPrefix() {
+        return ContentTransferAgentS3Model.DEFAULT_CONTENT_PREFIX;
+    }
+
     public static final class Builder
             extends ImmutableContentTransferAgentFactoryS3.Builder
             implements ConfigBuilder<ContentTransferAgentFactoryS3> {
@@ -44,8 +80,12 @@ public abstract class ContentTransferAgentFactoryS3 implements ContentTransferAg
         public ContentTransferAgentFactoryS3 fromConfig(DevicePoolConfig config) {
             return config.namespace("transfer.s3")
                     .flatMap(entry -> entry.get("bucket")
-                            .map(this::bucketName)
-                            .map(ImmutableContentTransferAgentFactoryS3.Builder::build))
+                            .map(bucket -> {
+                                entry.get("partSize").map(Integer::parseInt).ifPresent(this::partSize);
+                                entry.get("concurrency").map(Integer::parseInt).ifPresent(this::concurrency);
+                                entry.get("contentPrefix").ifPresent(this::contentPrefix);
+                                return bucketName(bucket).build();
+                            }))
                     .orElseThrow(() -> new ContentTransferException("The s3 transfer needs a bucket property"));
         }
     }
@@ -66,6 +106,9 @@ public abstract class ContentTransferAgentFactoryS3 implements ContentTransferAg
                 .s3(s3())
                 .bucketName(bucketName())
                 .command(command())
+                .partSize(partSize())
+                .concurrency(concurrency())
+                .contentPrefix(contentPrefix())
                 .prefix(String.format("%s/%s", id, host.deviceId()))
                 .build();
     }
@@ -7,10 +7,13 @@
 package me.philcali.device.pool.s3;
 
 import me.philcali.device.pool.connection.Connection;
-import me.philcali.device.pool.content.ContentTransferAgent;
+import me.philcali.device.pool.content.ContentDigests;
+import me.philcali.device.pool.content.StagingContentTransferAgent;
+import me.philcali.device.pool.content.TarArchive;
 import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.exceptions.ContentTransferException;
 import me.philcali.device.pool.model.ApiModel;
+import me.philcali.device.pool.model.CommandInput;
 import me.philcali.device.pool.model.CommandOutput;
 import me.philcali.device.pool.model.CopyInput;
 import me.philcali.device.pool.model.CopyOption;
@@ -18,31 +21,43 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.immutables.value.Value;
 import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
-import software.amazon.awssdk.utils.IoUtils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * A {@link me.philcali.device.pool.content.ContentTransferAgent} backed by an S3 blob store.
+ * A {@link me.philcali.device.pool.content.ContentTransferAgent} backed by an S3 blob store. Content staged for a
+ * broadcast is stored under a key derived from its SHA-256, so it is uploaded once no matter how many devices, or
+ * how many broadcasts, copy it.
  */
 @ApiModel
 @Value.Immutable
-abstract class ContentTransferAgentS3Model implements ContentTransferAgent {
+abstract class ContentTransferAgentS3Model implements StagingContentTransferAgent {
     private static final Logger LOGGER = LogManager.getLogger(ContentTransferAgentS3.class);
+    static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    static final int DEFAULT_CONCURRENCY = 8;
+    static final String DEFAULT_CONTENT_PREFIX = "content";
+    private static final int NOT_FOUND = 404;
 
     abstract Connection connection();
 
@@ -54,53 +69,266 @@ abstract class ContentTransferAgentS3Model implements ContentTransferAgent {
 
     abstract AgentCommand command();
 
+    /**
+     * The directory on the device that archives are staged in, on their way to or from S3.
+     *
+     * @return the staging directory on the device
+     */
+    @Value.Default
+    String stagingDirectory() {
+        return "/tmp";
+    }
+
+    /**
+     * The size of the parts of multipart uploads and ranged downloads. Files up to this size move in one request.
+     *
+     * @return the part size in bytes
+     */
+    @Value.Default
+    int partSize() {
+        return DEFAULT_PART_SIZE;
+    }
+
+    /**
+     * The amount of parts, across all files of a transfer, that move at once.
+     *
+     * @return the concurrency of a transfer
+     */
+    @Value.Default
+    int concurrency() {
+        return DEFAULT_CONCURRENCY;
+    }
+
+    /**
+     * The key prefix of content staged for broadcasts, which is addressed by its SHA-256. Unlike {@link #prefix()},
+     * it is shared by the agents of every device, so that a broadcast uploads content once for the whole group.
+     *
+     * @return the key prefix of staged content
+     */
+    @Value.Default
+    String contentPrefix() {
+        return DEFAULT_CONTENT_PREFIX;
+    }
+
+    @Value.Check
+    void validate() {
+        MultipartTransfer.validate(partSize(), concurrency());
+    }
+
+    @Value.Lazy
+    MultipartTransfer transfer() {
+        return new MultipartTransfer(s3(), bucketName(), partSize(), concurrency());
+    }
+
     private String newKey(UUID commandId, Path file) {
-        return String.format("%s/%s/%s", prefix(), commandId, file.getFileName());
+        return newKey(commandId, file.getFileName().toString());
+    }
+
+    private String newKey(UUID commandId, String name) {
+        return String.format("%s/%s/%s", prefix(), commandId, name);
+    }
+
+    private void putObject(CopyInput input, String newKey, Path file) throws IOException {
+        transfer().upload(newKey, file, new HashMap<>() {{
+            put("source", input.source());
+            put("destination", input.destination());
+        }});
+    }
+
+    private void agentCommand(CommandInput input) {
+        final CommandOutput output = connection().execute(input);
+        LOGGER.info("Agent command output: {}", output.toUTF8String());
+        if (output.exitCode() != 0) {
+            throw new ContentTransferException("Agent command " + input.line() + " failed with exit code "
+                    + output.exitCode() + ": " + Optional.ofNullable(output.stderr())
+                    .map(stderr -> new String(stderr, StandardCharsets.UTF_8))
+                    .orElse(""));
+        }
+    }
+
+    private static boolean isArchive(CopyInput input) {
+        return input.options().contains(CopyOption.ARCHIVE) && input.options().contains(CopyOption.RECURSIVE);
     }
 
-    /** {@inheritDoc} */
+    private static String archiveName(String name, CopyInput input) {
+        return name + (input.options().contains(CopyOption.COMPRESS) ? ".tar.gz" : ".tar");
+    }
+
+    private static void writeArchive(Path contentPath, Path archive, CopyInput input) throws IOException {
+        final boolean compressed = input.options().contains(CopyOption.COMPRESS);
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(archive));
+             OutputStream output = compressed ? new GZIPOutputStream(file) : file) {
+            TarArchive.write(contentPath, output);
+        }
+    }
+
+    private boolean exists(String key) {
+        try {
+            s3().headObject(HeadObjectRequest.builder().bucket(bucketName()).key(key).build());
+            return true;
+        } catch (S3Exception e) {
+            if (e.statusCode() == NOT_FOUND) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Staged content lives under <code>s3://bucketName/contentPrefix</code>.
+     */
+    @Override
+    public String stagingLocation() {
+        return "s3://" + bucketName() + "/" + contentPrefix();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The content is stored under <code>contentPrefix/sha256/name</code>, and is only uploaded if that key is
+     * missing. Recursive copies of a directory are staged as a single tar object.
+     */
+    @Override
+    public CopyInput stage(CopyInput input) throws ContentTransferException {
+        final Path contentPath = Paths.get(input.source());
+        final boolean archived = Files.isDirectory(contentPath);
+        if (archived && !input.options().contains(CopyOption.RECURSIVE)) {
+            throw new ContentTransferException("Staging directory " + contentPath + " requires a recursive copy");
+        }
+        final String name = archived
+                ? archiveName(contentPath.getFileName().toString(), input)
+                : contentPath.getFileName().toString();
+        try {
+            final Path file = archived ? Files.createTempFile("device-pool", name) : contentPath;
+            try {
+                if (archived) {
+                    writeArchive(contentPath, file, input);
+                }
+                final String contentKey = String.format("%s/%s/%s", contentPrefix(), ContentDigests.digest(file), name);
+                if (exists(contentKey)) {
+                    LOGGER.info("Source location {} is already staged as s3://{}/{}",
+                            contentPath, bucketName(), contentKey);
+                } else {
+                    LOGGER.info("Staging source location {} as s3://{}/{}", contentPath, bucketName(), contentKey);
+                    putObject(input, contentKey, file);
+                }
+                final CopyInput.Builder staged = CopyInput.builder().from(input)
+                        .source("s3://" + bucketName() + "/" + contentKey);
+                if (archived) {
+                    staged.addOptions(CopyOption.ARCHIVE);
+                }
+                return staged.build();
+            } finally {
+                if (archived) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (S3Exception | IOException e) {
+            throw new ContentTransferException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Staged archives are copied to the staging directory and extracted, every other staged object is copied
+     * with a single agent command.
+     */
+    @Override
+    public void deliver(CopyInput staged) throws ContentTransferException {
+        try {
+            if (staged.options().contains(CopyOption.ARCHIVE)) {
+                final String archiveName = staged.source().substring(staged.source().lastIndexOf('/') + 1);
+                final boolean compressed = archiveName.endsWith(".tar.gz");
+                final String name = archiveName.substring(0, archiveName.length() - (compressed ? 7 : 4));
+                deliverArchive(staged.source(), archiveName, staged.destination(), name, compressed);
+            } else {
+                agentCommand(command().copy(staged));
+            }
+        } catch (ConnectionException e) {
+            throw new ContentTransferException(e);
+        }
+    }
+
+    private void deliverArchive(String uri, String archiveName, String destination, String name, boolean compressed) {
+        final String staged = stagingDirectory() + "/" + UUID.randomUUID() + "-" + archiveName;
+        agentCommand(command().copy(CopyInput.builder()
+                .source(uri)
+                .destination(staged)
+                .build()));
+        agentCommand(command().extract(staged, destination, name, compressed));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Recursive copies of a directory with {@link me.philcali.device.pool.model.CopyOption#ARCHIVE} are uploaded
+     * as a single tar object, which the device copies and extracts with one command each.
+     */
     @Override
     public void send(CopyInput input) throws ContentTransferException {
         Path contentPath = Paths.get(input.source());
-        Consumer<Path> uploadFile = file -> {
+        if (isArchive(input) && Files.isDirectory(contentPath)) {
+            sendArchive(input, contentPath);
+            return;
+        }
+        final MultipartTransfer.Task<Path> uploadFile = file -> {
             final String newKey = newKey(UUID.randomUUID(), file);
             LOGGER.info("Source location is {} with s3 key {}", file, newKey);
-            final PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName())
-                    .key(newKey)
-                    .metadata(new HashMap<>() {{
-                        put("source", input.source());
-                        put("destination", input.destination());
-                    }})
-                    .build();
-            try {
-                PutObjectResponse putObject = s3().putObject(putObjectRequest, RequestBody.fromFile(file));
-                LOGGER.info("Uploaded to s3://{}/{}: {}", bucketName(), newKey, putObject.eTag());
-                CommandOutput output = connection().execute(command().copy(CopyInput.builder().from(input)
-                        .source("s3://" + bucketName() + "/" + newKey)
-                        .build()));
-                LOGGER.info("Agent copy output: {}", output.toUTF8String());
-            } catch (S3Exception | ConnectionException e) {
-                throw new ContentTransferException(e);
-            }
+            putObject(input, newKey, file);
+            CommandOutput output = connection().execute(command().copy(CopyInput.builder().from(input)
+                    .source("s3://" + bucketName() + "/" + newKey)
+                    .build()));
+            LOGGER.info("Agent copy output: {}", output.toUTF8String());
         };
-        if (input.options().contains(CopyOption.RECURSIVE) && Files.isDirectory(contentPath)) {
+        try {
+            if (input.options().contains(CopyOption.RECURSIVE) && Files.isDirectory(contentPath)) {
+                final List<Path> files;
+                try (Stream<Path> walk = Files.walk(contentPath)) {
+                    files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+                }
+                transfer().forEach(files, uploadFile);
+            } else {
+                uploadFile.run(contentPath);
+            }
+        } catch (S3Exception | IOException | ConnectionException e) {
+            throw new ContentTransferException(e);
+        }
+    }
+
+    private void sendArchive(CopyInput input, Path contentPath) throws ContentTransferException {
+        final String archiveName = archiveName(contentPath.getFileName().toString(), input);
+        final String newKey = newKey(UUID.randomUUID(), archiveName);
+        try {
+            final Path archive = Files.createTempFile("device-pool", archiveName);
             try {
-                // Could be optimized with an archive
-                Files.walk(contentPath)
-                        .filter(Files::isRegularFile)
-                        .forEach(uploadFile);
-            } catch (IOException e) {
-                throw new ContentTransferException(e);
+                writeArchive(contentPath, archive, input);
+                LOGGER.info("Source location is {} archived with s3 key {}", contentPath, newKey);
+                putObject(input, newKey, archive);
+            } finally {
+                Files.deleteIfExists(archive);
             }
-        } else {
-            uploadFile.accept(contentPath);
+            deliverArchive("s3://" + bucketName() + "/" + newKey, archiveName, input.destination(),
+                    contentPath.getFileName().toString(), input.options().contains(CopyOption.COMPRESS));
+        } catch (S3Exception | IOException | ConnectionException e) {
+            throw new ContentTransferException(e);
         }
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * Recursive copies with {@link me.philcali.device.pool.model.CopyOption#ARCHIVE} are archived on the device
+     * and downloaded as a single tar object.
+     */
     @Override
     public void receive(CopyInput input) throws ContentTransferException {
+        if (isArchive(input)) {
+            receiveArchive(input);
+            return;
+        }
         final Path targetFile = Paths.get(input.destination());
         final String newKey = newKey(UUID.randomUUID(), targetFile);
         try {
@@ -112,15 +340,39 @@ abstract class ContentTransferAgentS3Model implements ContentTransferAgent {
                     .destination("s3://" + bucketName() + "/" + newKey)
                     .build()));
             LOGGER.info("Agent copy output: {}", output.toUTF8String());
+            transfer().download(newKey, targetFile);
+        } catch (S3Exception | IOException | ConnectionException e) {
+            throw new ContentTransferException(e);
+        }
+    }
+
+    private void receiveArchive(CopyInput input) throws ContentTransferException {
+        final Path target = TarArchive.target(input.source(), Paths.get(input.destination()));
+        final UUID commandId = UUID.randomUUID();
+        final String archiveName = archiveName(target.getFileName().toString(), input);
+        final String newKey = newKey(commandId, archiveName);
+        final String staged = stagingDirectory() + "/" + commandId + "-" + archiveName;
+        final boolean compressed = input.options().contains(CopyOption.COMPRESS);
+        try {
+            LOGGER.info("Target location is {} archived with s3 key {}", target, newKey);
+            agentCommand(command().archive(input.source(), staged, compressed));
+            try {
+                agentCommand(command().copy(CopyInput.builder()
+                        .source(staged)
+                        .destination("s3://" + bucketName() + "/" + newKey)
+                        .build()));
+            } finally {
+                connection().execute(command().remove(staged));
+            }
             final GetObjectRequest getObject = GetObjectRequest.builder()
                     .bucket(bucketName())
                     .key(newKey)
                     .build();
-            try (OutputStream outputStream = Files.newOutputStream(targetFile);
-                    ResponseInputStream<GetObjectResponse> object = s3().getObject(getObject)) {
-                IoUtils.copy(object, outputStream);
+            try (ResponseInputStream<GetObjectResponse> object = s3().getObject(getObject);
+                    InputStream archive = new BufferedInputStream(compressed ? new GZIPInputStream(object) : object)) {
+                TarArchive.extract(archive, target);
             }
-            LOGGER.info("Downloaded from s3://{}/{} to {}", bucketName(), newKey, targetFile);
+            LOGGER.info("Downloaded from s3://{}/{} to {}", bucketName(), newKey, target);
         } catch (S3Exception | IOException | ConnectionException e) {
             throw new ContentTransferException(e);
         }
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.s3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Moves objects between the local disk and S3 in parallel. Files larger than the part size are uploaded as a
+ * multipart upload and downloaded as ranged GETs, each part written in place into a preallocated file. A single
+ * {@link java.util.concurrent.Semaphore} bounds the parts in flight across every file of a transfer, which bounds
+ * both the memory held in part buffers and the connections used.
+ */
+final class MultipartTransfer {
+    private static final Logger LOGGER = LogManager.getLogger(MultipartTransfer.class);
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("S3-Transfer");
+        return thread;
+    });
+    private static final int MAX_PARTS = 10000;
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final S3Client s3;
+    private final String bucketName;
+    private final int partSize;
+    private final int concurrency;
+    private final Semaphore permits;
+
+    @FunctionalInterface
+    interface Task<T> {
+        void run(T item) throws IOException;
+    }
+
+    MultipartTransfer(S3Client s3, String bucketName, int partSize, int concurrency) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    /**
+     * Rejects transfer settings S3 cannot honor, before any transfer starts.
+     *
+     * @param partSize the size of each part, at least the 5 MiB S3 requires of every part but the last
+     * @param concurrency the amount of parts in flight, at least 1
+     * @throws IllegalArgumentException if either setting is out of range
+     */
+    static void validate(int partSize, int concurrency) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("partSize must be at least " + MIN_PART_SIZE + " bytes");
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+    }
+
+    private void acquire() throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an S3 transfer slot");
+        }
+    }
+
+    private static <T> List<T> await(List<CompletableFuture<T>> futures) throws IOException {
+        RangedObjects.join(CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])));
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    /**
+     * Runs a task for every item, with as many items in flight as the transfer concurrency.
+     *
+     * @param items the items to run
+     * @param task the task run for every item
+     * @param <T> the type of items
+     * @throws IOException if any task fails, after which the remaining items are skipped
+     */
+    <T> void forEach(List<T> items, Task<T> task) throws IOException {
+        final Queue<T> pending = new ConcurrentLinkedQueue<>(items);
+        final List<CompletableFuture<Void>> runners = new ArrayList<>();
+        for (int runner = 0; runner < Math.min(concurrency, items.size()); runner++) {
+            runners.add(CompletableFuture.runAsync(() -> {
+                T item;
+                while ((item = pending.poll()) != null) {
+                    try {
+                        task.run(item);
+                    } catch (IOException e) {
+                        pending.clear();
+                        throw new UncheckedIOException(e);
+                    } catch (RuntimeException e) {
+                        pending.clear();
+                        throw e;
+                    }
+                }
+            }, WORKERS));
+        }
+        await(runners);
+    }
+
+    /**
+     * Uploads a file to a key, as a multipart upload if it is larger than the part size.
+     *
+     * @param key the destination key
+     * @param file the file to upload
+     * @param metadata the object metadata
+     * @throws IOException if the file cannot be read
+     */
+    void upload(String key, Path file, Map<String, String> metadata) throws IOException {
+        final long size = Files.size(file);
+        if (size <= partSize) {
+            acquire();
+            try {
+                final PutObjectResponse putObject = s3.putObject(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .metadata(metadata)
+                        .build(), RequestBody.fromFile(file));
+                LOGGER.info("Uploaded to s3://{}/{}: {}", bucketName, key, putObject.eTag());
+            } finally {
+                permits.release();
+            }
+            return;
+        }
+        // S3 caps the amount of parts, so very large files use larger parts
+        final long filePartSize = Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+        final String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .metadata(metadata)
+                .build()).uploadId();
+        final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long position = 0; position < size; position += filePartSize) {
+                final long offset = position;
+                final int length = (int) Math.min(filePartSize, size - position);
+                final int partNumber = parts.size() + 1;
+                acquire();
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        final ByteBuffer buffer = ByteBuffer.allocate(length);
+                        while (buffer.hasRemaining()) {
+                            if (channel.read(buffer, offset + buffer.position()) == -1) {
+                                throw new EOFException("File " + file + " shrank while uploading");
+                            }
+                        }
+                        buffer.flip();
+                        final UploadPartResponse response = s3.uploadPart(UploadPartRequest.builder()
+                                .bucket(bucketName)
+                                .key(key)
+                                .uploadId(uploadId)
+                                .partNumber(partNumber)
+                                .contentLength((long) length)
+                                .build(), RequestBody.fromByteBuffer(buffer));
+                        return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        permits.release();
+                    }
+                }, WORKERS));
+                if (parts.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+            }
+            final List<CompletedPart> completed = await(parts);
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                    .build());
+            LOGGER.info("Uploaded to s3://{}/{} in {} parts", bucketName, key, completed.size());
+        } catch (IOException | RuntimeException e) {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            throw e;
+        }
+    }
+
+    private GetObjectRequest range(String key, long start, long end) {
+        return RangedObjects.range(bucketName, key, start, end);
+    }
+
+    private static void write(InputStream input, FileChannel channel, long position) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long offset = position;
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            final ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+            while (data.hasRemaining()) {
+                offset += channel.write(data, offset);
+            }
+        }
+    }
+
+    /**
+     * Downloads a key into a file. The first part is a ranged GET that also reports the object size, and the
+     * remaining parts are fetched in parallel into the preallocated file, which is moved into place once whole.
+     *
+     * @param key the source key
+     * @param target the file to download into
+     * @throws IOException if the file cannot be written
+     */
+    void download(String key, Path target) throws IOException {
+        final Path partial = target.resolveSibling(target.getFileName() + ".part");
+        try (FileChannel channel = FileChannel.open(partial,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = -1;
+            acquire();
+            try (ResponseInputStream<GetObjectResponse> object = s3.getObject(range(key, 0, partSize - 1))) {
+                size = RangedObjects.objectSize(object.response());
+                if (size > 0) {
+                    channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+                }
+                write(object, channel, 0);
+            } catch (S3Exception e) {
+                if (!RangedObjects.isEmpty(e)) {
+                    throw e;
+                }
+            } finally {
+                permits.release();
+            }
+            final List<CompletableFuture<Void>> ranges = new ArrayList<>();
+            for (long position = partSize; position < size; position += partSize) {
+                final long start = position;
+                final long end = Math.min(size, position + partSize) - 1;
+                acquire();
+                ranges.add(CompletableFuture.runAsync(() -> {
+                    try (ResponseInputStream<GetObjectResponse> object = s3.getObject(range(key, start, end))) {
+                        write(object, channel, start);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        permits.release();
+                    }
+                }, WORKERS));
+                if (ranges.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+            }
+            await(ranges);
+            LOGGER.info("Downloaded from s3://{}/{} to {} in {} parts", bucketName, key, target, ranges.size() + 1);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.s3;
+
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Helpers for reading S3 objects as a series of ranged GETs, shared by everything in the device pool reading large
+ * objects in parallel parts. The first range also reports the size of the object, which sizes the remaining ranges.
+ */
+public final class RangedObjects {
+    private static final int INVALID_RANGE = 416;
+
+    private RangedObjects() {
+    }
+
+    /**
+     * A GET of a byte range of an object.
+     *
+     * @param bucketName the bucket holding the object
+     * @param key the key of the object
+     * @param start the first byte of the range
+     * @param end the last byte of the range, inclusive
+     * @return the {@link software.amazon.awssdk.services.s3.model.GetObjectRequest} of the range
+     */
+    public static GetObjectRequest range(String bucketName, String key, long start, long end) {
+        return GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                .build();
+    }
+
+    /**
+     * The total size of an object from the <code>Content-Range</code> of a ranged GET.
+     *
+     * @param response the response of a ranged GET
+     * @return the object size, or -1 if the response holds the whole object
+     */
+    public static long objectSize(GetObjectResponse response) {
+        final String contentRange = response.contentRange();
+        if (contentRange == null || contentRange.indexOf('/') == -1 || contentRange.endsWith("*")) {
+            return -1;
+        }
+        return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+    }
+
+    /**
+     * Whether a failed ranged GET targeted an empty object, which has no satisfiable range.
+     *
+     * @param e the {@link software.amazon.awssdk.services.s3.model.S3Exception} of the GET
+     * @return true if the object is empty
+     */
+    public static boolean isEmpty(S3Exception e) {
+        return e.statusCode() == INVALID_RANGE;
+    }
+
+    /**
+     * Waits on a part transferred in the background, surfacing the failure the part was thrown with.
+     *
+     * @param part the future of the part
+     * @param <T> the result of the part
+     * @return the result of the part
+     * @throws IOException if the part failed to transfer
+     */
+    public static <T> T join(CompletableFuture<T> part) throws IOException {
+        try {
+            return part.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
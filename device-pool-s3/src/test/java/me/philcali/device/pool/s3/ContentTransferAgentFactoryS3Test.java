@@ -6,12 +6,18 @@
 
 package me.philcali.device.pool.s3;
 
+import me.philcali.device.pool.BaseDevice;
+import me.philcali.device.pool.DeviceGroup;
 import me.philcali.device.pool.configuration.DevicePoolConfig;
 import me.philcali.device.pool.configuration.DevicePoolConfigProperties;
 import me.philcali.device.pool.connection.Connection;
 import me.philcali.device.pool.content.ContentTransferAgent;
 import me.philcali.device.pool.content.ContentTransferAgentFactory;
 import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.ExecutionSummary;
 import me.philcali.device.pool.model.Host;
 import me.philcali.device.pool.model.PlatformOS;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,13 +25,26 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @ExtendWith({MockitoExtension.class})
@@ -33,6 +52,8 @@ class ContentTransferAgentFactoryS3Test {
     @Mock
     private Connection connection;
     @Mock
+    private Connection otherConnection;
+    @Mock
     private S3Client s3;
     private Host host;
     private ContentTransferAgentFactory factory;
@@ -60,6 +81,7 @@ class ContentTransferAgentFactoryS3Test {
                 .bucketName(bucketName)
                 .prefix("abc-123/i-abcabcabc")
                 .command(AWSCLIAgentCommand.create())
+                .contentPrefix("content")
                 .s3(s3)
                 .connection(connection)
                 .build();
@@ -70,11 +92,60 @@ class ContentTransferAgentFactoryS3Test {
         verify(s3).close();
     }
 
+    @Test
+    void GIVEN_factory_agents_WHEN_broadcasting_THEN_content_is_staged_once_for_every_device() throws Exception {
+        final Host otherHost = Host.builder().from(host).deviceId("i-defdefdef").hostName("otherhost.com").build();
+        final ContentTransferAgent agent = factory.connect("abc-123", connection, host);
+        final ContentTransferAgent otherAgent = factory.connect("abc-123", otherConnection, otherHost);
+        when(s3.headObject(any(HeadObjectRequest.class))).thenThrow(S3Exception.builder().statusCode(404).build());
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+        final CommandOutput copied = CommandOutput.builder().exitCode(0).stdout(new byte[0]).build();
+        when(connection.execute(any(CommandInput.class))).thenReturn(copied);
+        when(otherConnection.execute(any(CommandInput.class))).thenReturn(copied);
+        final Path content = Files.createTempFile("device-pool", ".txt");
+        Files.writeString(content, "Hello World!", StandardCharsets.UTF_8);
+        try (DeviceGroup group = DeviceGroup.builder()
+                .devices(Arrays.asList(
+                        BaseDevice.builder().host(host).connection(connection).contentTransfer(agent).build(),
+                        BaseDevice.builder().host(otherHost).connection(otherConnection).contentTransfer(otherAgent)
+                                .build()))
+                .build()) {
+            ExecutionSummary summary = group.copyTo(CopyInput.builder()
+                    .source(content.toString())
+                    .destination("/opt/hello.txt")
+                    .build());
+
+            assertTrue(summary.succeeded());
+        } finally {
+            Files.deleteIfExists(content);
+        }
+        verify(s3, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(connection, times(1)).execute(any(CommandInput.class));
+        verify(otherConnection, times(1)).execute(any(CommandInput.class));
+    }
+
     @Test
     void GIVEN_no_factory_WHEN_config_is_used_THEN_factory_is_created() throws IOException {
         DevicePoolConfig config = DevicePoolConfigProperties.load(getClass().getClassLoader());
         ContentTransferAgentFactoryS3 factoryS3 = ContentTransferAgentFactoryS3.builder().s3(s3).fromConfig(config);
         assertEquals("mybucket", factoryS3.bucketName());
+        assertEquals(16 * 1024 * 1024, factoryS3.partSize());
+        assertEquals(4, factoryS3.concurrency());
+    }
+
+    @Test
+    void GIVEN_no_factory_WHEN_transfer_settings_are_out_of_range_THEN_exception_is_thrown() {
+        assertThrows(IllegalArgumentException.class, () -> ContentTransferAgentFactoryS3.builder()
+                .s3(s3)
+                .bucketName("mybucket")
+                .partSize(1024)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> ContentTransferAgentFactoryS3.builder()
+                .s3(s3)
+                .bucketName("mybucket")
+                .concurrency(0)
+                .build());
     }
 
     @Test
@@ -8,6 +8,8 @@ package me.philcali.device.pool.s3;
 
 import me.philcali.device.pool.connection.Connection;
 import me.philcali.device.pool.content.ContentTransferAgent;
+import me.philcali.device.pool.content.StagingContentTransferAgent;
+import me.philcali.device.pool.exceptions.ContentTransferException;
 import me.philcali.device.pool.model.CommandInput;
 import me.philcali.device.pool.model.CommandOutput;
 import me.philcali.device.pool.model.CopyInput;
@@ -24,8 +26,11 @@ import software.amazon.awssdk.http.AbortableInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.File;
 import java.io.IOException;
@@ -34,14 +39,19 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith({MockitoExtension.class})
@@ -95,7 +105,7 @@ class ContentTransferAgentS3Test {
                 .destination("a")
                 .addOptions(CopyOption.RECURSIVE)
                 .build();
-        final Set<String> uuids = new HashSet<>();
+        final Set<String> uuids = ConcurrentHashMap.newKeySet();
         when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).then(answer -> {
             PutObjectRequest request = answer.getArgument(0);
             String[] parts = request.key().split("/");
@@ -122,6 +132,102 @@ class ContentTransferAgentS3Test {
         assertEquals(2, uuids.size());
     }
 
+    @Test
+    void GIVEN_transfer_is_created_WHEN_transfer_sends_archive_THEN_s3_is_invoked_once() {
+        CopyInput input = CopyInput.builder()
+                .source(tempDir.resolve("a").toString())
+                .destination("/opt/a")
+                .addOptions(CopyOption.RECURSIVE, CopyOption.ARCHIVE, CopyOption.COMPRESS)
+                .build();
+        AtomicReference<String> key = new AtomicReference<>();
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).then(answer -> {
+            PutObjectRequest request = answer.getArgument(0);
+            key.set(request.key());
+            assertTrue(request.key().startsWith(prefix + "/"));
+            assertTrue(request.key().endsWith("/a.tar.gz"));
+            return PutObjectResponse.builder()
+                    .build();
+        });
+        AtomicReference<String> staged = new AtomicReference<>();
+        when(command.copy(any(CopyInput.class))).then(answer -> {
+            CopyInput commandInput = answer.getArgument(0);
+            assertEquals("s3://" + bucketName + "/" + key.get(), commandInput.source());
+            assertTrue(commandInput.destination().startsWith("/tmp/"));
+            staged.set(commandInput.destination());
+            return CommandInput.of("echo Hello World");
+        });
+        when(command.extract(any(String.class), eq("/opt/a"), eq("a"), eq(true))).then(answer -> {
+            assertEquals(staged.get(), answer.getArgument(0));
+            return CommandInput.of("echo Hello World");
+        });
+        when(connection.execute(eq(CommandInput.of("echo Hello World")))).thenReturn(CommandOutput.builder()
+                .exitCode(0)
+                .originalInput(CommandInput.of("echo Hello World"))
+                .stdout("Hello World".getBytes(StandardCharsets.UTF_8))
+                .build());
+        agent.send(input);
+        verify(s3, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(connection, times(2)).execute(any(CommandInput.class));
+    }
+
+    @Test
+    void GIVEN_transfer_is_created_WHEN_agent_command_fails_THEN_transfer_fails() {
+        CopyInput input = CopyInput.builder()
+                .source(tempDir.resolve("a").toString())
+                .destination("/opt/a")
+                .addOptions(CopyOption.RECURSIVE, CopyOption.ARCHIVE)
+                .build();
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+        when(command.copy(any(CopyInput.class))).thenReturn(CommandInput.of("echo Hello World"));
+        when(connection.execute(eq(CommandInput.of("echo Hello World")))).thenReturn(CommandOutput.builder()
+                .exitCode(1)
+                .originalInput(CommandInput.of("echo Hello World"))
+                .stderr("Access Denied".getBytes(StandardCharsets.UTF_8))
+                .build());
+        ContentTransferException e = assertThrows(ContentTransferException.class, () -> agent.send(input));
+        assertTrue(e.getMessage().contains("Access Denied"));
+        verify(command, never()).extract(any(String.class), any(String.class), any(String.class), anyBoolean());
+    }
+
+    @Test
+    void GIVEN_transfer_is_created_WHEN_content_is_staged_THEN_s3_is_uploaded_once_by_content() {
+        StagingContentTransferAgent staging = (StagingContentTransferAgent) agent;
+        CopyInput input = CopyInput.builder()
+                .source(tempDir.resolve("c").resolve("test.txt").toString())
+                .destination("/opt/test.txt")
+                .build();
+        Set<String> keys = ConcurrentHashMap.newKeySet();
+        when(s3.headObject(any(HeadObjectRequest.class))).then(answer -> {
+            HeadObjectRequest request = answer.getArgument(0);
+            if (!keys.contains(request.key())) {
+                throw S3Exception.builder().statusCode(404).build();
+            }
+            return HeadObjectResponse.builder().build();
+        });
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).then(answer -> {
+            PutObjectRequest request = answer.getArgument(0);
+            keys.add(request.key());
+            return PutObjectResponse.builder()
+                    .build();
+        });
+        CopyInput staged = staging.stage(input);
+        // Staging the same content again finds the existing object, addressed by its SHA-256
+        assertEquals(staged, staging.stage(input));
+        assertEquals("s3://" + bucketName + "/content/"
+                + "7f83b1657ff1fc53b92dc18148a1d65dfc2d4b1fa3d677284addd200126d9069/test.txt", staged.source());
+        verify(s3, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+
+        when(command.copy(eq(staged))).thenReturn(CommandInput.of("echo Hello World"));
+        when(connection.execute(eq(CommandInput.of("echo Hello World")))).thenReturn(CommandOutput.builder()
+                .exitCode(0)
+                .originalInput(CommandInput.of("echo Hello World"))
+                .stdout("Hello World".getBytes(StandardCharsets.UTF_8))
+                .build());
+        staging.deliver(staged);
+        verify(connection, times(1)).execute(any(CommandInput.class));
+    }
+
     @Test
     void GIVEN_transfer_is_created_WHEN_transfer_sends_THEN_s3_is_invoked() {
         CopyInput input = CopyInput.builder()
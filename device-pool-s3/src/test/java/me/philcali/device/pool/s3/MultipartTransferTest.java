@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.s3;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({MockitoExtension.class})
+class MultipartTransferTest {
+    @Mock
+    private S3Client s3;
+    private MultipartTransfer transfer;
+    private Path tempDir;
+    private final byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeEach
+    void setup() throws IOException {
+        transfer = new MultipartTransfer(s3, "test-bucket", 4, 2);
+        tempDir = Files.createTempDirectory("test-multipart");
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    @Test
+    void GIVEN_file_larger_than_part_WHEN_uploading_THEN_parts_are_uploaded_and_completed() throws IOException {
+        final Path file = Files.write(tempDir.resolve("image.bin"), content);
+        final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+        when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class))).thenReturn(
+                CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).then(answer -> {
+            UploadPartRequest request = answer.getArgument(0);
+            RequestBody body = answer.getArgument(1);
+            assertEquals("upload-1", request.uploadId());
+            parts.put(request.partNumber(), body.contentStreamProvider().newStream().readAllBytes());
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        });
+        when(s3.completeMultipartUpload(any(CompleteMultipartUploadRequest.class))).then(answer -> {
+            CompleteMultipartUploadRequest request = answer.getArgument(0);
+            assertEquals("key", request.key());
+            assertEquals("etag-1,etag-2,etag-3", request.multipartUpload().parts().stream()
+                    .map(CompletedPart::eTag)
+                    .collect(Collectors.joining(",")));
+            return CompleteMultipartUploadResponse.builder().build();
+        });
+
+        transfer.upload("key", file, Collections.emptyMap());
+        assertEquals("0123", new String(parts.get(1)));
+        assertEquals("4567", new String(parts.get(2)));
+        assertEquals("89", new String(parts.get(3)));
+    }
+
+    @Test
+    void GIVEN_object_larger_than_part_WHEN_downloading_THEN_ranges_are_written_in_place() throws IOException {
+        when(s3.getObject(any(GetObjectRequest.class))).then(answer -> {
+            GetObjectRequest request = answer.getArgument(0);
+            String[] range = request.range().substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(range[0]);
+            int end = Math.min(content.length - 1, Integer.parseInt(range[1]));
+            return new ResponseInputStream<>(
+                    GetObjectResponse.builder()
+                            .contentRange("bytes " + start + "-" + end + "/" + content.length)
+                            .build(),
+                    AbortableInputStream.create(new ByteArrayInputStream(content, start, end - start + 1)));
+        });
+
+        final Path target = tempDir.resolve("image.bin");
+        transfer.download("key", target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertFalse(Files.exists(tempDir.resolve("image.bin.part")));
+        verify(s3, times(3)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void GIVEN_ranged_responses_WHEN_reading_object_size_THEN_total_is_parsed() {
+        assertEquals(10, RangedObjects.objectSize(GetObjectResponse.builder()
+                .contentRange("bytes 0-3/10")
+                .build()));
+        assertEquals(-1, RangedObjects.objectSize(GetObjectResponse.builder().build()));
+    }
+}
@@ -41,4 +41,13 @@ interface CreateProvisionObjectModel {
      */
     @Nullable
     Instant expiresIn();
+
+    /**
+     * The platform, in the form of <code>os:arch</code>, requested for the provision. Pools are homogeneous, so
+     * clients only send the platform of the pool itself.
+     *
+     * @return a {@link java.lang.String} object
+     */
+    @Nullable
+    String platform();
 }
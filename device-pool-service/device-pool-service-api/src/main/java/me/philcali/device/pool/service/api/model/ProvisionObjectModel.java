@@ -56,4 +56,7 @@ abstract class ProvisionObjectModel implements Modifiable, UniqueEntity {
 
     @Nullable
     abstract String message();
+
+    @Nullable
+    abstract String platform();
 }
@@ -65,6 +65,7 @@ public class ProvisionRepoDynamo
                         .createdAt(now)
                         .updatedAt(now)
                         .expiresIn(create.expiresIn())
+                        .platform(create.platform())
                         .status(Status.REQUESTED)
                         .build())
                 .conditionExpression(Expression.builder()
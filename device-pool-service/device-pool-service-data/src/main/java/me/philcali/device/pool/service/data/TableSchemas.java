@@ -131,6 +131,9 @@ public class TableSchemas {
                 .addAttribute(String.class, a -> a.name("message")
                         .getter(ProvisionObject::message)
                         .setter(ProvisionObject.Builder::message))
+                .addAttribute(String.class, a -> a.name("platform")
+                        .getter(ProvisionObject::platform)
+                        .setter(ProvisionObject.Builder::platform))
                 .addAttribute(Long.class, a -> a.name("createdAt")
                         .getter(p -> Optional.ofNullable(p.createdAt()).map(Instant::getEpochSecond).orElse(null))
                         .setter((builder, value) -> builder.createdAt(Instant.ofEpochSecond(value))))
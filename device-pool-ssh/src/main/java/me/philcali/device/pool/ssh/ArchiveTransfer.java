@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.content.TarArchive;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.CopyOption;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.session.ClientSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves a directory tree over an SSH session as a single tar stream: uploads pipe the archive into a remote
+ * <code>tar -x</code> on one exec channel, downloads read a remote <code>tar -c</code> from one exec channel.
+ * Compared to a copy per file, the whole tree costs one channel and no per file round trips, which dominates
+ * for trees of many small files. The device only needs <code>tar</code>, and <code>gzip</code> when
+ * {@link me.philcali.device.pool.model.CopyOption#COMPRESS} is set.
+ */
+final class ArchiveTransfer {
+    private static final Logger LOGGER = LogManager.getLogger(ArchiveTransfer.class);
+    private static final Duration TIMEOUT = Duration.ofMinutes(10);
+
+    private final ClientSession session;
+
+    ArchiveTransfer(ClientSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Whether an upload of the {@link me.philcali.device.pool.model.CopyInput} is moved as an archive.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to send
+     * @return true if the input asks for an archive of a local directory
+     */
+    static boolean isArchive(CopyInput input) {
+        return input.options().contains(CopyOption.ARCHIVE)
+                && input.options().contains(CopyOption.RECURSIVE)
+                && Files.isDirectory(Paths.get(input.source()));
+    }
+
+    /**
+     * Whether a download of the {@link me.philcali.device.pool.model.CopyInput} is moved as an archive.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to receive
+     * @return true if the input asks for an archive of a remote directory
+     */
+    static boolean isRemoteArchive(CopyInput input) {
+        return input.options().contains(CopyOption.ARCHIVE) && input.options().contains(CopyOption.RECURSIVE);
+    }
+
+    private static boolean compressed(CopyInput input) {
+        return input.options().contains(CopyOption.COMPRESS);
+    }
+
+    private ChannelExec open(String command, OutputStream output, OutputStream error) throws IOException {
+        LOGGER.debug("Streaming archive on {}: {}", session.getConnectAddress(), command);
+        final ChannelExec exec = session.createExecChannel(command);
+        exec.setOut(output);
+        exec.setErr(error);
+        exec.open().verify(TIMEOUT);
+        return exec;
+    }
+
+    private static void complete(ChannelExec exec, String command, ByteArrayOutputStream error)
+            throws ContentTransferException {
+        final Set<ClientChannelEvent> masks = exec.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TIMEOUT);
+        if (masks.contains(ClientChannelEvent.TIMEOUT)) {
+            throw new ContentTransferException("Timeout waiting for archive command: " + command);
+        }
+        final Integer exitCode = exec.getExitStatus();
+        if (exitCode == null || exitCode != 0) {
+            throw new ContentTransferException("Archive command " + command + " failed (" + exitCode + "): "
+                    + error.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Streams a local directory into the destination on the device, which receives the tree by name when it is
+     * an existing directory, and becomes the tree otherwise.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to send
+     * @throws ContentTransferException if the archive fails to stream or extract
+     */
+    void send(CopyInput input) throws ContentTransferException {
+        final Path source = Paths.get(input.source());
+        final String command = "sh -c " + TarArchive.quote(TarArchive.extractScript(
+                "-", input.destination(), source.getFileName().toString(), compressed(input)));
+        final ByteArrayOutputStream error = new ByteArrayOutputStream();
+        try (ChannelExec exec = open(command, OutputStream.nullOutputStream(), error)) {
+            try (OutputStream stdin = exec.getInvertedIn();
+                 OutputStream archive = compressed(input) ? new GZIPOutputStream(stdin, 64 * 1024) : stdin) {
+                TarArchive.write(source, archive);
+            } catch (IOException e) {
+                // A remote failure closes the channel under the stream, which is the more useful error
+                complete(exec, command, error);
+                throw e;
+            }
+            complete(exec, command, error);
+        } catch (IOException e) {
+            throw new ContentTransferException(e);
+        }
+    }
+
+    /**
+     * Streams a directory on the device into the local destination, which receives the tree by name when it is
+     * an existing directory, and becomes the tree otherwise.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to receive
+     * @throws ContentTransferException if the archive fails to stream or extract
+     */
+    void receive(CopyInput input) throws ContentTransferException {
+        final Path target = TarArchive.target(input.source(), Paths.get(input.destination()));
+        final String command = "sh -c " + TarArchive.quote(TarArchive.createScript(
+                input.source(), "-", compressed(input)));
+        final ByteArrayOutputStream error = new ByteArrayOutputStream();
+        try (ChannelExec exec = open(command, null, error)) {
+            try (InputStream stdout = exec.getInvertedOut();
+                 InputStream archive = compressed(input) ? new GZIPInputStream(stdout, 64 * 1024) : stdout) {
+                TarArchive.extract(archive, target);
+                // Drain the end of archive padding, so the remote tar never sees a closed pipe
+                archive.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                complete(exec, command, error);
+                throw e;
+            }
+            complete(exec, command, error);
+        } catch (IOException e) {
+            throw new ContentTransferException(e);
+        }
+    }
+}
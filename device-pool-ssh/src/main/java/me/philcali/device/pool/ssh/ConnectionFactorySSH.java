@@ -16,13 +16,16 @@ import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.exceptions.ContentTransferException;
 import me.philcali.device.pool.model.APIShadowModel;
 import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.TransferStats;
 import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.config.hosts.HostConfigEntry;
 import org.apache.sshd.client.future.ConnectFuture;
 import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.common.AttributeRepository;
+import org.apache.sshd.core.CoreModuleProperties;
 import org.apache.sshd.scp.client.DefaultScpClient;
 import org.apache.sshd.scp.client.ScpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
 import org.immutables.value.Value;
 
 import javax.annotation.Nullable;
@@ -32,6 +35,7 @@ import java.security.KeyPair;
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -39,7 +43,9 @@ import java.util.function.Function;
  * across created {@link me.philcali.device.pool.connection.Connection} for this {@link me.philcali.device.pool.ssh.ConnectionFactorySSH} instance. The
  * default {@link me.philcali.device.pool.ssh.ConnectionFactorySSH} will use a default {@link org.apache.sshd.client.SshClient}, which is informed
  * by the <code>$HOME/.ssh</code> configuration. Additional SSH information can be set at
- * creation time.
+ * creation time. Authenticated sessions are pooled per host and user by default: closing a
+ * {@link me.philcali.device.pool.connection.Connection} returns its session to the pool, to be reused by
+ * the next connection to the same host until it has been idle for {@link #idleTimeout()}.
  */
 @APIShadowModel
 @Value.Immutable
@@ -95,6 +101,144 @@ public abstract class ConnectionFactorySSH implements ConnectionFactory, Content
         return DefaultScpClient::new;
     }
 
+    /**
+     * Keep authenticated sessions open when their {@link me.philcali.device.pool.connection.Connection} is
+     * closed, so connecting to the same host again, in this or a later provision, skips the handshake.
+     *
+     * @return true if sessions are pooled, defaults to true
+     */
+    @Value.Default
+    public boolean poolSessions() {
+        return true;
+    }
+
+    /**
+     * The maximum amount of sessions, borrowed or idle, to a single host. Once reached, connecting to the host
+     * waits up to the <code>connectionTimeout</code> for a session to be released. Zero or less leaves the amount
+     * of sessions unbounded, as it is without pooling.
+     *
+     * @return the maximum sessions per host, defaults to 0 for no limit
+     */
+    @Value.Default
+    public int maxSessionsPerHost() {
+        return 0;
+    }
+
+    /**
+     * How long a pooled session may remain idle before it is closed.
+     *
+     * @return a {@link java.time.Duration} object, defaults to 5 minutes
+     */
+    @Value.Default
+    public Duration idleTimeout() {
+        return Duration.ofMinutes(5L);
+    }
+
+    /**
+     * The interval of keepalive heartbeats sent on every session, which keeps idle pooled sessions from being
+     * dropped by the server or anything in between. Zero disables heartbeats.
+     *
+     * @return a {@link java.time.Duration} object, defaults to 30 seconds
+     */
+    @Value.Default
+    public Duration keepAliveInterval() {
+        return Duration.ofSeconds(30L);
+    }
+
+    /**
+     * The maximum amount of exec channels asynchronous executions keep open on a single session, which should
+     * match the <code>MaxSessions</code> of the remote servers.
+     *
+     * @return the maximum channels per session, defaults to 10
+     */
+    @Value.Default
+    public int maxChannelsPerSession() {
+        return ConnectionSSHModel.DEFAULT_MAX_CHANNELS;
+    }
+
+    /**
+     * Run commands of each {@link me.philcali.device.pool.connection.Connection} on a single persistent shell,
+     * rather than an exec channel per command. Suited to workloads of many small commands.
+     *
+     * @return true if connections use a persistent shell, defaults to false
+     */
+    @Value.Default
+    public boolean persistentShell() {
+        return false;
+    }
+
+    /**
+     * The protocol used by created {@link me.philcali.device.pool.content.ContentTransferAgent}s.
+     */
+    public enum TransferProtocol {
+        SCP,
+        SFTP
+    }
+
+    /**
+     * The protocol to transfer content with. SFTP pipelines requests, transfers files of a recursive copy in
+     * parallel and resumes interrupted transfers, at the cost of needing the sftp subsystem on the host.
+     *
+     * @return the {@link me.philcali.device.pool.ssh.ConnectionFactorySSH.TransferProtocol}, defaults to SCP
+     */
+    @Value.Default
+    public TransferProtocol transferProtocol() {
+        return TransferProtocol.SCP;
+    }
+
+    @Value.Default
+    SftpClientFactory sftpClientFactory() {
+        return SftpClientFactory.instance();
+    }
+
+    /**
+     * The amount of SFTP read or write requests kept in flight for a single file.
+     *
+     * @return the outstanding requests per file, defaults to 8
+     */
+    @Value.Default
+    public int sftpRequestsPerFile() {
+        return ConnectionSFTPModel.DEFAULT_REQUESTS_PER_FILE;
+    }
+
+    /**
+     * The amount of files transferred at once in a recursive SFTP copy.
+     *
+     * @return the parallel file transfers, defaults to 4
+     */
+    @Value.Default
+    public int sftpParallelFiles() {
+        return ConnectionSFTPModel.DEFAULT_PARALLEL_FILES;
+    }
+
+    /**
+     * The size of a single SFTP read or write request.
+     *
+     * @return the chunk size in bytes, defaults to 32 KiB
+     */
+    @Value.Default
+    public int sftpChunkSize() {
+        return ConnectionSFTPModel.DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Resume interrupted SFTP transfers from their partial files.
+     *
+     * @return true if partial files are resumed, defaults to true
+     */
+    @Value.Default
+    public boolean sftpResume() {
+        return true;
+    }
+
+    @Nullable
+    abstract Consumer<TransferStats> transferStatsListener();
+
+    @Value.Lazy
+    SessionPoolSSH sessionPool() {
+        return new SessionPoolSSH(maxSessionsPerHost(), idleTimeout(), connectionTimeout());
+    }
+
     @Nullable
     abstract AttributeRepository attributeRepository();
 
@@ -126,6 +270,30 @@ public abstract class ConnectionFactorySSH implements ConnectionFactory, Content
                                 .map(Long::parseLong)
                                 .map(Duration::ofMillis)
                                 .ifPresent(timeout -> authTimeout(timeout).connectionTimeout(timeout));
+                        entry.get("keepAlive")
+                                .map(Long::parseLong)
+                                .map(Duration::ofMillis)
+                                .ifPresent(this::keepAliveInterval);
+                        entry.get("persistentShell").map(Boolean::parseBoolean).ifPresent(this::persistentShell);
+                        entry.get("maxChannels").map(Integer::parseInt).ifPresent(this::maxChannelsPerSession);
+                        entry.get("transfer")
+                                .map(String::toUpperCase)
+                                .map(TransferProtocol::valueOf)
+                                .ifPresent(this::transferProtocol);
+                        config.namespace("connection.ssh.sftp").ifPresent(sftp -> {
+                            sftp.get("requests").map(Integer::parseInt).ifPresent(this::sftpRequestsPerFile);
+                            sftp.get("parallelFiles").map(Integer::parseInt).ifPresent(this::sftpParallelFiles);
+                            sftp.get("chunkSize").map(Integer::parseInt).ifPresent(this::sftpChunkSize);
+                            sftp.get("resume").map(Boolean::parseBoolean).ifPresent(this::sftpResume);
+                        });
+                        config.namespace("connection.ssh.pool").ifPresent(pool -> {
+                            pool.get("enabled").map(Boolean::parseBoolean).ifPresent(this::poolSessions);
+                            pool.get("maxSessions").map(Integer::parseInt).ifPresent(this::maxSessionsPerHost);
+                            pool.get("idleTimeout")
+                                    .map(Long::parseLong)
+                                    .map(Duration::ofMillis)
+                                    .ifPresent(this::idleTimeout);
+                        });
                         return build();
                     })
                     .orElseGet(this::build);
@@ -138,6 +306,9 @@ public abstract class ConnectionFactorySSH implements ConnectionFactory, Content
                 if (!client().isStarted()) {
                     Optional.ofNullable(publicKeys()).ifPresent(keys -> keys.forEach(client()::addPublicKeyIdentity));
                     Optional.ofNullable(passwords()).ifPresent(pass -> pass.forEach(client()::addPasswordIdentity));
+                    if (!keepAliveInterval().isZero()) {
+                        CoreModuleProperties.HEARTBEAT_INTERVAL.set(client(), keepAliveInterval());
+                    }
                     client().start();
                 }
             }
@@ -157,11 +328,23 @@ public abstract class ConnectionFactorySSH implements ConnectionFactory, Content
         return session;
     }
 
+    private ClientSession borrowSession(Host host) throws IOException {
+        if (poolSessions()) {
+            return sessionPool().borrow(host, userName(), this::doConnect);
+        }
+        return doConnect(host);
+    }
+
     /** {@inheritDoc} */
     @Override
     public Connection connect(final Host host) throws ConnectionException {
         try {
-            return ConnectionSSH.of(doConnect(host));
+            return ConnectionSSH.builder()
+                    .clientSession(borrowSession(host))
+                    .sessionPool(poolSessions() ? sessionPool() : null)
+                    .maxChannels(maxChannelsPerSession())
+                    .persistentShell(persistentShell())
+                    .build();
         } catch (IOException ie) {
             throw new ConnectionException(ie);
         }
@@ -178,10 +361,24 @@ public abstract class ConnectionFactorySSH implements ConnectionFactory, Content
                 session = ((ConnectionSSH) connection).clientSession();
                 reusingConnection = true;
             } else {
-                session = doConnect(host);
+                session = borrowSession(host);
+            }
+            if (transferProtocol() == TransferProtocol.SFTP) {
+                return ConnectionSFTP.builder()
+                        .client(sftpClientFactory().createSftpClient(session))
+                        .reusingConnection(reusingConnection)
+                        .sessionPool(poolSessions() ? sessionPool() : null)
+                        .requestsPerFile(sftpRequestsPerFile())
+                        .parallelFiles(sftpParallelFiles())
+                        .chunkSize(sftpChunkSize())
+                        .resume(sftpResume())
+                        .statsListener(transferStatsListener())
+                        .build();
             }
             return scpFactory()
-                    .andThen(ConnectionSCP.builder().reusingConnection(reusingConnection)::client)
+                    .andThen(ConnectionSCP.builder()
+                            .reusingConnection(reusingConnection)
+                            .sessionPool(poolSessions() ? sessionPool() : null)::client)
                     .andThen(ConnectionSCP.Builder::build)
                     .apply(session);
         } catch (IOException ie) {
@@ -192,6 +389,9 @@ public abstract class ConnectionFactorySSH implements ConnectionFactory, Content
     /** {@inheritDoc} */
     @Override
     public void close() throws Exception {
+        if (poolSessions()) {
+            sessionPool().close();
+        }
         client().close();
     }
 }
@@ -16,8 +16,11 @@ import org.apache.logging.log4j.Logger;
 import org.apache.sshd.scp.client.ScpClient;
 import org.immutables.value.Value;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -34,6 +37,13 @@ abstract class ConnectionSCPModel implements ContentTransferAgent {
 
     abstract boolean reusingConnection();
 
+    @Nullable
+    @Value.Auxiliary
+    abstract SessionPoolSSH sessionPool();
+
+    private static final Set<CopyOption> AGENT_OPTIONS = EnumSet.of(
+            CopyOption.DELTA, CopyOption.ARCHIVE, CopyOption.COMPRESS);
+
     private ScpClient.Option convert(CopyOption option) {
         if (option == CopyOption.RECURSIVE) {
             return ScpClient.Option.Recursive;
@@ -43,14 +53,34 @@ abstract class ConnectionSCPModel implements ContentTransferAgent {
 
     private ScpClient.Option[] convertOptions(Collection<CopyOption> options) {
         return options.stream()
+                .filter(option -> !AGENT_OPTIONS.contains(option))
                 .map(this::convert)
                 .collect(Collectors.toList())
                 .toArray(new ScpClient.Option[] { });
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * Copies with {@link me.philcali.device.pool.model.CopyOption#DELTA} only upload the changed blocks of
+     * files already on the device, see {@link me.philcali.device.pool.ssh.DeltaSync}. Recursive copies of a
+     * directory with {@link me.philcali.device.pool.model.CopyOption#ARCHIVE} are streamed as a single tar, see
+     * {@link me.philcali.device.pool.ssh.ArchiveTransfer}.
+     */
     @Override
     public void send(CopyInput input) throws ContentTransferException {
+        if (input.options().contains(CopyOption.DELTA)) {
+            new DeltaSync(ConnectionSSH.of(client().getSession()), this::upload).send(input);
+        } else {
+            upload(input);
+        }
+    }
+
+    private void upload(CopyInput input) throws ContentTransferException {
+        if (ArchiveTransfer.isArchive(input)) {
+            new ArchiveTransfer(client().getSession()).send(input);
+            return;
+        }
         try {
             client().upload(input.source(), input.destination(), convertOptions(input.options()));
         } catch (IOException e) {
@@ -58,9 +88,18 @@ abstract class ConnectionSCPModel implements ContentTransferAgent {
         }
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * Recursive copies with {@link me.philcali.device.pool.model.CopyOption#ARCHIVE} are streamed as a single
+     * tar, see {@link me.philcali.device.pool.ssh.ArchiveTransfer}.
+     */
     @Override
     public void receive(CopyInput input) throws ContentTransferException {
+        if (ArchiveTransfer.isRemoteArchive(input)) {
+            new ArchiveTransfer(client().getSession()).receive(input);
+            return;
+        }
         try {
             client().download(input.source(), input.destination(), convertOptions(input.options()));
         } catch (IOException e) {
@@ -73,8 +112,13 @@ abstract class ConnectionSCPModel implements ContentTransferAgent {
     public void close() throws Exception {
         LOGGER.debug("Close is called on SCP content agent");
         if (!reusingConnection()) {
-            client().getSession().close();
-            LOGGER.info("Closed created session for SCP");
+            if (sessionPool() != null) {
+                sessionPool().release(client().getSession());
+                LOGGER.debug("Released created session for SCP");
+            } else {
+                client().getSession().close();
+                LOGGER.info("Closed created session for SCP");
+            }
         }
     }
 }
@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.content.ContentTransferAgent;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.ApiModel;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.CopyOption;
+import me.philcali.device.pool.model.TransferStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+import org.immutables.value.Value;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link me.philcali.device.pool.content.ContentTransferAgent} driven by an
+ * {@link org.apache.sshd.sftp.client.SftpClient} on the same {@link org.apache.sshd.client.SshClient} that drives
+ * {@link me.philcali.device.pool.connection.Connection} information. Unlike SCP, every file is moved in fixed size
+ * chunks with {@link #requestsPerFile()} requests in flight at once, and recursive copies move
+ * {@link #parallelFiles()} files at once. Files are written to a <code>.part</code> sibling that is renamed into
+ * place once complete. The size and modification time of the source are recorded in a <code>.part.source</code>
+ * sibling, and a later transfer only resumes from the partial file when the source still matches.
+ */
+@ApiModel
+@Value.Immutable
+abstract class ConnectionSFTPModel implements ContentTransferAgent {
+    private static final Logger LOGGER = LogManager.getLogger(ConnectionSFTP.class);
+    private static final String PARTIAL = ".part";
+    private static final String SOURCE = ".source";
+    static final int DEFAULT_REQUESTS_PER_FILE = 8;
+    static final int DEFAULT_PARALLEL_FILES = 4;
+    static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("SFTP-Transfer");
+        return thread;
+    });
+
+    abstract SftpClient client();
+
+    abstract boolean reusingConnection();
+
+    @Nullable
+    @Value.Auxiliary
+    abstract SessionPoolSSH sessionPool();
+
+    /**
+     * The amount of read or write requests kept in flight for a single file.
+     *
+     * @return the outstanding requests per file, defaults to 8
+     */
+    @Value.Default
+    int requestsPerFile() {
+        return DEFAULT_REQUESTS_PER_FILE;
+    }
+
+    /**
+     * The amount of files transferred at once in a recursive copy.
+     *
+     * @return the parallel file transfers, defaults to 4
+     */
+    @Value.Default
+    int parallelFiles() {
+        return DEFAULT_PARALLEL_FILES;
+    }
+
+    /**
+     * The size of a single read or write request, which servers may cap; OpenSSH serves reads of up to 256 KiB.
+     *
+     * @return the chunk size in bytes, defaults to 32 KiB
+     */
+    @Value.Default
+    int chunkSize() {
+        return DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Resume transfers from a partial file left behind by an interrupted transfer, rather than starting over.
+     * Only partial files written from a source of the same size and modification time are resumed.
+     *
+     * @return true if partial files are resumed, defaults to true
+     */
+    @Value.Default
+    boolean resume() {
+        return true;
+    }
+
+    /**
+     * Receives the {@link me.philcali.device.pool.model.TransferStats} of every completed transfer.
+     *
+     * @return the stats listener or null if stats are only logged
+     */
+    @Nullable
+    @Value.Auxiliary
+    abstract Consumer<TransferStats> statsListener();
+
+    @Value.Check
+    void validate() {
+        if (requestsPerFile() < 1 || parallelFiles() < 1 || chunkSize() < 1) {
+            throw new IllegalArgumentException("requestsPerFile, parallelFiles and chunkSize must be at least 1");
+        }
+    }
+
+    private static final class FileCopy {
+        private final String source;
+        private final String target;
+        private final long size;
+        // Identifies the content of the source, being empty when it cannot be told apart from other content
+        private final String fingerprint;
+
+        FileCopy(String source, String target, long size, @Nullable FileTime modified) {
+            this.source = source;
+            this.target = target;
+            this.size = size;
+            this.fingerprint = Objects.isNull(modified) ? "" : size + ":" + modified.toMillis();
+        }
+    }
+
+    private static final class Transfer {
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong skippedBytes = new AtomicLong();
+        private final long started = System.nanoTime();
+        private final CopyInput input;
+
+        Transfer(CopyInput input) {
+            this.input = input;
+        }
+
+        TransferStats stats() {
+            return TransferStats.builder()
+                    .input(input)
+                    .files(files.get())
+                    .bytes(bytes.get())
+                    .skippedBytes(skippedBytes.get())
+                    .duration(Duration.ofNanos(System.nanoTime() - started))
+                    .build();
+        }
+    }
+
+    /**
+     * Hands out the chunks of a single file to concurrent requests, never letting a request run more than
+     * <code>requests</code> chunks ahead of the lowest incomplete chunk. An interrupted transfer therefore only
+     * leaves gaps within the last window of the partial file, which bounds how far back a resume must start.
+     */
+    static final class Window {
+        private final Set<Long> completed = new HashSet<>();
+        private final long size;
+        private final long chunkSize;
+        private final long span;
+        private long next;
+        private long low;
+        private boolean aborted;
+
+        Window(long start, long size, int chunkSize, int requests) {
+            this.next = start;
+            this.low = start;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.span = (long) chunkSize * requests;
+        }
+
+        synchronized long claim() throws InterruptedIOException {
+            try {
+                while (!aborted && next < size && next >= low + span) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting on a transfer window");
+            }
+            if (aborted || next >= size) {
+                return -1;
+            }
+            final long position = next;
+            next += chunkSize;
+            return position;
+        }
+
+        synchronized void complete(long position) {
+            completed.add(position);
+            while (completed.remove(low)) {
+                low += chunkSize;
+            }
+            notifyAll();
+        }
+
+        synchronized void abort() {
+            aborted = true;
+            notifyAll();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Chunk {
+        void copy(long position, byte[] buffer, int length) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface FileTask {
+        void run(FileCopy copy) throws IOException;
+    }
+
+    private long resumeOffset(FileCopy copy, long existing, Optional<String> recorded) {
+        if (existing > copy.size || copy.fingerprint.isEmpty()
+                || !recorded.filter(copy.fingerprint::equals).isPresent()) {
+            return 0;
+        }
+        final long safe = Math.max(0, existing - (long) chunkSize() * requestsPerFile());
+        return safe - safe % chunkSize();
+    }
+
+    private static void await(List<CompletableFuture<Void>> futures) throws IOException {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new InterruptedIOException("Interrupted waiting on a transfer");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void transferChunks(FileCopy copy, long start, Transfer transfer, Chunk chunk) throws IOException {
+        transfer.skippedBytes.addAndGet(start);
+        final Window window = new Window(start, copy.size, chunkSize(), requestsPerFile());
+        final long chunks = (copy.size - start + chunkSize() - 1) / chunkSize();
+        final List<CompletableFuture<Void>> requests = new ArrayList<>();
+        for (int request = 0; request < Math.min(requestsPerFile(), chunks); request++) {
+            requests.add(CompletableFuture.runAsync(() -> {
+                final byte[] buffer = new byte[chunkSize()];
+                try {
+                    long position;
+                    while ((position = window.claim()) >= 0) {
+                        final int length = (int) Math.min(chunkSize(), copy.size - position);
+                        chunk.copy(position, buffer, length);
+                        transfer.bytes.addAndGet(length);
+                        window.complete(position);
+                    }
+                } catch (IOException e) {
+                    window.abort();
+                    throw new UncheckedIOException(e);
+                }
+            }, WORKERS));
+        }
+        await(requests);
+        transfer.files.incrementAndGet();
+    }
+
+    private void transferAll(List<FileCopy> copies, FileTask task) throws IOException {
+        final Queue<FileCopy> pending = new ConcurrentLinkedQueue<>(copies);
+        final List<CompletableFuture<Void>> runners = new ArrayList<>();
+        for (int runner = 0; runner < Math.min(parallelFiles(), copies.size()); runner++) {
+            runners.add(CompletableFuture.runAsync(() -> {
+                FileCopy copy;
+                while ((copy = pending.poll()) != null) {
+                    try {
+                        task.run(copy);
+                    } catch (IOException e) {
+                        pending.clear();
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }, WORKERS));
+        }
+        await(runners);
+    }
+
+    private void report(Transfer transfer) {
+        final TransferStats stats = transfer.stats();
+        LOGGER.debug("Transferred {} files {} -> {}: {} bytes ({} resumed) in {} at {} B/s",
+                stats.files(), stats.input().source(), stats.input().destination(),
+                stats.bytes(), stats.skippedBytes(), stats.duration(), (long) stats.bytesPerSecond());
+        Optional.ofNullable(statsListener()).ifPresent(listener -> listener.accept(stats));
+    }
+
+    private static String join(String parent, String child) {
+        return parent.endsWith("/") ? parent + child : parent + '/' + child;
+    }
+
+    private static String baseName(String path) {
+        final String trimmed = path.endsWith("/") && path.length() > 1 ? path.substring(0, path.length() - 1) : path;
+        return trimmed.substring(trimmed.lastIndexOf('/') + 1);
+    }
+
+    private Optional<SftpClient.Attributes> remoteStat(String path) throws IOException {
+        try {
+            return Optional.of(client().stat(path));
+        } catch (SftpException e) {
+            if (e.getStatus() == SftpConstants.SSH_FX_NO_SUCH_FILE) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    private String remoteTarget(String destination, String name) throws IOException {
+        return remoteStat(destination)
+                .filter(SftpClient.Attributes::isDirectory)
+                .map(attributes -> join(destination, name))
+                .orElse(destination);
+    }
+
+    private void remoteDirectory(String path) throws IOException {
+        final Optional<SftpClient.Attributes> attributes = remoteStat(path);
+        if (attributes.isEmpty()) {
+            client().mkdir(path);
+        } else if (!attributes.get().isDirectory()) {
+            throw new IOException("Remote path " + path + " exists and is not a directory");
+        }
+    }
+
+    private static void readFully(FileChannel channel, byte[] buffer, long position, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            final int read = channel.read(ByteBuffer.wrap(buffer, offset, length - offset), position + offset);
+            if (read < 0) {
+                throw new EOFException("File ended before position " + (position + length));
+            }
+            offset += read;
+        }
+    }
+
+    private void readFully(SftpClient.Handle handle, byte[] buffer, long position, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            final int read = client().read(handle, position + offset, buffer, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("Remote file ended before position " + (position + length));
+            }
+            offset += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] buffer, long position, int length) throws IOException {
+        final ByteBuffer source = ByteBuffer.wrap(buffer, 0, length);
+        while (source.hasRemaining()) {
+            channel.write(source, position + source.position());
+        }
+    }
+
+    private Optional<String> remoteFingerprint(String path) throws IOException {
+        if (remoteStat(path).isEmpty()) {
+            return Optional.empty();
+        }
+        try (InputStream input = client().read(path)) {
+            return Optional.of(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void uploadFile(FileCopy copy, Transfer transfer) throws IOException {
+        final String partial = copy.target + PARTIAL;
+        final String source = partial + SOURCE;
+        final long existing = resume() ? remoteStat(partial).map(SftpClient.Attributes::getSize).orElse(0L) : 0;
+        final long start = existing > 0 ? resumeOffset(copy, existing, remoteFingerprint(source)) : 0;
+        final EnumSet<SftpClient.OpenMode> modes = EnumSet.of(SftpClient.OpenMode.Write, SftpClient.OpenMode.Create);
+        if (start == 0) {
+            modes.add(SftpClient.OpenMode.Truncate);
+            if (resume()) {
+                try (OutputStream output = client().write(source)) {
+                    output.write(copy.fingerprint.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        try (FileChannel local = FileChannel.open(Paths.get(copy.source), StandardOpenOption.READ);
+             SftpClient.CloseableHandle handle = client().open(partial, modes)) {
+            transferChunks(copy, start, transfer, (position, buffer, length) -> {
+                readFully(local, buffer, position, length);
+                client().write(handle, position, buffer, 0, length);
+            });
+        }
+        // SFTP v3 servers refuse to rename over an existing file
+        if (remoteStat(copy.target).isPresent()) {
+            client().remove(copy.target);
+        }
+        client().rename(partial, copy.target);
+        if (resume()) {
+            client().remove(source);
+        }
+    }
+
+    private void downloadFile(FileCopy copy, Transfer transfer) throws IOException {
+        final Path target = Paths.get(copy.target);
+        final Path partial = target.resolveSibling(target.getFileName() + PARTIAL);
+        final Path source = partial.resolveSibling(partial.getFileName() + SOURCE);
+        final long existing = resume() && Files.exists(partial) ? Files.size(partial) : 0;
+        final long start = existing > 0
+                ? resumeOffset(copy, existing,
+                        Files.exists(source) ? Optional.of(Files.readString(source)) : Optional.empty())
+                : 0;
+        final Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        if (start == 0) {
+            options.add(StandardOpenOption.TRUNCATE_EXISTING);
+            if (resume()) {
+                Files.writeString(source, copy.fingerprint);
+            }
+        }
+        try (FileChannel local = FileChannel.open(partial, options);
+             SftpClient.CloseableHandle handle = client().open(copy.source, SftpClient.OpenMode.Read)) {
+            transferChunks(copy, start, transfer, (position, buffer, length) -> {
+                readFully(handle, buffer, position, length);
+                writeFully(local, buffer, position, length);
+            });
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(source);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Copies with {@link me.philcali.device.pool.model.CopyOption#DELTA} only upload the changed blocks of
+     * files already on the device, see {@link me.philcali.device.pool.ssh.DeltaSync}. Recursive copies of a
+     * directory with {@link me.philcali.device.pool.model.CopyOption#ARCHIVE} are streamed as a single tar, see
+     * {@link me.philcali.device.pool.ssh.ArchiveTransfer}.
+     */
+    @Override
+    public void send(CopyInput input) throws ContentTransferException {
+        if (input.options().contains(CopyOption.DELTA)) {
+            new DeltaSync(ConnectionSSH.of(client().getClientSession()), this::upload).send(input);
+        } else {
+            upload(input);
+        }
+    }
+
+    private void upload(CopyInput input) throws ContentTransferException {
+        if (ArchiveTransfer.isArchive(input)) {
+            new ArchiveTransfer(client().getClientSession()).send(input);
+            return;
+        }
+        final Path source = Paths.get(input.source());
+        final Transfer transfer = new Transfer(input);
+        final List<FileCopy> copies = new ArrayList<>();
+        try {
+            final String root = remoteTarget(input.destination(), source.getFileName().toString());
+            if (Files.isDirectory(source)) {
+                if (!input.options().contains(CopyOption.RECURSIVE)) {
+                    throw new ContentTransferException("Source " + source + " is a directory, but copy is not recursive");
+                }
+                try (Stream<Path> paths = Files.walk(source)) {
+                    for (Path path : paths.collect(Collectors.toList())) {
+                        final String remote = StreamSupport.stream(source.relativize(path).spliterator(), false)
+                                .map(Path::toString)
+                                .filter(name -> !name.isEmpty())
+                                .reduce(root, ConnectionSFTPModel::join);
+                        if (Files.isDirectory(path)) {
+                            remoteDirectory(remote);
+                        } else {
+                            copies.add(new FileCopy(path.toString(), remote, Files.size(path),
+                                    Files.getLastModifiedTime(path)));
+                        }
+                    }
+                }
+            } else {
+                copies.add(new FileCopy(source.toString(), root, Files.size(source),
+                        Files.getLastModifiedTime(source)));
+            }
+            transferAll(copies, copy -> uploadFile(copy, transfer));
+        } catch (IOException e) {
+            throw new ContentTransferException(e);
+        }
+        report(transfer);
+    }
+
+    private void collectRemote(String remote, Path local, List<FileCopy> copies) throws IOException {
+        Files.createDirectories(local);
+        for (SftpClient.DirEntry entry : client().readDir(remote)) {
+            final String name = entry.getFilename();
+            if (name.equals(".") || name.equals("..")) {
+                continue;
+            }
+            final SftpClient.Attributes attributes = entry.getAttributes();
+            if (attributes.isDirectory()) {
+                collectRemote(join(remote, name), local.resolve(name), copies);
+            } else if (attributes.isRegularFile()) {
+                copies.add(new FileCopy(join(remote, name), local.resolve(name).toString(), attributes.getSize(),
+                        attributes.getModifyTime()));
+            } else {
+                LOGGER.debug("Skipping {}, which is not a regular file", join(remote, name));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Recursive copies with {@link me.philcali.device.pool.model.CopyOption#ARCHIVE} are streamed as a single
+     * tar, see {@link me.philcali.device.pool.ssh.ArchiveTransfer}.
+     */
+    @Override
+    public void receive(CopyInput input) throws ContentTransferException {
+        if (ArchiveTransfer.isRemoteArchive(input)) {
+            new ArchiveTransfer(client().getClientSession()).receive(input);
+            return;
+        }
+        final Path destination = Paths.get(input.destination());
+        final Transfer transfer = new Transfer(input);
+        final List<FileCopy> copies = new ArrayList<>();
+        try {
+            final SftpClient.Attributes attributes = client().stat(input.source());
+            final Path root = Files.isDirectory(destination)
+                    ? destination.resolve(baseName(input.source()))
+                    : destination;
+            if (attributes.isDirectory()) {
+                if (!input.options().contains(CopyOption.RECURSIVE)) {
+                    throw new ContentTransferException("Source " + input.source()
+                            + " is a directory, but copy is not recursive");
+                }
+                collectRemote(input.source(), root, copies);
+            } else {
+                copies.add(new FileCopy(input.source(), root.toString(), attributes.getSize(),
+                        attributes.getModifyTime()));
+            }
+            transferAll(copies, copy -> downloadFile(copy, transfer));
+        } catch (IOException e) {
+            throw new ContentTransferException(e);
+        }
+        report(transfer);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws Exception {
+        LOGGER.debug("Close is called on SFTP content agent");
+        client().close();
+        if (!reusingConnection()) {
+            if (sessionPool() != null) {
+                sessionPool().release(client().getClientSession());
+                LOGGER.debug("Released created session for SFTP");
+            } else {
+                client().getClientSession().close();
+                LOGGER.info("Closed created session for SFTP");
+            }
+        }
+    }
+}
@@ -6,7 +6,10 @@
 
 package me.philcali.device.pool.ssh;
 
+import me.philcali.device.pool.connection.BatchScript;
 import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.connection.OutputPipe;
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.model.ApiModel;
 import me.philcali.device.pool.model.CommandInput;
@@ -18,11 +21,26 @@ import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.session.ClientSession;
 import org.immutables.value.Value;
 
+import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 /**
  * A {@link me.philcali.device.pool.connection.Connection} implemented by an {@link org.apache.sshd.client.SshClient}.
@@ -31,18 +49,118 @@ import java.util.Set;
 @Value.Immutable
 abstract class ConnectionSSHModel implements Connection {
     private static final Logger LOGGER = LogManager.getLogger(ConnectionSSH.class);
+    static final int DEFAULT_MAX_CHANNELS = 10;
+    private static final ExecutorService PIPES = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("SSH-Stream");
+        return thread;
+    });
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("SSH-Async-Timeout");
+        return thread;
+    });
 
     abstract ClientSession clientSession();
 
+    /**
+     * The pool the {@link org.apache.sshd.client.session.ClientSession} was borrowed from, if any.
+     *
+     * @return the owning {@link me.philcali.device.pool.ssh.SessionPoolSSH} or null if the session is not pooled
+     */
+    @Nullable
+    @Value.Auxiliary
+    abstract SessionPoolSSH sessionPool();
+
+    /**
+     * The maximum amount of channels {@link #executeAsync} keeps open on the session at once, which must not
+     * exceed the <code>MaxSessions</code> of the remote server. Further executions are queued.
+     *
+     * @return the maximum amount of concurrent exec channels, defaults to 10
+     */
+    @Value.Default
+    int maxChannels() {
+        return DEFAULT_MAX_CHANNELS;
+    }
+
+    /**
+     * Run {@link #execute} on a single persistent shell instead of an exec channel per command, which brings
+     * the latency of small commands close to the network round trip. Commands that pass stdin still use their
+     * own exec channel.
+     *
+     * @return true if commands run on a persistent shell, defaults to false
+     */
+    @Value.Default
+    boolean persistentShell() {
+        return false;
+    }
+
+    @Value.Lazy
+    ShellSSH shell() {
+        return new ShellSSH(clientSession());
+    }
+
+    @Value.Lazy
+    ChannelQueue channelQueue() {
+        return new ChannelQueue(maxChannels());
+    }
+
+    /**
+     * Limits the exec channels open on a session, dispatching queued executions as channels close.
+     */
+    static final class ChannelQueue {
+        private final Semaphore channels;
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+        ChannelQueue(int maxChannels) {
+            this.channels = new Semaphore(maxChannels);
+        }
+
+        void submit(Runnable execution) {
+            pending.add(execution);
+            dispatch();
+        }
+
+        void release() {
+            channels.release();
+            dispatch();
+        }
+
+        private void dispatch() {
+            while (!pending.isEmpty() && channels.tryAcquire()) {
+                final Runnable execution = pending.poll();
+                if (execution == null) {
+                    channels.release();
+                } else {
+                    execution.run();
+                }
+            }
+        }
+
+        int pending() {
+            return pending.size();
+        }
+    }
+
+    private static String commandLine(final CommandInput input) {
+        final StringBuilder builder = new StringBuilder(input.line());
+        Optional.ofNullable(input.args()).ifPresent(args -> builder.append(' ').append(String.join(" ", args)));
+        return builder.toString();
+    }
+
     /** {@inheritDoc} */
     @Override
     public CommandOutput execute(final CommandInput input) throws ConnectionException {
-        final StringBuilder builder = new StringBuilder(input.line());
-        Optional.ofNullable(input.args()).ifPresent(args -> builder.append(' ').append(String.join(" ", args)));
-        LOGGER.debug("Executing command on {}: {}", clientSession().getConnectAddress(), builder);
+        if (persistentShell() && input.input() == null) {
+            return shell().execute(input);
+        }
+        final String command = commandLine(input);
+        LOGGER.debug("Executing command on {}: {}", clientSession().getConnectAddress(), command);
         try (ByteArrayOutputStream error = new ByteArrayOutputStream();
              ByteArrayOutputStream output = new ByteArrayOutputStream();
-                ChannelExec exec = clientSession().createExecChannel(builder.toString())) {
+                ChannelExec exec = clientSession().createExecChannel(command)) {
             if (input.input() != null) {
                 exec.setIn(new ByteArrayInputStream(input.input()));
             }
@@ -51,7 +169,7 @@ abstract class ConnectionSSHModel implements Connection {
             exec.open().await(input.timeout());
             Set<ClientChannelEvent> masks = exec.waitFor(ClientSession.REMOTE_COMMAND_WAIT_EVENTS, input.timeout());
             if (masks.contains(ClientChannelEvent.TIMEOUT)) {
-                throw new ConnectionException("Connection timeout running: " + builder);
+                throw new ConnectionException("Connection timeout running: " + command);
             }
             int exitCode = exec.getExitStatus();
             return CommandOutput.builder()
@@ -65,9 +183,167 @@ abstract class ConnectionSSHModel implements Connection {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The batch runs as a single {@link me.philcali.device.pool.connection.BatchScript} on one channel, and the
+     * output of each command is demultiplexed from the framed output of the script.
+     */
+    @Override
+    public List<CommandOutput> executeBatch(final List<CommandInput> inputs) throws ConnectionException {
+        if (!BatchScript.supports(inputs)) {
+            return Connection.super.executeBatch(inputs);
+        }
+        final BatchScript script = BatchScript.of(inputs);
+        return script.parse(execute(script.toInput()));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Every execution opens its own exec channel on the single session, driven entirely by channel events, so
+     * any number of executions share one session without a thread each. At most {@link #maxChannels()} channels
+     * are open at once; the rest wait in a queue and start as channels close.
+     */
+    @Override
+    public CompletableFuture<CommandOutput> executeAsync(final CommandInput input) {
+        final CompletableFuture<CommandOutput> future = new CompletableFuture<>();
+        final ChannelQueue queue = channelQueue();
+        queue.submit(() -> {
+            if (future.isDone()) {
+                queue.release();
+                return;
+            }
+            openAsync(input, future, queue);
+        });
+        return future;
+    }
+
+    private void openAsync(
+            final CommandInput input,
+            final CompletableFuture<CommandOutput> future,
+            final ChannelQueue queue) {
+        final String command = commandLine(input);
+        LOGGER.debug("Executing async command on {}: {}", clientSession().getConnectAddress(), command);
+        final ChannelExec exec;
+        try {
+            exec = clientSession().createExecChannel(command);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(new ConnectionException(e));
+            queue.release();
+            return;
+        }
+        final ByteArrayOutputStream error = new ByteArrayOutputStream();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (input.input() != null) {
+            exec.setIn(new ByteArrayInputStream(input.input()));
+        }
+        exec.setErr(error);
+        exec.setOut(output);
+        // The permit is only returned once the channel is fully closed, however the execution ends
+        exec.addCloseFutureListener(closed -> {
+            final Integer exitCode = exec.getExitStatus();
+            if (exitCode == null) {
+                future.completeExceptionally(new ConnectionException(
+                        "Channel closed without an exit status running: " + command));
+            } else {
+                future.complete(CommandOutput.builder()
+                        .exitCode(exitCode)
+                        .stderr(error.toByteArray())
+                        .stdout(output.toByteArray())
+                        .originalInput(input)
+                        .build());
+            }
+            queue.release();
+        });
+        final ScheduledFuture<?> timeout = TIMEOUTS.schedule(() -> {
+            if (future.completeExceptionally(new ConnectionException("Connection timeout running: " + command))) {
+                exec.close(true);
+            }
+        }, input.timeout().toNanos(), TimeUnit.NANOSECONDS);
+        future.whenComplete((result, e) -> {
+            timeout.cancel(false);
+            if (future.isCancelled()) {
+                exec.close(true);
+            }
+        });
+        try {
+            exec.open().addListener(opened -> {
+                if (!opened.isOpened()) {
+                    future.completeExceptionally(Optional.ofNullable(opened.getException())
+                            .map(ConnectionException::new)
+                            .orElseGet(() -> new ConnectionException("Failed to open channel running: " + command)));
+                    exec.close(true);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(new ConnectionException(e));
+            exec.close(true);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Output is read from the inverted channel streams, so the remote window is only extended as the
+     * {@link me.philcali.device.pool.connection.OutputSink} consumes, and a slow sink throttles the remote
+     * command instead of buffering its output. A sink failure closes the channel.
+     */
+    @Override
+    public CommandOutput executeStreaming(final CommandInput input, final OutputSink sink)
+            throws ConnectionException {
+        final String command = commandLine(input);
+        LOGGER.debug("Streaming command on {}: {}", clientSession().getConnectAddress(), command);
+        final long deadline = System.nanoTime() + input.timeout().toNanos();
+        try (ChannelExec exec = clientSession().createExecChannel(command)) {
+            if (input.input() != null) {
+                exec.setIn(new ByteArrayInputStream(input.input()));
+            }
+            exec.open().await(input.timeout());
+            final BiConsumer<Void, Throwable> closeOnError = (result, error) -> {
+                if (error != null) {
+                    exec.close(true);
+                }
+            };
+            final CompletableFuture<Void> pipes = CompletableFuture.allOf(
+                    OutputPipe.drain(exec.getInvertedOut(), sink::stdout, PIPES).whenComplete(closeOnError),
+                    OutputPipe.drain(exec.getInvertedErr(), sink::stderr, PIPES).whenComplete(closeOnError));
+            Set<ClientChannelEvent> masks = exec.waitFor(ClientSession.REMOTE_COMMAND_WAIT_EVENTS, input.timeout());
+            if (masks.contains(ClientChannelEvent.TIMEOUT)) {
+                throw new ConnectionException("Connection timeout running: " + command);
+            }
+            try {
+                pipes.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                exec.close(true);
+                Thread.currentThread().interrupt();
+                throw new ConnectionException("Interrupted streaming: " + command);
+            }
+            return CommandOutput.builder()
+                    .exitCode(exec.getExitStatus())
+                    .originalInput(input)
+                    .build();
+        } catch (TimeoutException e) {
+            throw new ConnectionException("Connection timeout streaming: " + command);
+        } catch (ExecutionException e) {
+            throw new ConnectionException(e.getCause() instanceof UncheckedIOException
+                    ? e.getCause().getCause()
+                    : e.getCause());
+        } catch (IOException e) {
+            throw new ConnectionException(e);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void close() throws Exception {
-        clientSession().close();
+        if (persistentShell()) {
+            shell().close();
+        }
+        if (sessionPool() != null) {
+            sessionPool().release(clientSession());
+        } else {
+            clientSession().close();
+        }
     }
 }
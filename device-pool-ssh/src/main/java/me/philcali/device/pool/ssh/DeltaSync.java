@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.content.TarArchive;
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.CopyOption;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An rsync style delta transfer over an SSH session. For every file, the device splits its current copy into
+ * fixed size blocks and reports a weak and a strong checksum of each, using nothing more than <code>dd</code>,
+ * <code>cksum</code> and <code>md5sum</code>. The local file is scanned with a rolling checksum for blocks the
+ * device already has, at any offset, and only the data in between is sent. The device then rebuilds the file
+ * from its old blocks and the sent data, verifies the result and moves it into place. Any file the device does
+ * not have, or fails to rebuild, is sent in full.
+ * <br>
+ * The weak checksum is the POSIX <code>cksum</code> CRC, which is linear and can therefore be rolled one byte at
+ * a time locally while matching the value the device computes per block.
+ */
+final class DeltaSync {
+    private static final Logger LOGGER = LogManager.getLogger(DeltaSync.class);
+    private static final int POLYNOMIAL = 0x04C11DB7;
+    private static final int[] TABLE = new int[256];
+    static final int MIN_BLOCK_SIZE = 64 * 1024;
+    static final int MAX_BLOCKS = 1024;
+    private static final Duration TIMEOUT = Duration.ofMinutes(10);
+    private final Connection connection;
+    private final Sender sender;
+
+    static {
+        for (int index = 0; index < TABLE.length; index++) {
+            int crc = index << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ POLYNOMIAL : crc << 1;
+            }
+            TABLE[index] = crc;
+        }
+    }
+
+    /**
+     * Sends a {@link me.philcali.device.pool.model.CopyInput} in full, through the owning agent.
+     */
+    @FunctionalInterface
+    interface Sender {
+        void send(CopyInput input) throws ContentTransferException;
+    }
+
+    static final class Signature {
+        private final long weak;
+        private final String strong;
+
+        Signature(long weak, String strong) {
+            this.weak = weak;
+            this.strong = strong;
+        }
+    }
+
+    /**
+     * A run of either blocks copied from the old file or literal bytes from the new file.
+     */
+    static final class Op {
+        private final boolean copy;
+        private final long start;
+        private final long length;
+
+        Op(boolean copy, long start, long length) {
+            this.copy = copy;
+            this.start = start;
+            this.length = length;
+        }
+
+        boolean isCopy() {
+            return copy;
+        }
+
+        long start() {
+            return start;
+        }
+
+        long length() {
+            return length;
+        }
+    }
+
+    DeltaSync(Connection connection, Sender sender) {
+        this.connection = connection;
+        this.sender = sender;
+    }
+
+    private static int update(int crc, int value) {
+        return (crc << 8) ^ TABLE[((crc >>> 24) ^ value) & 0xFF];
+    }
+
+    /**
+     * Finishes a raw CRC the way <code>cksum</code> does, by appending the length and complementing.
+     */
+    static long cksum(int crc, long length) {
+        for (long remaining = length; remaining != 0; remaining >>>= 8) {
+            crc = update(crc, (int) (remaining & 0xFF));
+        }
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    static int crc(ByteBuffer data, int offset, int length) {
+        int crc = 0;
+        for (int index = offset; index < offset + length; index++) {
+            crc = update(crc, data.get(index));
+        }
+        return crc;
+    }
+
+    /**
+     * The contribution of each byte value leaving a window of the given size, ie: the raw CRC of that byte
+     * followed by <code>blockSize</code> zeros. Built from the eight single bit values, as the CRC is linear.
+     */
+    static int[] outgoing(int blockSize) {
+        final int[] bits = new int[8];
+        for (int bit = 0; bit < 8; bit++) {
+            int crc = update(0, 1 << bit);
+            for (int index = 0; index < blockSize; index++) {
+                crc = update(crc, 0);
+            }
+            bits[bit] = crc;
+        }
+        final int[] outgoing = new int[256];
+        for (int value = 0; value < outgoing.length; value++) {
+            int crc = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((value & (1 << bit)) != 0) {
+                    crc ^= bits[bit];
+                }
+            }
+            outgoing[value] = crc;
+        }
+        return outgoing;
+    }
+
+    static int blockSize(long size) {
+        final long perBlock = (size + MAX_BLOCKS - 1) / MAX_BLOCKS;
+        return (int) Math.max(MIN_BLOCK_SIZE, (perBlock + 4095) / 4096 * 4096);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        final StringBuilder builder = new StringBuilder(digest.length * 2);
+        for (byte value : digest) {
+            builder.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    static String strong(ByteBuffer data, int offset, int length) {
+        final MessageDigest digest = md5();
+        digest.update(data.duplicate().position(offset).limit(offset + length));
+        return hex(digest.digest());
+    }
+
+    private static void append(List<Op> ops, boolean copy, long start, long length) {
+        if (length == 0) {
+            return;
+        }
+        if (!ops.isEmpty()) {
+            final Op last = ops.get(ops.size() - 1);
+            if (last.copy == copy && last.start + last.length == start) {
+                ops.set(ops.size() - 1, new Op(copy, last.start, last.length + length));
+                return;
+            }
+        }
+        ops.add(new Op(copy, start, length));
+    }
+
+    /**
+     * Matches the new file against the signatures of the old one. Every full block of the old file can match
+     * at any offset; a short final block can only match the end of the new file.
+     *
+     * @param data the contents of the new file
+     * @param blockSize the block size the signatures were computed with
+     * @param signatures the signatures of the old file, in block order
+     * @param oldSize the size of the old file
+     * @return the copy and literal runs that rebuild the new file
+     */
+    static List<Op> delta(ByteBuffer data, int blockSize, List<Signature> signatures, long oldSize) {
+        final int size = data.limit();
+        final Map<Long, List<Integer>> index = new HashMap<>();
+        for (int block = 0; block < signatures.size(); block++) {
+            if ((long) (block + 1) * blockSize <= oldSize) {
+                index.computeIfAbsent(signatures.get(block).weak, weak -> new ArrayList<>()).add(block);
+            }
+        }
+        final List<Op> ops = new ArrayList<>();
+        final int[] outgoing = outgoing(blockSize);
+        int literal = 0;
+        int position = 0;
+        int crc = size >= blockSize ? crc(data, 0, blockSize) : 0;
+        while (position + blockSize <= size) {
+            final List<Integer> candidates = index.get(cksum(crc, blockSize));
+            int matched = -1;
+            if (candidates != null) {
+                final String strong = strong(data, position, blockSize);
+                for (int block : candidates) {
+                    if (signatures.get(block).strong.equals(strong)) {
+                        matched = block;
+                        break;
+                    }
+                }
+            }
+            if (matched >= 0) {
+                append(ops, false, literal, position - literal);
+                append(ops, true, matched, 1);
+                position += blockSize;
+                literal = position;
+                if (position + blockSize <= size) {
+                    crc = crc(data, position, blockSize);
+                }
+            } else {
+                if (position + blockSize < size) {
+                    crc = update(crc, data.get(position + blockSize)) ^ outgoing[data.get(position) & 0xFF];
+                }
+                position++;
+            }
+        }
+        final int lastBlock = signatures.size() - 1;
+        final long lastLength = oldSize - (long) lastBlock * blockSize;
+        if (lastBlock >= 0 && lastLength < blockSize && size - literal >= lastLength
+                && signatures.get(lastBlock).strong.equals(strong(data, size - (int) lastLength, (int) lastLength))) {
+            append(ops, false, literal, size - lastLength - literal);
+            append(ops, true, lastBlock, 1);
+        } else {
+            append(ops, false, literal, size - literal);
+        }
+        return ops;
+    }
+
+    static String signatureScript(String remote, int blockSize) {
+        return "f=" + TarArchive.quote(remote) + "\n"
+                + "[ -f \"$f\" ] || exit 2\n"
+                + "t=$(mktemp) || exit 1\n"
+                + "trap 'rm -f \"$t\"' EXIT\n"
+                + "wc -c < \"$f\"\n"
+                + "i=0\n"
+                + "while dd if=\"$f\" of=\"$t\" bs=" + blockSize + " skip=$i count=1 2>/dev/null && [ -s \"$t\" ]; do\n"
+                + "  c=$(cksum < \"$t\") && m=$(md5sum < \"$t\") || exit 1\n"
+                + "  echo \"${c%% *} ${m%% *}\"\n"
+                + "  i=$((i + 1))\n"
+                + "done\n";
+    }
+
+    static String assemblyScript(
+            String remote,
+            int blockSize,
+            List<Op> ops,
+            String digest,
+            Set<PosixFilePermission> permissions) {
+        final StringBuilder builder = new StringBuilder("set -e\n")
+                .append("t=").append(TarArchive.quote(remote)).append('\n')
+                .append("d=\"$t.delta\"\n")
+                .append("o=\"$t.tmp\"\n")
+                .append("trap 'rm -f \"$o\" \"$d\"' EXIT\n")
+                .append("{\n");
+        long literal = 1;
+        for (Op op : ops) {
+            if (op.copy) {
+                builder.append("dd if=\"$t\" bs=").append(blockSize)
+                        .append(" skip=").append(op.start)
+                        .append(" count=").append(op.length)
+                        .append(" 2>/dev/null\n");
+            } else {
+                builder.append("tail -c +").append(literal).append(" \"$d\" | head -c ").append(op.length).append('\n');
+                literal += op.length;
+            }
+        }
+        builder.append("} > \"$o\"\n")
+                .append("[ \"$(md5sum < \"$o\" | cut -d ' ' -f 1)\" = ").append(digest).append(" ]\n");
+        if (!permissions.isEmpty()) {
+            builder.append("chmod ").append(Integer.toOctalString(TarArchive.mode(permissions))).append(" \"$o\"\n");
+        }
+        return builder.append("mv -f \"$o\" \"$t\"\n").toString();
+    }
+
+    static List<Signature> parseSignatures(String output) {
+        return Stream.of(output.split("\n"))
+                .skip(1)
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .map(line -> line.split(" "))
+                .map(fields -> new Signature(Long.parseLong(fields[0]), fields[1]))
+                .collect(Collectors.toList());
+    }
+
+    private CommandOutput script(String script) throws ContentTransferException {
+        try {
+            return connection.execute(CommandInput.builder()
+                    .line("sh")
+                    .addArgs("-s")
+                    .input(script.getBytes(StandardCharsets.UTF_8))
+                    .timeout(TIMEOUT)
+                    .build());
+        } catch (ConnectionException e) {
+            throw new ContentTransferException(e);
+        }
+    }
+
+    private void sendFull(Path local, String remote) throws ContentTransferException {
+        sender.send(CopyInput.builder().source(local.toString()).destination(remote).build());
+    }
+
+    private void sendFile(Path local, String remote) throws IOException {
+        final long size = Files.size(local);
+        if (size > Integer.MAX_VALUE) {
+            sendFull(local, remote);
+            return;
+        }
+        final int blockSize = blockSize(size);
+        final CommandOutput signatures = script(signatureScript(remote, blockSize));
+        if (signatures.exitCode() != 0) {
+            LOGGER.debug("No signatures for {} ({}), sending in full", remote, signatures.exitCode());
+            sendFull(local, remote);
+            return;
+        }
+        final String output = new String(signatures.stdout(), StandardCharsets.UTF_8);
+        final long oldSize = Long.parseLong(output.substring(0, output.indexOf('\n')).trim());
+        final List<Signature> blocks = parseSignatures(output);
+        final List<Op> ops;
+        final String digest;
+        final Path literals = Files.createTempFile("delta", ".bin");
+        try {
+            long literalBytes = 0;
+            try (FileChannel channel = FileChannel.open(local, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(literals, StandardOpenOption.WRITE)) {
+                final ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                ops = delta(data, blockSize, blocks, oldSize);
+                digest = strong(data, 0, (int) size);
+                for (Op op : ops) {
+                    if (!op.copy) {
+                        channel.transferTo(op.start, op.length, out);
+                        literalBytes += op.length;
+                    }
+                }
+            }
+            if (ops.stream().noneMatch(Op::isCopy)) {
+                LOGGER.debug("Nothing in common with {}, sending in full", remote);
+                sendFull(local, remote);
+                return;
+            }
+            if (literalBytes == 0 && size == oldSize && ops.size() == 1 && ops.get(0).start == 0) {
+                LOGGER.debug("{} is unchanged on the device", remote);
+                return;
+            }
+            LOGGER.debug("Sending {} of {} bytes of {} as a delta", literalBytes, size, remote);
+            sender.send(CopyInput.builder().source(literals.toString()).destination(remote + ".delta").build());
+            final Set<PosixFilePermission> permissions = local.getFileSystem().supportedFileAttributeViews()
+                    .contains("posix") ? Files.getPosixFilePermissions(local) : Collections.emptySet();
+            final CommandOutput assembled = script(assemblyScript(remote, blockSize, ops, digest, permissions));
+            if (assembled.exitCode() != 0) {
+                LOGGER.warn("Failed to rebuild {} from a delta, sending in full: {}",
+                        remote, new String(assembled.stderr(), StandardCharsets.UTF_8));
+                sendFull(local, remote);
+            }
+        } finally {
+            Files.deleteIfExists(literals);
+        }
+    }
+
+    /**
+     * Sends the files of a {@link me.philcali.device.pool.model.CopyInput} as deltas, following the same
+     * destination rules as a full copy: a destination that is an existing directory receives the source by name.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CopyInput} to send
+     * @throws ContentTransferException if any file fails to transfer
+     */
+    void send(CopyInput input) throws ContentTransferException {
+        final Path source = Paths.get(input.source());
+        try {
+            final boolean directory = script("[ -d " + TarArchive.quote(input.destination()) + " ]").exitCode() == 0;
+            final String root = directory
+                    ? input.destination().replaceAll("/+$", "") + '/' + source.getFileName()
+                    : input.destination();
+            if (!Files.isDirectory(source)) {
+                sendFile(source, root);
+                return;
+            }
+            if (!input.options().contains(CopyOption.RECURSIVE)) {
+                throw new ContentTransferException("Source " + source + " is a directory, but copy is not recursive");
+            }
+            final List<Path> paths;
+            try (Stream<Path> walk = Files.walk(source)) {
+                paths = walk.collect(Collectors.toList());
+            }
+            final StringBuilder directories = new StringBuilder("mkdir -p");
+            final Map<Path, String> files = new HashMap<>();
+            for (Path path : paths) {
+                final String remote = source.relativize(path).toString().isEmpty()
+                        ? root
+                        : root + '/' + source.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+                if (Files.isDirectory(path)) {
+                    directories.append(' ').append(TarArchive.quote(remote));
+                } else {
+                    files.put(path, remote);
+                }
+            }
+            final CommandOutput created = script(directories.toString());
+            if (created.exitCode() != 0) {
+                throw new ContentTransferException("Failed to create directories under " + root + ": "
+                        + new String(created.stderr(), StandardCharsets.UTF_8));
+            }
+            for (Map.Entry<Path, String> file : files.entrySet()) {
+                sendFile(file.getKey(), file.getValue());
+            }
+        } catch (IOException e) {
+            throw new ContentTransferException(e);
+        }
+    }
+
+    /**
+     * The options to hand the owning agent for a full copy.
+     *
+     * @param options the requested {@link me.philcali.device.pool.model.CopyOption}s
+     * @return the options without {@link me.philcali.device.pool.model.CopyOption#DELTA}
+     */
+    static Set<CopyOption> withoutDelta(Set<CopyOption> options) {
+        final Set<CopyOption> remaining = EnumSet.noneOf(CopyOption.class);
+        remaining.addAll(options);
+        remaining.remove(CopyOption.DELTA);
+        return remaining;
+    }
+}
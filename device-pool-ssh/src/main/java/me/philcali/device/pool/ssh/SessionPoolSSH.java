@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.model.Host;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.sshd.client.session.ClientSession;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pools authenticated {@link org.apache.sshd.client.session.ClientSession}s of a
+ * {@link me.philcali.device.pool.ssh.ConnectionFactorySSH}, keyed on the host address and user. Identities are
+ * fixed per factory, so each factory owns its own pool. When <code>maxSessions</code> is positive, at most that
+ * many sessions exist per key, borrowed or idle, and is otherwise unbounded. Idle sessions are validated on
+ * borrow, handed out most recently used first, and closed by a background sweep once they have been idle for
+ * longer than the idle timeout.
+ */
+final class SessionPoolSSH implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(SessionPoolSSH.class);
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final Map<ClientSession, Slot> borrowed = new ConcurrentHashMap<>();
+    private final int maxSessions;
+    private final Duration idleTimeout;
+    private final Duration borrowTimeout;
+    private ScheduledExecutorService sweeper;
+    private volatile boolean closed;
+
+    @FunctionalInterface
+    interface Connector {
+        ClientSession connect(Host host) throws IOException;
+    }
+
+    private static final class IdleSession {
+        private final ClientSession session;
+        private final long since = System.nanoTime();
+
+        IdleSession(ClientSession session) {
+            this.session = session;
+        }
+    }
+
+    private static final class Slot {
+        @Nullable
+        private final Semaphore permits;
+        private final Deque<IdleSession> idle = new ConcurrentLinkedDeque<>();
+
+        Slot(int maxSessions) {
+            this.permits = maxSessions > 0 ? new Semaphore(maxSessions, true) : null;
+        }
+
+        boolean acquire(Duration timeout) throws InterruptedException {
+            return Objects.isNull(permits) || permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        void release() {
+            if (Objects.nonNull(permits)) {
+                permits.release();
+            }
+        }
+    }
+
+    SessionPoolSSH(int maxSessions, Duration idleTimeout, Duration borrowTimeout) {
+        this.maxSessions = maxSessions;
+        this.idleTimeout = idleTimeout;
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    private static String key(Host host, String userName) {
+        return userName + '@' + host.hostName() + ':' + host.port()
+                + (Objects.isNull(host.proxyJump()) ? "" : " via " + host.proxyJump());
+    }
+
+    private static boolean isAlive(ClientSession session) {
+        return session.isOpen() && !session.isClosing() && session.isAuthenticated();
+    }
+
+    private static void closeQuietly(ClientSession session) {
+        try {
+            session.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close pooled session {}", session, e);
+        }
+    }
+
+    /**
+     * Borrows a live session for the host, connecting a new one if none are idle. With a session limit, waits up to
+     * the borrow timeout when the host already has the maximum amount of sessions borrowed.
+     *
+     * @param host the {@link me.philcali.device.pool.model.Host} to connect to
+     * @param userName the user authenticating the session
+     * @param connector creates and authenticates a new session
+     * @return an authenticated {@link org.apache.sshd.client.session.ClientSession}
+     * @throws java.io.IOException failure to connect, or to obtain a session in time
+     */
+    ClientSession borrow(Host host, String userName, Connector connector) throws IOException {
+        final String key = key(host, userName);
+        final Slot slot = slots.computeIfAbsent(key, k -> new Slot(maxSessions));
+        try {
+            if (!slot.acquire(borrowTimeout)) {
+                throw new IOException("Timed out waiting for one of " + maxSessions + " sessions to " + key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a session to " + key);
+        }
+        try {
+            IdleSession idle;
+            while (Objects.nonNull(idle = slot.idle.pollFirst())) {
+                if (isAlive(idle.session)) {
+                    LOGGER.debug("Reusing pooled session to {}", key);
+                    borrowed.put(idle.session, slot);
+                    return idle.session;
+                }
+                closeQuietly(idle.session);
+            }
+            final ClientSession session = connector.connect(host);
+            borrowed.put(session, slot);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            slot.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed session to the pool, closing it instead if it is no longer alive. Releasing a session
+     * more than once, or one that was never borrowed, has no effect.
+     *
+     * @param session the borrowed {@link org.apache.sshd.client.session.ClientSession}
+     */
+    void release(ClientSession session) {
+        final Slot slot = borrowed.remove(session);
+        if (Objects.isNull(slot)) {
+            return;
+        }
+        try {
+            if (!closed && isAlive(session)) {
+                slot.idle.offerFirst(new IdleSession(session));
+                scheduleSweep();
+            } else {
+                closeQuietly(session);
+            }
+        } finally {
+            slot.release();
+        }
+    }
+
+    private synchronized void scheduleSweep() {
+        if (Objects.nonNull(sweeper) || closed || idleTimeout.isZero() || idleTimeout.isNegative()) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("SSH-Session-Pool");
+            return thread;
+        });
+        final long period = Math.max(1, idleTimeout.toMillis() / 2);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    void evictIdle() {
+        evictIdle(System.nanoTime());
+    }
+
+    void evictIdle(long now) {
+        slots.forEach((key, slot) -> {
+            final List<IdleSession> expired = new ArrayList<>();
+            slot.idle.forEach(idle -> {
+                if (now - idle.since >= idleTimeout.toNanos() || !isAlive(idle.session)) {
+                    expired.add(idle);
+                }
+            });
+            // Only close what is still idle, a concurrent borrow may have taken it
+            expired.stream()
+                    .filter(slot.idle::remove)
+                    .forEach(idle -> {
+                        LOGGER.debug("Evicting idle session to {}", key);
+                        closeQuietly(idle.session);
+                    });
+        });
+    }
+
+    int idleSessions() {
+        return slots.values().stream().mapToInt(slot -> slot.idle.size()).sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (Objects.nonNull(sweeper)) {
+                sweeper.shutdownNow();
+            }
+        }
+        slots.values().forEach(slot -> {
+            IdleSession idle;
+            while (Objects.nonNull(idle = slot.idle.pollFirst())) {
+                closeQuietly(idle.session);
+            }
+        });
+    }
+}
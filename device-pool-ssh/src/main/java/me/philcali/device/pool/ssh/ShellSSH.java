@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.session.ClientSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single long lived <code>/bin/sh</code> running on an exec channel of a
+ * {@link org.apache.sshd.client.session.ClientSession}, used to run many small commands without paying for a
+ * channel and a forked shell per command. Commands are written to the shell's stdin, each followed by sentinel
+ * markers on stdout and stderr carrying its exit code, so commands pipeline back to back and their output is
+ * split apart as it is read. Each command runs in its own subshell with stdin redirected from
+ * <code>/dev/null</code>, so <code>cd</code>, <code>export</code>, <code>set</code>, <code>umask</code> and traps
+ * never leak into later commands, and <code>exit N</code> reports an exit code of N like it would on an exec
+ * channel. Only the shell process is shared. Anything that kills the shell, or a timeout, discards the shell so
+ * the next command opens a fresh one.
+ */
+final class ShellSSH implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(ShellSSH.class);
+    private static final String SHELL = "/bin/sh";
+    private static final int BUFFER = 8192;
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("SSH-Shell");
+        return thread;
+    });
+    private final ClientSession session;
+    private final String token = UUID.randomUUID().toString().replace("-", "");
+    private long sequence;
+    private Shell current;
+
+    ShellSSH(ClientSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Output buffer of a single frame, which is able to recognize and strip a trailing marker in place.
+     */
+    private static final class FrameBuffer extends ByteArrayOutputStream {
+        boolean endsWith(byte[] marker) {
+            if (count < marker.length) {
+                return false;
+            }
+            return Arrays.equals(buf, count - marker.length, count, marker, 0, marker.length);
+        }
+
+        void strip(byte[] marker) {
+            count -= marker.length;
+        }
+    }
+
+    private static final class Frame {
+        private final CompletableFuture<CommandOutput> future = new CompletableFuture<>();
+        private final AtomicInteger remaining = new AtomicInteger(2);
+        private final FrameBuffer stdout = new FrameBuffer();
+        private final FrameBuffer stderr = new FrameBuffer();
+        private final CommandInput input;
+        private final byte[] stdoutMarker;
+        private final byte[] stderrMarker;
+        private volatile int exitCode;
+
+        Frame(CommandInput input, String sentinel) {
+            this.input = input;
+            this.stdoutMarker = ("\n" + sentinel + " ").getBytes(StandardCharsets.US_ASCII);
+            this.stderrMarker = ("\n" + sentinel + "\n").getBytes(StandardCharsets.US_ASCII);
+        }
+
+        void streamComplete() {
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(CommandOutput.builder()
+                        .exitCode(exitCode)
+                        .stdout(stdout.toByteArray())
+                        .stderr(stderr.toByteArray())
+                        .originalInput(input)
+                        .build());
+            }
+        }
+    }
+
+    private final class Shell {
+        private final Queue<Frame> stdoutFrames = new ConcurrentLinkedQueue<>();
+        private final Queue<Frame> stderrFrames = new ConcurrentLinkedQueue<>();
+        private final ChannelExec channel;
+        private final OutputStream stdin;
+        private volatile boolean broken;
+
+        Shell(ChannelExec channel) {
+            this.channel = channel;
+            this.stdin = channel.getInvertedIn();
+        }
+
+        boolean isAlive() {
+            return !broken && !channel.isClosing();
+        }
+
+        void start() {
+            READERS.execute(() -> read(channel.getInvertedOut(), stdoutFrames, true));
+            READERS.execute(() -> read(channel.getInvertedErr(), stderrFrames, false));
+        }
+
+        void read(InputStream stream, Queue<Frame> frames, boolean isStdout) {
+            final byte[] buffer = new byte[BUFFER];
+            Frame frame = null;
+            int exitCode = -1;
+            try (InputStream input = stream) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    for (int index = 0; index < read; index++) {
+                        final byte next = buffer[index];
+                        if (frame == null) {
+                            frame = frames.poll();
+                            if (frame == null) {
+                                continue;
+                            }
+                        }
+                        if (exitCode >= 0) {
+                            // Reading the exit code that follows the stdout marker
+                            if (next == '\n') {
+                                frame.exitCode = exitCode;
+                                frame.streamComplete();
+                                frame = null;
+                                exitCode = -1;
+                            } else {
+                                exitCode = exitCode * 10 + (next - '0');
+                            }
+                            continue;
+                        }
+                        final FrameBuffer output = isStdout ? frame.stdout : frame.stderr;
+                        final byte[] marker = isStdout ? frame.stdoutMarker : frame.stderrMarker;
+                        output.write(next);
+                        if (next == marker[marker.length - 1] && output.endsWith(marker)) {
+                            output.strip(marker);
+                            if (isStdout) {
+                                exitCode = 0;
+                            } else {
+                                frame.streamComplete();
+                                frame = null;
+                            }
+                        }
+                    }
+                }
+                fail(new ConnectionException("Shell on " + session.getConnectAddress() + " exited"));
+            } catch (IOException e) {
+                fail(new ConnectionException(e));
+            } finally {
+                if (frame != null) {
+                    frame.future.completeExceptionally(new ConnectionException("Shell closed running: "
+                            + frame.input.line()));
+                }
+            }
+        }
+
+        void fail(ConnectionException cause) {
+            broken = true;
+            Frame frame;
+            while ((frame = stdoutFrames.poll()) != null) {
+                frame.future.completeExceptionally(cause);
+            }
+            while ((frame = stderrFrames.poll()) != null) {
+                frame.future.completeExceptionally(cause);
+            }
+        }
+
+        void close() {
+            broken = true;
+            channel.close(true);
+            fail(new ConnectionException("Shell on " + session.getConnectAddress() + " was closed"));
+        }
+    }
+
+    private Shell open(Duration timeout) throws IOException {
+        if (current == null || !current.isAlive()) {
+            if (current != null) {
+                current.close();
+            }
+            LOGGER.debug("Opening persistent shell on {}", session.getConnectAddress());
+            final ChannelExec channel = session.createExecChannel(SHELL);
+            try {
+                channel.open().verify(timeout);
+            } catch (IOException | RuntimeException e) {
+                channel.close(true);
+                throw e;
+            }
+            current = new Shell(channel);
+            current.start();
+        }
+        return current;
+    }
+
+    private static byte[] script(CommandInput input, String sentinel) {
+        final StringBuilder builder = new StringBuilder("( ").append(input.line());
+        Optional.ofNullable(input.args()).ifPresent(args -> builder.append(' ').append(String.join(" ", args)));
+        return builder.append("\n) </dev/null\n")
+                .append("printf '\\n%s %d\\n' '").append(sentinel).append("' \"$?\"\n")
+                .append("printf '\\n%s\\n' '").append(sentinel).append("' >&2\n")
+                .toString()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a command to the shell, opening the shell if needed. Commands submitted while others are running
+     * are pipelined behind them.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} to run
+     * @return a {@link java.util.concurrent.CompletableFuture} of the {@link me.philcali.device.pool.model.CommandOutput}
+     */
+    synchronized CompletableFuture<CommandOutput> submit(CommandInput input) {
+        final Shell shell;
+        try {
+            shell = open(input.timeout());
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(new ConnectionException(e));
+        }
+        final String sentinel = "__DP_" + token + "_" + (++sequence) + "__";
+        final Frame frame = new Frame(input, sentinel);
+        shell.stdoutFrames.add(frame);
+        shell.stderrFrames.add(frame);
+        try {
+            shell.stdin.write(script(input, sentinel));
+            shell.stdin.flush();
+        } catch (IOException e) {
+            shell.fail(new ConnectionException(e));
+        }
+        return frame.future;
+    }
+
+    /**
+     * Runs a command on the shell and waits for its output. A command that does not finish within its timeout
+     * leaves the shell in an unknown state, so the shell is closed, failing anything pipelined behind it.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} to run
+     * @return the {@link me.philcali.device.pool.model.CommandOutput} of the command
+     * @throws ConnectionException if the shell fails or the command times out
+     */
+    CommandOutput execute(CommandInput input) throws ConnectionException {
+        final CompletableFuture<CommandOutput> future = submit(input);
+        try {
+            return future.get(input.timeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            close();
+            throw new ConnectionException("Connection timeout running: " + input.line());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new ConnectionException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ConnectionException) {
+                throw (ConnectionException) e.getCause();
+            }
+            throw new ConnectionException(e.getCause());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void close() {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.content.TarArchive;
+import me.philcali.device.pool.exceptions.ContentTransferException;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.CopyOption;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.future.OpenFuture;
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({MockitoExtension.class})
+class ArchiveTransferTest {
+    @Mock
+    private ClientSession session;
+    @Mock
+    private ChannelExec exec;
+    @Mock
+    private OpenFuture openFuture;
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        when(session.createExecChannel(anyString())).thenReturn(exec);
+        when(exec.open()).thenReturn(openFuture);
+        when(exec.waitFor(anyCollection(), any(Duration.class))).thenReturn(EnumSet.of(ClientChannelEvent.CLOSED));
+    }
+
+    private Path tree() throws IOException {
+        final Path source = Files.createDirectories(tempDir.resolve("source").resolve("nested"));
+        Files.write(source.resolve("file.txt"), "Hello World".getBytes(StandardCharsets.UTF_8));
+        return source.getParent();
+    }
+
+    @Test
+    void GIVEN_archive_copy_WHEN_sending_THEN_tree_is_piped_into_remote_tar() throws IOException {
+        final Path source = tree();
+        final ByteArrayOutputStream stdin = new ByteArrayOutputStream();
+        when(exec.getInvertedIn()).thenReturn(stdin);
+        when(exec.getExitStatus()).thenReturn(0);
+        final CopyInput input = CopyInput.builder()
+                .source(source.toString())
+                .destination("/opt/app")
+                .addOptions(CopyOption.RECURSIVE, CopyOption.ARCHIVE, CopyOption.COMPRESS)
+                .build();
+        assertTrue(ArchiveTransfer.isArchive(input));
+        new ArchiveTransfer(session).send(input);
+
+        verify(session).createExecChannel("sh -c " + TarArchive.quote(
+                TarArchive.extractScript("-", "/opt/app", "source", true)));
+        final Path extracted = tempDir.resolve("extracted");
+        TarArchive.extract(new GZIPInputStream(new ByteArrayInputStream(stdin.toByteArray())), extracted);
+        assertEquals("Hello World", Files.readString(extracted.resolve("nested").resolve("file.txt")));
+    }
+
+    @Test
+    void GIVEN_archive_copy_WHEN_receiving_THEN_remote_tar_is_extracted_locally() throws IOException {
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        TarArchive.write(tree(), archive);
+        when(exec.getInvertedOut()).thenReturn(new ByteArrayInputStream(archive.toByteArray()));
+        when(exec.getExitStatus()).thenReturn(0);
+        final Path destination = Files.createDirectories(tempDir.resolve("destination"));
+        new ArchiveTransfer(session).receive(CopyInput.builder()
+                .source("/var/logs")
+                .destination(destination.toString())
+                .addOptions(CopyOption.RECURSIVE, CopyOption.ARCHIVE)
+                .build());
+
+        verify(session).createExecChannel("sh -c " + TarArchive.quote(
+                TarArchive.createScript("/var/logs", "-", false)));
+        assertEquals("Hello World", Files.readString(destination.resolve("logs").resolve("nested").resolve("file.txt")));
+    }
+
+    @Test
+    void GIVEN_remote_tar_fails_WHEN_receiving_THEN_exception_is_thrown() {
+        when(exec.getInvertedOut()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(exec.getExitStatus()).thenReturn(2);
+        assertThrows(ContentTransferException.class, () -> new ArchiveTransfer(session).receive(CopyInput.builder()
+                .source("/var/missing")
+                .destination(tempDir.resolve("missing").toString())
+                .addOptions(CopyOption.RECURSIVE, CopyOption.ARCHIVE)
+                .build()));
+    }
+}
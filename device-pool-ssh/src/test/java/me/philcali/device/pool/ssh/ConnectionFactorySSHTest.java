@@ -20,6 +20,8 @@ import org.apache.sshd.client.future.AuthFuture;
 import org.apache.sshd.client.future.ConnectFuture;
 import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.scp.client.ScpClient;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -115,6 +117,31 @@ class ConnectionFactorySSHTest {
         verify(sshClient, times(0)).start();
     }
 
+    @Test
+    void GIVEN_factory_is_created_WHEN_connection_is_closed_THEN_session_is_pooled() throws Exception {
+        final ConnectFuture connectFuture = mock(ConnectFuture.class);
+        final ClientSession session = mock(ClientSession.class);
+        final AuthFuture authFuture = mock(AuthFuture.class);
+        doReturn(true).when(sshClient).isStarted();
+        when(sshClient.connect(any(HostConfigEntry.class), eq(null), eq(null))).thenReturn(connectFuture);
+        when(connectFuture.verify(eq(Duration.ofSeconds(5L)))).thenReturn(connectFuture);
+        doReturn(session).when(connectFuture).getSession();
+        doReturn(authFuture).when(session).auth();
+        when(authFuture.verify(eq(Duration.ofSeconds(5L)))).thenReturn(authFuture);
+        doReturn(true).when(session).isOpen();
+        doReturn(false).when(session).isClosing();
+        doReturn(true).when(session).isAuthenticated();
+        Connection connection = factory.connect(host);
+        connection.close();
+        Connection reused = factory.connect(host);
+        assertEquals(connection, reused);
+        verify(sshClient, times(1)).connect(any(HostConfigEntry.class), eq(null), eq(null));
+        verify(session, times(0)).close();
+        reused.close();
+        factory.close();
+        verify(session).close();
+    }
+
     @Test
     void GIVEN_factory_is_created_WHEN_connecting_through_ssh_fails_THEN_wrapped_exception_is_thrown()
             throws IOException {
@@ -179,6 +206,22 @@ class ConnectionFactorySSHTest {
         verify(sshClient, times(0)).start();
     }
 
+    @Test
+    void GIVEN_sftp_factory_is_created_WHEN_connecting_through_sftp_THEN_connection_is_reused_for_sftp()
+            throws IOException {
+        final ClientSession session = mock(ClientSession.class);
+        final SftpClientFactory sftpClientFactory = mock(SftpClientFactory.class);
+        final SftpClient sftpClient = mock(SftpClient.class);
+        when(sftpClientFactory.createSftpClient(eq(session))).thenReturn(sftpClient);
+        ConnectionFactorySSH sftpFactory = ConnectionFactorySSH.builder()
+                .from(factory)
+                .transferProtocol(ConnectionFactorySSH.TransferProtocol.SFTP)
+                .sftpClientFactory(sftpClientFactory)
+                .build();
+        ContentTransferAgent agent = sftpFactory.connect("abc-123", ConnectionSSH.of(session), host);
+        assertEquals(ConnectionSFTP.of(sftpClient, true), agent);
+    }
+
     @Test
     void GIVEN_factory_is_created_WHEN_factory_is_closed_THEN_ssh_client_is_closed() throws Exception {
         factory.close();
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.TransferStats;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({MockitoExtension.class})
+class ConnectionSFTPTest {
+    @Mock
+    private SftpClient client;
+    @Mock
+    private SftpClient.CloseableHandle handle;
+    @TempDir
+    Path tempDir;
+    private List<TransferStats> stats;
+    private ConnectionSFTP sftp;
+
+    @BeforeEach
+    void setup() {
+        stats = new ArrayList<>();
+        sftp = ConnectionSFTP.builder()
+                .client(client)
+                .reusingConnection(true)
+                .chunkSize(4)
+                .requestsPerFile(2)
+                .statsListener(stats::add)
+                .build();
+    }
+
+    private static byte[] content(int size) {
+        final byte[] content = new byte[size];
+        IntStream.range(0, size).forEach(index -> content[index] = (byte) index);
+        return content;
+    }
+
+    private static String fingerprint(Path source) throws IOException {
+        return Files.size(source) + ":" + Files.getLastModifiedTime(source).toMillis();
+    }
+
+    private byte[] captureWrites(int size) throws IOException {
+        final byte[] remote = new byte[size];
+        doAnswer(invocation -> {
+            long offset = invocation.getArgument(1);
+            byte[] source = invocation.getArgument(2);
+            int length = invocation.getArgument(4);
+            synchronized (remote) {
+                System.arraycopy(source, 0, remote, (int) offset, length);
+            }
+            return null;
+        }).when(client).write(eq(handle), anyLong(), any(byte[].class), eq(0), anyInt());
+        return remote;
+    }
+
+    @Test
+    void GIVEN_sftp_agent_WHEN_sending_THEN_file_is_written_in_chunks_and_renamed() throws IOException {
+        byte[] content = content(10);
+        Path source = Files.write(tempDir.resolve("file"), content);
+        when(client.stat(anyString())).thenThrow(new SftpException(SftpConstants.SSH_FX_NO_SUCH_FILE, "missing"));
+        when(client.open(eq("/remote/file.part"), anyCollection())).thenReturn(handle);
+        ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+        when(client.write(eq("/remote/file.part.source"))).thenReturn(recorded);
+        byte[] remote = captureWrites(content.length);
+        sftp.send(CopyInput.builder().source(source.toString()).destination("/remote/file").build());
+        assertArrayEquals(content, remote);
+        assertEquals(fingerprint(source), recorded.toString(StandardCharsets.UTF_8));
+        verify(client).rename(eq("/remote/file.part"), eq("/remote/file"));
+        verify(client).remove(eq("/remote/file.part.source"));
+        assertEquals(1, stats.size());
+        assertEquals(10, stats.get(0).bytes());
+        assertEquals(1, stats.get(0).files());
+    }
+
+    @Test
+    void GIVEN_sftp_agent_WHEN_partial_file_exists_THEN_transfer_resumes_behind_the_window() throws IOException {
+        byte[] content = content(40);
+        Path source = Files.write(tempDir.resolve("file"), content);
+        SftpClient.Attributes partial = mock(SftpClient.Attributes.class);
+        when(partial.getSize()).thenReturn(20L);
+        when(client.stat(anyString())).thenThrow(new SftpException(SftpConstants.SSH_FX_NO_SUCH_FILE, "missing"));
+        doAnswer(invocation -> partial).when(client).stat(eq("/remote/file.part"));
+        doAnswer(invocation -> partial).when(client).stat(eq("/remote/file.part.source"));
+        when(client.read(eq("/remote/file.part.source"))).thenReturn(
+                new ByteArrayInputStream(fingerprint(source).getBytes(StandardCharsets.UTF_8)));
+        when(client.open(eq("/remote/file.part"), anyCollection())).thenReturn(handle);
+        byte[] remote = captureWrites(content.length);
+        sftp.send(CopyInput.builder().source(source.toString()).destination("/remote/file").build());
+        // Two requests of four bytes may have left gaps in the last eight bytes of the partial file
+        verify(client, never()).write(eq(handle), eq(8L), any(byte[].class), eq(0), anyInt());
+        verify(client).write(eq(handle), eq(12L), any(byte[].class), eq(0), eq(4));
+        assertArrayEquals(IntStream.range(12, 40).map(index -> content[index]).toArray(),
+                IntStream.range(12, 40).map(index -> remote[index]).toArray());
+        assertEquals(12, stats.get(0).skippedBytes());
+        assertEquals(28, stats.get(0).bytes());
+    }
+
+    @Test
+    void GIVEN_sftp_agent_WHEN_partial_file_is_from_another_source_THEN_transfer_restarts() throws IOException {
+        byte[] content = content(40);
+        Path source = Files.write(tempDir.resolve("file"), content);
+        SftpClient.Attributes partial = mock(SftpClient.Attributes.class);
+        when(partial.getSize()).thenReturn(20L);
+        when(client.stat(anyString())).thenThrow(new SftpException(SftpConstants.SSH_FX_NO_SUCH_FILE, "missing"));
+        doAnswer(invocation -> partial).when(client).stat(eq("/remote/file.part"));
+        doAnswer(invocation -> partial).when(client).stat(eq("/remote/file.part.source"));
+        // An interrupted transfer of an earlier build left the partial file behind
+        when(client.read(eq("/remote/file.part.source"))).thenReturn(
+                new ByteArrayInputStream("40:1000".getBytes(StandardCharsets.UTF_8)));
+        ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+        when(client.write(eq("/remote/file.part.source"))).thenReturn(recorded);
+        when(client.open(eq("/remote/file.part"), anyCollection())).thenReturn(handle);
+        byte[] remote = captureWrites(content.length);
+        sftp.send(CopyInput.builder().source(source.toString()).destination("/remote/file").build());
+        assertArrayEquals(content, remote);
+        assertEquals(fingerprint(source), recorded.toString(StandardCharsets.UTF_8));
+        assertEquals(0, stats.get(0).skippedBytes());
+        assertEquals(40, stats.get(0).bytes());
+    }
+
+    @Test
+    void GIVEN_sftp_agent_WHEN_receiving_THEN_file_is_read_in_chunks_and_moved_into_place() throws IOException {
+        byte[] content = content(10);
+        SftpClient.Attributes attributes = mock(SftpClient.Attributes.class);
+        when(attributes.getSize()).thenReturn((long) content.length);
+        when(client.stat(eq("/remote/file"))).thenReturn(attributes);
+        when(client.open(eq("/remote/file"), eq(SftpClient.OpenMode.Read))).thenReturn(handle);
+        when(client.read(eq(handle), anyLong(), any(byte[].class), anyInt(), anyInt())).then(invocation -> {
+            long offset = invocation.getArgument(1);
+            byte[] destination = invocation.getArgument(2);
+            int destinationOffset = invocation.getArgument(3);
+            int length = Math.min(invocation.getArgument(4), content.length - (int) offset);
+            System.arraycopy(content, (int) offset, destination, destinationOffset, length);
+            return length;
+        });
+        sftp.receive(CopyInput.builder().source("/remote/file").destination(tempDir.toString()).build());
+        assertArrayEquals(content, Files.readAllBytes(tempDir.resolve("file")));
+        assertFalse(Files.exists(tempDir.resolve("file.part")));
+        assertFalse(Files.exists(tempDir.resolve("file.part.source")));
+        assertEquals(10, stats.get(0).bytes());
+    }
+
+    @Test
+    void GIVEN_sftp_agent_WHEN_partial_download_is_from_same_source_THEN_transfer_resumes() throws IOException {
+        byte[] content = content(40);
+        SftpClient.Attributes attributes = mock(SftpClient.Attributes.class);
+        when(attributes.getSize()).thenReturn((long) content.length);
+        when(attributes.getModifyTime()).thenReturn(FileTime.fromMillis(1000));
+        when(client.stat(eq("/remote/file"))).thenReturn(attributes);
+        when(client.open(eq("/remote/file"), eq(SftpClient.OpenMode.Read))).thenReturn(handle);
+        when(client.read(eq(handle), anyLong(), any(byte[].class), anyInt(), anyInt())).then(invocation -> {
+            long offset = invocation.getArgument(1);
+            byte[] destination = invocation.getArgument(2);
+            int destinationOffset = invocation.getArgument(3);
+            int length = Math.min(invocation.getArgument(4), content.length - (int) offset);
+            System.arraycopy(content, (int) offset, destination, destinationOffset, length);
+            return length;
+        });
+        Files.write(tempDir.resolve("file.part"), Arrays.copyOf(content, 20));
+        Files.writeString(tempDir.resolve("file.part.source"), "40:1000");
+        sftp.receive(CopyInput.builder().source("/remote/file").destination(tempDir.toString()).build());
+        assertArrayEquals(content, Files.readAllBytes(tempDir.resolve("file")));
+        assertFalse(Files.exists(tempDir.resolve("file.part.source")));
+        assertEquals(12, stats.get(0).skippedBytes());
+    }
+}
@@ -7,6 +7,7 @@
 package me.philcali.device.pool.ssh;
 
 import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.model.CommandInput;
 import me.philcali.device.pool.model.CommandOutput;
@@ -14,21 +15,32 @@ import org.apache.sshd.client.channel.ChannelExec;
 import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.future.OpenFuture;
 import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.future.CloseFuture;
+import org.apache.sshd.common.future.SshFutureListener;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -76,6 +88,90 @@ class ConnectionSSHTest {
         assertThrows(ConnectionException.class, () -> connection.execute(input));
     }
 
+    @Test
+    void GIVEN_ssh_connection_WHEN_streaming_THEN_output_is_handed_to_sink() throws IOException {
+        CommandInput input = CommandInput.builder()
+                .line("echo")
+                .addArgs("Hello", "World")
+                .build();
+        ChannelExec exec = mock(ChannelExec.class);
+        OpenFuture openFuture = mock(OpenFuture.class);
+        when(session.createExecChannel(eq("echo Hello World"))).thenReturn(exec);
+        when(exec.waitFor(eq(ClientSession.REMOTE_COMMAND_WAIT_EVENTS), eq(input.timeout()))).thenReturn(Collections.emptySet());
+        doReturn(openFuture).when(exec).open();
+        doReturn(new ByteArrayInputStream("Hello World".getBytes(StandardCharsets.UTF_8))).when(exec).getInvertedOut();
+        doReturn(new ByteArrayInputStream(new byte[0])).when(exec).getInvertedErr();
+        doReturn(0).when(exec).getExitStatus();
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        CommandOutput output = connection.executeStreaming(input, OutputSink.of(stdout, stderr));
+        assertEquals(CommandOutput.builder().exitCode(0).originalInput(input).build(), output);
+        assertEquals("Hello World", stdout.toString(StandardCharsets.UTF_8));
+        assertEquals(0, stderr.size());
+    }
+
+    @Test
+    void GIVEN_persistent_shell_connection_WHEN_executing_with_stdin_THEN_uses_exec_channel() throws IOException {
+        Connection shellConnection = ConnectionSSH.builder().clientSession(session).persistentShell(true).build();
+        CommandInput input = CommandInput.builder()
+                .line("cat")
+                .input("Hello World".getBytes(StandardCharsets.UTF_8))
+                .build();
+        ChannelExec exec = mock(ChannelExec.class);
+        OpenFuture openFuture = mock(OpenFuture.class);
+        when(session.createExecChannel(eq("cat"))).thenReturn(exec);
+        when(exec.waitFor(eq(ClientSession.REMOTE_COMMAND_WAIT_EVENTS), eq(input.timeout()))).thenReturn(Collections.emptySet());
+        doReturn(openFuture).when(exec).open();
+        doReturn(0).when(exec).getExitStatus();
+        assertEquals(0, shellConnection.execute(input).exitCode());
+        verify(session, never()).createExecChannel(eq("/bin/sh"));
+    }
+
+    @Test
+    void GIVEN_ssh_connection_WHEN_executing_async_THEN_completes_when_channel_closes() throws Exception {
+        CommandInput input = CommandInput.of("whoami");
+        ChannelExec exec = mock(ChannelExec.class);
+        OpenFuture openFuture = mock(OpenFuture.class);
+        AtomicReference<SshFutureListener<CloseFuture>> closed = new AtomicReference<>();
+        when(session.createExecChannel(eq("whoami"))).thenReturn(exec);
+        doReturn(openFuture).when(exec).open();
+        doAnswer(invocation -> {
+            closed.set(invocation.getArgument(0));
+            return null;
+        }).when(exec).addCloseFutureListener(any());
+        doReturn(0).when(exec).getExitStatus();
+        CompletableFuture<CommandOutput> future = connection.executeAsync(input);
+        assertFalse(future.isDone());
+        closed.get().operationComplete(mock(CloseFuture.class));
+        assertEquals(CommandOutput.builder().exitCode(0).originalInput(input).stderr().stdout().build(),
+                future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void GIVEN_ssh_connection_WHEN_channels_are_exhausted_THEN_async_executions_are_queued() throws Exception {
+        Connection limited = ConnectionSSH.builder().clientSession(session).maxChannels(1).build();
+        ChannelExec first = mock(ChannelExec.class);
+        ChannelExec second = mock(ChannelExec.class);
+        OpenFuture openFuture = mock(OpenFuture.class);
+        AtomicReference<SshFutureListener<CloseFuture>> closed = new AtomicReference<>();
+        when(session.createExecChannel(eq("first"))).thenReturn(first);
+        when(session.createExecChannel(eq("second"))).thenReturn(second);
+        doReturn(openFuture).when(first).open();
+        doReturn(openFuture).when(second).open();
+        doAnswer(invocation -> {
+            closed.set(invocation.getArgument(0));
+            return null;
+        }).when(first).addCloseFutureListener(any());
+        doReturn(0).when(first).getExitStatus();
+        CompletableFuture<CommandOutput> firstFuture = limited.executeAsync(CommandInput.of("first"));
+        CompletableFuture<CommandOutput> secondFuture = limited.executeAsync(CommandInput.of("second"));
+        verify(session, never()).createExecChannel(eq("second"));
+        closed.get().operationComplete(mock(CloseFuture.class));
+        assertEquals(0, firstFuture.get(1, TimeUnit.SECONDS).exitCode());
+        verify(session).createExecChannel(eq("second"));
+        assertFalse(secondFuture.isDone());
+    }
+
     @Test
     void GIVEN_ssh_connection_WHEN_closing_THEN_session_is_closed() throws Exception {
         connection.close();
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import me.philcali.device.pool.model.CopyInput;
+import me.philcali.device.pool.model.CopyOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({MockitoExtension.class})
+class DeltaSyncTest {
+    @Mock
+    private Connection connection;
+    @TempDir
+    Path tempDir;
+
+    private static long cksum(byte[] data, int offset, int length) {
+        return DeltaSync.cksum(DeltaSync.crc(ByteBuffer.wrap(data), offset, length), length);
+    }
+
+    private static List<DeltaSync.Signature> signatures(byte[] data, int blockSize) {
+        final List<DeltaSync.Signature> signatures = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += blockSize) {
+            final int length = Math.min(blockSize, data.length - offset);
+            signatures.add(new DeltaSync.Signature(
+                    cksum(data, offset, length),
+                    DeltaSync.strong(ByteBuffer.wrap(data), offset, length)));
+        }
+        return signatures;
+    }
+
+    @Test
+    void GIVEN_known_input_WHEN_computing_cksum_THEN_matches_posix_cksum() {
+        assertEquals(1219131554L, cksum("abc".getBytes(StandardCharsets.UTF_8), 0, 3));
+        assertEquals(4294967295L, cksum(new byte[0], 0, 0));
+    }
+
+    @Test
+    void GIVEN_shifted_file_WHEN_computing_delta_THEN_only_changed_block_is_literal() {
+        final int blockSize = DeltaSync.MIN_BLOCK_SIZE;
+        final byte[] old = new byte[blockSize * 4];
+        new Random(7).nextBytes(old);
+        final ByteArrayOutputStream shifted = new ByteArrayOutputStream();
+        shifted.write(old, 0, 70000);
+        shifted.writeBytes("inserted".getBytes(StandardCharsets.UTF_8));
+        shifted.write(old, 70000, old.length - 70000);
+        final byte[] data = shifted.toByteArray();
+
+        final List<DeltaSync.Op> ops = DeltaSync.delta(ByteBuffer.wrap(data), blockSize, signatures(old, blockSize), old.length);
+        final ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+        long literal = 0;
+        for (DeltaSync.Op op : ops) {
+            if (op.isCopy()) {
+                rebuilt.write(old, (int) op.start() * blockSize, (int) op.length() * blockSize);
+            } else {
+                rebuilt.write(data, (int) op.start(), (int) op.length());
+                literal += op.length();
+            }
+        }
+        assertArrayEquals(data, rebuilt.toByteArray());
+        assertEquals(blockSize + 8, literal);
+    }
+
+    @Test
+    void GIVEN_unchanged_remote_file_WHEN_sending_delta_THEN_nothing_is_sent() throws Exception {
+        final byte[] data = "Hello World".getBytes(StandardCharsets.UTF_8);
+        final Path source = Files.write(tempDir.resolve("hello.txt"), data);
+        final CommandInput ignored = CommandInput.of("sh");
+        when(connection.execute(any(CommandInput.class))).thenReturn(
+                CommandOutput.builder().exitCode(1).originalInput(ignored).build(),
+                CommandOutput.builder()
+                        .exitCode(0)
+                        .stdout((data.length + "\n" + cksum(data, 0, data.length) + " "
+                                + DeltaSync.strong(ByteBuffer.wrap(data), 0, data.length) + "\n")
+                                .getBytes(StandardCharsets.UTF_8))
+                        .originalInput(ignored)
+                        .build());
+        final List<CopyInput> sent = new ArrayList<>();
+        new DeltaSync(connection, sent::add).send(CopyInput.builder()
+                .source(source.toString())
+                .destination("/remote/hello.txt")
+                .addOptions(CopyOption.DELTA)
+                .build());
+        assertTrue(sent.isEmpty());
+    }
+}
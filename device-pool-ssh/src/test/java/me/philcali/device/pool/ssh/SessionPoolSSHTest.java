@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionPoolSSHTest {
+    private final AtomicInteger connects = new AtomicInteger();
+    private Host host;
+
+    @BeforeEach
+    void setup() {
+        host = Host.builder()
+                .hostName("myhost.amazon.com")
+                .platform(PlatformOS.of("Linux", "aarch64"))
+                .deviceId("my-instance-id")
+                .build();
+    }
+
+    private ClientSession connect(Host host) {
+        connects.incrementAndGet();
+        ClientSession session = mock(ClientSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.isClosing()).thenReturn(false);
+        when(session.isAuthenticated()).thenReturn(true);
+        return session;
+    }
+
+    @Test
+    void GIVEN_pool_WHEN_session_is_released_THEN_session_is_reused() throws IOException {
+        SessionPoolSSH pool = new SessionPoolSSH(2, Duration.ofMinutes(5), Duration.ofMillis(100));
+        ClientSession session = pool.borrow(host, "ec2-user", this::connect);
+        pool.release(session);
+        // Releasing twice has no effect
+        pool.release(session);
+        assertEquals(1, pool.idleSessions());
+
+        assertSame(session, pool.borrow(host, "ec2-user", this::connect));
+        assertEquals(1, connects.get());
+        assertNotSame(session, pool.borrow(host, "root", this::connect));
+        assertEquals(2, connects.get());
+        verify(session, never()).close();
+        pool.close();
+    }
+
+    @Test
+    void GIVEN_pool_WHEN_idle_session_is_dead_THEN_new_session_is_connected() throws IOException {
+        SessionPoolSSH pool = new SessionPoolSSH(2, Duration.ofMinutes(5), Duration.ofMillis(100));
+        ClientSession session = pool.borrow(host, "ec2-user", this::connect);
+        pool.release(session);
+        when(session.isOpen()).thenReturn(false);
+
+        assertNotSame(session, pool.borrow(host, "ec2-user", this::connect));
+        verify(session).close();
+        pool.close();
+    }
+
+    @Test
+    void GIVEN_pool_WHEN_host_has_max_sessions_THEN_borrow_times_out() throws IOException {
+        SessionPoolSSH pool = new SessionPoolSSH(1, Duration.ofMinutes(5), Duration.ofMillis(100));
+        ClientSession session = pool.borrow(host, "ec2-user", this::connect);
+        assertThrows(IOException.class, () -> pool.borrow(host, "ec2-user", this::connect));
+
+        pool.release(session);
+        assertSame(session, pool.borrow(host, "ec2-user", this::connect));
+        pool.close();
+    }
+
+    @Test
+    void GIVEN_pool_without_limit_WHEN_host_has_many_sessions_THEN_borrow_connects() throws IOException {
+        SessionPoolSSH pool = new SessionPoolSSH(0, Duration.ofMinutes(5), Duration.ofMillis(100));
+        for (int session = 0; session < 8; session++) {
+            pool.borrow(host, "ec2-user", this::connect);
+        }
+        assertEquals(8, connects.get());
+        pool.close();
+    }
+
+    @Test
+    void GIVEN_pool_WHEN_sessions_are_idle_THEN_sessions_are_evicted() throws Exception {
+        // The background sweep never runs within the test, so eviction happens at a chosen time instead
+        final Duration idleTimeout = Duration.ofMinutes(5);
+        SessionPoolSSH pool = new SessionPoolSSH(2, idleTimeout, Duration.ofMillis(100));
+        ClientSession session = pool.borrow(host, "ec2-user", this::connect);
+        pool.release(session);
+        pool.evictIdle(System.nanoTime());
+        assertEquals(1, pool.idleSessions());
+        pool.evictIdle(System.nanoTime() + idleTimeout.toNanos());
+
+        assertEquals(0, pool.idleSessions());
+        verify(session).close();
+        pool.close();
+    }
+
+    @Test
+    void GIVEN_pool_WHEN_closed_THEN_released_sessions_are_closed() throws IOException {
+        SessionPoolSSH pool = new SessionPoolSSH(2, Duration.ofMinutes(5), Duration.ofMillis(100));
+        ClientSession idle = pool.borrow(host, "ec2-user", this::connect);
+        ClientSession borrowed = pool.borrow(host, "ec2-user", this::connect);
+        pool.release(idle);
+        pool.close();
+        verify(idle).close();
+
+        pool.release(borrowed);
+        verify(borrowed).close();
+    }
+}
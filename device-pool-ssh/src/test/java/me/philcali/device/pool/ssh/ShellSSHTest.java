@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssh;
+
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.shell.ProcessShellCommandFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs the persistent shell against an in-process sshd server, which runs <code>/bin/sh</code> for real.
+ */
+class ShellSSHTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static SshServer server;
+    private static SshClient client;
+    private ClientSession session;
+    private ShellSSH shell;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = SshServer.setUpDefaultServer();
+        server.setHost("localhost");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((userName, password, serverSession) -> true);
+        server.setCommandFactory(new ProcessShellCommandFactory());
+        server.start();
+        client = SshClient.setUpDefaultClient();
+        client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+        client.start();
+    }
+
+    @AfterAll
+    static void stopServer() throws IOException {
+        client.stop();
+        server.stop(true);
+    }
+
+    @BeforeEach
+    void setup() throws IOException {
+        session = client.connect("tester", "localhost", server.getPort()).verify(TIMEOUT).getSession();
+        session.addPasswordIdentity("password");
+        session.auth().verify(TIMEOUT);
+        shell = new ShellSSH(session);
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        shell.close();
+        session.close();
+    }
+
+    private String run(String command) {
+        return new String(shell.execute(CommandInput.of(command)).stdout(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void GIVEN_persistent_shell_WHEN_executing_repeatedly_THEN_commands_share_one_shell() {
+        // $$ expands to the pid of the persistent shell, even within a subshell
+        final String pid = run("echo $$");
+        for (int i = 0; i < 3; i++) {
+            CommandInput input = CommandInput.of("echo hello");
+            assertEquals(CommandOutput.builder()
+                    .exitCode(0)
+                    .stdout("hello\n".getBytes(StandardCharsets.UTF_8))
+                    .stderr()
+                    .originalInput(input)
+                    .build(), shell.execute(input));
+        }
+        assertEquals(pid, run("echo $$"));
+    }
+
+    @Test
+    void GIVEN_persistent_shell_WHEN_command_exits_THEN_output_and_exit_code_are_framed() {
+        final String pid = run("echo $$");
+        CommandOutput output = shell.execute(CommandInput.of("printf partial; echo oops >&2; exit 3"));
+        assertEquals(3, output.exitCode());
+        assertEquals("partial", new String(output.stdout(), StandardCharsets.UTF_8));
+        assertEquals("oops\n", new String(output.stderr(), StandardCharsets.UTF_8));
+        // Exiting only ends the subshell of the command
+        assertEquals(pid, run("echo $$"));
+    }
+
+    @Test
+    void GIVEN_persistent_shell_WHEN_command_changes_state_THEN_state_does_not_leak() {
+        final String directory = run("pwd");
+        assertEquals(0, shell.execute(CommandInput.of("cd / && export LEAKED=yes && umask 077")).exitCode());
+        assertEquals(directory, run("pwd"));
+        assertEquals("unset\n", run("echo \"${LEAKED:-unset}\""));
+    }
+
+    @Test
+    void GIVEN_persistent_shell_WHEN_shell_is_killed_THEN_command_fails_and_next_command_reopens() {
+        final String pid = run("echo $$");
+        assertThrows(ConnectionException.class, () -> shell.execute(CommandInput.of("kill -9 $$")));
+        assertEquals("hello\n", run("echo hello"));
+        assertNotEquals(pid, run("echo $$"));
+    }
+}
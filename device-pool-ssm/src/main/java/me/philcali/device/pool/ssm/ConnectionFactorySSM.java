@@ -12,16 +12,23 @@ import me.philcali.device.pool.connection.Connection;
 import me.philcali.device.pool.connection.ConnectionFactory;
 import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.model.APIShadowModel;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.ExecutionSummary;
 import me.philcali.device.pool.model.Host;
 import org.immutables.value.Value;
 import software.amazon.awssdk.core.waiters.Waiter;
 import software.amazon.awssdk.core.waiters.WaiterAcceptor;
+import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.ssm.SsmClient;
 import software.amazon.awssdk.services.ssm.model.CommandInvocationStatus;
 import software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse;
 
+import javax.annotation.Nullable;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -71,7 +78,23 @@ public abstract class ConnectionFactorySSM implements ConnectionFactory {
             return config.namespace("connection.ssm")
                     .map(entry -> {
                         entry.get("document").ifPresent(document -> hostDocument(host -> document));
-                        return build();
+                        entry.get("requestsPerSecond").map(Integer::parseInt).ifPresent(this::requestsPerSecond);
+                        entry.get("maxPollDelay").map(Long::parseLong).map(Duration::ofMillis)
+                                .ifPresent(this::maxPollDelay);
+                        final ConnectionFactorySSM factory = build();
+                        return entry.get("outputBucket").map(bucket -> {
+                            // Reuse a configured client, otherwise the factory owns the one it creates
+                            final S3Client s3 = Optional.ofNullable(factory.s3()).orElseGet(S3Client::create);
+                            final OutputLocationSSM.Builder location = OutputLocationSSM.builder()
+                                    .s3(s3)
+                                    .bucketName(bucket);
+                            entry.get("outputPrefix").ifPresent(location::prefix);
+                            return ConnectionFactorySSM.builder()
+                                    .from(factory)
+                                    .s3(s3)
+                                    .outputLocation(location.build())
+                                    .build();
+                        }).orElse(factory);
                     })
                     .orElseGet(this::build);
         }
@@ -81,7 +104,11 @@ public abstract class ConnectionFactorySSM implements ConnectionFactory {
      * <p>waiter.</p>
      *
      * @return a {@link software.amazon.awssdk.core.waiters.Waiter} object
+     * @deprecated commands are no longer waited on with a {@link software.amazon.awssdk.core.waiters.Waiter}, but
+     *     polled by the poller shared across connections, tuned with {@link #initialPollDelay()},
+     *     {@link #maxPollDelay()} and {@link #requestsPerSecond()}. This waiter is ignored.
      */
+    @Deprecated
     @Value.Default
     public Waiter<GetCommandInvocationResponse> waiter() {
         final Set<CommandInvocationStatus> terminalStatuses = new HashSet<>(Arrays.asList(
@@ -100,20 +127,93 @@ public abstract class ConnectionFactorySSM implements ConnectionFactory {
                 .build();
     }
 
+    /**
+     * The delay before the first status poll of a command, doubling on every poll still in progress.
+     *
+     * @return the initial poll delay
+     */
+    @Value.Default
+    public Duration initialPollDelay() {
+        return Duration.ofMillis(100);
+    }
+
+    /**
+     * The longest delay between two status polls of a command.
+     *
+     * @return the maximum poll delay
+     */
+    @Value.Default
+    public Duration maxPollDelay() {
+        return Duration.ofSeconds(5);
+    }
+
+    /**
+     * The budget of SSM requests per second shared by every connection of this factory, covering both sent
+     * commands and status polls.
+     *
+     * @return the number of SSM requests per second
+     */
+    @Value.Default
+    public int requestsPerSecond() {
+        return 10;
+    }
+
+    /**
+     * If present, the S3 location receiving the complete output of every command run through this factory, which
+     * SSM otherwise truncates to 24,000 characters. Commands then read their output from S3 with ranged GETs.
+     *
+     * @return the {@link me.philcali.device.pool.ssm.OutputLocationSSM} of command output
+     */
+    @Nullable
+    public abstract OutputLocationSSM outputLocation();
+
+    /**
+     * If present, the {@link software.amazon.awssdk.services.s3.S3Client} reading the output of commands from the
+     * <code>outputBucket</code> configured through {@link ConnectionFactorySSM.Builder#fromConfig}. When absent,
+     * configuring an output bucket creates one. The client is closed along with this factory.
+     *
+     * @return the {@link software.amazon.awssdk.services.s3.S3Client} of command output
+     */
+    @Nullable
+    public abstract S3Client s3();
+
+    @Value.Lazy
+    InvocationPollerSSM poller() {
+        return new InvocationPollerSSM(ssm(), initialPollDelay(), maxPollDelay(), requestsPerSecond());
+    }
+
     /** {@inheritDoc} */
     @Override
     public Connection connect(Host host) throws ConnectionException {
         return ConnectionSSM.builder()
                 .ssm(ssm())
                 .host(host)
-                .waiter(waiter())
+                .poller(poller())
+                .outputLocation(outputLocation())
                 .documentName(hostDocument().apply(host))
                 .build();
     }
 
+    /**
+     * Runs a command on many SSM managed {@link me.philcali.device.pool.model.Host}s at once. Hosts are sent the
+     * command in batches of up to 50 instances per <code>SendCommand</code>, and their invocations are tracked
+     * with paginated <code>ListCommandInvocations</code> calls, which keeps large fleets well under the SSM API
+     * limits that a {@link me.philcali.device.pool.connection.Connection} per host would hit.
+     *
+     * @param hosts the {@link me.philcali.device.pool.model.Host}s to run the command on
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} to run on every host
+     * @return the {@link me.philcali.device.pool.model.ExecutionSummary} with a result for every host
+     * @throws me.philcali.device.pool.exceptions.ConnectionException if interrupted waiting on the command
+     */
+    public ExecutionSummary execute(List<Host> hosts, CommandInput input) throws ConnectionException {
+        return new FleetExecutionSSM(ssm(), hostDocument(), poller(), outputLocation()).execute(hosts, input);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void close() {
+        poller().close();
         ssm().close();
+        Optional.ofNullable(s3()).ifPresent(S3Client::close);
     }
 }
@@ -6,7 +6,9 @@
 
 package me.philcali.device.pool.ssm;
 
+import me.philcali.device.pool.connection.BatchScript;
 import me.philcali.device.pool.connection.Connection;
+import me.philcali.device.pool.connection.OutputSink;
 import me.philcali.device.pool.exceptions.ConnectionException;
 import me.philcali.device.pool.model.ApiModel;
 import me.philcali.device.pool.model.CommandInput;
@@ -16,26 +18,23 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.immutables.value.Value;
 import software.amazon.awssdk.core.exception.SdkClientException;
-import software.amazon.awssdk.core.internal.waiters.ResponseOrException;
-import software.amazon.awssdk.core.retry.backoff.FixedDelayBackoffStrategy;
-import software.amazon.awssdk.core.waiters.Waiter;
-import software.amazon.awssdk.core.waiters.WaiterOverrideConfiguration;
-import software.amazon.awssdk.core.waiters.WaiterResponse;
 import software.amazon.awssdk.services.ssm.SsmClient;
-import software.amazon.awssdk.services.ssm.model.GetCommandInvocationRequest;
 import software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse;
 import software.amazon.awssdk.services.ssm.model.SendCommandRequest;
 import software.amazon.awssdk.services.ssm.model.SendCommandResponse;
 import software.amazon.awssdk.services.ssm.model.SsmException;
 
+import javax.annotation.Nullable;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
-import java.util.function.Supplier;
 
 /**
  * A {@link me.philcali.device.pool.connection.Connection} communicating to AWS Simple Systems Manager (SSM).
@@ -51,17 +50,17 @@ abstract class ConnectionSSMModel implements Connection {
 
     abstract String documentName();
 
-    abstract Waiter<GetCommandInvocationResponse> waiter();
+    abstract InvocationPollerSSM poller();
 
-    private WaiterOverrideConfiguration waiterOverride(CommandInput input) {
-        return WaiterOverrideConfiguration.builder()
-                .waitTimeout(input.timeout())
-                .backoffStrategy(FixedDelayBackoffStrategy.create(Duration.ofSeconds(1)))
-                .maxAttempts((int) input.timeout().toSeconds())
-                .build();
-    }
+    /**
+     * If present, the S3 location receiving the complete output of commands, which is otherwise truncated by SSM.
+     *
+     * @return the {@link me.philcali.device.pool.ssm.OutputLocationSSM} of command output
+     */
+    @Nullable
+    abstract OutputLocationSSM outputLocation();
 
-    private Function<GetCommandInvocationResponse, CommandOutput> convert(CommandInput input) {
+    static Function<GetCommandInvocationResponse, CommandOutput> convert(CommandInput input) {
         return response -> CommandOutput.builder()
                 .originalInput(input)
                 .exitCode(response.responseCode())
@@ -70,40 +69,112 @@ abstract class ConnectionSSMModel implements Connection {
                 .build();
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public CommandOutput execute(CommandInput input) throws ConnectionException {
+    static String commands(CommandInput input) {
+        final StringBuilder commands = new StringBuilder(input.line());
+        Optional.ofNullable(input.args()).ifPresent(args ->
+                commands.append(" ").append(String.join(" ", args)));
+        return commands.toString();
+    }
+
+    private CompletableFuture<GetCommandInvocationResponse> send(CommandInput input) {
+        return send(Collections.singletonList(commands(input)), input.timeout());
+    }
+
+    private CompletableFuture<GetCommandInvocationResponse> send(List<String> commands, Duration timeout) {
         try {
-            final StringBuilder commands = new StringBuilder(input.line());
-            Optional.ofNullable(input.args()).ifPresent(args ->
-                    commands.append(" ").append(String.join(" ", args)));
-            SendCommandResponse sentCommand = ssm().sendCommand(SendCommandRequest.builder()
+            poller().acquire();
+            final SendCommandRequest.Builder request = SendCommandRequest.builder()
                     .comment("Command for host " + host().deviceId())
                     .documentName(documentName())
                     .instanceIds(host().deviceId())
-                    .timeoutSeconds((int) input.timeout().toSeconds())
-                    .parameters(new HashMap<String, Set<String>>() {{
-                        put("commands", Collections.singleton(commands.toString()));
-                    }})
-                    .build());
+                    .timeoutSeconds((int) timeout.toSeconds())
+                    .parameters(new HashMap<String, List<String>>() {{
+                        put("commands", commands);
+                    }});
+            SendCommandResponse sentCommand = ssm().sendCommand(Objects.isNull(outputLocation())
+                    ? request.build()
+                    : outputLocation().apply(request).build());
             LOGGER.info("Sent command to {}: {}", host().deviceId(), sentCommand.command().commandId());
-            Supplier<GetCommandInvocationResponse> supplier = () -> ssm().getCommandInvocation(
-                    GetCommandInvocationRequest.builder()
-                            .commandId(sentCommand.command().commandId())
-                            .instanceId(host().deviceId())
-                            .build());
-            WaiterResponse<GetCommandInvocationResponse> response = waiter().run(supplier, waiterOverride(input));
-            ResponseOrException<GetCommandInvocationResponse> either = response.matched();
-            LOGGER.debug("Waiter terminated after {} attempts", response.attemptsExecuted());
-            either.exception().ifPresent(ex -> {
-                throw new ConnectionException(ex);
-            });
-            return either.response()
-                    .map(convert(input))
-                    .orElseThrow(() -> new ConnectionException("Failed to execute: " + commands));
+            return poller().poll(sentCommand.command().commandId(), host().deviceId(), timeout);
         } catch (SsmException | SdkClientException e) {
-            throw new ConnectionException(e);
+            return CompletableFuture.failedFuture(new ConnectionException(e));
+        } catch (ConnectionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private <T> T join(CompletableFuture<T> future) throws ConnectionException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted waiting on command for host " + host().deviceId());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ConnectionException) {
+                throw (ConnectionException) e.getCause();
+            }
+            throw new ConnectionException(e.getCause());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The command is sent right away, and the returned future completes from the polling thread of the shared
+     * {@link me.philcali.device.pool.ssm.InvocationPollerSSM} once the invocation is terminal. With an
+     * {@link me.philcali.device.pool.ssm.OutputLocationSSM}, the complete output is then read from S3 off the
+     * polling thread.
+     */
+    @Override
+    public CompletableFuture<CommandOutput> executeAsync(CommandInput input) {
+        if (Objects.isNull(outputLocation())) {
+            return send(input).thenApply(convert(input));
+        }
+        return send(input).thenApplyAsync(response -> outputLocation().read(input, response),
+                RangedOutputReader.WORKERS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CommandOutput execute(CommandInput input) throws ConnectionException {
+        return join(executeAsync(input));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * With an {@link me.philcali.device.pool.ssm.OutputLocationSSM}, the complete output objects are streamed
+     * into the sink from S3 once the command completes, since SSM does not report output while it runs.
+     */
+    @Override
+    public CommandOutput executeStreaming(CommandInput input, OutputSink sink) throws ConnectionException {
+        if (Objects.isNull(outputLocation())) {
+            return Connection.super.executeStreaming(input, sink);
+        }
+        return outputLocation().stream(input, join(send(input)), sink);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The batch is sent as a single command, whose multi-line <code>commands</code> parameter holds a
+     * {@link me.philcali.device.pool.connection.BatchScript}. The output of each command is demultiplexed from the
+     * framed output of the script, read from the {@link me.philcali.device.pool.ssm.OutputLocationSSM} if present.
+     * Without an output location SSM truncates the output of the script, in which case the batch fails rather than
+     * run its commands again. Windows hosts run the commands in turn.
+     */
+    @Override
+    public List<CommandOutput> executeBatch(List<CommandInput> inputs) throws ConnectionException {
+        if (host().platform().isWindows() || !BatchScript.supports(inputs)) {
+            return Connection.super.executeBatch(inputs);
+        }
+        final BatchScript script = BatchScript.of(inputs);
+        final GetCommandInvocationResponse response = join(send(script.lines(), script.timeout()));
+        if (Objects.isNull(outputLocation())) {
+            return script.parse(convert(script.toInput()).apply(response));
         }
+        return script.parse(outputLocation().read(script.toInput(), response));
     }
 
     /** {@inheritDoc} */
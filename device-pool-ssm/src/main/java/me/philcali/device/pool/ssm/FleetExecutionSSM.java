@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssm;
+
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import me.philcali.device.pool.model.DeviceResult;
+import me.philcali.device.pool.model.ExecutionSummary;
+import me.philcali.device.pool.model.Host;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse;
+import software.amazon.awssdk.services.ssm.model.SendCommandRequest;
+import software.amazon.awssdk.services.ssm.model.SsmException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a single {@link me.philcali.device.pool.model.CommandInput} across many SSM managed hosts. Hosts sharing
+ * a document are grouped into one <code>SendCommand</code> per {@link #MAX_TARGETS} instances, and every command is
+ * waited on through the shared {@link me.philcali.device.pool.ssm.InvocationPollerSSM}, which tracks each command
+ * with paginated <code>ListCommandInvocations</code> calls instead of one poll per host. The output of a host is
+ * read once, when its invocation completes, from the {@link me.philcali.device.pool.ssm.OutputLocationSSM} if the
+ * factory has one.
+ */
+final class FleetExecutionSSM {
+    private static final Logger LOGGER = LogManager.getLogger(FleetExecutionSSM.class);
+    static final int MAX_TARGETS = 50;
+
+    private final SsmClient ssm;
+    private final HostDocument hostDocument;
+    private final InvocationPollerSSM poller;
+    private final OutputLocationSSM outputLocation;
+
+    FleetExecutionSSM(SsmClient ssm, HostDocument hostDocument, InvocationPollerSSM poller) {
+        this(ssm, hostDocument, poller, null);
+    }
+
+    FleetExecutionSSM(SsmClient ssm, HostDocument hostDocument, InvocationPollerSSM poller,
+                      OutputLocationSSM outputLocation) {
+        this.ssm = ssm;
+        this.hostDocument = hostDocument;
+        this.poller = poller;
+        this.outputLocation = outputLocation;
+    }
+
+    private static DeviceResult failure(String instanceId, Throwable error, long started) {
+        return DeviceResult.builder()
+                .deviceId(instanceId)
+                .error(error instanceof Exception ? (Exception) error : new ConnectionException(error))
+                .duration(Duration.ofNanos(System.nanoTime() - started))
+                .build();
+    }
+
+    private String send(String documentName, List<String> instanceIds, CommandInput input) {
+        poller.acquire();
+        final SendCommandRequest.Builder request = SendCommandRequest.builder()
+                .comment("Command for " + instanceIds.size() + " hosts")
+                .documentName(documentName)
+                .instanceIds(instanceIds)
+                // Every host is independent, so one failing host never stops the others
+                .maxConcurrency("100%")
+                .maxErrors("100%")
+                .timeoutSeconds((int) input.timeout().toSeconds())
+                .parameters(new HashMap<String, Set<String>>() {{
+                    put("commands", Collections.singleton(ConnectionSSMModel.commands(input)));
+                }});
+        final String commandId = ssm.sendCommand(Objects.isNull(outputLocation)
+                ? request.build()
+                : outputLocation.apply(request).build())
+                .command()
+                .commandId();
+        LOGGER.info("Sent command {} to {} hosts", commandId, instanceIds.size());
+        return commandId;
+    }
+
+    private CompletableFuture<DeviceResult> await(String commandId, String instanceId, CommandInput input) {
+        final long started = System.nanoTime();
+        final CompletableFuture<GetCommandInvocationResponse> response = poller.poll(
+                commandId, instanceId, input.timeout());
+        final CompletableFuture<CommandOutput> output = Objects.isNull(outputLocation)
+                ? response.thenApply(ConnectionSSMModel.convert(input))
+                : response.thenApplyAsync(completed -> outputLocation.read(input, completed),
+                    RangedOutputReader.WORKERS);
+        return output.handle((result, error) -> {
+            if (Objects.nonNull(error)) {
+                return failure(instanceId, error instanceof CompletionException ? error.getCause() : error, started);
+            }
+            return DeviceResult.builder()
+                    .deviceId(instanceId)
+                    .output(result)
+                    .duration(Duration.ofNanos(System.nanoTime() - started))
+                    .build();
+        });
+    }
+
+    /**
+     * Runs the command on every host, blocking until every invocation completes or the command times out.
+     *
+     * @param hosts the SSM managed {@link me.philcali.device.pool.model.Host}s to run on
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} to run
+     * @return the {@link me.philcali.device.pool.model.ExecutionSummary} with a result for every host
+     * @throws ConnectionException if interrupted while waiting on the invocations
+     */
+    ExecutionSummary execute(List<Host> hosts, CommandInput input) throws ConnectionException {
+        final long started = System.nanoTime();
+        final Map<String, CompletableFuture<DeviceResult>> results = new HashMap<>();
+        final Map<String, Host> targets = new LinkedHashMap<>();
+        hosts.forEach(host -> targets.putIfAbsent(host.deviceId(), host));
+        final Map<String, List<String>> documents = targets.values().stream().collect(Collectors.groupingBy(
+                hostDocument, LinkedHashMap::new, Collectors.mapping(Host::deviceId, Collectors.toList())));
+        documents.forEach((documentName, instanceIds) -> {
+            for (int index = 0; index < instanceIds.size(); index += MAX_TARGETS) {
+                final List<String> batch = instanceIds.subList(index,
+                        Math.min(instanceIds.size(), index + MAX_TARGETS));
+                try {
+                    final String commandId = send(documentName, batch, input);
+                    batch.forEach(instanceId -> results.put(instanceId, await(commandId, instanceId, input)));
+                } catch (SsmException | SdkClientException e) {
+                    batch.forEach(instanceId -> results.put(instanceId, CompletableFuture.completedFuture(
+                            failure(instanceId, new ConnectionException(e), started))));
+                }
+            }
+        });
+        final List<DeviceResult> ordered = new ArrayList<>(targets.size());
+        try {
+            for (String instanceId : targets.keySet()) {
+                ordered.add(results.get(instanceId).get());
+            }
+        } catch (InterruptedException e) {
+            results.values().forEach(result -> result.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted waiting on commands for " + targets.size() + " hosts");
+        } catch (ExecutionException e) {
+            // Results are handled into failures, so they never complete exceptionally
+            throw new ConnectionException(e.getCause());
+        }
+        return ExecutionSummary.builder()
+                .results(ordered)
+                .duration(Duration.ofNanos(System.nanoTime() - started))
+                .build();
+    }
+}
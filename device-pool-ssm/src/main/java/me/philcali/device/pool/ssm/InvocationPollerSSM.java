@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssm;
+
+import me.philcali.device.pool.exceptions.ConnectionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import software.amazon.awssdk.services.ssm.model.CommandInvocation;
+import software.amazon.awssdk.services.ssm.model.CommandInvocationStatus;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationRequest;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse;
+import software.amazon.awssdk.services.ssm.model.InvocationDoesNotExistException;
+import software.amazon.awssdk.services.ssm.model.ListCommandInvocationsRequest;
+import software.amazon.awssdk.services.ssm.model.ListCommandInvocationsResponse;
+import software.amazon.awssdk.services.ssm.model.SsmException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits on SSM command invocations for every {@link me.philcali.device.pool.connection.Connection} of a
+ * {@link me.philcali.device.pool.ssm.ConnectionFactorySSM}, from a single polling thread. Each command is polled
+ * quickly at first, then with an exponentially growing delay. A command waited on for a single instance is polled
+ * with <code>GetCommandInvocation</code>, while a command waited on for many instances is polled with paginated
+ * <code>ListCommandInvocations</code> calls, reading the output of each instance once it completes. Every SSM
+ * request of the factory draws from one rate budget, which keeps concurrent executions under the SSM limits.
+ */
+final class InvocationPollerSSM implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(InvocationPollerSSM.class);
+    private static final int MAX_RESULTS = 50;
+
+    private final SsmClient ssm;
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+    private final RequestBudget budget;
+    private final Map<String, PendingCommand> commands = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("SSM-Poller");
+        return thread;
+    });
+    private ScheduledFuture<?> nextTick;
+    private long nextTickAt = Long.MAX_VALUE;
+    private volatile boolean closed;
+
+    InvocationPollerSSM(SsmClient ssm, Duration initialDelay, Duration maxDelay, int requestsPerSecond) {
+        this.ssm = ssm;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.budget = new RequestBudget(requestsPerSecond);
+    }
+
+    /**
+     * A token bucket refilling at a fixed rate, holding at most a second of requests.
+     */
+    private static final class RequestBudget {
+        private final int requestsPerSecond;
+        private double tokens;
+        private long refilled = System.nanoTime();
+
+        RequestBudget(int requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.tokens = requestsPerSecond;
+        }
+
+        private synchronized long reserve() {
+            final long now = System.nanoTime();
+            tokens = Math.min(requestsPerSecond, tokens + (now - refilled) * requestsPerSecond / 1e9);
+            refilled = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / requestsPerSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            final long wait = reserve();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+
+    private static final class Waiting {
+        private final CompletableFuture<GetCommandInvocationResponse> future = new CompletableFuture<>();
+        private final long deadline;
+
+        Waiting(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    private final class PendingCommand {
+        private final String commandId;
+        private final Map<String, Waiting> instances = new ConcurrentHashMap<>();
+        private long delay = initialDelay.toNanos();
+        private volatile long nextPoll = System.nanoTime() + delay;
+
+        PendingCommand(String commandId) {
+            this.commandId = commandId;
+        }
+    }
+
+    /**
+     * Blocks until the budget allows another SSM request.
+     *
+     * @throws ConnectionException if interrupted while waiting on the budget
+     */
+    void acquire() throws ConnectionException {
+        try {
+            budget.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted waiting on the SSM request budget");
+        }
+    }
+
+    /**
+     * Waits on the invocation of a command on an instance, never blocking the caller.
+     *
+     * @param commandId the SSM command identifier
+     * @param instanceId the SSM managed instance identifier
+     * @param timeout how long to wait on the invocation to complete
+     * @return the {@link java.util.concurrent.CompletableFuture} of the completed invocation, failing with a
+     *     {@link me.philcali.device.pool.exceptions.ConnectionException} if it was cancelled, timed out, or the
+     *     poller is closed
+     */
+    CompletableFuture<GetCommandInvocationResponse> poll(String commandId, String instanceId, Duration timeout) {
+        if (closed) {
+            return CompletableFuture.failedFuture(closedException());
+        }
+        final Waiting waiting = new Waiting(System.nanoTime() + timeout.toNanos());
+        final PendingCommand command = commands.compute(commandId, (id, existing) -> {
+            final PendingCommand pending = Objects.isNull(existing) ? new PendingCommand(id) : existing;
+            pending.instances.put(instanceId, waiting);
+            return pending;
+        });
+        // Cancelled futures stop being polled
+        waiting.future.whenComplete((response, error) -> command.instances.remove(instanceId, waiting));
+        // A close racing the registration may have already failed every invocation it could see
+        if (closed) {
+            waiting.future.completeExceptionally(closedException());
+        }
+        wake(command.nextPoll);
+        return waiting.future;
+    }
+
+    private synchronized void wake(long at) {
+        if (scheduler.isShutdown() || at >= nextTickAt) {
+            return;
+        }
+        if (Objects.nonNull(nextTick)) {
+            nextTick.cancel(false);
+        }
+        nextTickAt = at;
+        nextTick = scheduler.schedule(this::tick, Math.max(0, at - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private static boolean isTerminal(CommandInvocationStatus status) {
+        return status == CommandInvocationStatus.SUCCESS
+                || status == CommandInvocationStatus.FAILED
+                || status == CommandInvocationStatus.CANCELLED
+                || status == CommandInvocationStatus.TIMED_OUT;
+    }
+
+    // Cancelled or timed out invocations have no output worth reading
+    private static boolean failIfAborted(Waiting waiting, CommandInvocationStatus status) {
+        if (status == CommandInvocationStatus.CANCELLED) {
+            return waiting.future.completeExceptionally(new ConnectionException("Command was cancelled!"));
+        } else if (status == CommandInvocationStatus.TIMED_OUT) {
+            return waiting.future.completeExceptionally(new ConnectionException("Command timed out!"));
+        }
+        return false;
+    }
+
+    private void completeIfTerminal(PendingCommand command, String instanceId, CommandInvocationStatus status)
+            throws InterruptedException {
+        final Waiting waiting = command.instances.get(instanceId);
+        if (Objects.isNull(waiting) || failIfAborted(waiting, status)) {
+            return;
+        }
+        budget.acquire();
+        final GetCommandInvocationResponse response = ssm.getCommandInvocation(GetCommandInvocationRequest.builder()
+                .commandId(command.commandId)
+                .instanceId(instanceId)
+                .build());
+        if (isTerminal(response.status()) && !failIfAborted(waiting, response.status())) {
+            waiting.future.complete(response);
+        }
+    }
+
+    private List<CommandInvocation> invocations(String commandId) throws InterruptedException {
+        final List<CommandInvocation> invocations = new ArrayList<>();
+        String nextToken = null;
+        do {
+            budget.acquire();
+            final ListCommandInvocationsResponse response = ssm.listCommandInvocations(
+                    ListCommandInvocationsRequest.builder()
+                            .commandId(commandId)
+                            .maxResults(MAX_RESULTS)
+                            .nextToken(nextToken)
+                            .build());
+            invocations.addAll(response.commandInvocations());
+            nextToken = response.nextToken();
+        } while (Objects.nonNull(nextToken));
+        return invocations;
+    }
+
+    private void poll(PendingCommand command) throws InterruptedException {
+        try {
+            if (command.instances.size() == 1) {
+                for (String instanceId : command.instances.keySet()) {
+                    completeIfTerminal(command, instanceId, null);
+                }
+            } else {
+                for (CommandInvocation invocation : invocations(command.commandId)) {
+                    if (isTerminal(invocation.status())) {
+                        completeIfTerminal(command, invocation.instanceId(), invocation.status());
+                    }
+                }
+            }
+        } catch (InvocationDoesNotExistException e) {
+            // Invocations are eventually consistent, and may not be visible right after the command was sent
+            LOGGER.debug("Invocation of command {} does not exist yet, backing off", command.commandId);
+        } catch (SsmException e) {
+            if (e.isThrottlingException()) {
+                LOGGER.debug("Throttled polling command {}, backing off", command.commandId);
+                return;
+            }
+            fail(command, new ConnectionException(e));
+        } catch (SdkClientException e) {
+            fail(command, new ConnectionException(e));
+        }
+    }
+
+    private static void fail(PendingCommand command, Exception error) {
+        command.instances.values().forEach(waiting -> waiting.future.completeExceptionally(error));
+    }
+
+    private void tick() {
+        synchronized (this) {
+            nextTick = null;
+            nextTickAt = Long.MAX_VALUE;
+        }
+        long earliest = Long.MAX_VALUE;
+        try {
+            for (PendingCommand command : commands.values()) {
+                final long now = System.nanoTime();
+                command.instances.values().stream()
+                        .filter(waiting -> now - waiting.deadline >= 0)
+                        .forEach(waiting -> waiting.future.completeExceptionally(new ConnectionException(
+                                "Timed out waiting on command " + command.commandId)));
+                if (!command.instances.isEmpty() && now - command.nextPoll >= 0) {
+                    poll(command);
+                    command.delay = Math.min(maxDelay.toNanos(), command.delay * 2);
+                    command.nextPoll = System.nanoTime() + command.delay;
+                }
+                commands.computeIfPresent(command.commandId, (id, pending) ->
+                        pending.instances.isEmpty() ? null : pending);
+                if (!command.instances.isEmpty()) {
+                    earliest = Math.min(earliest, command.nextPoll);
+                    for (Waiting waiting : command.instances.values()) {
+                        earliest = Math.min(earliest, waiting.deadline);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unexpected failure polling SSM invocations", e);
+            earliest = System.nanoTime() + maxDelay.toNanos();
+        }
+        if (earliest != Long.MAX_VALUE) {
+            wake(earliest);
+        }
+    }
+
+    /**
+     * Stops polling, failing every invocation still waited on, and any invocation waited on afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            scheduler.shutdownNow();
+        }
+        final ConnectionException error = closedException();
+        commands.values().forEach(command -> fail(command, error));
+        commands.clear();
+    }
+
+    private static ConnectionException closedException() {
+        return new ConnectionException("SSM invocation poller was closed");
+    }
+}
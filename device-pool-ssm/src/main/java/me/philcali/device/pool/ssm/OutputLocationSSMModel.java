@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssm;
+
+import me.philcali.device.pool.connection.BufferedOutputSink;
+import me.philcali.device.pool.connection.OutputSink;
+import me.philcali.device.pool.exceptions.ConnectionException;
+import me.philcali.device.pool.model.ApiModel;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.immutables.value.Value;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse;
+import software.amazon.awssdk.services.ssm.model.SendCommandRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * An S3 location receiving the complete output of SSM commands. SSM truncates the output reported by
+ * <code>GetCommandInvocation</code> to 24,000 characters, while the objects written to the output location hold
+ * everything a command printed. The {@link software.amazon.awssdk.services.s3.S3Client} is typically the same one
+ * configured for content transfers, such as <code>ContentTransferAgentFactoryS3.s3()</code>.
+ */
+@ApiModel
+@Value.Immutable
+abstract class OutputLocationSSMModel {
+    private static final Logger LOGGER = LogManager.getLogger(OutputLocationSSM.class);
+    static final int DEFAULT_PART_SIZE = 1024 * 1024;
+    static final int DEFAULT_CONCURRENCY = 4;
+
+    abstract S3Client s3();
+
+    abstract String bucketName();
+
+    /**
+     * The key prefix of command output, under which SSM writes
+     * <code>commandId/instanceId/pluginName/stdout</code> and <code>stderr</code> objects.
+     *
+     * @return the key prefix of command output
+     */
+    @Value.Default
+    String prefix() {
+        return "device-pool/ssm";
+    }
+
+    /**
+     * The size of each ranged GET of an output object.
+     *
+     * @return the part size in bytes
+     */
+    @Value.Default
+    int partSize() {
+        return DEFAULT_PART_SIZE;
+    }
+
+    /**
+     * The amount of ranged GETs of an output object in flight at once.
+     *
+     * @return the concurrency of a read
+     */
+    @Value.Default
+    int concurrency() {
+        return DEFAULT_CONCURRENCY;
+    }
+
+    SendCommandRequest.Builder apply(SendCommandRequest.Builder request) {
+        return request.outputS3BucketName(bucketName()).outputS3KeyPrefix(prefix());
+    }
+
+    private List<String> keys(String commandId, String instanceId) {
+        final List<String> keys = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            final ListObjectsV2Response response = s3().listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucketName())
+                    .prefix(String.format("%s/%s/%s/", prefix(), commandId, instanceId))
+                    .continuationToken(continuationToken)
+                    .build());
+            keys.addAll(response.contents().stream().map(S3Object::key).collect(Collectors.toList()));
+            continuationToken = response.isTruncated() ? response.nextContinuationToken() : null;
+        } while (Objects.nonNull(continuationToken));
+        return keys;
+    }
+
+    /**
+     * Streams the complete output of a command invocation from S3 into a sink. Each step of the command document
+     * writes its own output objects, which are handed over in step order. When no output objects exist, such as
+     * when the instance cannot write to the bucket, the output reported by the invocation is handed over instead.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} that was run
+     * @param response the terminal {@link software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse}
+     * @param sink the {@link me.philcali.device.pool.connection.OutputSink} receiving stdout and stderr
+     * @return the {@link me.philcali.device.pool.model.CommandOutput} of the invocation, without stdout or stderr
+     * @throws ConnectionException if the output cannot be read, or the sink fails
+     */
+    CommandOutput stream(CommandInput input, GetCommandInvocationResponse response, OutputSink sink)
+            throws ConnectionException {
+        final RangedOutputReader reader = new RangedOutputReader(s3(), bucketName(), partSize(), concurrency());
+        try {
+            final List<String> keys = keys(response.commandId(), response.instanceId());
+            LOGGER.debug("Reading {} output objects of command {} on {}",
+                    keys.size(), response.commandId(), response.instanceId());
+            if (keys.isEmpty()) {
+                sink.write(ConnectionSSMModel.convert(input).apply(response));
+            }
+            for (String key : keys) {
+                if (key.endsWith("/stdout")) {
+                    reader.read(key, sink::stdout);
+                }
+            }
+            for (String key : keys) {
+                if (key.endsWith("/stderr")) {
+                    reader.read(key, sink::stderr);
+                }
+            }
+        } catch (IOException | S3Exception | SdkClientException e) {
+            throw new ConnectionException(e);
+        }
+        return CommandOutput.builder()
+                .originalInput(input)
+                .exitCode(response.responseCode())
+                .build();
+    }
+
+    /**
+     * Reads the complete output of a command invocation from S3.
+     *
+     * @param input the {@link me.philcali.device.pool.model.CommandInput} that was run
+     * @param response the terminal {@link software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse}
+     * @return the {@link me.philcali.device.pool.model.CommandOutput} of the invocation, with stdout and stderr
+     * @throws ConnectionException if the output cannot be read
+     */
+    CommandOutput read(CommandInput input, GetCommandInvocationResponse response) throws ConnectionException {
+        final BufferedOutputSink sink = new BufferedOutputSink();
+        // Commands printing nothing have no output objects, but still have empty output
+        sink.stdout(ByteBuffer.allocate(0));
+        sink.stderr(ByteBuffer.allocate(0));
+        return sink.toOutput(stream(input, response, sink));
+    }
+}
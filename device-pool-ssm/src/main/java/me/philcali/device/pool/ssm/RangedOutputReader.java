@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssm;
+
+import me.philcali.device.pool.s3.RangedObjects;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads an S3 object in order as a series of ranged GETs, with up to a fixed amount of ranges downloading ahead of
+ * the range being consumed. At most <code>concurrency</code> parts are held in memory at once, no matter the size
+ * of the object.
+ */
+final class RangedOutputReader {
+    static final ExecutorService WORKERS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("SSM-Output");
+        return thread;
+    });
+
+    private final S3Client s3;
+    private final String bucketName;
+    private final int partSize;
+    private final int concurrency;
+
+    @FunctionalInterface
+    interface ChunkConsumer {
+        void accept(ByteBuffer chunk) throws IOException;
+    }
+
+    RangedOutputReader(S3Client s3, String bucketName, int partSize, int concurrency) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+    }
+
+    private byte[] range(String key, long start, long end) throws IOException {
+        try (ResponseInputStream<GetObjectResponse> object = s3.getObject(
+                RangedObjects.range(bucketName, key, start, end))) {
+            return object.readAllBytes();
+        }
+    }
+
+    /**
+     * Hands every part of an object to the consumer, in order. The first part is a ranged GET that also reports
+     * the object size, and the remaining parts are fetched in parallel while earlier parts are consumed.
+     *
+     * @param key the key of the object to read
+     * @param consumer receives each part of the object, in order
+     * @throws IOException if the object cannot be read, or the consumer fails
+     */
+    void read(String key, ChunkConsumer consumer) throws IOException {
+        final long size;
+        try (ResponseInputStream<GetObjectResponse> object = s3.getObject(
+                RangedObjects.range(bucketName, key, 0, partSize - 1))) {
+            size = RangedObjects.objectSize(object.response());
+            consumer.accept(ByteBuffer.wrap(object.readAllBytes()));
+        } catch (S3Exception e) {
+            if (RangedObjects.isEmpty(e)) {
+                return;
+            }
+            throw e;
+        }
+        final Deque<CompletableFuture<byte[]>> window = new ArrayDeque<>();
+        long position = partSize;
+        try {
+            while (position < size || !window.isEmpty()) {
+                while (position < size && window.size() < concurrency) {
+                    final long start = position;
+                    final long end = Math.min(size, position + partSize) - 1;
+                    window.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return range(key, start, end);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, WORKERS));
+                    position += partSize;
+                }
+                consumer.accept(ByteBuffer.wrap(RangedObjects.join(window.poll())));
+            }
+        } finally {
+            window.forEach(part -> part.cancel(true));
+        }
+    }
+}
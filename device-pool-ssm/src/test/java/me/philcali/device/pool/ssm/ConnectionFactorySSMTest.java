@@ -16,9 +16,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.ssm.SsmClient;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Properties;
 
 import static org.mockito.Mockito.verify;
@@ -32,6 +34,9 @@ class ConnectionFactorySSMTest {
     @Mock
     private SsmClient ssm;
 
+    @Mock
+    private S3Client s3;
+
     @BeforeEach
     void setup() {
         factory = ConnectionFactorySSM.builder()
@@ -74,14 +79,14 @@ class ConnectionFactorySSMTest {
                 .documentName(factory.hostDocument().apply(expectedHost))
                 .host(expectedHost)
                 .ssm(ssm)
-                .waiter(factory.waiter())
+                .poller(factory.poller())
                 .build();
 
         Connection windowsConnection = ConnectionSSM.builder()
                 .documentName(factory.hostDocument().apply(windowsHost))
                 .host(windowsHost)
                 .ssm(ssm)
-                .waiter(factory.waiter())
+                .poller(factory.poller())
                 .build();
 
         assertEquals(expectedConnection, connection);
@@ -93,6 +98,8 @@ class ConnectionFactorySSMTest {
         DevicePoolConfig config = DevicePoolConfigProperties.load(getClass().getClassLoader());
         ConnectionFactorySSM factorySSM = ConnectionFactorySSM.builder().ssm(ssm).fromConfig(config);
         assertEquals("RunMyShellCommand", factorySSM.hostDocument().apply(null));
+        assertEquals(5, factorySSM.requestsPerSecond());
+        assertEquals(Duration.ofSeconds(2), factorySSM.maxPollDelay());
     }
 
     @Test
@@ -103,4 +110,22 @@ class ConnectionFactorySSMTest {
         DevicePoolConfig config = DevicePoolConfigProperties.load(properties);
         assertEquals(factory, ConnectionFactorySSM.builder().ssm(ssm).waiter(factory.waiter()).fromConfig(config));
     }
+
+    @Test
+    void GIVEN_client_is_provided_WHEN_config_has_output_bucket_THEN_client_is_reused_and_closed() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("device.pool.connection.ssm.outputBucket", "bucket");
+        properties.setProperty("device.pool.connection.ssm.outputPrefix", "output");
+        ConnectionFactorySSM factorySSM = ConnectionFactorySSM.builder()
+                .ssm(ssm)
+                .s3(s3)
+                .fromConfig(DevicePoolConfigProperties.load(properties));
+        assertEquals(OutputLocationSSM.builder()
+                .s3(s3)
+                .bucketName("bucket")
+                .prefix("output")
+                .build(), factorySSM.outputLocation());
+        factorySSM.close();
+        verify(s3).close();
+    }
 }
@@ -28,11 +28,17 @@ import software.amazon.awssdk.services.ssm.model.SendCommandResponse;
 import software.amazon.awssdk.services.ssm.model.SsmException;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -243,4 +249,56 @@ class ConnectionSSMTest {
 
         assertThrows(ConnectionException.class, () -> connection.execute(input));
     }
+
+    private void sendBatch(Function<String, String> stdout) {
+        SendCommandResponse sentCommand = SendCommandResponse.builder()
+                .command(Command.builder()
+                        .commandId("commandId")
+                        .build())
+                .build();
+        AtomicReference<String> marker = new AtomicReference<>();
+        when(ssm.sendCommand(any(SendCommandRequest.class))).then(answer -> {
+            SendCommandRequest request = answer.getArgument(0);
+            request.parameters().get("commands").stream()
+                    .filter(line -> line.startsWith("printf"))
+                    .findFirst()
+                    .ifPresent(line -> marker.set(line.split(" ")[2]));
+            return sentCommand;
+        });
+        when(ssm.getCommandInvocation(any(GetCommandInvocationRequest.class))).then(answer ->
+                GetCommandInvocationResponse.builder()
+                        .commandId("commandId")
+                        .responseCode(0)
+                        .status(CommandInvocationStatus.SUCCESS)
+                        .standardOutputContent(stdout.apply(marker.get()))
+                        .standardErrorContent("")
+                        .build());
+    }
+
+    @Test
+    void GIVEN_connection_without_output_location_WHEN_exec_batch_THEN_batch_is_sent_once() {
+        List<CommandInput> inputs = Arrays.asList(CommandInput.of("echo Hello"), CommandInput.of("echo World"));
+
+        sendBatch(marker -> marker + " 0 0 6 0\nHello\n" + marker + " 1 0 6 0\nWorld\n");
+
+        List<CommandOutput> outputs = connection.executeBatch(inputs);
+        assertEquals(2, outputs.size());
+        assertEquals("Hello\n", outputs.get(0).toUTF8String());
+        assertEquals("World\n", outputs.get(1).toUTF8String());
+        for (int index = 0; index < inputs.size(); index++) {
+            assertEquals(inputs.get(index), outputs.get(index).originalInput());
+            assertEquals(0, outputs.get(index).exitCode());
+        }
+        verify(ssm).sendCommand(any(SendCommandRequest.class));
+    }
+
+    @Test
+    void GIVEN_connection_without_output_location_WHEN_exec_batch_is_truncated_THEN_exception_is_thrown() {
+        List<CommandInput> inputs = Arrays.asList(CommandInput.of("echo Hello"), CommandInput.of("echo World"));
+
+        sendBatch(marker -> marker + " 0 0 6 0\nHello\n" + marker + " 1 0 6 0\nWor");
+
+        assertThrows(ConnectionException.class, () -> connection.executeBatch(inputs));
+        verify(ssm).sendCommand(any(SendCommandRequest.class));
+    }
 }
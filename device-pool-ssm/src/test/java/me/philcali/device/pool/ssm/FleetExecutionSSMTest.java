@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssm;
+
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.DeviceResult;
+import me.philcali.device.pool.model.ExecutionSummary;
+import me.philcali.device.pool.model.Host;
+import me.philcali.device.pool.model.PlatformOS;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import software.amazon.awssdk.services.ssm.model.Command;
+import software.amazon.awssdk.services.ssm.model.CommandInvocation;
+import software.amazon.awssdk.services.ssm.model.CommandInvocationStatus;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationRequest;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse;
+import software.amazon.awssdk.services.ssm.model.ListCommandInvocationsRequest;
+import software.amazon.awssdk.services.ssm.model.ListCommandInvocationsResponse;
+import software.amazon.awssdk.services.ssm.model.SendCommandRequest;
+import software.amazon.awssdk.services.ssm.model.SendCommandResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FleetExecutionSSMTest {
+
+    /**
+     * A local SSM listing invocations in pages of 20, where every invocation is in progress on the first list,
+     * and completes on the next.
+     */
+    private static final class StubSsmClient implements SsmClient {
+        private final Map<String, List<String>> commands = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> lists = new ConcurrentHashMap<>();
+        private final AtomicInteger listCalls = new AtomicInteger();
+        private final AtomicInteger getCalls = new AtomicInteger();
+
+        @Override
+        public SendCommandResponse sendCommand(SendCommandRequest request) {
+            assertTrue(request.instanceIds().size() <= FleetExecutionSSM.MAX_TARGETS);
+            final String commandId = "command-" + commands.size();
+            commands.put(commandId, request.instanceIds());
+            lists.put(commandId, new AtomicInteger());
+            return SendCommandResponse.builder()
+                    .command(Command.builder().commandId(commandId).build())
+                    .build();
+        }
+
+        @Override
+        public ListCommandInvocationsResponse listCommandInvocations(ListCommandInvocationsRequest request) {
+            listCalls.incrementAndGet();
+            final List<String> instanceIds = commands.get(request.commandId());
+            final int start = request.nextToken() == null ? 0 : Integer.parseInt(request.nextToken());
+            final int end = Math.min(instanceIds.size(), start + Math.min(20, request.maxResults()));
+            final boolean completed = start == 0
+                    ? lists.get(request.commandId()).getAndIncrement() > 0
+                    : lists.get(request.commandId()).get() > 1;
+            return ListCommandInvocationsResponse.builder()
+                    .commandInvocations(instanceIds.subList(start, end).stream()
+                            .map(instanceId -> CommandInvocation.builder()
+                                    .commandId(request.commandId())
+                                    .instanceId(instanceId)
+                                    .status(!completed
+                                            ? CommandInvocationStatus.IN_PROGRESS
+                                            : instanceId.equals("i-cancelled")
+                                            ? CommandInvocationStatus.CANCELLED
+                                            : instanceId.endsWith("7")
+                                            ? CommandInvocationStatus.FAILED
+                                            : CommandInvocationStatus.SUCCESS)
+                                    .build())
+                            .collect(Collectors.toList()))
+                    .nextToken(end < instanceIds.size() ? Integer.toString(end) : null)
+                    .build();
+        }
+
+        @Override
+        public GetCommandInvocationResponse getCommandInvocation(GetCommandInvocationRequest request) {
+            getCalls.incrementAndGet();
+            final boolean failed = request.instanceId().endsWith("7");
+            return GetCommandInvocationResponse.builder()
+                    .commandId(request.commandId())
+                    .instanceId(request.instanceId())
+                    .status(failed ? CommandInvocationStatus.FAILED : CommandInvocationStatus.SUCCESS)
+                    .responseCode(failed ? 1 : 0)
+                    .standardOutputContent(request.instanceId())
+                    .standardErrorContent("")
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Host host(String instanceId) {
+        return Host.builder()
+                .hostName(instanceId)
+                .deviceId(instanceId)
+                .platform(PlatformOS.of("Linux", "aarch64"))
+                .build();
+    }
+
+    @Test
+    void GIVEN_fleet_of_hosts_WHEN_executing_THEN_commands_are_batched_and_tracked_by_list() {
+        final StubSsmClient ssm = new StubSsmClient();
+        final List<Host> hosts = IntStream.range(0, 120)
+                .mapToObj(index -> host("i-" + index))
+                .collect(Collectors.toCollection(ArrayList::new));
+        hosts.add(host("i-cancelled"));
+        final InvocationPollerSSM poller = new InvocationPollerSSM(ssm,
+                Duration.ofMillis(10), Duration.ofMillis(10), 1000);
+        final FleetExecutionSSM fleet = new FleetExecutionSSM(ssm, host -> "AWS-RunShellScript", poller);
+
+        final ExecutionSummary summary = fleet.execute(hosts, CommandInput.of("echo Hello"));
+        poller.close();
+
+        assertEquals(3, ssm.commands.size());
+        assertEquals(121, summary.results().size());
+        assertEquals(hosts.stream().map(Host::deviceId).collect(Collectors.toList()), summary.results().stream()
+                .map(DeviceResult::deviceId)
+                .collect(Collectors.toList()));
+        // Two rounds of lists, each needing 3 + 3 + 2 pages for the 50, 50 and 21 hosts of the commands
+        assertEquals(16, ssm.listCalls.get());
+        assertEquals(120, ssm.getCalls.get());
+        assertFalse(summary.succeeded());
+        assertEquals("i-42", summary.results().get(42).output().toUTF8String());
+        assertEquals(Integer.valueOf(1), summary.exitCodes().get("i-17"));
+        final DeviceResult cancelled = summary.results().get(120);
+        assertNotNull(cancelled.error());
+        assertEquals(13, summary.failures().size());
+        assertEquals("i-7", new String(summary.results().get(7).output().stdout(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssm;
+
+import me.philcali.device.pool.exceptions.ConnectionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import software.amazon.awssdk.services.ssm.model.CommandInvocationStatus;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationRequest;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse;
+import software.amazon.awssdk.services.ssm.model.InvocationDoesNotExistException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({MockitoExtension.class})
+class InvocationPollerSSMTest {
+
+    @Mock
+    private SsmClient ssm;
+
+    private InvocationPollerSSM poller;
+
+    @BeforeEach
+    void setup() {
+        poller = new InvocationPollerSSM(ssm, Duration.ofMillis(10), Duration.ofMillis(40), 10);
+    }
+
+    @AfterEach
+    void teardown() {
+        poller.close();
+    }
+
+    @Test
+    void GIVEN_invocation_in_progress_WHEN_deadline_passes_THEN_future_fails() {
+        when(ssm.getCommandInvocation(any(GetCommandInvocationRequest.class)))
+                .thenReturn(GetCommandInvocationResponse.builder()
+                        .commandId("commandId")
+                        .status(CommandInvocationStatus.IN_PROGRESS)
+                        .build());
+
+        final CompletableFuture<GetCommandInvocationResponse> response = poller.poll(
+                "commandId", "i-abcefg123", Duration.ofMillis(200));
+
+        final ExecutionException error = assertThrows(ExecutionException.class, response::get);
+        assertInstanceOf(ConnectionException.class, error.getCause());
+    }
+
+    @Test
+    void GIVEN_request_budget_WHEN_exceeded_THEN_requests_are_delayed() {
+        final long started = System.nanoTime();
+        for (int request = 0; request < 15; request++) {
+            poller.acquire();
+        }
+        // The first second of requests is a burst, the remaining five refill at ten per second
+        final long elapsed = Duration.ofNanos(System.nanoTime() - started).toMillis();
+        assertTrue(elapsed >= 400, "requests were not delayed: " + elapsed + "ms");
+    }
+
+    @Test
+    void GIVEN_pending_invocation_WHEN_closed_THEN_future_fails() {
+        final CompletableFuture<GetCommandInvocationResponse> response = poller.poll(
+                "commandId", "i-abcefg123", Duration.ofMinutes(1));
+        poller.close();
+
+        final ExecutionException error = assertThrows(ExecutionException.class, response::get);
+        assertEquals("SSM invocation poller was closed", error.getCause().getMessage());
+    }
+
+    @Test
+    void GIVEN_closed_poller_WHEN_polling_THEN_future_fails() {
+        poller.close();
+        final CompletableFuture<GetCommandInvocationResponse> response = poller.poll(
+                "commandId", "i-abcefg123", Duration.ofMinutes(1));
+
+        assertTrue(response.isCompletedExceptionally());
+        final ExecutionException error = assertThrows(ExecutionException.class, response::get);
+        assertEquals("SSM invocation poller was closed", error.getCause().getMessage());
+    }
+
+    @Test
+    void GIVEN_invocation_not_visible_yet_WHEN_polling_THEN_invocation_is_still_pending() throws Exception {
+        final GetCommandInvocationResponse success = GetCommandInvocationResponse.builder()
+                .commandId("commandId")
+                .status(CommandInvocationStatus.SUCCESS)
+                .build();
+        when(ssm.getCommandInvocation(any(GetCommandInvocationRequest.class)))
+                .thenThrow(InvocationDoesNotExistException.builder().message("not yet").build())
+                .thenReturn(success);
+
+        final CompletableFuture<GetCommandInvocationResponse> response = poller.poll(
+                "commandId", "i-abcefg123", Duration.ofMinutes(1));
+
+        assertEquals(success, response.get(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2022 Philip Cali
+ * Released under Apache-2.0 License
+ *     (https://www.apache.org/licenses/LICENSE-2.0)
+ */
+
+package me.philcali.device.pool.ssm;
+
+import me.philcali.device.pool.connection.BufferedOutputSink;
+import me.philcali.device.pool.model.CommandInput;
+import me.philcali.device.pool.model.CommandOutput;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.ssm.model.CommandInvocationStatus;
+import software.amazon.awssdk.services.ssm.model.GetCommandInvocationResponse;
+import software.amazon.awssdk.services.ssm.model.SendCommandRequest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({MockitoExtension.class})
+class OutputLocationSSMTest {
+    private static final String PLUGIN = "test-prefix/commandId/i-abcefg123/awsrunShellScript/0.awsrunShellScript/";
+
+    @Mock
+    private S3Client s3;
+
+    private OutputLocationSSM location;
+
+    private final GetCommandInvocationResponse response = GetCommandInvocationResponse.builder()
+            .commandId("commandId")
+            .instanceId("i-abcefg123")
+            .status(CommandInvocationStatus.FAILED)
+            .responseCode(1)
+            .standardOutputContent("0123")
+            .standardErrorContent("")
+            .build();
+
+    @BeforeEach
+    void setup() {
+        location = OutputLocationSSM.builder()
+                .s3(s3)
+                .bucketName("test-bucket")
+                .prefix("test-prefix")
+                .partSize(4)
+                .concurrency(2)
+                .build();
+    }
+
+    private void objects(Map<String, String> objects) {
+        when(s3.listObjectsV2(any(ListObjectsV2Request.class))).then(answer -> {
+            ListObjectsV2Request request = answer.getArgument(0);
+            assertEquals("test-prefix/commandId/i-abcefg123/", request.prefix());
+            return ListObjectsV2Response.builder()
+                    .contents(objects.keySet().stream()
+                            .map(key -> S3Object.builder().key(PLUGIN + key).build())
+                            .toArray(S3Object[]::new))
+                    .isTruncated(false)
+                    .build();
+        });
+    }
+
+    @Test
+    void GIVEN_output_objects_WHEN_reading_THEN_complete_output_is_read_in_ranges() {
+        final Map<String, String> objects = Map.of("stdout", "0123456789", "stderr", "err");
+        objects(objects);
+        when(s3.getObject(any(GetObjectRequest.class))).then(answer -> {
+            GetObjectRequest request = answer.getArgument(0);
+            byte[] content = objects.get(request.key().substring(PLUGIN.length())).getBytes(StandardCharsets.UTF_8);
+            String[] range = request.range().substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(range[0]);
+            int end = Math.min(content.length - 1, Integer.parseInt(range[1]));
+            return new ResponseInputStream<>(
+                    GetObjectResponse.builder()
+                            .contentRange("bytes " + start + "-" + end + "/" + content.length)
+                            .build(),
+                    AbortableInputStream.create(new ByteArrayInputStream(content, start, end - start + 1)));
+        });
+
+        final CommandOutput output = location.read(CommandInput.of("cat /var/log/messages"), response);
+        assertEquals("0123456789", new String(output.stdout(), StandardCharsets.UTF_8));
+        assertEquals("err", new String(output.stderr(), StandardCharsets.UTF_8));
+        assertEquals(1, output.exitCode());
+        assertEquals(CommandInput.of("cat /var/log/messages"), output.originalInput());
+        // Three ranges of stdout, one of stderr
+        verify(s3, times(4)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void GIVEN_no_output_objects_WHEN_reading_THEN_invocation_output_is_used() {
+        objects(Map.of());
+
+        final CommandOutput output = location.read(CommandInput.of("true"), response);
+        assertEquals(1, output.exitCode());
+        assertEquals("0123", new String(output.stdout(), StandardCharsets.UTF_8));
+        assertEquals("", new String(output.stderr(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void GIVEN_no_output_objects_WHEN_streaming_THEN_invocation_output_is_handed_to_sink() {
+        objects(Map.of());
+        final BufferedOutputSink sink = new BufferedOutputSink();
+
+        final CommandOutput output = sink.toOutput(location.stream(CommandInput.of("true"), response, sink));
+        assertEquals(1, output.exitCode());
+        assertEquals("0123", new String(output.stdout(), StandardCharsets.UTF_8));
+        verify(s3, never()).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void GIVEN_output_location_WHEN_sending_command_THEN_output_is_written_to_bucket() {
+        final SendCommandRequest request = location.apply(SendCommandRequest.builder()).build();
+        assertEquals("test-bucket", request.outputS3BucketName());
+        assertEquals("test-prefix", request.outputS3KeyPrefix());
+    }
+}